@@ -87,6 +87,9 @@ public class AnsharConfiguration {
     @Value("${anshar.validation.profile.name}")
     private String validationProfileName;
 
+    @Value("${anshar.validation.profile.object.model:false}")
+    private boolean objectModelValidation;
+
     @Value("${anshar.tracking.header.required.post:false}")
     private boolean trackingHeaderRequiredforPost;
 
@@ -109,6 +112,15 @@ public class AnsharConfiguration {
     @Value("${anshar.tracking.data.buffer.commit.frequency.seconds:2}")
     private int changeBufferCommitFrequency;
 
+    @Value("${anshar.metrics.dataset.size.reconcile.interval.minutes:10}")
+    private int datasetSizeReconcileInterval;
+
+    @Value("${anshar.polling.change.detection.enabled:true}")
+    private boolean pollingChangeDetection;
+
+    @Value("${anshar.polling.change.detection.max.skip.seconds:300}")
+    private int pollingMaxSkipSeconds;
+
     @Value("${anshar.message.queue.camel.route.prefix}")
     private String messageQueueCamelRoutePrefix;
 
@@ -120,9 +132,25 @@ public class AnsharConfiguration {
 
     @Value("${anshar.split.data.for.processing:false}")
     private Boolean splitDataForProcessing;
+
+    @Value("${anshar.message.queue.payload.binary:false}")
+    private boolean binaryQueuePayload;
+
     @Value("${anshar.siri.et.future.update.hard.limit.duration:}")
     private Duration hardLimitForFutureUpdates;
 
+    @Value("${anshar.outbound.response.cache.enabled:true}")
+    private boolean responseCacheEnabled;
+
+    @Value("${anshar.outbound.response.cache.max.entries:200}")
+    private int responseCacheMaxEntries;
+
+    @Value("${anshar.outbound.response.cache.max.staleness.seconds:0}")
+    private int responseCacheMaxStalenessSeconds;
+
+    @Value("${anshar.outbound.response.cache.gzip:false}")
+    private boolean responseCacheGzipEnabled;
+
     public String getHazelcastManagementUrl() {
         return hazelcastManagementUrl;
     }
@@ -203,6 +231,10 @@ public class AnsharConfiguration {
         return validationProfileName;
     }
 
+    public boolean isObjectModelValidation() {
+        return objectModelValidation;
+    }
+
     public boolean isTrackingHeaderRequiredforPost() {
         return trackingHeaderRequiredforPost;
     }
@@ -231,6 +263,18 @@ public class AnsharConfiguration {
         return changeBufferCommitFrequency;
     }
 
+    public int getDatasetSizeReconcileInterval() {
+        return datasetSizeReconcileInterval;
+    }
+
+    public boolean isPollingChangeDetection() {
+        return pollingChangeDetection;
+    }
+
+    public int getPollingMaxSkipSeconds() {
+        return pollingMaxSkipSeconds;
+    }
+
     public String getMessageQueueCamelRoutePrefix() {
         return messageQueueCamelRoutePrefix;
     }
@@ -262,7 +306,30 @@ public class AnsharConfiguration {
         return splitDataForProcessing;
     }
 
+    /**
+     * @return true if already mapped data should be added to the processing-queues as serialized objects instead of XML
+     */
+    public boolean isBinaryQueuePayload() {
+        return binaryQueuePayload;
+    }
+
     public Duration hardLimitForFutureEtUpdates() {
         return hardLimitForFutureUpdates;
     }
+
+    public boolean isResponseCacheEnabled() {
+        return responseCacheEnabled;
+    }
+
+    public int getResponseCacheMaxEntries() {
+        return responseCacheMaxEntries;
+    }
+
+    public int getResponseCacheMaxStalenessSeconds() {
+        return responseCacheMaxStalenessSeconds;
+    }
+
+    public boolean isResponseCacheGzipEnabled() {
+        return responseCacheGzipEnabled;
+    }
 }
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.ringbuffer.OverflowPolicy;
+import com.hazelcast.ringbuffer.ReadResultSet;
+import com.hazelcast.ringbuffer.Ringbuffer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cluster-wide log of changed ids for a single datatype.
+ *
+ * Every commit of the local change-buffer is appended once as a segment, and requestors only keep a cursor
+ * (the next sequence to read) per shard. Fetching changes since last request is then a range-read from the
+ * cursor to the current tail, instead of maintaining a full Set of changes per requestor.
+ *
+ * Ids are sharded by codespace, so requests for a single dataset only need to read one shard.
+ */
+public class ChangeJournal {
+
+    private static final int MAX_READ_BATCH_SIZE = 1000;
+
+    private final List<Ringbuffer<HashSet<SiriObjectStorageKey>>> shards;
+
+    public ChangeJournal(List<Ringbuffer<HashSet<SiriObjectStorageKey>>> shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * @return Cursor pointing to the end of the journal, i.e. all changes committed so far are considered read
+     */
+    long[] getNextSequences() {
+        long[] sequences = new long[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            sequences[i] = shards.get(i).tailSequence() + 1;
+        }
+        return sequences;
+    }
+
+    /**
+     * Appends changes as one segment per affected shard
+     * @param changes
+     */
+    void append(Set<SiriObjectStorageKey> changes) {
+        Map<Integer, HashSet<SiriObjectStorageKey>> changesByShard = new HashMap<>();
+        for (SiriObjectStorageKey key : changes) {
+            changesByShard.computeIfAbsent(getShard(key.getCodespaceId()), s -> new HashSet<>()).add(key);
+        }
+
+        List<CompletableFuture<Long>> appended = new ArrayList<>();
+        for (Map.Entry<Integer, HashSet<SiriObjectStorageKey>> entry : changesByShard.entrySet()) {
+            appended.add(shards.get(entry.getKey())
+                    .addAsync(entry.getValue(), OverflowPolicy.OVERWRITE)
+                    .toCompletableFuture());
+        }
+        CompletableFuture.allOf(appended.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Reads all changes committed after the provided cursor.
+     *
+     * @param cursor next sequence to read per shard
+     * @param datasetId when set, only the shard containing this dataset is read - cursor for other shards is kept as is
+     * @param changes resolved changes are added to this Set
+     * @return updated cursor, or null if the cursor is invalid or changes have already been dropped from the journal
+     */
+    long[] readChanges(long[] cursor, String datasetId, Set<SiriObjectStorageKey> changes) {
+        if (cursor == null || cursor.length != shards.size()) {
+            return null;
+        }
+
+        long[] updatedCursor = cursor.clone();
+        for (int i = 0; i < shards.size(); i++) {
+            if (datasetId == null || i == getShard(datasetId)) {
+                Long nextSequence = readShard(shards.get(i), cursor[i], changes);
+                if (nextSequence == null) {
+                    return null;
+                }
+                updatedCursor[i] = nextSequence;
+            }
+        }
+        return updatedCursor;
+    }
+
+    /**
+     * Counts number of distinct changes pending for each of the provided cursors - reading the journal only once.
+     */
+    public Map<String, Integer> countChanges(Map<String, ChangeTrackerCursor> cursors) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (cursors.isEmpty()) {
+            return counts;
+        }
+
+        List<Map<Long, HashSet<SiriObjectStorageKey>>> segmentsByShard = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            final int shard = i;
+            long firstSequence = cursors.values().stream()
+                    .filter(c -> c.getSequences().length == shards.size())
+                    .mapToLong(c -> c.getSequences()[shard])
+                    .min()
+                    .orElse(Long.MAX_VALUE);
+            segmentsByShard.add(readSegments(shards.get(i), firstSequence));
+        }
+
+        for (Map.Entry<String, ChangeTrackerCursor> entry : cursors.entrySet()) {
+            ChangeTrackerCursor cursor = entry.getValue();
+            Set<SiriObjectStorageKey> changes = new HashSet<>(cursor.getPending());
+            if (cursor.getSequences().length == shards.size()) {
+                for (int i = 0; i < shards.size(); i++) {
+                    for (Map.Entry<Long, HashSet<SiriObjectStorageKey>> segment : segmentsByShard.get(i).entrySet()) {
+                        if (segment.getKey() >= cursor.getSequences()[i]) {
+                            changes.addAll(segment.getValue());
+                        }
+                    }
+                }
+            }
+            counts.put(entry.getKey(), changes.size());
+        }
+        return counts;
+    }
+
+    private int getShard(String codespaceId) {
+        return Math.floorMod(Objects.hashCode(codespaceId), shards.size());
+    }
+
+    /**
+     * Reads all segments from the provided sequence up to the current tail
+     *
+     * @return next sequence to read, or null if the requested sequence is no longer available
+     */
+    private static Long readShard(Ringbuffer<HashSet<SiriObjectStorageKey>> shard, long sequence, Collection<SiriObjectStorageKey> changes) {
+        final long nextSequence = shard.tailSequence() + 1;
+        if (sequence > nextSequence || (sequence < nextSequence && sequence < shard.headSequence())) {
+            return null;
+        }
+
+        while (sequence < nextSequence) {
+            ReadResultSet<HashSet<SiriObjectStorageKey>> resultSet = readBatch(shard, sequence, nextSequence);
+
+            // Items may have expired or been overwritten since last read
+            if (resultSet.size() == 0 || resultSet.getSequence(0) != sequence) {
+                return null;
+            }
+            for (int i = 0; i < resultSet.size() && resultSet.getSequence(i) < nextSequence; i++) {
+                changes.addAll(resultSet.get(i));
+            }
+            sequence = resultSet.getNextSequenceToReadFrom();
+        }
+        return nextSequence;
+    }
+
+    private static Map<Long, HashSet<SiriObjectStorageKey>> readSegments(Ringbuffer<HashSet<SiriObjectStorageKey>> shard, long sequence) {
+        Map<Long, HashSet<SiriObjectStorageKey>> segments = new HashMap<>();
+        final long nextSequence = shard.tailSequence() + 1;
+        sequence = Math.max(sequence, shard.headSequence());
+
+        while (sequence < nextSequence) {
+            ReadResultSet<HashSet<SiriObjectStorageKey>> resultSet = readBatch(shard, sequence, nextSequence);
+            if (resultSet.size() == 0) {
+                break;
+            }
+            for (int i = 0; i < resultSet.size(); i++) {
+                segments.put(resultSet.getSequence(i), resultSet.get(i));
+            }
+            sequence = resultSet.getNextSequenceToReadFrom();
+        }
+        return segments;
+    }
+
+    private static ReadResultSet<HashSet<SiriObjectStorageKey>> readBatch(Ringbuffer<HashSet<SiriObjectStorageKey>> shard, long sequence, long nextSequence) {
+        int maxCount = (int) Math.min(MAX_READ_BATCH_SIZE, nextSequence - sequence);
+        return shard.readManyAsync(sequence, 0, maxCount, null)
+                .toCompletableFuture()
+                .join();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Position in the {@link ChangeJournal} for a single requestor, along with changes that have been read
+ * from the journal, but not yet returned to the requestor (e.g. due to maxSize or dataset-filtering).
+ */
+public class ChangeTrackerCursor implements Serializable {
+
+    private final long[] sequences;
+    private final Set<SiriObjectStorageKey> pending;
+
+    ChangeTrackerCursor(long[] sequences, Set<SiriObjectStorageKey> pending) {
+        this.sequences = sequences;
+        this.pending = pending;
+    }
+
+    long[] getSequences() {
+        return sequences;
+    }
+
+    Set<SiriObjectStorageKey> getPending() {
+        return pending;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks a version-number per codespace and lineRef that changes whenever data for it is changed.
+ *
+ * All versions are taken from the same increasing counter, so a change always results in a version higher
+ * than any version returned earlier - which allows versions for codespace and lineRef to be combined.
+ */
+class DataVersions {
+
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    private final AtomicLong resetVersion = new AtomicLong();
+
+    private final Map<String, Long> datasetVersions = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> lineRefVersions = new ConcurrentHashMap<>();
+
+    void markChanged(SiriObjectStorageKey key) {
+        long version = globalVersion.incrementAndGet();
+        if (key.getCodespaceId() != null) {
+            datasetVersions.merge(key.getCodespaceId(), version, Math::max);
+        }
+        if (key.getLineRef() != null) {
+            lineRefVersions.merge(normalizeLineRef(key.getLineRef()), version, Math::max);
+        }
+    }
+
+    void markAllChanged() {
+        resetVersion.set(globalVersion.incrementAndGet());
+    }
+
+    /**
+     * @param datasetId
+     * @param lineRef
+     * @return version of data matching the provided filter - or the global version if no filter is set
+     */
+    long getVersion(String datasetId, String lineRef) {
+        if (datasetId == null && lineRef == null) {
+            return globalVersion.get();
+        }
+        long version = resetVersion.get();
+        if (datasetId != null) {
+            version = Math.max(version, datasetVersions.getOrDefault(datasetId, 0L));
+        }
+        if (lineRef != null) {
+            version = Math.max(version, lineRefVersions.getOrDefault(normalizeLineRef(lineRef), 0L));
+        }
+        return version;
+    }
+
+    private static String normalizeLineRef(String lineRef) {
+        return lineRef.toLowerCase(Locale.ROOT);
+    }
+}
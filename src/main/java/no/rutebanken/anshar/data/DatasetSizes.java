@@ -0,0 +1,83 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of elements per codespace, maintained incrementally from entry-events.
+ *
+ * Events may be missed (e.g. when partitions migrate between nodes), so counts are periodically
+ * replaced by counting the actual keys - see {@link #reset(Map)}.
+ */
+class DatasetSizes {
+
+    private final Map<String, AtomicInteger> sizes = new ConcurrentHashMap<>();
+
+    void increment(String codespaceId) {
+        if (codespaceId != null) {
+            sizes.compute(codespaceId, (c, size) -> {
+                if (size == null) {
+                    size = new AtomicInteger();
+                }
+                size.incrementAndGet();
+                return size;
+            });
+        }
+    }
+
+    void decrement(String codespaceId) {
+        if (codespaceId != null) {
+            sizes.computeIfPresent(codespaceId, (c, size) -> size.decrementAndGet() <= 0 ? null : size);
+        }
+    }
+
+    int get(String codespaceId) {
+        AtomicInteger size = sizes.get(codespaceId);
+        return size != null ? size.get() : 0;
+    }
+
+    Map<String, Integer> getAll() {
+        Map<String, Integer> result = new HashMap<>();
+        sizes.forEach((codespaceId, size) -> result.put(codespaceId, size.get()));
+        return result;
+    }
+
+    /**
+     * Replaces all counts, removing codespaces that no longer have any elements
+     */
+    void reset(Map<String, Integer> actualSizes) {
+        sizes.keySet().retainAll(actualSizes.keySet());
+        actualSizes.forEach((codespaceId, size) -> sizes.put(codespaceId, new AtomicInteger(size)));
+    }
+
+    void clear() {
+        sizes.clear();
+    }
+
+    static Map<String, Integer> countByCodespace(Iterable<SiriObjectStorageKey> keys) {
+        Map<String, Integer> result = new HashMap<>();
+        for (SiriObjectStorageKey key : keys) {
+            if (key.getCodespaceId() != null) {
+                result.merge(key.getCodespaceId(), 1, Integer::sum);
+            }
+        }
+        return result;
+    }
+}
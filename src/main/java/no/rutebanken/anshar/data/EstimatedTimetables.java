@@ -16,6 +16,11 @@
 package no.rutebanken.anshar.data;
 
 import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
 import com.hazelcast.query.Predicates;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
@@ -38,7 +43,6 @@ import uk.org.siri.siri21.StopAssignmentStructure;
 import uk.org.siri.siri21.StopPointRefStructure;
 
 import javax.annotation.PostConstruct;
-import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -51,6 +55,8 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -82,12 +88,12 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     private IMap<SiriObjectStorageKey, ZonedDateTime> idStartTimeMap;
 
     @Autowired
-    @Qualifier("getEstimatedTimetableChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> changesMap;
+    @Qualifier("getEstimatedTimetableChangeJournal")
+    private ChangeJournal changeJournal;
 
     @Autowired
-    @Qualifier("getLastEtUpdateRequest")
-    private IMap<String, Instant> lastUpdateRequested;
+    @Qualifier("getEstimatedTimetableChangeCursors")
+    private IMap<String, ChangeTrackerCursor> changeCursors;
 
     @Autowired
     private AnsharConfiguration configuration;
@@ -100,6 +106,10 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
     private long hardLimitFutureUpdates = Integer.MAX_VALUE;
 
+    private final StartTimeIndex startTimeIndex = new StartTimeIndex();
+
+    private final Set<SiriObjectStorageKey> patternChangeIndex = ConcurrentHashMap.newKeySet();
+
     protected EstimatedTimetables() {
         super(SiriDataType.ESTIMATED_TIMETABLE);
     }
@@ -113,14 +123,46 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
+        super.initBufferCommitter(hazelcastService, changeJournal, changeCursors, configuration.getChangeBufferCommitFrequency());
         enableCache(timetableDeliveries,
             // Only cache monitored/cancelled/extra trips
             value -> (Boolean.TRUE.equals(value.isMonitored()) |
                 Boolean.TRUE.equals(value.isCancellation()) |
                 Boolean.TRUE.equals(value.isExtraJourney()))
         );
-        linkEntriesTtl(timetableDeliveries, changesMap, checksumCache, idStartTimeMap);
+        scheduleDatasetSizeReconciliation(timetableDeliveries, configuration.getDatasetSizeReconcileInterval());
+        linkEntriesTtl(timetableDeliveries, checksumCache, idStartTimeMap);
+        enableLocalIndexes();
+    }
+
+    /**
+     * Maintains local copies of start-times and pattern-changes, used to filter by previewInterval
+     */
+    private void enableLocalIndexes() {
+        idStartTimeMap.addEntryListener((EntryAddedListener<SiriObjectStorageKey, ZonedDateTime>) entryEvent ->
+                startTimeIndex.put(entryEvent.getKey(), entryEvent.getValue()), true);
+        idStartTimeMap.addEntryListener((EntryUpdatedListener<SiriObjectStorageKey, ZonedDateTime>) entryEvent ->
+                startTimeIndex.put(entryEvent.getKey(), entryEvent.getValue()), true);
+        idStartTimeMap.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, ZonedDateTime>) entryEvent ->
+                startTimeIndex.remove(entryEvent.getKey()), false);
+        idStartTimeMap.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, ZonedDateTime>) entryEvent ->
+                startTimeIndex.remove(entryEvent.getKey()), false);
+        idStartTimeMap.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, ZonedDateTime>) entryEvent ->
+                startTimeIndex.remove(entryEvent.getKey()), false);
+
+        idForPatternChanges.addEntryListener((EntryAddedListener<SiriObjectStorageKey, String>) entryEvent ->
+                patternChangeIndex.add(entryEvent.getKey()), false);
+        idForPatternChanges.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, String>) entryEvent ->
+                patternChangeIndex.remove(entryEvent.getKey()), false);
+        idForPatternChanges.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, String>) entryEvent ->
+                patternChangeIndex.remove(entryEvent.getKey()), false);
+        idForPatternChanges.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, String>) entryEvent ->
+                patternChangeIndex.remove(entryEvent.getKey()), false);
+
+        long t1 = System.currentTimeMillis();
+        idStartTimeMap.forEach(startTimeIndex::put);
+        patternChangeIndex.addAll(idForPatternChanges.keySet());
+        logger.info("Start-time index initialized with {} elements in {} ms", idStartTimeMap.size(), (System.currentTimeMillis()-t1));
     }
 
     /**
@@ -155,42 +197,10 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     }
 
 
-    public Map<String, Integer> getDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        timetableDeliveries.keySet().forEach(key -> {
-                        String datasetId = key.getCodespaceId();
-
-                        Integer count = sizeMap.getOrDefault(datasetId, 0);
-                        sizeMap.put(datasetId, count+1);
-                    });
-        logger.debug("Calculating data-distribution (ET) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-    public Map<String, Integer> getLocalDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        timetableDeliveries.localKeySet().forEach(key -> {
-                        String datasetId = key.getCodespaceId();
-
-                        Integer count = sizeMap.getOrDefault(datasetId, 0);
-                        sizeMap.put(datasetId, count+1);
-                    });
-        logger.debug("Calculating local data-distribution (ET) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-    public Integer getDatasetSize(String datasetId) {
-        return Math.toIntExact(timetableDeliveries.keySet().stream()
-                .filter(key -> datasetId.equals(key.getCodespaceId()))
-                .count());
-    }
-
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = timetableDeliveries.keySet(createHzCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByCodespace(timetableDeliveries, datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
@@ -209,9 +219,10 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         checksumCache.clear();
         idStartTimeMap.clear();
         idForPatternChanges.clear();
-        changesMap.clear();
-        lastUpdateRequested.clear();
-        cache.clear();
+        changeCursors.clear();
+        clearCache();
+        startTimeIndex.clear();
+        patternChangeIndex.clear();
     }
 
     public Siri createServiceDelivery(final String lineRef) {
@@ -223,7 +234,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             return o1_firstTimestamp.compareTo(o2_firstTimestamp);
         });
 
-        final Set<SiriObjectStorageKey> lineRefKeys = timetableDeliveries.keySet(createHzLineRefPredicate(lineRef));
+        final Set<SiriObjectStorageKey> lineRefKeys = getKeysByLineRef(lineRef);
 
         matchingEstimatedVehicleJourneys.addAll(timetableDeliveries.getAll(lineRefKeys).values());
 
@@ -252,14 +263,13 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             isAdHocRequest = true;
         }
 
-        // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
+        // Get all relevant ids - only the requested dataset needs to be resolved when no datasets are excluded
+        boolean isSingleDatasetRequest = excludedDatasetIds == null || excludedDatasetIds.isEmpty();
+        TrackedChanges trackedChanges = getTrackedChanges(requestorId, isSingleDatasetRequest ? datasetId : null);
+        Set<SiriObjectStorageKey> idSet = trackedChanges.getChanges();
 
-        if (idSet == allIds) {
-            idSet.addAll(timetableDeliveries
-                    .keySet(entry -> datasetId == null || ((SiriObjectStorageKey) entry.getKey()).getCodespaceId().equals(datasetId))
-            );
+        if (!trackedChanges.isTracked()) {
+            idSet.addAll(datasetId == null ? timetableDeliveries.keySet() : getKeysByCodespace(datasetId));
         }
 
         //Filter by datasetId
@@ -271,11 +281,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
         if (previewInterval >= 0) {
             long t1 = System.currentTimeMillis();
-            startTimes.addAll(idStartTimeMap
-                        .entrySet().stream()
-                        .filter(entry -> entry.getValue().isBefore(previewExpiry))
-                        .map(Map.Entry::getKey)
-                        .collect(Collectors.toSet()));
+            startTimes.addAll(startTimeIndex.getStartingBefore(previewExpiry));
 
             logger.info("Found {} ids starting within {} ms in {} ms", startTimes.size(), previewInterval, (System.currentTimeMillis()-t1));
         }
@@ -284,7 +290,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         final AtomicInteger previewIntervalExclusionCounter = new AtomicInteger();
         Predicate<SiriObjectStorageKey> previewIntervalFilter =  id -> {
 
-            if (idForPatternChanges.containsKey(id) || startTimes.contains(id)) {
+            if (patternChangeIndex.contains(id) || startTimes.contains(id)) {
                 // Is valid in requested previewInterval
                 previewIntervalInclusionCounter.incrementAndGet();
                 return true;
@@ -331,7 +337,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             siri.getServiceDelivery().setRequestMessageRef(msgRef);
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), idSet, trackingPeriodMinutes);
 
             logger.info("Returning {}, {} left for requestorRef {}", sizeLimitedIds.size(), idSet.size(), requestorId);
         }
@@ -499,35 +505,25 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     public Collection<EstimatedVehicleJourney> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
-            lastUpdateRequested.put(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+            TrackedChanges trackedChanges = getTrackedChanges(requestorId, null);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), new HashSet<>(), configuration.getTrackingPeriodMinutes());
 
-            if (idSet != null) {
+            if (trackedChanges.isTracked()) {
                 Set<SiriObjectStorageKey> datasetFilteredIdSet = new HashSet<>();
 
                 if (datasetId != null) {
-                    idSet.stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
+                    trackedChanges.getChanges().stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
                 } else {
-                    datasetFilteredIdSet.addAll(idSet);
+                    datasetFilteredIdSet.addAll(trackedChanges.getChanges());
                 }
 
                 Collection<EstimatedVehicleJourney> changes = timetableDeliveries.getAll(datasetFilteredIdSet).values();
 
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
-                if (existingSet == null) {
-                    existingSet = new HashSet<>();
-                }
-                //Remove returned ids
-                existingSet.removeAll(idSet);
-
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
             } else {
 
                 logger.info("Returning all to requestorRef {}", requestorId);
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
             }
         }
 
@@ -639,43 +635,59 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         Map<SiriObjectStorageKey, String> checksumCacheTmp = new HashMap<>();
         Map<SiriObjectStorageKey, ZonedDateTime> idStartTimeMapTmp = new HashMap<>();
         Map<SiriObjectStorageKey, Long> expirationMap = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> patternChangesExpirationTmp = new HashMap<>();
 
         AtomicInteger outdatedCounter = new AtomicInteger(0);
         AtomicInteger tooFarAheadCounter = new AtomicInteger(0);
         AtomicInteger notUpdatedCounter = new AtomicInteger(0);
-        etList.forEach(et -> {
-            TimingTracer timingTracer = new TimingTracer("single-et");
-            SiriObjectStorageKey key = createKey(datasetId, et);
 
-            timingTracer.mark("createKey");
+        TimingTracer batchTimingTracer = new TimingTracer("batch-et [" + etList.size() + " elements]");
+
+        // Keys and checksums are resolved locally first to allow bulk-lookups in the cluster
+        List<SiriObjectStorageKey> keys = new ArrayList<>(etList.size());
+        List<String> checksums = new ArrayList<>(etList.size());
+        for (EstimatedVehicleJourney et : etList) {
+            keys.add(createKey(datasetId, et));
 
             String currentChecksum = null;
-            ZonedDateTime recordedAtTime = et.getRecordedAtTime();
             try {
-                // Calculate checksum without "RecordedTime" - thus ignoring "fake" updates
-                et.setRecordedAtTime(null);
+                // Checksum is calculated without "RecordedTime" - thus ignoring "fake" updates
                 currentChecksum = getChecksum(et);
-                timingTracer.mark("getChecksum");
             } catch (Exception e) {
                 //Ignore - data will be updated
-            } finally {
-                //Set original RecordedTime back
-                et.setRecordedAtTime(recordedAtTime);
             }
+            checksums.add(currentChecksum);
+        }
+        batchTimingTracer.mark("createKeysAndChecksums");
 
-            String existingChecksum = checksumCache.get(key);
-            timingTracer.mark("checksumCache.get");
-            boolean updated;
-//            if (existingChecksum != null && timetableDeliveries.containsKey(key)) {
-            if (existingChecksum != null) {
-                //Exists - compare values
-                updated =  !(currentChecksum.equals(existingChecksum));
-                if (updated && et.isMonitored() == null) {
-                    et.setMonitored(true);
-                }
-            } else {
-                //Does not exist
-                updated = true;
+        final Map<SiriObjectStorageKey, String> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
+        batchTimingTracer.mark("checksumCache.getAll");
+
+        // Existing data is only needed when checksum has changed
+        Set<SiriObjectStorageKey> updatedKeys = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (isUpdated(existingChecksums.get(keys.get(i)), checksums.get(i))) {
+                updatedKeys.add(keys.get(i));
+            }
+        }
+        final Map<SiriObjectStorageKey, EstimatedVehicleJourney> existingJourneys = timetableDeliveries.getAll(updatedKeys);
+        batchTimingTracer.mark("timetableDeliveries.getAll");
+
+        if (batchTimingTracer.getTotalTime() > 1000) {
+            logger.info(batchTimingTracer.toString());
+        }
+
+        for (int i = 0; i < etList.size(); i++) {
+            EstimatedVehicleJourney et = etList.get(i);
+            SiriObjectStorageKey key = keys.get(i);
+            String currentChecksum = checksums.get(i);
+
+            TimingTracer timingTracer = new TimingTracer("single-et");
+
+            String existingChecksum = existingChecksums.get(key);
+            boolean updated = isUpdated(existingChecksum, currentChecksum);
+            if (updated && existingChecksum != null && et.isMonitored() == null) {
+                et.setMonitored(true);
             }
             timingTracer.mark("compareChecksum");
 
@@ -684,9 +696,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             EstimatedVehicleJourney existing = null;
             if (updated) {
 
-                existing = timetableDeliveries.get(key);
-
-                timingTracer.mark("getExisting");
+                existing = existingJourneys.get(key);
 
                 if (existing != null &&
                         (et.getRecordedAtTime() != null && existing.getRecordedAtTime() != null)) {
@@ -726,8 +736,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
                     if (hasPatternChanges) {
 
                         // Keep track of all valid ET with pattern-changes
-                        idForPatternChanges.put(key, key.getKey(), expiration, TimeUnit.MILLISECONDS);
-                        timingTracer.mark("idForPatternChanges.put");
+                        patternChangesExpirationTmp.put(key, expiration);
 
                         if (et.isCancellation() == null || !et.isCancellation()) {
                             if (et.isMonitored() != null && !et.isMonitored()) {
@@ -759,7 +768,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
                 logger.info("Adding ET-object with key {} took {} ms: {}", key, elapsed, timingTracer);
             }
 
-        });
+        }
 
         logger.info("Updated {} (of {}), {} outdated, {} without changes, {} too far ahead.", changes.size(), etList.size(), outdatedCounter.get(), notUpdatedCounter.get(), tooFarAheadCounter.get());
 
@@ -773,6 +782,14 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         idStartTimeMap.setAll(idStartTimeMapTmp);
         timingTracer.mark("idStartTimeMap.setAll");
 
+        // TTL differs per element - writes are submitted in parallel
+        List<CompletableFuture<Void>> patternChangeUpdates = new ArrayList<>();
+        for (Map.Entry<SiriObjectStorageKey, Long> entry : patternChangesExpirationTmp.entrySet()) {
+            patternChangeUpdates.add(idForPatternChanges.setAsync(entry.getKey(), entry.getKey().getKey(), entry.getValue(), TimeUnit.MILLISECONDS).toCompletableFuture());
+        }
+        CompletableFuture.allOf(patternChangeUpdates.toArray(new CompletableFuture[0])).join();
+        timingTracer.mark("idForPatternChanges.setAsync");
+
         timetableDeliveries.setAll(changes);
         timingTracer.mark("timetableDeliveries.setAll");
 
@@ -793,7 +810,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         return timetableDeliveries.get(createKey(datasetId, delivery));
     }
 
-    private static SiriObjectStorageKey createKey(String datasetId, EstimatedVehicleJourney element) {
+    public static SiriObjectStorageKey createKey(String datasetId, EstimatedVehicleJourney element) {
 
         StringBuilder key = new StringBuilder();
         if (element.getFramedVehicleJourneyRef() != null) {
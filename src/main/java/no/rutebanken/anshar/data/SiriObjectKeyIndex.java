@@ -0,0 +1,96 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locally maintained inverted index of all keys in a distributed map, grouped by codespace and lineRef.
+ *
+ * Kept current through the entry-listeners registered on the map, so that lookups by codespace/lineRef
+ * do not require a full scan of the map across the cluster.
+ */
+class SiriObjectKeyIndex {
+
+    private final Map<String, Set<SiriObjectStorageKey>> keysByCodespace = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<SiriObjectStorageKey>> keysByLineRef = new ConcurrentHashMap<>();
+
+    void add(SiriObjectStorageKey key) {
+        add(keysByCodespace, key.getCodespaceId(), key);
+        add(keysByLineRef, normalizeLineRef(key.getLineRef()), key);
+    }
+
+    void remove(SiriObjectStorageKey key) {
+        remove(keysByCodespace, key.getCodespaceId(), key);
+        remove(keysByLineRef, normalizeLineRef(key.getLineRef()), key);
+    }
+
+    void clear() {
+        keysByCodespace.clear();
+        keysByLineRef.clear();
+    }
+
+    /**
+     * @return copy of all keys with the given codespace
+     */
+    Set<SiriObjectStorageKey> getByCodespace(String codespaceId) {
+        return copyOf(keysByCodespace, codespaceId);
+    }
+
+    /**
+     * @return copy of all keys with the given lineRef - ignoring case
+     */
+    Set<SiriObjectStorageKey> getByLineRef(String lineRef) {
+        return copyOf(keysByLineRef, normalizeLineRef(lineRef));
+    }
+
+    private static String normalizeLineRef(String lineRef) {
+        return lineRef != null ? lineRef.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static void add(Map<String, Set<SiriObjectStorageKey>> index, String indexKey, SiriObjectStorageKey key) {
+        if (indexKey == null) {
+            return;
+        }
+        index.compute(indexKey, (k, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    private static void remove(Map<String, Set<SiriObjectStorageKey>> index, String indexKey, SiriObjectStorageKey key) {
+        if (indexKey == null) {
+            return;
+        }
+        index.computeIfPresent(indexKey, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static Set<SiriObjectStorageKey> copyOf(Map<String, Set<SiriObjectStorageKey>> index, String indexKey) {
+        Set<SiriObjectStorageKey> keys = indexKey != null ? index.get(indexKey) : null;
+        return keys != null ? new HashSet<>(keys) : new HashSet<>();
+    }
+}
@@ -24,23 +24,18 @@ import com.hazelcast.map.listener.EntryExpiredListener;
 import com.hazelcast.map.listener.EntryRemovedListener;
 import com.hazelcast.map.listener.EntryUpdatedListener;
 import com.hazelcast.query.Predicate;
+import no.rutebanken.anshar.data.checksum.ChangeDetectionHasher;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.SerializationUtils;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.Serializable;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -48,7 +43,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -56,8 +50,8 @@ import java.util.stream.Collectors;
 
 abstract class SiriRepository<T> {
 
-    private IMap<String, Instant> lastUpdateRequested;
-    private IMap<String, Set<SiriObjectStorageKey>> changesMap;
+    private ChangeJournal changeJournal;
+    private IMap<String, ChangeTrackerCursor> changeCursors;
 
     private final SiriDataType SIRI_DATA_TYPE;
 
@@ -88,8 +82,21 @@ abstract class SiriRepository<T> {
     @Autowired
     protected RequestorRefRepository requestorRefRepository;
 
+    @Autowired
+    private ChangeDetectionHasher changeDetectionHasher;
+
     Map<SiriObjectStorageKey, T> cache = Maps.newConcurrentMap();
 
+    private final SiriObjectKeyIndex keyIndex = new SiriObjectKeyIndex();
+
+    private final DataVersions dataVersions = new DataVersions();
+
+    private final DatasetSizes datasetSizes = new DatasetSizes();
+
+    private final DatasetSizes localDatasetSizes = new DatasetSizes();
+
+    private ScheduledExecutorService datasetSizeReconciler;
+
     protected SiriRepository (SiriDataType siriDataType) {
         this.SIRI_DATA_TYPE = siriDataType;
     }
@@ -102,6 +109,9 @@ abstract class SiriRepository<T> {
 
         // Entry added - new data
         map.addEntryListener((EntryAddedListener<SiriObjectStorageKey, T>) entryEvent -> {
+            keyIndex.add(entryEvent.getKey());
+            datasetSizes.increment(entryEvent.getKey().getCodespaceId());
+            dataVersions.markChanged(entryEvent.getKey());
 
             if (includeInCachePredicate == null || includeInCachePredicate.test(entryEvent.getValue())) {
                 cache.put(entryEvent.getKey(), entryEvent.getValue());
@@ -110,6 +120,7 @@ abstract class SiriRepository<T> {
 
         // Entry updated - new version
         map.addEntryListener((EntryUpdatedListener<SiriObjectStorageKey, T>) entryEvent -> {
+            dataVersions.markChanged(entryEvent.getKey());
 
             if (includeInCachePredicate == null || includeInCachePredicate.test(entryEvent.getValue())) {
                 cache.put(entryEvent.getKey(), entryEvent.getValue());
@@ -120,24 +131,46 @@ abstract class SiriRepository<T> {
         map.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent -> {
 
             cache.remove(entryEvent.getKey());
+            keyIndex.remove(entryEvent.getKey());
+            datasetSizes.decrement(entryEvent.getKey().getCodespaceId());
+            dataVersions.markChanged(entryEvent.getKey());
         }, false);
 
         // Entry evicted
         map.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent -> {
 
             cache.remove(entryEvent.getKey());
+            keyIndex.remove(entryEvent.getKey());
+            datasetSizes.decrement(entryEvent.getKey().getCodespaceId());
+            dataVersions.markChanged(entryEvent.getKey());
         }, false);
 
         // Entry removed - e.g. "delete all for codespace"
         map.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent -> {
 
             cache.remove(entryEvent.getKey());
+            keyIndex.remove(entryEvent.getKey());
+            datasetSizes.decrement(entryEvent.getKey().getCodespaceId());
+            dataVersions.markChanged(entryEvent.getKey());
         }, false);
 
+        // Entries owned by this node - used for metrics
+        map.addLocalEntryListener((EntryAddedListener<SiriObjectStorageKey, T>) entryEvent ->
+                localDatasetSizes.increment(entryEvent.getKey().getCodespaceId()));
+        map.addLocalEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent ->
+                localDatasetSizes.decrement(entryEvent.getKey().getCodespaceId()));
+        map.addLocalEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent ->
+                localDatasetSizes.decrement(entryEvent.getKey().getCodespaceId()));
+        map.addLocalEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent ->
+                localDatasetSizes.decrement(entryEvent.getKey().getCodespaceId()));
+
         // Initialize cache
         long t1 = System.currentTimeMillis();
 
         final Map<SiriObjectStorageKey, T> allAsMap = getAllAsMap();
+        allAsMap.keySet().forEach(keyIndex::add);
+        datasetSizes.reset(DatasetSizes.countByCodespace(allAsMap.keySet()));
+        localDatasetSizes.reset(DatasetSizes.countByCodespace(map.localKeySet()));
         if (includeInCachePredicate != null) {
             for (Map.Entry<SiriObjectStorageKey, T> entry : allAsMap.entrySet()) {
                 if (includeInCachePredicate.test(entry.getValue())) {
@@ -150,16 +183,102 @@ abstract class SiriRepository<T> {
         logger.info("Cache initialized with {} elements in {} ms", cache.size(), (System.currentTimeMillis()-t1));
     }
 
+    /**
+     * Clears local cache and key-index - needed when the map is cleared, as that does not trigger entry-events
+     */
+    void clearCache() {
+        cache.clear();
+        keyIndex.clear();
+        datasetSizes.clear();
+        localDatasetSizes.clear();
+        dataVersions.markAllChanged();
+    }
+
+    /**
+     * Periodically replaces the incrementally maintained dataset-sizes with actual counts to correct drift
+     * caused by missed events - e.g. when partitions are migrated between nodes.
+     */
+    void scheduleDatasetSizeReconciliation(IMap<SiriObjectStorageKey, T> map, int intervalMinutes) {
+        if (datasetSizeReconciler == null && intervalMinutes > 0) {
+            datasetSizeReconciler = Executors.newSingleThreadScheduledExecutor();
+            datasetSizeReconciler.scheduleWithFixedDelay(() -> {
+                try {
+                    long t1 = System.currentTimeMillis();
+                    datasetSizes.reset(DatasetSizes.countByCodespace(map.keySet()));
+                    localDatasetSizes.reset(DatasetSizes.countByCodespace(map.localKeySet()));
+                    logger.debug("Reconciled dataset-sizes ({}) in {} ms", SIRI_DATA_TYPE, System.currentTimeMillis() - t1);
+                } catch (Exception e) {
+                    logger.warn("Reconciling dataset-sizes ({}) failed", SIRI_DATA_TYPE, e);
+                }
+            }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return number of elements per codespace in the cluster
+     */
+    public Map<String, Integer> getDatasetSize() {
+        return datasetSizes.getAll();
+    }
+
+    /**
+     * @return number of elements per codespace owned by this node
+     */
+    public Map<String, Integer> getLocalDatasetSize() {
+        return localDatasetSizes.getAll();
+    }
+
+    public Integer getDatasetSize(String datasetId) {
+        return datasetSizes.get(datasetId);
+    }
+
+    /**
+     * Returns a version that is changed whenever data matching the provided filter is changed - used to
+     * determine if responses created earlier are still valid.
+     *
+     * @param datasetId optional codespace
+     * @param lineRef optional (possibly URL-encoded) lineRef
+     * @return
+     */
+    public long getDataVersion(String datasetId, String lineRef) {
+        return dataVersions.getVersion(datasetId, lineRef != null ? URLDecoder.decode(lineRef, StandardCharsets.UTF_8) : null);
+    }
+
+    /**
+     * @return all keys for the given codespace, resolved from the local key-index. The index is updated by
+     * entry-events, and is eventually consistent - use {@link #getKeysByCodespace(IMap, String)} when all keys
+     * are required
+     */
+    Set<SiriObjectStorageKey> getKeysByCodespace(String datasetId) {
+        return keyIndex.getByCodespace(datasetId);
+    }
+
+    /**
+     * @return all keys for the given codespace, resolved by querying the cluster - used when deleting data
+     */
+    Set<SiriObjectStorageKey> getKeysByCodespace(IMap<SiriObjectStorageKey, T> map, String datasetId) {
+        return map.keySet(createHzCodespacePredicate(datasetId));
+    }
+
+    /**
+     * @return all keys for the given (possibly URL-encoded) lineRef, resolved from the local key-index
+     */
+    Set<SiriObjectStorageKey> getKeysByLineRef(String lineRef) {
+        return keyIndex.getByLineRef(URLDecoder.decode(lineRef, StandardCharsets.UTF_8));
+    }
+
     /**
      * Links entries across provided Maps.
      *
      * TTL is set on main map, other maps are linked using EntryListeners:
      *   When an object is removed/expired from the main map, it is also removed from the linked maps
      *
+     * Tracked changes are not updated - ids that no longer exist are ignored when changes are resolved.
+     *
      * @param map
      * @param linkedMaps
      */
-    void linkEntriesTtl(IMap<SiriObjectStorageKey, T> map,  IMap<String, Set<SiriObjectStorageKey>> linkedChangeMap, Map<SiriObjectStorageKey, ? extends Object>... linkedMaps) {
+    void linkEntriesTtl(IMap<SiriObjectStorageKey, T> map, Map<SiriObjectStorageKey, ? extends Object>... linkedMaps) {
         {
 
             // Entry added - new data
@@ -174,28 +293,25 @@ abstract class SiriRepository<T> {
 
             //Entry expired by TTL
             map.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
 
             // Entry evicted
             map.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
 
             // Entry removed - e.g. "delete all for codespace"
             map.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
         }
     }
 
-    private void removeFromLinked(IMap<String, Set<SiriObjectStorageKey>> linkedChangeMap, EntryEvent<SiriObjectStorageKey, T> entryEvent, Map<SiriObjectStorageKey, ?>[] linkedMaps) {
+    private void removeFromLinked(EntryEvent<SiriObjectStorageKey, T> entryEvent, Map<SiriObjectStorageKey, ?>[] linkedMaps) {
         for (Map<SiriObjectStorageKey, ?> linkedMap : linkedMaps) {
             linkedMap.remove(entryEvent.getKey());
         }
-        for (Set<SiriObjectStorageKey> changes : linkedChangeMap.values()) {
-            changes.remove(entryEvent.getKey());
-        }
     }
 
     public Collection<T> getAllCachedUpdates(
@@ -211,56 +327,45 @@ abstract class SiriRepository<T> {
         }
 
         if (requestorId != null) {
-            try {
-                requestorRefRepository.touchRequestorRef(requestorId,
-                    datasetId,
-                    clientTrackingName,
-                    SIRI_DATA_TYPE
-                );
-
-                if (changesMap.containsKey(requestorId)) {
-                    Set<SiriObjectStorageKey> changes = changesMap.get(requestorId);
-
-                    changes = changes.stream()
-                        .filter((k) -> datasetId == null || codespaceMatches(datasetId, k))
-                        .filter((k) -> lineRef == null || lineRefMatches(lineRef, k))
-                        .limit(maxSize)
-                        .collect(Collectors.toSet());
-
-                    List<T> updates = new ArrayList<>();
-                    for (SiriObjectStorageKey key : changes) {
-                        final T element = cache.get(key);
-                        if (element != null) {
-                            updates.add(element);
-                        }
-                    }
-                    return updates;
-                }
-            } finally {
-                updateChangeTrackers(lastUpdateRequested,
-                    changesMap,
-                    requestorId,
-                    new HashSet<>(),
-                    2,
-                    TimeUnit.MINUTES
-                );
+            requestorRefRepository.touchRequestorRef(requestorId,
+                datasetId,
+                clientTrackingName,
+                SIRI_DATA_TYPE
+            );
+
+            TrackedChanges trackedChanges = getTrackedChanges(requestorId, null);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), new HashSet<>(), 2);
+
+            if (trackedChanges.isTracked()) {
+                return getCachedValues(trackedChanges.getChanges(), datasetId, lineRef, maxSize);
             }
         }
 
-        return cache
-            .entrySet()
-            .stream()
-            .filter((entry) -> entry.getValue() != null)
-            .filter((entry) -> datasetId == null || codespaceMatches(datasetId, entry.getKey()))
-            .filter((entry) -> lineRef == null || lineRefMatches(lineRef, entry.getKey()))
+        Collection<SiriObjectStorageKey> keys;
+        if (lineRef != null) {
+            keys = getKeysByLineRef(lineRef);
+        } else if (datasetId != null) {
+            keys = getKeysByCodespace(datasetId);
+        } else {
+            keys = cache.keySet();
+        }
+        return getCachedValues(keys, datasetId, lineRef, maxSize);
+    }
+
+    private List<T> getCachedValues(Collection<SiriObjectStorageKey> keys, String datasetId, String lineRef, int maxSize) {
+        final String decodedLineRef = lineRef != null ? URLDecoder.decode(lineRef, StandardCharsets.UTF_8) : null;
+        return keys.stream()
+            .filter((k) -> datasetId == null || codespaceMatches(datasetId, k))
+            .filter((k) -> decodedLineRef == null || lineRefMatches(decodedLineRef, k))
+            .map(cache::get)
+            .filter(element -> element != null)
             .limit(maxSize)
-            .map(Map.Entry::getValue)
             .collect(Collectors.toList());
     }
 
-    void initBufferCommitter(ExtendedHazelcastService hazelcastService, IMap<String, Instant> lastUpdateRequested, IMap<String, Set<SiriObjectStorageKey>> changesMap, int commitFrequency) {
-        this.lastUpdateRequested = lastUpdateRequested;
-        this.changesMap = changesMap;
+    void initBufferCommitter(ExtendedHazelcastService hazelcastService, ChangeJournal changeJournal, IMap<String, ChangeTrackerCursor> changeCursors, int commitFrequency) {
+        this.changeJournal = changeJournal;
+        this.changeCursors = changeCursors;
 
         if (singleThreadScheduledExecutor == null) {
             singleThreadScheduledExecutor = Executors.newSingleThreadScheduledExecutor();
@@ -278,7 +383,7 @@ abstract class SiriRepository<T> {
     }
 
     /**
-     * Commits local change-buffer to cluster
+     * Commits local change-buffer to cluster by appending it to the change-journal
      */
     void commitChanges() {
 
@@ -290,17 +395,10 @@ abstract class SiriRepository<T> {
                 final Set<SiriObjectStorageKey> bufferedChanges = new HashSet<>(dirtyChanges);
                 dirtyChanges.clear();
 
-                changesMap.keySet().forEach(key -> {
-                    if (!lastUpdateRequested.containsKey(key)) {
-                        changesMap.delete(key);
-                    }
-                });
-
-                if (!changesMap.isEmpty()) {
-                    changesMap.executeOnEntries(new AppendChangesToSetEntryProcessor(bufferedChanges));
-                    logger.info("Updating changes for {} requestors ({}), committed {} changes, update took {} ms",
-                            changesMap.size(), this.getClass().getSimpleName(), bufferedChanges.size(), (System.currentTimeMillis() - t1));
-                }
+                // Always appended - a requestor may have resolved its initial cursor, but not yet stored it
+                changeJournal.append(bufferedChanges);
+                logger.info("Appending changes to journal ({}), committed {} changes, update took {} ms",
+                        this.getClass().getSimpleName(), bufferedChanges.size(), (System.currentTimeMillis() - t1));
             } else {
                 logger.debug("No changes - ignoring commit ({})", this.getClass().getSimpleName());
             }
@@ -333,29 +431,72 @@ abstract class SiriRepository<T> {
         }
     }
 
-    void updateChangeTrackers(IMap<String, Instant> lastUpdateRequested, IMap<String, Set<SiriObjectStorageKey>> changesMap,
-                              String key, Set<SiriObjectStorageKey> changes, int trackingPeriodMinutes, TimeUnit timeUnit) {
-        final String breadcrumbId = MDC.get("camel.breadcrumbId");
+    /**
+     * Resolves all changes since last request from requestor - i.e. changes not yet returned, and changes appended
+     * to the journal since then.
+     *
+     * If the requestor is unknown, or its changes are no longer available, the result is flagged as not tracked, and
+     * the requestor should receive all data.
+     *
+     * @param requestorId
+     * @param datasetId when set, only changes for this dataset are guaranteed to be resolved
+     * @return
+     */
+    TrackedChanges getTrackedChanges(String requestorId, String datasetId) {
+        // Resolve end of journal before reading data to avoid losing changes committed in between
+        final long[] nextSequences = changeJournal.getNextSequences();
+
+        ChangeTrackerCursor cursor = changeCursors.get(requestorId);
+        if (cursor != null) {
+            Set<SiriObjectStorageKey> changes = new HashSet<>(cursor.getPending());
+            long[] updatedCursor = changeJournal.readChanges(cursor.getSequences(), datasetId, changes);
+            if (updatedCursor != null) {
+                return new TrackedChanges(updatedCursor, changes, true);
+            }
+            logger.info("Tracked changes no longer available for requestor {} ({})", requestorId, this.getClass().getSimpleName());
+        }
+        return new TrackedChanges(nextSequences, new HashSet<>(), false);
+    }
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.execute(() -> {
-            try {
-                MDC.put("camel.breadcrumbId", breadcrumbId);
+    /**
+     * Stores position in change-journal for requestor, along with changes that have not yet been returned
+     *
+     * @param requestorId
+     * @param cursor
+     * @param pendingChanges
+     * @param trackingPeriodMinutes
+     */
+    void updateChangeTracker(String requestorId, long[] cursor, Set<SiriObjectStorageKey> pendingChanges, int trackingPeriodMinutes) {
+        long t1 = System.currentTimeMillis();
 
-                long t1 = System.currentTimeMillis();
+        changeCursors.set(requestorId, new ChangeTrackerCursor(cursor, pendingChanges), trackingPeriodMinutes, TimeUnit.MINUTES);
 
-                changesMap.executeOnKey(key, new ReplaceSetEntryProcessor(changes));
-                changesMap.setTtl(key, trackingPeriodMinutes, timeUnit);
+        logger.info("Updating change-tracker for requestor {} with {} pending changes took {} ms. ({})",
+            requestorId, pendingChanges.size(), (System.currentTimeMillis() - t1), this.getClass().getSimpleName());
+    }
 
-                lastUpdateRequested.set(key, Instant.now(), trackingPeriodMinutes, timeUnit);
+    static class TrackedChanges {
+        private final long[] cursor;
+        private final Set<SiriObjectStorageKey> changes;
+        private final boolean tracked;
 
-                logger.info("Replacing changes for requestor async {} took {} ms. ({})",
-                    key,(System.currentTimeMillis() - t1),this.getClass().getSimpleName());
-            } finally {
-                MDC.remove("camel.breadcrumbId");
-            }
-        });
-        logger.info("Changetracker-update submitted");
+        private TrackedChanges(long[] cursor, Set<SiriObjectStorageKey> changes, boolean tracked) {
+            this.cursor = cursor;
+            this.changes = changes;
+            this.tracked = tracked;
+        }
+
+        long[] getCursor() {
+            return cursor;
+        }
+
+        Set<SiriObjectStorageKey> getChanges() {
+            return changes;
+        }
+
+        boolean isTracked() {
+            return tracked;
+        }
     }
 
     /**
@@ -383,9 +524,7 @@ abstract class SiriRepository<T> {
      */
     Collection<T> getValuesByDatasetId(IMap<SiriObjectStorageKey, T> collection, String datasetId) {
 
-        final Set<SiriObjectStorageKey> codespaceKeys = collection.keySet(createHzCodespacePredicate(datasetId));
-
-        return collection.getAll(codespaceKeys).values();
+        return collection.getAll(getKeysByCodespace(datasetId)).values();
     }
 
     Set<SiriObjectStorageKey> filterIdsByDataset(final Set<SiriObjectStorageKey> idSet, List<String> excludedDatasetIds, String datasetId) {
@@ -424,12 +563,6 @@ abstract class SiriRepository<T> {
         };
     }
 
-    Predicate<SiriObjectStorageKey, T> createHzLineRefPredicate(String lineRef) {
-        return entry -> {
-            return lineRefMatches(lineRef, entry.getKey());
-        };
-    }
-
     private static boolean codespaceMatches(String datasetId, SiriObjectStorageKey entry) {
         if (entry.getCodespaceId() != null) {
             final String codespaceId = entry.getCodespaceId();
@@ -438,8 +571,7 @@ abstract class SiriRepository<T> {
         return false;
     }
 
-    private static boolean lineRefMatches(String lineRef, SiriObjectStorageKey entry) {
-        String decodedLine = URLDecoder.decode(lineRef, StandardCharsets.UTF_8);
+    private static boolean lineRefMatches(String decodedLine, SiriObjectStorageKey entry) {
         if (entry.getLineRef() != null) {
             final String ref = entry.getLineRef();
 
@@ -449,12 +581,22 @@ abstract class SiriRepository<T> {
     }
 
     /**
-     * Compares object-equality by calculating and comparing MD5-checksum
+     * Element is considered updated when no previous checksum exists, or the checksum has changed
+     * @param existingChecksum
+     * @param currentChecksum
+     * @return
+     */
+    static boolean isUpdated(String existingChecksum, String currentChecksum) {
+        return existingChecksum == null || !existingChecksum.equals(currentChecksum);
+    }
+
+    /**
+     * Compares object-equality by calculating and comparing checksum
      * @param existing
      * @param updated
      * @return
      */
-    static boolean isEqual(Serializable existing, Serializable updated) {
+    boolean isEqual(Serializable existing, Serializable updated) {
         try {
             String checksumExisting = getChecksum(existing);
             String checksumUpdated = getChecksum(updated);
@@ -467,10 +609,12 @@ abstract class SiriRepository<T> {
         return false;
     }
 
-    static String getChecksum(Serializable object) throws NoSuchAlgorithmException {
-        byte[] bytes = SerializationUtils.serialize(object);
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        return DatatypeConverter.printHexBinary(md.digest(bytes));
-
+    /**
+     * Calculates checksum used to detect changes - fields excluded for the object-type are ignored
+     * @param object
+     * @return
+     */
+    String getChecksum(Serializable object) {
+        return changeDetectionHasher.getChecksum(object);
     }
 }
@@ -33,7 +33,6 @@ import uk.org.siri.siri21.Siri;
 import uk.org.siri.siri21.SituationVersion;
 
 import javax.annotation.PostConstruct;
-import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -60,13 +59,12 @@ public class Situations extends SiriRepository<PtSituationElement> {
     private IMap<SiriObjectStorageKey,String> checksumCache;
 
     @Autowired
-    @Qualifier("getSituationChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> changesMap;
-
+    @Qualifier("getSituationChangeJournal")
+    private ChangeJournal changeJournal;
 
     @Autowired
-    @Qualifier("getLastSxUpdateRequest")
-    private IMap<String, Instant> lastUpdateRequested;
+    @Qualifier("getSituationChangeCursors")
+    private IMap<String, ChangeTrackerCursor> changeCursors;
 
     @Autowired
     private SiriObjectFactory siriObjectFactory;
@@ -83,11 +81,12 @@ public class Situations extends SiriRepository<PtSituationElement> {
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
+        super.initBufferCommitter(hazelcastService, changeJournal, changeCursors, configuration.getChangeBufferCommitFrequency());
 
         enableCache(situationElements);
 
-        linkEntriesTtl(situationElements, changesMap, checksumCache);
+        scheduleDatasetSizeReconciliation(situationElements, configuration.getDatasetSizeReconcileInterval());
+        linkEntriesTtl(situationElements, checksumCache);
     }
 
     /**
@@ -106,44 +105,10 @@ public class Situations extends SiriRepository<PtSituationElement> {
     }
 
 
-    public Map<String, Integer> getDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        situationElements.keySet().forEach(key -> {
-            String datasetId = key.getCodespaceId();
-
-            Integer count = sizeMap.getOrDefault(datasetId, 0);
-            sizeMap.put(datasetId, count+1);
-        });
-        logger.debug("Calculating data-distribution (SX) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-
-    public Map<String, Integer> getLocalDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        situationElements.localKeySet().forEach(key -> {
-            String datasetId = key.getCodespaceId();
-
-            Integer count = sizeMap.getOrDefault(datasetId, 0);
-            sizeMap.put(datasetId, count+1);
-        });
-        logger.debug("Calculating data-distribution (SX) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-
-    public Integer getDatasetSize(String datasetId) {
-        return Math.toIntExact(situationElements.keySet().stream()
-                .filter(key -> datasetId.equals(key.getCodespaceId()))
-                .count());
-    }
-
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = situationElements.keySet(createHzCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByCodespace(situationElements, datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
@@ -157,7 +122,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
         logger.error("Deleting all data - should only be used in test!!!");
         situationElements.clear();
         checksumCache.clear();
-        cache.clear();
+        clearCache();
     }
 
     public Siri createServiceDelivery(String requestorId, String datasetId, String clientName, int maxSize) {
@@ -174,10 +139,10 @@ public class Situations extends SiriRepository<PtSituationElement> {
         }
 
         // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
+        TrackedChanges trackedChanges = getTrackedChanges(requestorId, datasetId);
+        Set<SiriObjectStorageKey> idSet = trackedChanges.getChanges();
 
-        if (idSet == allIds) {
+        if (!trackedChanges.isTracked()) {
             idSet.addAll(situationElements.keySet());
         }
 
@@ -216,7 +181,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
             siri.getServiceDelivery().setRequestMessageRef(msgRef);
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), idSet, trackingPeriodMinutes);
 
             logger.info("Returning {}, {} left for requestorRef {}", sizeLimitedIds.size(), idSet.size(), requestorId);
         }
@@ -241,36 +206,26 @@ public class Situations extends SiriRepository<PtSituationElement> {
     public Collection<PtSituationElement> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
-            lastUpdateRequested.set(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-            if (idSet != null) {
+            TrackedChanges trackedChanges = getTrackedChanges(requestorId, null);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), new HashSet<>(), configuration.getTrackingPeriodMinutes());
+
+            if (trackedChanges.isTracked()) {
                 Set<SiriObjectStorageKey> datasetFilteredIdSet = new HashSet<>();
 
                 if (datasetId != null) {
-                    idSet.stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
+                    trackedChanges.getChanges().stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
                 } else {
-                    datasetFilteredIdSet.addAll(idSet);
+                    datasetFilteredIdSet.addAll(trackedChanges.getChanges());
                 }
-                Collection<PtSituationElement> changes = situationElements.getAll(datasetFilteredIdSet).values();
-
-                // Data may have been updated
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
-                if (existingSet == null) {
-                    existingSet = new HashSet<>();
-                }
-                //Remove returned ids
-                existingSet.removeAll(idSet);
 
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                Collection<PtSituationElement> changes = situationElements.getAll(datasetFilteredIdSet).values();
 
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
             } else {
+
                 logger.info("Returning all to requestorRef {}", requestorId);
             }
-
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-
         }
 
         return getAll(datasetId);
@@ -307,41 +262,63 @@ public class Situations extends SiriRepository<PtSituationElement> {
 
         AtomicInteger alreadyExpiredCounter = new AtomicInteger(0);
         AtomicInteger ignoredCounter = new AtomicInteger(0);
-        sxList.forEach(situation -> {
-            TimingTracer timingTracer = new TimingTracer("single-sx");
+        TimingTracer batchTimingTracer = new TimingTracer("batch-sx [" + sxList.size() + " elements]");
+
+        // Keys and checksums are resolved locally first to allow bulk-lookups in the cluster
+        List<SiriObjectStorageKey> keys = new ArrayList<>(sxList.size());
+        List<String> checksums = new ArrayList<>(sxList.size());
+        for (PtSituationElement situation : sxList) {
+            keys.add(createKey(datasetId, situation));
 
-            SiriObjectStorageKey key = createKey(datasetId, situation);
-            timingTracer.mark("createKey");
             String currentChecksum = null;
             try {
                 currentChecksum = getChecksum(situation);
-                timingTracer.mark("getChecksum");
             } catch (Exception e) {
                 //Ignore - data will be updated
             }
+            checksums.add(currentChecksum);
+        }
+        batchTimingTracer.mark("createKeysAndChecksums");
+
+        final Map<SiriObjectStorageKey, String> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
+        batchTimingTracer.mark("checksumCache.getAll");
+
+        // Existing data is needed for all keys with a checksum - the checksum is only compared when the
+        // actual situation also exists
+        Set<SiriObjectStorageKey> existingKeys = new HashSet<>(existingChecksums.keySet());
+        final Map<SiriObjectStorageKey, PtSituationElement> existingSituations = situationElements.getAll(existingKeys);
+        batchTimingTracer.mark("situationElements.getAll");
 
-            String existingChecksum = checksumCache.get(key);
-            timingTracer.mark("checksumCache.get");
+        if (batchTimingTracer.getTotalTime() > 1000) {
+            logger.info(batchTimingTracer.toString());
+        }
+
+        for (int i = 0; i < sxList.size(); i++) {
+            PtSituationElement situation = sxList.get(i);
+            SiriObjectStorageKey key = keys.get(i);
+            String currentChecksum = checksums.get(i);
+
+            TimingTracer timingTracer = new TimingTracer("single-sx");
+
+            String existingChecksum = existingChecksums.get(key);
+            PtSituationElement existing = existingSituations.get(key);
             boolean updated;
-            if (existingChecksum != null && situationElements.containsKey(key)) { // Checksum not compared if actual situation does not exist
+            if (existingChecksum != null && existing != null) { // Checksum not compared if actual situation does not exist
                 //Exists - compare values
-                updated =  !(currentChecksum.equals(existingChecksum));
+                updated = isUpdated(existingChecksum, currentChecksum);
 
                 if (updated) { // Ignore if data is unchanged
                     // Compare "Version" - if it exists
                     // If received version is equal or higher - keep updated-flag
                     if (situation.getVersion() != null) {
                         SituationVersion newVersion = situation.getVersion();
-                        if (situationElements.containsKey(key)) {
-                            PtSituationElement existing = situationElements.get(key);
-                            if (existing != null && existing.getVersion() != null) {
-                                int currentVersion = existing.getVersion().getValue().intValue();
-                                int updatedVersion = newVersion.getValue().intValue();
-
-                                if (updatedVersion < currentVersion) {
-                                    // We already have a newer version - ignore this update
-                                    updated = false;
-                                }
+                        if (existing.getVersion() != null) {
+                            int currentVersion = existing.getVersion().getValue().intValue();
+                            int updatedVersion = newVersion.getValue().intValue();
+
+                            if (updatedVersion < currentVersion) {
+                                // We already have a newer version - ignore this update
+                                updated = false;
                             }
                         }
                     }
@@ -359,7 +336,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
                 if (expiration > 0) { //expiration < 0 => already expired
                     changes.put(key, situation);
                     checksumTmp.put(key, currentChecksum);
-                } else if (situationElements.containsKey(key)) {
+                } else if (existing != null) {
                     // Situation is no longer valid
                     situationElements.delete(key);
                     timingTracer.mark("situationElements.delete");
@@ -377,7 +354,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
             if (elapsed > 500) {
                 logger.info("Adding SX-object with key {} took {} ms: {}", key, elapsed, timingTracer);
             }
-        });
+        }
         TimingTracer timingTracer = new TimingTracer("all-sx [" + changes.size() + " changes]");
 
         logger.info("Updated {} (of {}) :: Already expired: {}, Unchanged: {}", changes.size(), sxList.size(), alreadyExpiredCounter.get(), ignoredCounter.get());
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Locally maintained index of keys ordered by start-time, to resolve all keys starting before a given
+ * time with a range-read instead of scanning all start-times.
+ */
+class StartTimeIndex {
+
+    private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private static final Comparator<TimedKey> ORDER = Comparator
+            .comparingLong((TimedKey t) -> t.startTime)
+            .thenComparing(t -> t.key.getCodespaceId(), NULLS_FIRST)
+            .thenComparing(t -> t.key.getLineRef(), NULLS_FIRST)
+            .thenComparing(t -> t.key.getKey(), NULLS_FIRST);
+
+    private final NavigableSet<TimedKey> keysByStartTime = new ConcurrentSkipListSet<>(ORDER);
+
+    private final Map<SiriObjectStorageKey, Long> startTimes = new ConcurrentHashMap<>();
+
+    void put(SiriObjectStorageKey key, ZonedDateTime startTime) {
+        if (startTime == null) {
+            remove(key);
+            return;
+        }
+        final long startTimeMillis = startTime.toInstant().toEpochMilli();
+        startTimes.compute(key, (k, previous) -> {
+            if (previous != null && previous != startTimeMillis) {
+                keysByStartTime.remove(new TimedKey(previous, key));
+            }
+            keysByStartTime.add(new TimedKey(startTimeMillis, key));
+            return startTimeMillis;
+        });
+    }
+
+    void remove(SiriObjectStorageKey key) {
+        startTimes.computeIfPresent(key, (k, previous) -> {
+            keysByStartTime.remove(new TimedKey(previous, key));
+            return null;
+        });
+    }
+
+    void clear() {
+        startTimes.clear();
+        keysByStartTime.clear();
+    }
+
+    /**
+     * @return all keys with start-time before the given time
+     */
+    Set<SiriObjectStorageKey> getStartingBefore(ZonedDateTime time) {
+        final long timeMillis = time.toInstant().toEpochMilli();
+        Set<SiriObjectStorageKey> keys = new HashSet<>();
+        for (TimedKey timedKey : keysByStartTime) {
+            if (timedKey.startTime >= timeMillis) {
+                break;
+            }
+            keys.add(timedKey.key);
+        }
+        return keys;
+    }
+
+    private static class TimedKey {
+        private final long startTime;
+        private final SiriObjectStorageKey key;
+
+        private TimedKey(long startTime, SiriObjectStorageKey key) {
+            this.startTime = startTime;
+            this.key = key;
+        }
+    }
+}
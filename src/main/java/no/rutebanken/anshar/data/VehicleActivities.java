@@ -35,7 +35,6 @@ import uk.org.siri.siri21.VehicleActivityStructure;
 import uk.org.siri.siri21.VehicleRef;
 
 import javax.annotation.PostConstruct;
-import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -49,6 +48,7 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -61,16 +61,16 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     private IMap<SiriObjectStorageKey, VehicleActivityStructure> monitoredVehicles;
 
     @Autowired
-    @Qualifier("getVehicleChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> changesMap;
+    @Qualifier("getVehicleChangeJournal")
+    private ChangeJournal changeJournal;
 
     @Autowired
-    @Qualifier("getVmChecksumMap")
-    private IMap<SiriObjectStorageKey,String> checksumCache;
+    @Qualifier("getVehicleChangeCursors")
+    private IMap<String, ChangeTrackerCursor> changeCursors;
 
     @Autowired
-    @Qualifier("getLastVmUpdateRequest")
-    private IMap<String, Instant> lastUpdateRequested;
+    @Qualifier("getVmChecksumMap")
+    private IMap<SiriObjectStorageKey,String> checksumCache;
 
     @Autowired
     private SiriObjectFactory siriObjectFactory;
@@ -87,10 +87,11 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
+        super.initBufferCommitter(hazelcastService, changeJournal, changeCursors, configuration.getChangeBufferCommitFrequency());
 
         enableCache(monitoredVehicles);
-        linkEntriesTtl(monitoredVehicles, changesMap, checksumCache);
+        scheduleDatasetSizeReconciliation(monitoredVehicles, configuration.getDatasetSizeReconcileInterval());
+        linkEntriesTtl(monitoredVehicles, checksumCache);
     }
 
     /**
@@ -108,43 +109,10 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
         return monitoredVehicles.keySet().size();
     }
 
-    public Map<String, Integer> getDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        monitoredVehicles.keySet().forEach(key -> {
-            String datasetId = key.getCodespaceId();
-
-            Integer count = sizeMap.getOrDefault(datasetId, 0);
-            sizeMap.put(datasetId, count+1);
-        });
-        logger.debug("Calculating data-distribution (VM) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-    public Map<String, Integer> getLocalDatasetSize() {
-        Map<String, Integer> sizeMap = new HashMap<>();
-        long t1 = System.currentTimeMillis();
-        monitoredVehicles.localKeySet().forEach(key -> {
-            String datasetId = key.getCodespaceId();
-
-            Integer count = sizeMap.getOrDefault(datasetId, 0);
-            sizeMap.put(datasetId, count+1);
-        });
-        logger.debug("Calculating data-distribution (VM) took {} ms: {}", (System.currentTimeMillis()-t1), sizeMap);
-        return sizeMap;
-    }
-
-
-    public Integer getDatasetSize(String datasetId) {
-        return Math.toIntExact(monitoredVehicles.keySet().stream()
-                .filter(key -> datasetId.equals(key.getCodespaceId()))
-                .count());
-    }
-
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = monitoredVehicles.keySet(createHzCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByCodespace(monitoredVehicles, datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
@@ -157,7 +125,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public void clearAll() {
         logger.error("Deleting all data - should only be used in test!!!");
         monitoredVehicles.clear();
-        cache.clear();
+        clearCache();
     }
 
     /**
@@ -177,36 +145,25 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public Collection<VehicleActivityStructure> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
-            lastUpdateRequested.set(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-            if (idSet != null) {
+            TrackedChanges trackedChanges = getTrackedChanges(requestorId, null);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), new HashSet<>(), configuration.getTrackingPeriodMinutes());
+
+            if (trackedChanges.isTracked()) {
                 Set<SiriObjectStorageKey> datasetFilteredIdSet = new HashSet<>();
 
                 if (datasetId != null) {
-                    idSet.stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
+                    trackedChanges.getChanges().stream().filter(key -> key.getCodespaceId().equals(datasetId)).forEach(datasetFilteredIdSet::add);
                 } else {
-                    datasetFilteredIdSet.addAll(idSet);
+                    datasetFilteredIdSet.addAll(trackedChanges.getChanges());
                 }
 
                 Collection<VehicleActivityStructure> changes = monitoredVehicles.getAll(datasetFilteredIdSet).values();
 
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
-                if (existingSet == null) {
-                    existingSet = new HashSet<>();
-                }
-
-                //Remove returned ids
-                existingSet.removeAll(idSet);
-
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
             } else {
 
                 logger.info("Returning all to requestorRef {}", requestorId);
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
-
             }
         }
 
@@ -217,7 +174,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public Siri createServiceDelivery(final String lineRef) {
         SortedSet<VehicleActivityStructure> vehicleActivityStructures = new TreeSet<>(Comparator.comparing(AbstractItemStructure::getRecordedAtTime));
 
-        final Set<SiriObjectStorageKey> lineRefKeys = monitoredVehicles.keySet(createHzLineRefPredicate(lineRef));
+        final Set<SiriObjectStorageKey> lineRefKeys = getKeysByLineRef(lineRef);
 
         vehicleActivityStructures.addAll(monitoredVehicles.getAll(lineRefKeys).values());
 
@@ -239,10 +196,10 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
         }
 
         // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
+        TrackedChanges trackedChanges = getTrackedChanges(requestorId, (excludedDatasetIds == null || excludedDatasetIds.isEmpty()) ? datasetId : null);
+        Set<SiriObjectStorageKey> idSet = trackedChanges.getChanges();
 
-        if (idSet == allIds) {
+        if (!trackedChanges.isTracked()) {
             idSet.addAll(monitoredVehicles.keySet());
         }
 
@@ -267,7 +224,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
 
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTracker(requestorId, trackedChanges.getCursor(), idSet, trackingPeriodMinutes);
 
 
             MessageRefStructure msgRef = new MessageRefStructure();
@@ -304,100 +261,124 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
 
         Map<SiriObjectStorageKey, VehicleActivityStructure> changes = new HashMap<>();
         Map<SiriObjectStorageKey, String> checksumCacheTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, String> outdatedChecksumsTmp = new HashMap<>();
 
         AtomicInteger invalidLocationCounter = new AtomicInteger(0);
         AtomicInteger notMeaningfulCounter = new AtomicInteger(0);
         AtomicInteger outdatedCounter = new AtomicInteger(0);
         AtomicInteger notUpdatedCounter = new AtomicInteger(0);
 
-        vmList.stream()
+        final List<VehicleActivityStructure> validActivities = vmList.stream()
                 .filter(activity -> activity.getMonitoredVehicleJourney() != null)
                 .filter(activity -> activity.getMonitoredVehicleJourney().getVehicleRef() != null)
                 .filter(activity -> activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef() == null ||
                         ( activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef() != null &&
                                 activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef().getDatedVehicleJourneyRef() != null)
                 )
-                .forEach(activity -> {
-                    TimingTracer timingTracer = new TimingTracer("single-vm");
-                    SiriObjectStorageKey key = createKey(datasetId, activity.getMonitoredVehicleJourney());
-                    timingTracer.mark("createKey");
-                    String currentChecksum = null;
-                    ZonedDateTime validUntilTime = activity.getValidUntilTime();
-                    try {
-                        // Calculate checksum without "ValidUntilTime" - thus ignoring "fake" updates where only validity is updated
-                        activity.setValidUntilTime(null);
-                        currentChecksum = getChecksum(activity);
-                        timingTracer.mark("getChecksum");
-                    } catch (Exception e) {
-                        //Ignore - data will be updated
-                    } finally {
-                        //Set original ValidUntilTime back
-                        activity.setValidUntilTime(validUntilTime);
-                    }
-
-                    String existingChecksum = checksumCache.get(key);
-                    timingTracer.mark("checksumCache.get");
-
-                    boolean updated;
-//                    if (existingChecksum != null && monitoredVehicles.containsKey(key)) {
-                    if (existingChecksum != null) {
-                        //Exists - compare values
-                        updated =  !(currentChecksum.equals(existingChecksum));
-                    } else {
-                        //Does not exist
-                        updated = true;
-                    }
-                    timingTracer.mark("compareChecksum");
-
-                    if (updated) {
-
-                        VehicleActivityStructure existing = monitoredVehicles.get(key);
-                        timingTracer.mark("getExisting");
-
-                        boolean keep = (existing == null); //No existing data i.e. keep
-
-                        if (existing != null &&
-                                (activity.getRecordedAtTime() != null && existing.getRecordedAtTime() != null)) {
-                            //Newer data has already been processed
-                            keep = activity.getRecordedAtTime().isAfter(existing.getRecordedAtTime());
-                        }
-
-                        long expiration = getExpiration(activity);
-                        timingTracer.mark("getExpiration");
-
-                        if (expiration > 0 && keep) {
-                            changes.put(key, activity);
-                            checksumCacheTmp.put(key, currentChecksum);
-                        } else {
-                            outdatedCounter.incrementAndGet();
-
-                            //Keeping all checksums for at least 5 minutes to avoid stale data
-                            checksumCache.set(key, currentChecksum, 5, TimeUnit.MINUTES);
-                            timingTracer.mark("checksumCache.set");
-
-                        }
-
-                        if (!isLocationValid(activity)) {invalidLocationCounter.incrementAndGet();}
-                        timingTracer.mark("isLocationValid");
-
-                        // Skip this check for now
-                        if (!isActivityMeaningful(activity)) {notMeaningfulCounter.incrementAndGet();}
-                        timingTracer.mark("isActivityMeaningful");
-
-                    } else {
-                        notUpdatedCounter.incrementAndGet();
-                    }
-
-                    long elapsed = timingTracer.getTotalTime();
-                    if (elapsed > 500) {
-                        logger.info("Adding VM-object with key {} took {} ms: {}", key, elapsed, timingTracer);
-                    }
-
-                });
+                .collect(Collectors.toList());
+
+        TimingTracer batchTimingTracer = new TimingTracer("batch-vm [" + validActivities.size() + " elements]");
+
+        // Keys and checksums are resolved locally first to allow bulk-lookups in the cluster
+        List<SiriObjectStorageKey> keys = new ArrayList<>(validActivities.size());
+        List<String> checksums = new ArrayList<>(validActivities.size());
+        for (VehicleActivityStructure activity : validActivities) {
+            keys.add(createKey(datasetId, activity.getMonitoredVehicleJourney()));
+
+            String currentChecksum = null;
+            try {
+                // Checksum is calculated without "ValidUntilTime" - thus ignoring "fake" updates where only validity is updated
+                currentChecksum = getChecksum(activity);
+            } catch (Exception e) {
+                //Ignore - data will be updated
+            }
+            checksums.add(currentChecksum);
+        }
+        batchTimingTracer.mark("createKeysAndChecksums");
+
+        final Map<SiriObjectStorageKey, String> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
+        batchTimingTracer.mark("checksumCache.getAll");
+
+        // Existing data is only needed when checksum has changed
+        Set<SiriObjectStorageKey> updatedKeys = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (isUpdated(existingChecksums.get(keys.get(i)), checksums.get(i))) {
+                updatedKeys.add(keys.get(i));
+            }
+        }
+        final Map<SiriObjectStorageKey, VehicleActivityStructure> existingActivities = monitoredVehicles.getAll(updatedKeys);
+        batchTimingTracer.mark("monitoredVehicles.getAll");
+
+        if (batchTimingTracer.getTotalTime() > 1000) {
+            logger.info(batchTimingTracer.toString());
+        }
+
+        for (int i = 0; i < validActivities.size(); i++) {
+            VehicleActivityStructure activity = validActivities.get(i);
+            SiriObjectStorageKey key = keys.get(i);
+            String currentChecksum = checksums.get(i);
+
+            TimingTracer timingTracer = new TimingTracer("single-vm");
+
+            boolean updated = isUpdated(existingChecksums.get(key), currentChecksum);
+            timingTracer.mark("compareChecksum");
+
+            if (updated) {
+
+                VehicleActivityStructure existing = existingActivities.get(key);
+
+                boolean keep = (existing == null); //No existing data i.e. keep
+
+                if (existing != null &&
+                        (activity.getRecordedAtTime() != null && existing.getRecordedAtTime() != null)) {
+                    //Newer data has already been processed
+                    keep = activity.getRecordedAtTime().isAfter(existing.getRecordedAtTime());
+                }
+
+                long expiration = getExpiration(activity);
+                timingTracer.mark("getExpiration");
+
+                if (expiration > 0 && keep) {
+                    changes.put(key, activity);
+                    checksumCacheTmp.put(key, currentChecksum);
+                } else {
+                    outdatedCounter.incrementAndGet();
+
+                    //Keeping all checksums for at least 5 minutes to avoid stale data
+                    outdatedChecksumsTmp.put(key, currentChecksum);
+
+                }
+
+                if (!isLocationValid(activity)) {invalidLocationCounter.incrementAndGet();}
+                timingTracer.mark("isLocationValid");
+
+                // Skip this check for now
+                if (!isActivityMeaningful(activity)) {notMeaningfulCounter.incrementAndGet();}
+                timingTracer.mark("isActivityMeaningful");
+
+            } else {
+                notUpdatedCounter.incrementAndGet();
+            }
+
+            long elapsed = timingTracer.getTotalTime();
+            if (elapsed > 500) {
+                logger.info("Adding VM-object with key {} took {} ms: {}", key, elapsed, timingTracer);
+            }
+
+        }
         TimingTracer timingTracer = new TimingTracer("all-vm [" + changes.size() + " changes]");
 
+        // TTL differs from the other checksums - writes are submitted in parallel
+        List<CompletableFuture<Void>> outdatedChecksumUpdates = new ArrayList<>();
+        for (Map.Entry<SiriObjectStorageKey, String> entry : outdatedChecksumsTmp.entrySet()) {
+            outdatedChecksumUpdates.add(checksumCache.setAsync(entry.getKey(), entry.getValue(), 5, TimeUnit.MINUTES).toCompletableFuture());
+        }
+        CompletableFuture.allOf(outdatedChecksumUpdates.toArray(new CompletableFuture[0])).join();
+        timingTracer.mark("checksumCache.setAsync");
+
         checksumCache.setAll(checksumCacheTmp);
         timingTracer.mark("checksumCache.setAll");
+
         monitoredVehicles.setAll(changes);
         timingTracer.mark("monitoredVehicles.setAll");
 
@@ -497,7 +478,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
      * @param monitoredVehicleJourney
      * @return
      */
-    private SiriObjectStorageKey createKey(String datasetId, VehicleActivityStructure.MonitoredVehicleJourney monitoredVehicleJourney) {
+    public static SiriObjectStorageKey createKey(String datasetId, VehicleActivityStructure.MonitoredVehicleJourney monitoredVehicleJourney) {
         StringBuilder key = new StringBuilder();
 
 
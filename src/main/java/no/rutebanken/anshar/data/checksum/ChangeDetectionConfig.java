@@ -0,0 +1,61 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.VehicleActivityStructure;
+
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+public class ChangeDetectionConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeDetectionConfig.class);
+
+    /**
+     * Fields ignored when detecting changes - thus ignoring "fake" updates where only these are changed
+     */
+    static final Map<Class<?>, Set<String>> EXCLUDED_FIELDS = Map.of(
+            EstimatedVehicleJourney.class, Set.of("recordedAtTime"),
+            VehicleActivityStructure.class, Set.of("validUntilTime")
+    );
+
+    @Value("${anshar.change.detection.hasher:structural}")
+    private String hasherType;
+
+    @Bean
+    public ChangeDetectionHasher changeDetectionHasher() {
+        return createHasher(hasherType);
+    }
+
+    /**
+     * @param hasherType "md5" for MD5 of Java-serialized data, otherwise structural hash
+     */
+    public static ChangeDetectionHasher createHasher(String hasherType) {
+        if ("md5".equalsIgnoreCase(hasherType)) {
+            logger.info("Using MD5 of serialized data for change detection");
+            return new SerializationChangeDetectionHasher(EXCLUDED_FIELDS);
+        }
+        logger.info("Using structural hash for change detection");
+        return new StructuralChangeDetectionHasher(EXCLUDED_FIELDS);
+    }
+}
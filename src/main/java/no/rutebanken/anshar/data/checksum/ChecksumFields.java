@@ -0,0 +1,92 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.checksum;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves which fields to include when calculating checksum for a class.
+ */
+class ChecksumFields {
+
+    private final Map<Class<?>, Set<String>> excludedFields;
+
+    ChecksumFields(Map<Class<?>, Set<String>> excludedFields) {
+        this.excludedFields = excludedFields;
+    }
+
+    /**
+     * @return All non-static fields in the class-hierarchy that are not excluded for the class, in a deterministic order
+     */
+    List<Field> getIncludedFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : getAllFields(clazz)) {
+            if (!isExcluded(clazz, field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return Excluded fields for the class
+     */
+    List<Field> getExcludedFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : getAllFields(clazz)) {
+            if (isExcluded(clazz, field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private boolean isExcluded(Class<?> clazz, Field field) {
+        for (Map.Entry<Class<?>, Set<String>> exclusion : excludedFields.entrySet()) {
+            if (exclusion.getKey().isAssignableFrom(clazz) && exclusion.getValue().contains(field.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Checksums are shared across the cluster, so field-order must not depend on JVM-specific reflection-order
+     */
+    private static List<Field> getAllFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            List<Field> declaredFields = new ArrayList<>();
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                    field.setAccessible(true);
+                    declaredFields.add(field);
+                }
+            }
+            declaredFields.sort(Comparator.comparing(Field::getName));
+            fields.addAll(0, declaredFields);
+            current = current.getSuperclass();
+        }
+        return fields;
+    }
+}
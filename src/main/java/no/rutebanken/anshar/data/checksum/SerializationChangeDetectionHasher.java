@@ -0,0 +1,77 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.checksum;
+
+import org.springframework.util.SerializationUtils;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calculates MD5-checksum of the Java-serialized object.
+ *
+ * Excluded fields are temporarily cleared on the provided object while serializing, and set back afterwards.
+ */
+public class SerializationChangeDetectionHasher implements ChangeDetectionHasher {
+
+    private final ChecksumFields checksumFields;
+
+    private final ClassValue<List<Field>> excludedFields = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            return checksumFields.getExcludedFields(type);
+        }
+    };
+
+    public SerializationChangeDetectionHasher(Map<Class<?>, Set<String>> excludedFields) {
+        this.checksumFields = new ChecksumFields(excludedFields);
+    }
+
+    @Override
+    public String getChecksum(Object object) {
+        final List<Field> fields = excludedFields.get(object.getClass());
+        final Object[] originalValues = new Object[fields.size()];
+        int clearedFields = 0;
+        try {
+            for (Field field : fields) {
+                originalValues[clearedFields] = field.get(object);
+                field.set(object, null);
+                clearedFields++;
+            }
+
+            byte[] bytes = SerializationUtils.serialize((Serializable) object);
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return DatatypeConverter.printHexBinary(md.digest(bytes));
+
+        } catch (IllegalAccessException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to calculate checksum", e);
+        } finally {
+            for (int i = 0; i < clearedFields; i++) {
+                try {
+                    fields.get(i).set(object, originalValues[i]);
+                } catch (IllegalAccessException e) {
+                    //Ignore - field has already been accessed
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.checksum;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.springframework.util.SerializationUtils;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.XmlType;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams all relevant fields of the object-tree directly into a 128-bit Murmur3-hash.
+ *
+ * Included fields are resolved once per class, and excluded fields are skipped instead of
+ * temporarily being cleared on the actual object. Every value is prefixed with a type-marker to avoid
+ * collisions between e.g. a null-value and an empty list.
+ */
+public class StructuralChangeDetectionHasher implements ChangeDetectionHasher {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte NUMBER = 3;
+    private static final byte DECIMAL = 4;
+    private static final byte ENUM = 5;
+    private static final byte DATE_TIME = 6;
+    private static final byte DURATION = 7;
+    private static final byte LIST = 8;
+    private static final byte ELEMENT = 9;
+    private static final byte STRUCTURE = 10;
+    private static final byte NODE = 11;
+    private static final byte OTHER = 12;
+
+    private final ChecksumFields checksumFields;
+
+    private final ClassValue<StructureAccessor> accessors = new ClassValue<>() {
+        @Override
+        protected StructureAccessor computeValue(Class<?> type) {
+            return StructureAccessor.create(type, checksumFields.getIncludedFields(type));
+        }
+    };
+
+    public StructuralChangeDetectionHasher(Map<Class<?>, Set<String>> excludedFields) {
+        this.checksumFields = new ChecksumFields(excludedFields);
+    }
+
+    @Override
+    public String getChecksum(Object object) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        try {
+            putValue(hasher, object);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to calculate checksum", e);
+        }
+        return hasher.hash().toString();
+    }
+
+    private void putValue(Hasher hasher, Object value) throws IllegalAccessException {
+        if (value == null) {
+            hasher.putByte(NULL);
+        } else if (value instanceof String) {
+            putNullableString(hasher, (String) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte(BOOLEAN).putBoolean((Boolean) value);
+        } else if (value instanceof Enum) {
+            hasher.putByte(ENUM).putInt(((Enum<?>) value).ordinal());
+        } else if (value instanceof ZonedDateTime) {
+            final ZonedDateTime dateTime = (ZonedDateTime) value;
+            final String zoneId = dateTime.getZone().getId();
+            hasher.putByte(DATE_TIME)
+                    .putLong(dateTime.toEpochSecond())
+                    .putInt(dateTime.getNano())
+                    .putInt(zoneId.length())
+                    .putUnencodedChars(zoneId);
+        } else if (value instanceof Duration) {
+            final Duration duration = (Duration) value;
+            hasher.putByte(DURATION).putLong(duration.getSeconds()).putInt(duration.getNano());
+        } else if (value instanceof BigDecimal) {
+            final BigDecimal decimal = (BigDecimal) value;
+            hasher.putByte(DECIMAL).putInt(decimal.scale());
+            putBigInteger(hasher, decimal.unscaledValue());
+        } else if (value instanceof BigInteger) {
+            hasher.putByte(NUMBER);
+            putBigInteger(hasher, (BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            hasher.putByte(DECIMAL).putDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            hasher.putByte(NUMBER).putLong(((Number) value).longValue());
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            hasher.putByte(LIST).putInt(list.size());
+            for (Object o : list) {
+                putValue(hasher, o);
+            }
+        } else if (value instanceof JAXBElement) {
+            final JAXBElement<?> element = (JAXBElement<?>) value;
+            hasher.putByte(ELEMENT)
+                    .putUnencodedChars(element.getName().getNamespaceURI())
+                    .putUnencodedChars(element.getName().getLocalPart())
+                    .putBoolean(element.isNil());
+            putValue(hasher, element.getValue());
+        } else if (value.getClass().isAnnotationPresent(XmlType.class)) {
+            final StructureAccessor accessor = accessors.get(value.getClass());
+            hasher.putByte(STRUCTURE).putLong(accessor.typeId);
+            for (Field field : accessor.fields) {
+                putValue(hasher, field.get(value));
+            }
+        } else if (value instanceof Node) {
+            // DOM-content, e.g. in Extensions - serializing would include the complete owner-document
+            putNode(hasher, (Node) value);
+        } else {
+            // Fallback for content not part of the generated model
+            hasher.putByte(OTHER);
+            if (value instanceof Serializable) {
+                hasher.putBytes(SerializationUtils.serialize(value));
+            } else {
+                hasher.putString(value.toString(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static void putNode(Hasher hasher, Node node) {
+        hasher.putByte(NODE).putShort(node.getNodeType());
+        putNullableString(hasher, node.getNamespaceURI());
+        putNullableString(hasher, node.getNodeName());
+        putNullableString(hasher, node.getNodeValue());
+
+        final NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            hasher.putInt(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                putNode(hasher, attributes.item(i));
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            putNode(hasher, child);
+        }
+        hasher.putByte(NULL);
+    }
+
+    private static void putNullableString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putByte(NULL);
+        } else {
+            hasher.putByte(STRING).putInt(value.length()).putUnencodedChars(value);
+        }
+    }
+
+    private static void putBigInteger(Hasher hasher, BigInteger value) {
+        if (value.bitLength() < 64) {
+            hasher.putLong(value.longValue());
+        } else {
+            hasher.putBytes(value.toByteArray());
+        }
+    }
+
+    private static class StructureAccessor {
+        private final long typeId;
+        private final Field[] fields;
+
+        private StructureAccessor(long typeId, Field[] fields) {
+            this.typeId = typeId;
+            this.fields = fields;
+        }
+
+        private static StructureAccessor create(Class<?> type, List<Field> fields) {
+            final long typeId = HASH_FUNCTION.hashString(type.getName(), StandardCharsets.UTF_8).asLong();
+            return new StructureAccessor(typeId, fields.toArray(new Field[0]));
+        }
+    }
+}
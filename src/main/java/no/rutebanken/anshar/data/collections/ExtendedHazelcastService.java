@@ -20,14 +20,19 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.hazelcast.cluster.Cluster;
 import com.hazelcast.cluster.Member;
 import com.hazelcast.collection.ISet;
+import com.hazelcast.config.RingbufferConfig;
 import com.hazelcast.config.SerializerConfig;
 import com.hazelcast.core.DistributedObject;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.LifecycleEvent;
 import com.hazelcast.map.IMap;
 import com.hazelcast.replicatedmap.ReplicatedMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import no.rutebanken.anshar.data.ChangeJournal;
+import no.rutebanken.anshar.data.ChangeTrackerCursor;
 import no.rutebanken.anshar.data.RequestorRefStats;
 import no.rutebanken.anshar.data.SiriObjectStorageKey;
+import no.rutebanken.anshar.routes.health.UnmappedId;
 import no.rutebanken.anshar.routes.outbound.OutboundSubscriptionSetup;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
@@ -50,8 +55,10 @@ import javax.annotation.PreDestroy;
 import java.math.BigInteger;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -62,10 +69,22 @@ public class ExtendedHazelcastService extends HazelCastService {
 
     private Logger logger = LoggerFactory.getLogger(ExtendedHazelcastService.class);
 
+    private final int backupCountSync;
+
+    @Value("${anshar.tracking.changes.journal.shards:8}")
+    private int changeJournalShards;
+
+    @Value("${anshar.tracking.changes.journal.capacity:10000}")
+    private int changeJournalCapacity;
+
+    @Value("${anshar.outbound.polling.tracking.period.minutes:30}")
+    private int trackingPeriodMinutes;
+
     public ExtendedHazelcastService(@Autowired KubernetesService kubernetesService,
                                     @Value("${entur.hazelcast.backup.count.sync:2}") int backupCountSync) {
         super(kubernetesService);
         setBackupCount(backupCountSync);
+        this.backupCountSync = backupCountSync;
     }
 
     public void addBeforeShuttingDownHook(Runnable destroyFunction) {
@@ -119,8 +138,13 @@ public class ExtendedHazelcastService extends HazelCastService {
     }
 
     @Bean
-    public IMap<String, Set<SiriObjectStorageKey>> getSituationChangesMap() {
-        return hazelcast.getMap("anshar.sx.changes");
+    public ChangeJournal getSituationChangeJournal() {
+        return createChangeJournal("anshar.sx.changes.journal");
+    }
+
+    @Bean
+    public IMap<String, ChangeTrackerCursor> getSituationChangeCursors() {
+        return hazelcast.getMap("anshar.sx.changes.cursor");
     }
 
     @Bean
@@ -129,8 +153,13 @@ public class ExtendedHazelcastService extends HazelCastService {
     }
 
     @Bean
-    public IMap<String, Set<SiriObjectStorageKey>> getEstimatedTimetableChangesMap() {
-        return hazelcast.getMap("anshar.et.changes");
+    public ChangeJournal getEstimatedTimetableChangeJournal() {
+        return createChangeJournal("anshar.et.changes.journal");
+    }
+
+    @Bean
+    public IMap<String, ChangeTrackerCursor> getEstimatedTimetableChangeCursors() {
+        return hazelcast.getMap("anshar.et.changes.cursor");
     }
 
     @Bean
@@ -164,8 +193,30 @@ public class ExtendedHazelcastService extends HazelCastService {
     }
 
     @Bean
-    public IMap<String, Set<SiriObjectStorageKey>> getVehicleChangesMap() {
-        return hazelcast.getMap("anshar.vm.changes");
+    public ChangeJournal getVehicleChangeJournal() {
+        return createChangeJournal("anshar.vm.changes.journal");
+    }
+
+    @Bean
+    public IMap<String, ChangeTrackerCursor> getVehicleChangeCursors() {
+        return hazelcast.getMap("anshar.vm.changes.cursor");
+    }
+
+    /**
+     * Creates journal sharded across multiple Ringbuffers. Journal-segments expire with the same
+     * tracking period as the requestor cursors.
+     */
+    private ChangeJournal createChangeJournal(String name) {
+        hazelcast.getConfig().addRingBufferConfig(new RingbufferConfig(name + ".*")
+                .setCapacity(changeJournalCapacity)
+                .setTimeToLiveSeconds(trackingPeriodMinutes * 60)
+                .setBackupCount(backupCountSync));
+
+        List<Ringbuffer<HashSet<SiriObjectStorageKey>>> shards = new ArrayList<>();
+        for (int i = 0; i < changeJournalShards; i++) {
+            shards.add(hazelcast.getRingbuffer(name + "." + i));
+        }
+        return new ChangeJournal(shards);
     }
 
     @Bean
@@ -195,21 +246,6 @@ public class ExtendedHazelcastService extends HazelCastService {
     }
 
 
-    @Bean
-    public IMap<String, Instant> getLastEtUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.et.update.request");
-    }
-
-    @Bean
-    public IMap<String, Instant> getLastSxUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.sx.update.request");
-    }
-
-    @Bean
-    public IMap<String, Instant> getLastVmUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.vm.update.request");
-    }
-
     @Bean
     public IMap<String, Instant> getActivatedTimestampMap() {
         return hazelcast.getMap("anshar.activity.activated");
@@ -256,8 +292,8 @@ public class ExtendedHazelcastService extends HazelCastService {
     }
 
     @Bean
-    public IMap<String, Map<SiriDataType, Set<String>>> getUnmappedIds() {
-        return hazelcast.getMap("anshar.mapping.unmapped");
+    public IMap<String, Map<SiriDataType, Map<String, UnmappedId>>> getUnmappedIds() {
+        return hazelcast.getMap("anshar.mapping.unmapped.stats");
     }
 
     @Bean
@@ -306,6 +342,9 @@ public class ExtendedHazelcastService extends HazelCastService {
                         JSONObject stats = new JSONObject();
                         Collection<DistributedObject> distributedObjects = hazelcast.getDistributedObjects();
                         for (DistributedObject distributedObject : distributedObjects) {
+                            if (!(distributedObject instanceof IMap)) {
+                                continue;
+                            }
 
                             try {
                                 String jsonValue = jsonMapper.writeValueAsString(hazelcast.getMap(distributedObject.getName()).getLocalMapStats());
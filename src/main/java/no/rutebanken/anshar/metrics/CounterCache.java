@@ -0,0 +1,84 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.metrics;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counters resolved once per combination of tag-values.
+ *
+ * Tag-values are looked up through nested maps keyed by the values themselves, and the last tag is
+ * an index (typically an enum-ordinal), so recording a value does not allocate once the counter is created.
+ */
+class CounterCache {
+
+    /**
+     * Replaces null-values as map-key
+     */
+    private static final String NULL_KEY = "\u0000";
+
+    private final int indexSize;
+
+    private final CounterFactory factory;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, AtomicReferenceArray<Counter>>>> counters = new ConcurrentHashMap<>();
+
+    CounterCache(int indexSize, CounterFactory factory) {
+        this.indexSize = indexSize;
+        this.factory = factory;
+    }
+
+    Counter get(String first, String second, String third, int index) {
+        AtomicReferenceArray<Counter> indexed = getIndexed(
+                getLevel(getLevel(counters, first), second),
+                third
+        );
+        Counter counter = indexed.get(index);
+        if (counter == null) {
+            // Registry returns the same counter for the same tags, so concurrent creation is harmless
+            counter = factory.create(first, second, third, index);
+            indexed.set(index, counter);
+        }
+        return counter;
+    }
+
+    private static <T> ConcurrentMap<String, T> getLevel(ConcurrentMap<String, ConcurrentMap<String, T>> map, String value) {
+        String key = value != null ? value : NULL_KEY;
+        ConcurrentMap<String, T> level = map.get(key);
+        if (level == null) {
+            level = map.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        return level;
+    }
+
+    private AtomicReferenceArray<Counter> getIndexed(ConcurrentMap<String, AtomicReferenceArray<Counter>> map, String value) {
+        String key = value != null ? value : NULL_KEY;
+        AtomicReferenceArray<Counter> indexed = map.get(key);
+        if (indexed == null) {
+            indexed = map.computeIfAbsent(key, k -> new AtomicReferenceArray<>(indexSize));
+        }
+        return indexed;
+    }
+
+    @FunctionalInterface
+    interface CounterFactory {
+        Counter create(String first, String second, String third, int index);
+    }
+}
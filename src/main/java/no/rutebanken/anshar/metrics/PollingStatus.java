@@ -0,0 +1,5 @@
+package no.rutebanken.anshar.metrics;
+
+public enum PollingStatus {
+    PROCESSED, NOT_MODIFIED, DUPLICATE
+}
@@ -43,6 +43,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 @Component
 public class PrometheusMetricsService extends PrometheusMeterRegistry {
@@ -64,6 +66,7 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
     private static final String VALIDATION_RULE_TAG_NAME = "category";
     private static final String SCHEMA_VALID_TAG_NAME = "schema";
     private static final String PROFILE_VALID_TAG_NAME = "profile";
+    private static final String SUBSCRIPTION_ID_TAG_NAME = "subscriptionId";
 
     @Autowired
     protected SubscriptionManager manager;
@@ -82,9 +85,104 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
 
     private static final String KAFKA_COUNTER_NAME = METRICS_PREFIX + "data.kafka";
 
+    private static final String POLLING_COUNTER_NAME = METRICS_PREFIX + "data.polling";
+    private static final String POLLING_STATUS_TAG = "pollingStatus";
+
     private static final String DATA_VALIDATION_COUNTER = METRICS_PREFIX + "data.validation";
     private static final String DATA_VALIDATION_RESULT_COUNTER = METRICS_PREFIX + "data.validation.result";
 
+    private static final String OUTBOUND_QUEUE_DEPTH_GAUGE_NAME = METRICS_PREFIX + "outbound.queue.depth";
+    private static final String OUTBOUND_DROPPED_COUNTER_NAME = METRICS_PREFIX + "outbound.dropped";
+
+    private static final String VALIDATION_QUEUE_DEPTH_GAUGE_NAME = METRICS_PREFIX + "validation.queue.depth";
+    private static final String VALIDATION_LATENCY_TIMER_NAME = METRICS_PREFIX + "validation.latency";
+    private static final String VALIDATION_DROPPED_COUNTER_NAME = METRICS_PREFIX + "validation.dropped";
+
+    private static final String[] INCOMING_DATA_COUNTER_NAMES = {
+            DATA_TOTAL_COUNTER_NAME, DATA_SUCCESS_COUNTER_NAME, DATA_EXPIRED_COUNTER_NAME, DATA_IGNORED_COUNTER_NAME
+    };
+
+    private static final MappingNames[] MAPPING_NAMES = MappingNames.values();
+    private static final SiriContent[] SIRI_CONTENTS = SiriContent.values();
+    private static final KafkaStatus[] KAFKA_STATUSES = KafkaStatus.values();
+    private static final PollingStatus[] POLLING_STATUSES = PollingStatus.values();
+    private static final ValidationType[] VALIDATION_TYPES = ValidationType.values();
+    private static final SubscriptionSetup.SubscriptionMode[] SUBSCRIPTION_MODES = SubscriptionSetup.SubscriptionMode.values();
+
+    /*
+     * Counters on the ingest-path are cached to avoid creating tags and looking up meters for every call
+     */
+    private final CounterCache incomingDataCounters = new CounterCache(INCOMING_DATA_COUNTER_NAMES.length,
+            (dataType, agencyId, unused, index) -> {
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
+                return counter(INCOMING_DATA_COUNTER_NAMES[index], counterTags);
+            });
+
+    private final CounterCache dataMappingCounters = new CounterCache(MAPPING_NAMES.length,
+            (dataType, agencyId, unused, index) -> {
+                MappingNames mappingName = MAPPING_NAMES[index];
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
+                counterTags.add(new ImmutableTag(MAPPING_NAME_TAG, mappingName.toString()));
+                counterTags.add(new ImmutableTag(MAPPING_ID_TAG, mappingName.name()));
+                return counter(DATA_MAPPING_COUNTER_NAME, counterTags);
+            });
+
+    private final CounterCache siriContentCounters = new CounterCache(SIRI_CONTENTS.length,
+            (dataType, agencyId, serviceJourneyId, index) -> {
+                SiriContent content = SIRI_CONTENTS[index];
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                if (agencyId != null) {
+                    counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
+                }
+                if (serviceJourneyId != null) {
+                    counterTags.add(new ImmutableTag(SERVICE_JOURNEY_ID_TAG_NAME, serviceJourneyId));
+                }
+                counterTags.add(new ImmutableTag(SIRI_CONTENT_NAME_TAG, content.name()));
+                counterTags.add(new ImmutableTag(SIRI_CONTENT_LABEL_TAG, content.getLabel()));
+                counterTags.add(new ImmutableTag(SIRI_CONTENT_GROUP_TAG, content.getGroup().name()));
+                return counter(SIRI_CONTENT_COUNTER_NAME, counterTags);
+            });
+
+    private final CounterCache kafkaCounters = new CounterCache(KAFKA_STATUSES.length,
+            (topic, unused, unused2, index) -> {
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(KAFKA_TOPIC_NAME, topic));
+                counterTags.add(new ImmutableTag(KAFKA_STATUS_TAG, KAFKA_STATUSES[index].name()));
+                return counter(KAFKA_COUNTER_NAME, counterTags);
+            });
+
+    private final CounterCache pollingCounters = new CounterCache(POLLING_STATUSES.length,
+            (dataType, agencyId, unused, index) -> {
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
+                counterTags.add(new ImmutableTag(POLLING_STATUS_TAG, POLLING_STATUSES[index].name()));
+                return counter(POLLING_COUNTER_NAME, counterTags);
+            });
+
+    private final CounterCache validationCounters = new CounterCache(VALIDATION_TYPES.length,
+            (dataType, codespaceId, message, index) -> {
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                counterTags.add(new ImmutableTag(CODESPACE_TAG_NAME, codespaceId));
+                counterTags.add(new ImmutableTag(VALIDATION_TYPE_TAG_NAME, VALIDATION_TYPES[index].name()));
+                counterTags.add(new ImmutableTag(VALIDATION_RULE_TAG_NAME, message));
+                return counter(DATA_VALIDATION_COUNTER, counterTags);
+            });
+
+    private final CounterCache outboundCounters = new CounterCache(SUBSCRIPTION_MODES.length,
+            (dataType, unused, unused2, index) -> {
+                List<Tag> counterTags = new ArrayList<>();
+                counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType));
+                counterTags.add(new ImmutableTag("mode", SUBSCRIPTION_MODES[index].name()));
+                return counter(DATA_OUTBOUND_COUNTER_NAME, counterTags);
+            });
+
     public PrometheusMetricsService() {
         super(PrometheusConfig.DEFAULT);
     }
@@ -95,56 +193,39 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
     }
 
     public void registerIncomingData(SiriDataType dataType, String agencyId, long total, long updated, long expired, long ignored) {
-
-        List<Tag> counterTags = new ArrayList<>();
-        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
-        counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
-
-        counter(DATA_TOTAL_COUNTER_NAME,   counterTags).increment(total);
-        counter(DATA_SUCCESS_COUNTER_NAME, counterTags).increment(updated);
-        counter(DATA_EXPIRED_COUNTER_NAME, counterTags).increment(expired);
-        counter(DATA_IGNORED_COUNTER_NAME, counterTags).increment(ignored);
+        String dataTypeName = dataType.name();
+        incomingDataCounters.get(dataTypeName, agencyId, null, 0).increment(total);
+        incomingDataCounters.get(dataTypeName, agencyId, null, 1).increment(updated);
+        incomingDataCounters.get(dataTypeName, agencyId, null, 2).increment(expired);
+        incomingDataCounters.get(dataTypeName, agencyId, null, 3).increment(ignored);
     }
 
     public void registerDataMapping(SiriDataType dataType, String agencyId, MappingNames mappingName, int mappedCount) {
-
-        List<Tag> counterTags = new ArrayList<>();
-        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
-        counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
-        counterTags.add(new ImmutableTag(MAPPING_NAME_TAG, mappingName.toString()));
-        counterTags.add(new ImmutableTag(MAPPING_ID_TAG, mappingName.name()));
-
-        counter(DATA_MAPPING_COUNTER_NAME, counterTags).increment(mappedCount);
+        dataMappingCounters.get(dataType.name(), agencyId, null, mappingName.ordinal()).increment(mappedCount);
     }
 
     public void registerSiriContent(SiriDataType dataType, String agencyId, String serviceJourneyId, SiriContent content) {
-        List<Tag> counterTags = new ArrayList<>();
-        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
-        if (agencyId != null) {
-            counterTags.add(new ImmutableTag(AGENCY_TAG_NAME, agencyId));
-        }
-        if (serviceJourneyId != null) {
-            counterTags.add(new ImmutableTag(SERVICE_JOURNEY_ID_TAG_NAME, serviceJourneyId));
-        }
-        counterTags.add(new ImmutableTag(SIRI_CONTENT_NAME_TAG, content.name()));
-        counterTags.add(new ImmutableTag(SIRI_CONTENT_LABEL_TAG, content.getLabel()));
-        counterTags.add(new ImmutableTag(SIRI_CONTENT_GROUP_TAG, content.getGroup().name()));
-
-        counter(SIRI_CONTENT_COUNTER_NAME, counterTags).increment();
+        siriContentCounters.get(dataType.name(), agencyId, serviceJourneyId, content.ordinal()).increment();
     }
 
     public void registerAckedKafkaRecord(String topic) {
         registerKafkaRecord(topic, KafkaStatus.ACKED);
     }
     public void registerKafkaRecord(String topic, KafkaStatus status) {
-        List<Tag> counterTags = new ArrayList<>();
-        counterTags.add(new ImmutableTag(KAFKA_TOPIC_NAME, topic));
-        counterTags.add(new ImmutableTag(KAFKA_STATUS_TAG, status.name()));
+        kafkaCounters.get(topic, null, null, status.ordinal()).increment();
+    }
 
-        counter(KAFKA_COUNTER_NAME, counterTags).increment();
+    /**
+     * Counts polled responses from request/response-producers, and whether they were processed or skipped as unchanged
+     */
+    public void registerPolling(SiriDataType dataType, String agencyId, PollingStatus status) {
+        pollingCounters.get(dataType.name(), agencyId, null, status.ordinal()).increment();
     }
 
-    public void countOutgoingData(Siri siri, SubscriptionSetup.SubscriptionMode mode) {
+    /**
+     * @return number of elements counted
+     */
+    public long countOutgoingData(Siri siri, SubscriptionSetup.SubscriptionMode mode) {
         SiriDataType dataType = null;
         int count = 0;
         if (siri != null && siri.getServiceDelivery() != null) {
@@ -177,19 +258,13 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
             }
             countOutgoingData(dataType, mode, count);
         }
-
+        return count;
     }
 
     public void addValidationMetrics(
         SiriDataType dataType, String codespaceId, ValidationType validationType, String message, Integer count
     ) {
-        List<Tag> counterTags = new ArrayList<>();
-        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
-        counterTags.add(new ImmutableTag(CODESPACE_TAG_NAME, codespaceId));
-        counterTags.add(new ImmutableTag(VALIDATION_TYPE_TAG_NAME, validationType.name()));
-        counterTags.add(new ImmutableTag(VALIDATION_RULE_TAG_NAME, message));
-
-        counter(DATA_VALIDATION_COUNTER, counterTags).increment(count);
+        validationCounters.get(dataType.name(), codespaceId, message, validationType.ordinal()).increment(count);
     }
 
     public void addValidationResult(
@@ -204,16 +279,57 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
         counter(DATA_VALIDATION_RESULT_COUNTER, counterTags).increment();
     }
 
-    private void countOutgoingData(SiriDataType dataType, SubscriptionSetup.SubscriptionMode mode, long objectCount) {
+    public void countOutgoingData(SiriDataType dataType, SubscriptionSetup.SubscriptionMode mode, long objectCount) {
         if (dataType != null && objectCount > 0) {
-            List<Tag> counterTags = new ArrayList<>();
-            counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
-            counterTags.add(new ImmutableTag("mode", mode.name()));
+            outboundCounters.get(dataType.name(), null, null, mode.ordinal()).increment(objectCount);
+        }
+    }
 
-            counter(DATA_OUTBOUND_COUNTER_NAME, counterTags).increment(objectCount);
+    public <T> void gaugeOutboundQueue(String subscriptionId, T queue, ToDoubleFunction<T> queueDepth) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(SUBSCRIPTION_ID_TAG_NAME, subscriptionId));
+
+        gauge(OUTBOUND_QUEUE_DEPTH_GAUGE_NAME, counterTags, queue, queueDepth);
+    }
+
+    public void removeOutboundQueue(String subscriptionId) {
+        for (Meter meter : find(OUTBOUND_QUEUE_DEPTH_GAUGE_NAME).tag(SUBSCRIPTION_ID_TAG_NAME, subscriptionId).meters()) {
+            this.remove(meter);
         }
     }
 
+    public void registerDroppedOutboundDelivery(String subscriptionId) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(SUBSCRIPTION_ID_TAG_NAME, subscriptionId));
+
+        counter(OUTBOUND_DROPPED_COUNTER_NAME, counterTags).increment();
+    }
+
+    public <T> void gaugeValidationQueue(T queue, ToDoubleFunction<T> queueDepth) {
+        gauge(VALIDATION_QUEUE_DEPTH_GAUGE_NAME, new ArrayList<>(), queue, queueDepth);
+    }
+
+    public void registerValidationLatency(SiriDataType dataType, long queuedMillis, long validationMillis) {
+        List<Tag> queuedTags = new ArrayList<>();
+        queuedTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType != null ? dataType.name() : "UNKNOWN"));
+        queuedTags.add(new ImmutableTag("stage", "queued"));
+        timer(VALIDATION_LATENCY_TIMER_NAME, queuedTags).record(queuedMillis, TimeUnit.MILLISECONDS);
+
+        List<Tag> validationTags = new ArrayList<>();
+        validationTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType != null ? dataType.name() : "UNKNOWN"));
+        validationTags.add(new ImmutableTag("stage", "validation"));
+        timer(VALIDATION_LATENCY_TIMER_NAME, validationTags).record(validationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void registerDroppedValidation(SiriDataType dataType, String codespaceId, String reason) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType != null ? dataType.name() : "UNKNOWN"));
+        counterTags.add(new ImmutableTag(CODESPACE_TAG_NAME, codespaceId != null ? codespaceId : ""));
+        counterTags.add(new ImmutableTag("reason", reason));
+
+        counter(VALIDATION_DROPPED_COUNTER_NAME, counterTags).increment();
+    }
+
     final Map<String, Integer> gaugeValues = new HashMap<>();
 
     public void gaugeDataset(SiriDataType subscriptionType, String agencyId, Integer count) {
@@ -36,6 +36,7 @@ public class HttpParameter {
     public static final String PARAM_PATH           = "CamelHttpPath";
     public static final String INTERNAL_SIRI_DATA_TYPE           = "InternalSiriDatatype";
     public static final String INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT           = "InternalEnrichWithApc";
+    public static final String INTERNAL_RECEIVED_BYTES           = "InternalReceivedBytes";
 
     public static List<String> getParameterValuesAsList(Message msg, String headerName) {
         String excludedDatasetIds = msg.getHeader(headerName, String.class);
@@ -16,6 +16,8 @@
 package no.rutebanken.anshar.routes;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.siri.SiriResponseCache;
+import no.rutebanken.anshar.routes.siri.transformer.Siri21To20Mapper;
 import org.apache.camel.Exchange;
 import org.apache.camel.InvalidPayloadException;
 import org.apache.camel.LoggingLevel;
@@ -41,9 +43,11 @@ import javax.ws.rs.core.MediaType;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.UnmarshalException;
 import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ConnectException;
 import java.util.HashMap;
 import java.util.Map;
@@ -54,6 +58,8 @@ public class RestRouteBuilder extends RouteBuilder {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    protected static final String PROTOBUF_MEDIA_TYPE = "application/x-protobuf";
+
     protected Namespaces ns = new Namespaces("siri", "http://www.siri.org.uk/siri")
             .add("xsd", "http://www.w3.org/2001/XMLSchema");
 
@@ -401,28 +407,13 @@ public class RestRouteBuilder extends RouteBuilder {
     }
     protected void streamOutput(Exchange p, Siri response, HttpServletResponse out) throws IOException, JAXBException, XMLStreamException {
 
-        boolean siri21Version = false;
-        uk.org.siri.siri20.Siri siri20Response = null;
-        if ("2.1".equals(p.getIn().getHeader(SIRI_VERSION_HEADER_NAME))) {
-            siri21Version = true;
-        } else {
-            siri20Response = downgradeSiriVersion(response);
-        }
+        boolean siri21Version = isSiri21Requested(p);
+        String mediaType = resolveMediaType(p);
 
-        if (MediaType.APPLICATION_JSON.equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
-            MediaType.APPLICATION_JSON.equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
-            p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-            if (siri21Version) {
-                SiriJson.toJson(response, out.getOutputStream());
-            } else {
-                org.rutebanken.siri20.util.SiriJson.toJson(siri20Response, out.getOutputStream());
-            }
-        }
-        else if ("application/x-protobuf".equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
-            "application/x-protobuf".equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
+        if (PROTOBUF_MEDIA_TYPE.equals(mediaType)) {
             try {
-                final byte[] bytes = SiriMapper.mapToPbf(siri20Response).toByteArray();
-                p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, "application/x-protobuf");
+                final byte[] bytes = encodeOutput(response, mediaType, siri21Version);
+                p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
                 p.getMessage().setHeader(HttpHeaders.CONTENT_LENGTH, "" + bytes.length);
                 out.getOutputStream().write(bytes);
             } catch (NullPointerException npe) {
@@ -430,26 +421,83 @@ public class RestRouteBuilder extends RouteBuilder {
                 log.error("Caught NullPointerException, data written to " + file.getAbsolutePath(), npe);
                 SiriXml.toXml(response, null, new FileOutputStream(file));
             }
+        } else {
+            p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, mediaType);
+            writeOutput(response, mediaType, siri21Version, out.getOutputStream());
         }
-        else {
-            p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML);
+        p.getMessage().setBody(out.getOutputStream());
+    }
+
+    /**
+     * Writes already encoded response - gzipped if supported by the client
+     */
+    protected void streamOutput(Exchange p, SiriResponseCache.CachedResponse response, HttpServletResponse out, boolean gzipEnabled) throws IOException {
+        byte[] body = response.getBody();
+
+        String acceptEncoding = p.getIn().getHeader(HttpHeaders.ACCEPT_ENCODING, String.class);
+        if (gzipEnabled && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = response.getGzippedBody();
+            p.getMessage().setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, response.getMediaType());
+        p.getMessage().setHeader(HttpHeaders.CONTENT_LENGTH, "" + body.length);
+        out.getOutputStream().write(body);
+        p.getMessage().setBody(out.getOutputStream());
+    }
+
+    protected static boolean isSiri21Requested(Exchange p) {
+        return "2.1".equals(p.getIn().getHeader(SIRI_VERSION_HEADER_NAME));
+    }
+
+    /**
+     * Resolves requested media type from Content-Type/Accept headers - defaults to XML
+     */
+    protected static String resolveMediaType(Exchange p) {
+        if (MediaType.APPLICATION_JSON.equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
+            MediaType.APPLICATION_JSON.equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
+            return MediaType.APPLICATION_JSON;
+        }
+        if (PROTOBUF_MEDIA_TYPE.equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
+            PROTOBUF_MEDIA_TYPE.equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
+            return PROTOBUF_MEDIA_TYPE;
+        }
+        return MediaType.APPLICATION_XML;
+    }
+
+    protected static byte[] encodeOutput(Siri response, String mediaType, boolean siri21Version) throws IOException, JAXBException, XMLStreamException {
+        if (PROTOBUF_MEDIA_TYPE.equals(mediaType)) {
+            return SiriMapper.mapToPbf(downgradeSiriVersion(response)).toByteArray();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeOutput(response, mediaType, siri21Version, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static void writeOutput(Siri response, String mediaType, boolean siri21Version, OutputStream out) throws IOException, JAXBException, XMLStreamException {
+        if (MediaType.APPLICATION_JSON.equals(mediaType)) {
             if (siri21Version) {
-                SiriXml.toXml(response, null, out.getOutputStream());
+                SiriJson.toJson(response, out);
+            } else {
+                org.rutebanken.siri20.util.SiriJson.toJson(downgradeSiriVersion(response), out);
+            }
+        } else if (PROTOBUF_MEDIA_TYPE.equals(mediaType)) {
+            out.write(encodeOutput(response, mediaType, siri21Version));
+        } else {
+            if (siri21Version) {
+                SiriXml.toXml(response, null, out);
             } else {
                 org.rutebanken.siri20.util.SiriXml.toXml(
-                        siri20Response,
+                        downgradeSiriVersion(response),
                         null,
-                        out.getOutputStream()
+                        out
                 );
             }
         }
-        p.getMessage().setBody(out.getOutputStream());
     }
 
-    public static uk.org.siri.siri20.Siri downgradeSiriVersion(Siri response) throws JAXBException, XMLStreamException {
-        uk.org.siri.siri20.Siri siri20Response;
-        String siri2_0Xml = SiriXml.toXml(response);
-        siri20Response = org.rutebanken.siri20.util.SiriXml.parseXml(siri2_0Xml);
+    public static uk.org.siri.siri20.Siri downgradeSiriVersion(Siri response) {
+        uk.org.siri.siri20.Siri siri20Response = Siri21To20Mapper.map(response);
         siri20Response.setVersion("2.0");
         ServiceDelivery serviceDelivery = siri20Response.getServiceDelivery();
         if (serviceDelivery != null) {
@@ -30,11 +30,19 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.Instant;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unchecked")
 @Service
@@ -49,7 +57,24 @@ public class HealthManager {
 
     @Autowired
     @Qualifier("getUnmappedIds")
-    private IMap<String, Map<SiriDataType, Set<String>>> unmappedIds;
+    private IMap<String, Map<SiriDataType, Map<String, UnmappedId>>> unmappedIds;
+
+    /**
+     * Marks an id as mapped since last flush
+     */
+    private static final UnmappedId REMOVED = new UnmappedId(0, Instant.EPOCH, Instant.EPOCH);
+
+    /**
+     * Unmapped ids registered on this node since last flush, per dataset and type
+     */
+    private final ConcurrentMap<String, ConcurrentMap<SiriDataType, ConcurrentMap<String, UnmappedId>>> pendingUnmappedIds = new ConcurrentHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @Value("${anshar.mapping.unmapped.flush.interval.seconds:10}")
+    private int unmappedFlushInterval = 10;
 
     @Value("${anshar.admin.health.allowed.inactivity.seconds:999}")
     private long allowedInactivityTime;
@@ -57,6 +82,20 @@ public class HealthManager {
     @Value("${anshar.healthcheck.interval.seconds}")
     private int healthCheckInterval = 30;
 
+    @PostConstruct
+    private void initialize() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor.scheduleWithFixedDelay(this::flushUnmappedIds, unmappedFlushInterval, unmappedFlushInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flushUnmappedIds();
+    }
+
     public boolean isHazelcastAlive() {
         try {
             healthCheckMap.set(HealthCheckKey.NODE_LIVENESS_CHECK, Instant.now());
@@ -105,10 +144,21 @@ public class HealthManager {
     }
 
     public Map<SiriDataType, Set<String>> getUnmappedIds(String datasetId) {
+        Map<SiriDataType, Set<String>> result = new HashMap<>();
+        getUnmappedIdStats(datasetId).forEach((type, ids) -> result.put(type, new HashSet<>(ids.keySet())));
+        return result;
+    }
+
+    /**
+     * Returns unmapped ids with number of occurrences and first/last seen - includes changes not yet flushed from this node
+     */
+    public Map<SiriDataType, Map<String, UnmappedId>> getUnmappedIdStats(String datasetId) {
+        flushUnmappedIds();
         return unmappedIds.getOrDefault(datasetId, new HashMap<>());
     }
 
-    public Map<SiriDataType, Set<String>> clearUnmappedIds(String datasetId) {
+    public Map<SiriDataType, Map<String, UnmappedId>> clearUnmappedIds(String datasetId) {
+        pendingUnmappedIds.remove(datasetId);
         return unmappedIds.remove(datasetId);
     }
 
@@ -118,20 +168,31 @@ public class HealthManager {
             return result;
         }
 
-        Map<SiriDataType, Set<String>> dataSetUnmapped = getUnmappedIds(datasetId);
+        Map<SiriDataType, Map<String, UnmappedId>> dataSetUnmapped = getUnmappedIdStats(datasetId);
 
         if (dataSetUnmapped != null) {
             JSONArray typesList = new JSONArray();
             for (SiriDataType type : dataSetUnmapped.keySet()) {
                 JSONObject typeObject = new JSONObject();
-                Set<String> unmappedIdsForType = dataSetUnmapped.get(type);
+                Map<String, UnmappedId> unmappedIdsForType = dataSetUnmapped.get(type);
 
                 JSONArray unmapped = new JSONArray();
-                unmapped.addAll(unmappedIdsForType);
+                unmapped.addAll(unmappedIdsForType.keySet());
+
+                JSONArray details = new JSONArray();
+                unmappedIdsForType.forEach((id, stats) -> {
+                    JSONObject detail = new JSONObject();
+                    detail.put("id", id);
+                    detail.put("count", stats.getCount());
+                    detail.put("firstSeen", stats.getFirstSeen().toString());
+                    detail.put("lastSeen", stats.getLastSeen().toString());
+                    details.add(detail);
+                });
 
                 typeObject.put("type", type.toString());
                 typeObject.put("count", unmappedIdsForType.size());
                 typeObject.put("ids", unmapped);
+                typeObject.put("details", details);
 
                 typesList.add(typeObject);
             }
@@ -140,23 +201,66 @@ public class HealthManager {
         return result;
     }
 
+    /**
+     * Registers an occurrence of an unmapped id. Aggregated locally, and merged into the cluster periodically.
+     */
     public void addUnmappedId(SiriDataType type, String datasetId, String id) {
-        Map<SiriDataType, Set<String>> unmappedIds = getUnmappedIds(datasetId);
+        final Instant now = Instant.now();
+        getPendingUnmappedIds(type, datasetId).compute(id, (k, unmapped) -> {
+            if (unmapped == null) {
+                return new UnmappedId(1, now, now);
+            }
+            if (unmapped == REMOVED) {
+                // Removal is kept, and applied before this occurrence when flushed
+                return new UnmappedId(1, now, now, true);
+            }
+            unmapped.seen(now);
+            return unmapped;
+        });
+    }
 
-        Set<String> ids = unmappedIds.getOrDefault(type, new HashSet<>());
-        ids.add(id);
-        unmappedIds.put(type, ids);
+    public void removeUnmappedId(SiriDataType type, String datasetId, String id) {
+        getPendingUnmappedIds(type, datasetId).put(id, REMOVED);
+    }
 
-        this.unmappedIds.set(datasetId, unmappedIds);
+    private ConcurrentMap<String, UnmappedId> getPendingUnmappedIds(SiriDataType type, String datasetId) {
+        return pendingUnmappedIds
+                .computeIfAbsent(datasetId, d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(type, t -> new ConcurrentHashMap<>());
     }
 
-    public void removeUnmappedId(SiriDataType type, String datasetId, String id) {
-        Map<SiriDataType, Set<String>> unmappedIds = getUnmappedIds(datasetId);
+    /**
+     * Merges all locally registered changes into the cluster with one EntryProcessor per dataset
+     */
+    void flushUnmappedIds() {
+        synchronized (flushLock) {
+            for (Map.Entry<String, ConcurrentMap<SiriDataType, ConcurrentMap<String, UnmappedId>>> datasetEntry : pendingUnmappedIds.entrySet()) {
+                Map<SiriDataType, Map<String, UnmappedId>> added = new EnumMap<>(SiriDataType.class);
+                Map<SiriDataType, Set<String>> removed = new EnumMap<>(SiriDataType.class);
 
-        Set<String> ids = unmappedIds.getOrDefault(type, new HashSet<>());
-        ids.remove(id);
-        unmappedIds.put(type, ids);
+                for (Map.Entry<SiriDataType, ConcurrentMap<String, UnmappedId>> typeEntry : datasetEntry.getValue().entrySet()) {
+                    ConcurrentMap<String, UnmappedId> pending = typeEntry.getValue();
+                    for (String id : pending.keySet()) {
+                        UnmappedId unmapped = pending.remove(id);
+                        if (unmapped == REMOVED) {
+                            removed.computeIfAbsent(typeEntry.getKey(), t -> new HashSet<>()).add(id);
+                        } else if (unmapped != null) {
+                            if (unmapped.isReset()) {
+                                removed.computeIfAbsent(typeEntry.getKey(), t -> new HashSet<>()).add(id);
+                            }
+                            added.computeIfAbsent(typeEntry.getKey(), t -> new HashMap<>()).put(id, unmapped);
+                        }
+                    }
+                }
 
-        this.unmappedIds.set(datasetId, unmappedIds);
+                if (!added.isEmpty() || !removed.isEmpty()) {
+                    try {
+                        unmappedIds.executeOnKey(datasetEntry.getKey(), new UnmappedIdsMergeProcessor(added, removed));
+                    } catch (Exception e) {
+                        logger.warn("Failed to flush unmapped ids for dataset {} - changes are dropped", datasetEntry.getKey(), e);
+                    }
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.health;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Occurrences of a single id that could not be mapped
+ */
+public class UnmappedId implements Serializable {
+
+    private long count;
+    private Instant firstSeen;
+    private Instant lastSeen;
+
+    /**
+     * Set on locally pending occurrences when the id was removed before it was seen again - previously
+     * registered occurrences are then discarded when merged into the cluster
+     */
+    private transient boolean reset;
+
+    UnmappedId(long count, Instant firstSeen, Instant lastSeen) {
+        this(count, firstSeen, lastSeen, false);
+    }
+
+    UnmappedId(long count, Instant firstSeen, Instant lastSeen, boolean reset) {
+        this.count = count;
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+        this.reset = reset;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Instant getFirstSeen() {
+        return firstSeen;
+    }
+
+    public Instant getLastSeen() {
+        return lastSeen;
+    }
+
+    boolean isReset() {
+        return reset;
+    }
+
+    void seen(Instant timestamp) {
+        count++;
+        lastSeen = timestamp;
+    }
+
+    void merge(UnmappedId other) {
+        count += other.count;
+        if (other.firstSeen.isBefore(firstSeen)) {
+            firstSeen = other.firstSeen;
+        }
+        if (other.lastSeen.isAfter(lastSeen)) {
+            lastSeen = other.lastSeen;
+        }
+    }
+}
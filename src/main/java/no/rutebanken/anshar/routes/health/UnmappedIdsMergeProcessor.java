@@ -0,0 +1,66 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.health;
+
+import com.hazelcast.map.EntryProcessor;
+import no.rutebanken.anshar.subscription.SiriDataType;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges a batch of locally aggregated unmapped ids into the cluster-wide entry for one dataset.
+ * Removed ids are applied before added ids, so an id removed and seen again is counted from scratch.
+ *
+ * Executed on the partition owning the entry, so concurrent flushes from several nodes do not
+ * overwrite each other.
+ */
+class UnmappedIdsMergeProcessor implements EntryProcessor<String, Map<SiriDataType, Map<String, UnmappedId>>, Void> {
+
+    private final Map<SiriDataType, Map<String, UnmappedId>> added;
+    private final Map<SiriDataType, Set<String>> removed;
+
+    UnmappedIdsMergeProcessor(Map<SiriDataType, Map<String, UnmappedId>> added, Map<SiriDataType, Set<String>> removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    @Override
+    public Void process(Map.Entry<String, Map<SiriDataType, Map<String, UnmappedId>>> entry) {
+        Map<SiriDataType, Map<String, UnmappedId>> unmappedIds = entry.getValue();
+        if (unmappedIds == null) {
+            unmappedIds = new EnumMap<>(SiriDataType.class);
+        }
+
+        for (Map.Entry<SiriDataType, Set<String>> typeEntry : removed.entrySet()) {
+            Map<String, UnmappedId> ids = unmappedIds.computeIfAbsent(typeEntry.getKey(), t -> new HashMap<>());
+            ids.keySet().removeAll(typeEntry.getValue());
+        }
+
+        for (Map.Entry<SiriDataType, Map<String, UnmappedId>> typeEntry : added.entrySet()) {
+            Map<String, UnmappedId> ids = unmappedIds.computeIfAbsent(typeEntry.getKey(), t -> new HashMap<>());
+            typeEntry.getValue().forEach((id, unmapped) -> ids.merge(id, unmapped, (existing, update) -> {
+                existing.merge(update);
+                return existing;
+            }));
+        }
+
+        entry.setValue(unmappedIds);
+        return null;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.mapping;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable open-addressing hash-table for ids, backed by plain arrays.
+ *
+ * Used as a map (id -> mapped id), or as a set when created from keys only.
+ */
+final class ImmutableIdMap {
+
+    static final ImmutableIdMap EMPTY = new ImmutableIdMap(new String[1], null, 0);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+    private final int size;
+
+    private ImmutableIdMap(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Equal values are stored as a single instance, as many ids are mapped to the same stop
+     */
+    static ImmutableIdMap of(Map<String, String> mappings) {
+        String[] keys = new String[tableSize(mappings.size())];
+        String[] values = new String[keys.length];
+        Map<String, String> uniqueValues = new HashMap<>();
+        int size = 0;
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            String value = uniqueValues.computeIfAbsent(entry.getValue(), v -> v);
+            if (insert(keys, values, entry.getKey(), value)) {
+                size++;
+            }
+        }
+        return new ImmutableIdMap(keys, values, size);
+    }
+
+    static ImmutableIdMap ofKeys(Collection<String> ids) {
+        String[] keys = new String[tableSize(ids.size())];
+        int size = 0;
+        for (String id : ids) {
+            if (id != null && insert(keys, null, id, null)) {
+                size++;
+            }
+        }
+        return new ImmutableIdMap(keys, null, size);
+    }
+
+    String get(String key) {
+        int slot = indexOf(key);
+        return slot >= 0 && values != null ? values[slot] : null;
+    }
+
+    boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values != null ? values[i] : null);
+            }
+        }
+    }
+
+    private int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = spread(key.hashCode()) & mask;
+        String candidate;
+        while ((candidate = keys[slot]) != null) {
+            if (candidate.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the key was added, false if an existing value was replaced
+     */
+    private static boolean insert(String[] keys, String[] values, String key, String value) {
+        int mask = keys.length - 1;
+        int slot = spread(key.hashCode()) & mask;
+        String candidate;
+        while ((candidate = keys[slot]) != null) {
+            if (candidate.equals(key)) {
+                if (values != null) {
+                    values[slot] = value;
+                }
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (values != null) {
+            values[slot] = value;
+        }
+        return true;
+    }
+
+    /**
+     * Power of two, with load factor at most 0.5 to keep probe-sequences short
+     */
+    private static int tableSize(int expectedSize) {
+        return Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -24,11 +24,10 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -41,9 +40,10 @@ public class StopPlaceUpdaterService {
 
     private static final Object LOCK = new Object();
 
-    private transient final ConcurrentMap<String, String> stopPlaceMappings = new ConcurrentHashMap<>();
-
-    private transient final Set<String> validNsrIds = new HashSet<>();
+    /**
+     * Mappings and valid ids are rebuilt on the side, and replaced together - readers never see partial data
+     */
+    private transient volatile MappingData mappingData = new MappingData(ImmutableIdMap.EMPTY, ImmutableIdMap.EMPTY);
 
     @Autowired
     private StopPlaceRegisterMappingFetcher stopPlaceRegisterMappingFetcher;
@@ -61,17 +61,19 @@ public class StopPlaceUpdaterService {
     private int updateFrequency = 60;
 
     public String get(String id) {
-        if (stopPlaceMappings.isEmpty()) {
+        MappingData data = mappingData;
+        if (data.stopPlaceMappings.isEmpty()) {
             // Avoid multiple calls at the same time.
             // Could have used a timed lock here.
             synchronized (LOCK) {
                 // Check again.
-                if (stopPlaceMappings.isEmpty()) {
+                if (mappingData.stopPlaceMappings.isEmpty()) {
                     updateIdMapping();
                 }
             }
+            data = mappingData;
         }
-        return stopPlaceMappings.get(id);
+        return data.stopPlaceMappings.get(id);
     }
 
     /**
@@ -80,6 +82,7 @@ public class StopPlaceUpdaterService {
      * @return
      */
     public boolean isKnownId(String id) {
+        final ImmutableIdMap validNsrIds = mappingData.validNsrIds;
         return validNsrIds.isEmpty() || validNsrIds.contains(id);
     }
 
@@ -96,24 +99,38 @@ public class StopPlaceUpdaterService {
     private void updateIdMapping() {
         // re-entrant
         synchronized (LOCK) {
-            updateStopPlaceMapping(quayMappingPath);
-            updateStopPlaceMapping(stopPlaceMappingPath);
-            updateStopPlacesAndQuays(stopPlaceQuayJsonPath);
+            final MappingData current = mappingData;
+
+            // Previously fetched mappings are kept
+            Map<String, String> stopPlaceMappings = new HashMap<>();
+            current.stopPlaceMappings.forEach(stopPlaceMappings::put);
+            updateStopPlaceMapping(quayMappingPath, stopPlaceMappings);
+            updateStopPlaceMapping(stopPlaceMappingPath, stopPlaceMappings);
+
+            ImmutableIdMap validNsrIds = updateStopPlacesAndQuays(stopPlaceQuayJsonPath);
+            if (validNsrIds == null) {
+                validNsrIds = current.validNsrIds;
+            }
+
+            mappingData = new MappingData(ImmutableIdMap.of(stopPlaceMappings), validNsrIds);
         }
     }
 
-    private void updateStopPlaceMapping(String mappingUrl) {
+    private void updateStopPlaceMapping(String mappingUrl, Map<String, String> stopPlaceMappings) {
         logger.info("Fetching mapping data - start. Fetching mapping-data from {}", mappingUrl);
 
         stopPlaceMappings.putAll(stopPlaceRegisterMappingFetcher.fetchStopPlaceMapping(mappingUrl));
         logger.info("Fetching mapping data - done.");
     }
 
-    private void updateStopPlacesAndQuays(String url) {
+    /**
+     * @return Valid ids, or null if no stops were found
+     */
+    private ImmutableIdMap updateStopPlacesAndQuays(String url) {
         logger.info("Fetching stops and quay data - start. Fetching mapping-data from {}", url);
         final Map<String, Collection<String>> stopQuayMap = stopPlaceRegisterMappingFetcher.fetchStopPlaceQuayJson(url);
         if (!stopQuayMap.isEmpty()) {
-            validNsrIds.clear();
+            Set<String> validNsrIds = new HashSet<>();
 
             int stopsCounter = stopQuayMap.size();
             int quayCounter = 0;
@@ -128,19 +145,42 @@ public class StopPlaceUpdaterService {
             }
 
             logger.info("Fetching stops and quay data - done. Found {} stops, {} quays", stopsCounter, quayCounter);
+            return ImmutableIdMap.ofKeys(validNsrIds);
         } else {
             logger.info("Fetching stops and quay data - done. No stops found");
         }
+        return null;
     }
 
 
     //Called from tests
     public void addStopPlaceMappings(Map<String, String> stopPlaceMap) {
-        this.stopPlaceMappings.putAll(stopPlaceMap);
+        synchronized (LOCK) {
+            final MappingData current = mappingData;
+            Map<String, String> stopPlaceMappings = new HashMap<>();
+            current.stopPlaceMappings.forEach(stopPlaceMappings::put);
+            stopPlaceMappings.putAll(stopPlaceMap);
+            mappingData = new MappingData(ImmutableIdMap.of(stopPlaceMappings), current.validNsrIds);
+        }
     }
 
     //Called from tests
     public void addStopQuays(Collection<String> stopQuays) {
-        this.validNsrIds.addAll(stopQuays);
+        synchronized (LOCK) {
+            final MappingData current = mappingData;
+            Set<String> validNsrIds = new HashSet<>(stopQuays);
+            current.validNsrIds.forEach((id, value) -> validNsrIds.add(id));
+            mappingData = new MappingData(current.stopPlaceMappings, ImmutableIdMap.ofKeys(validNsrIds));
+        }
+    }
+
+    private static class MappingData {
+        private final ImmutableIdMap stopPlaceMappings;
+        private final ImmutableIdMap validNsrIds;
+
+        private MappingData(ImmutableIdMap stopPlaceMappings, ImmutableIdMap validNsrIds) {
+            this.stopPlaceMappings = stopPlaceMappings;
+            this.validNsrIds = validNsrIds;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package no.rutebanken.anshar.routes.messaging;
 
+import com.google.common.io.CountingInputStream;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.CamelRouteNames;
@@ -15,6 +16,7 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
 import org.apache.camel.Processor;
 import org.apache.camel.component.google.pubsub.GooglePubsubConstants;
+import org.apache.camel.language.xpath.XPathBuilder;
 import org.apache.camel.util.CaseInsensitiveMap;
 import org.entur.siri21.util.SiriXml;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +27,7 @@ import java.io.InputStream;
 import java.util.Map;
 
 import static no.rutebanken.anshar.routes.HttpParameter.INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT;
+import static no.rutebanken.anshar.routes.HttpParameter.INTERNAL_RECEIVED_BYTES;
 import static no.rutebanken.anshar.routes.HttpParameter.INTERNAL_SIRI_DATA_TYPE;
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_USE_ORIGINAL_ID;
@@ -76,6 +79,31 @@ public class MessagingRoute extends RestRouteBuilder {
             );
         };
 
+        // Data for enrichment is always sent as XML
+        Processor convertBinaryPayloadToXml = exchange -> {
+            if (exchange.getIn().getBody() instanceof Siri) {
+                exchange.getMessage().setBody(SiriXml.toXml(exchange.getIn().getBody(Siri.class)));
+            }
+        };
+
+        final XPathBuilder dataReadyNotificationXPath = XPathBuilder.xpath("/siri:Siri/siri:DataReadyNotification").namespaces(ns);
+        Predicate isDataReadyNotification = exchange -> {
+            Object body = exchange.getIn().getBody();
+            if (body instanceof Siri) {
+                return ((Siri) body).getDataReadyNotification() != null;
+            }
+            return dataReadyNotificationXPath.matches(exchange);
+        };
+
+        // Size of the original XML is only counted once when binary payload is split
+        Processor resetReceivedBytesForSplitParts = exchange -> {
+            if (exchange.getProperty(Exchange.SPLIT_INDEX, 0, Integer.class) > 0) {
+                CaseInsensitiveMap pubsubAttributeMap = new CaseInsensitiveMap(exchange.getIn().getHeader(GooglePubsubConstants.ATTRIBUTES, Map.class));
+                pubsubAttributeMap.put(INTERNAL_RECEIVED_BYTES, "0");
+                exchange.getMessage().setHeader(GooglePubsubConstants.ATTRIBUTES, pubsubAttributeMap);
+            }
+        };
+
         Processor convertHeadersToAttributes = exchange -> {
             Map<String, Object> headers = exchange.getIn().getHeaders();
             CaseInsensitiveMap pubsubAttributeMap = new CaseInsensitiveMap();
@@ -107,7 +135,7 @@ public class MessagingRoute extends RestRouteBuilder {
                     .endChoice()
                     .otherwise()
                         // DataReadyNotification is processed immediately
-                        .when().xpath("/siri:Siri/siri:DataReadyNotification", ns)
+                        .when(isDataReadyNotification)
                             .setHeader("target_topic", simple("direct:"+CamelRouteNames.FETCHED_DELIVERY_QUEUE))
                         .endChoice()
                         .otherwise()
@@ -115,7 +143,7 @@ public class MessagingRoute extends RestRouteBuilder {
                         .end()
                     .end()
                 .end()
-                .removeHeaders("*", "subscriptionId", "breadcrumbId", "target_topic", "correlationId")
+                .removeHeaders("*", "subscriptionId", "breadcrumbId", "target_topic", "correlationId", INTERNAL_RECEIVED_BYTES)
                 .process(p -> {
                     p.getMessage().setHeader(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT, enrichSiriData(p));
                 })
@@ -134,12 +162,19 @@ public class MessagingRoute extends RestRouteBuilder {
                         .when(header(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT).isEqualTo(Boolean.TRUE))
                         .removeHeader(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT)
                         .log("Sending data to enrichment topic")
+                        .process(convertBinaryPayloadToXml)
                         .to("direct:anshar.enrich.siri.et")
                     .endChoice()
+                    .when(body().isInstanceOf(Siri.class))
+                        .log("Sending split data to topic ${header.target_topic}")
+                        .split(method(SiriObjectSplitter.class, "split")).streaming()
+                        .process(resetReceivedBytesForSplitParts)
+                        .to("direct:compress.jaxb")
+                        .toD("${header.target_topic}")
+                    .endChoice()
                     .otherwise()
                         .log("Sending split data to topic ${header.target_topic}")
-                        .to("xslt-saxon:xsl/split.xsl")
-                        .split().tokenizeXML("Siri").streaming()
+                        .split(method(SiriXmlSplitter.class, "split")).streaming()
                         .to("direct:compress.jaxb")
                         .toD("${header.target_topic}")
                     .end()
@@ -152,6 +187,7 @@ public class MessagingRoute extends RestRouteBuilder {
                     .when(header(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT).isEqualTo(Boolean.TRUE))
                         .removeHeader(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT)
                         .log("Sending data to enrichment topic")
+                        .process(convertBinaryPayloadToXml)
                         .to("direct:anshar.enrich.siri.et")
                     .otherwise()
                         .log("Sending data to topic ${header.target_topic}")
@@ -176,7 +212,11 @@ public class MessagingRoute extends RestRouteBuilder {
                 .endChoice()
                 .end()
                 .to("direct:process.mapping")
-                .to("direct:format.xml")
+                .choice()
+                    .when(body().isInstanceOf(String.class))
+                    .to("direct:format.xml")
+                .endChoice()
+                .end()
                 .to("direct:clear.mdc.subscriptionId")
         ;
 
@@ -185,12 +225,20 @@ public class MessagingRoute extends RestRouteBuilder {
                 .to("direct:set.mdc.subscriptionId")
                 .process(p -> {
                     SubscriptionSetup subscriptionSetup = subscriptionManager.get(p.getIn().getHeader("subscriptionId", String.class));
-                    Siri originalInput = siriXmlValidator.parseXml(subscriptionSetup, p.getIn().getBody(InputStream.class));
+                    CountingInputStream xml = new CountingInputStream(p.getIn().getBody(InputStream.class));
+                    Siri originalInput = siriXmlValidator.parseXml(subscriptionSetup, xml);
 
                     Siri incoming = SiriValueTransformer.transform(originalInput, subscriptionSetup.getMappingAdapters(), false, true);
 
                     p.getMessage().setHeaders(p.getIn().getHeaders());
-                    p.getMessage().setBody(SiriXml.toXml(incoming));
+                    if (configuration.isBinaryQueuePayload()) {
+                        // Mapped object is added to queue as is - no need to serialize and parse XML
+                        p.getMessage().setBody(incoming);
+                        // Size of serialized object differs from the received XML
+                        p.getMessage().setHeader(INTERNAL_RECEIVED_BYTES, (int) xml.getCount());
+                    } else {
+                        p.getMessage().setBody(SiriXml.toXml(incoming));
+                    }
                 })
                 .to("direct:clear.mdc.subscriptionId")
         ;
@@ -268,6 +316,12 @@ public class MessagingRoute extends RestRouteBuilder {
                     String subscriptionId = p.getIn().getHeader("subscriptionId", String.class);
                     String datasetId = null;
 
+                    if (p.getIn().getBody() instanceof Siri) {
+                        Integer receivedBytes = p.getIn().getHeader(INTERNAL_RECEIVED_BYTES, Integer.class);
+                        handler.handleIncomingSiri(subscriptionId, p.getIn().getBody(Siri.class), receivedBytes != null ? receivedBytes : 0);
+                        return;
+                    }
+
                     InputStream xml = p.getIn().getBody(InputStream.class);
                     String useOriginalId = p.getIn().getHeader(PARAM_USE_ORIGINAL_ID, String.class);
                     String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
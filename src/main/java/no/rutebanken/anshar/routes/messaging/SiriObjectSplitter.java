@@ -0,0 +1,116 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.messaging;
+
+import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri21.EstimatedVersionFrameStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.PtSituationElement;
+import uk.org.siri.siri21.ServiceDelivery;
+import uk.org.siri.siri21.Siri;
+import uk.org.siri.siri21.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri21.VehicleActivityStructure;
+import uk.org.siri.siri21.VehicleMonitoringDeliveryStructure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits SIRI-deliveries into one Siri-object per EstimatedVehicleJourney/VehicleActivity/PtSituationElement.
+ *
+ * Object-equivalent of {@link SiriXmlSplitter}, used when data is added to the processing-queues as binary payload. Elements
+ * are not copied, so the original object should not be used after splitting.
+ */
+public class SiriObjectSplitter {
+
+    private SiriObjectSplitter() {
+    }
+
+    public static List<Siri> split(Siri siri) {
+        List<Siri> result = new ArrayList<>();
+        ServiceDelivery serviceDelivery = siri.getServiceDelivery();
+        if (serviceDelivery == null) {
+            return result;
+        }
+
+        for (EstimatedTimetableDeliveryStructure delivery : serviceDelivery.getEstimatedTimetableDeliveries()) {
+            for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                for (EstimatedVehicleJourney journey : frame.getEstimatedVehicleJourneies()) {
+                    EstimatedVersionFrameStructure splitFrame = new EstimatedVersionFrameStructure();
+                    splitFrame.setRecordedAtTime(frame.getRecordedAtTime());
+                    splitFrame.getEstimatedVehicleJourneies().add(journey);
+
+                    EstimatedTimetableDeliveryStructure splitDelivery = new EstimatedTimetableDeliveryStructure();
+                    splitDelivery.setVersion(delivery.getVersion());
+                    splitDelivery.setResponseTimestamp(delivery.getResponseTimestamp());
+                    splitDelivery.getEstimatedJourneyVersionFrames().add(splitFrame);
+
+                    ServiceDelivery splitServiceDelivery = createServiceDelivery(serviceDelivery);
+                    splitServiceDelivery.getEstimatedTimetableDeliveries().add(splitDelivery);
+                    result.add(createSiri(siri, splitServiceDelivery));
+                }
+            }
+        }
+
+        for (VehicleMonitoringDeliveryStructure delivery : serviceDelivery.getVehicleMonitoringDeliveries()) {
+            for (VehicleActivityStructure activity : delivery.getVehicleActivities()) {
+                VehicleMonitoringDeliveryStructure splitDelivery = new VehicleMonitoringDeliveryStructure();
+                splitDelivery.setVersion(delivery.getVersion());
+                splitDelivery.setResponseTimestamp(delivery.getResponseTimestamp());
+                splitDelivery.getVehicleActivities().add(activity);
+
+                ServiceDelivery splitServiceDelivery = createServiceDelivery(serviceDelivery);
+                splitServiceDelivery.getVehicleMonitoringDeliveries().add(splitDelivery);
+                result.add(createSiri(siri, splitServiceDelivery));
+            }
+        }
+
+        for (SituationExchangeDeliveryStructure delivery : serviceDelivery.getSituationExchangeDeliveries()) {
+            if (delivery.getSituations() == null) {
+                continue;
+            }
+            for (PtSituationElement situation : delivery.getSituations().getPtSituationElements()) {
+                SituationExchangeDeliveryStructure.Situations situations = new SituationExchangeDeliveryStructure.Situations();
+                situations.getPtSituationElements().add(situation);
+
+                SituationExchangeDeliveryStructure splitDelivery = new SituationExchangeDeliveryStructure();
+                splitDelivery.setVersion(delivery.getVersion());
+                splitDelivery.setResponseTimestamp(delivery.getResponseTimestamp());
+                splitDelivery.setSituations(situations);
+
+                ServiceDelivery splitServiceDelivery = createServiceDelivery(serviceDelivery);
+                splitServiceDelivery.getSituationExchangeDeliveries().add(splitDelivery);
+                result.add(createSiri(siri, splitServiceDelivery));
+            }
+        }
+
+        return result;
+    }
+
+    private static ServiceDelivery createServiceDelivery(ServiceDelivery original) {
+        ServiceDelivery serviceDelivery = new ServiceDelivery();
+        serviceDelivery.setResponseTimestamp(original.getResponseTimestamp());
+        serviceDelivery.setProducerRef(original.getProducerRef());
+        return serviceDelivery;
+    }
+
+    private static Siri createSiri(Siri original, ServiceDelivery serviceDelivery) {
+        Siri siri = new Siri();
+        siri.setVersion(original.getVersion());
+        siri.setServiceDelivery(serviceDelivery);
+        return siri;
+    }
+}
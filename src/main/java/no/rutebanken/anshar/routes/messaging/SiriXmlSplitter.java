@@ -0,0 +1,371 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.messaging;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming splitter that emits one self-contained SIRI-message per EstimatedVehicleJourney/VehicleActivity/PtSituationElement.
+ *
+ * Replaces xsl/split.xsl + tokenizeXML - the delivery is read with StAX, and only the element currently being split
+ * is held in memory. ResponseTimestamp/ProducerRef of the ServiceDelivery, ResponseTimestamp of the delivery and
+ * RecordedAtTime of the EstimatedJourneyVersionFrame are copied to each message. As with the stylesheet, all messages
+ * are created with version 2.0.
+ *
+ * Usage: <code>.split(method(SiriXmlSplitter.class, "split")).streaming()</code>
+ */
+public class SiriXmlSplitter {
+
+    private static final String SIRI_NS = "http://www.siri.org.uk/siri";
+
+    private static final String VERSION = "2.0";
+
+    private static final String SIRI = "Siri";
+    private static final String SERVICE_DELIVERY = "ServiceDelivery";
+    private static final String RESPONSE_TIMESTAMP = "ResponseTimestamp";
+    private static final String PRODUCER_REF = "ProducerRef";
+    private static final String ESTIMATED_TIMETABLE_DELIVERY = "EstimatedTimetableDelivery";
+    private static final String ESTIMATED_JOURNEY_VERSION_FRAME = "EstimatedJourneyVersionFrame";
+    private static final String RECORDED_AT_TIME = "RecordedAtTime";
+    private static final String ESTIMATED_VEHICLE_JOURNEY = "EstimatedVehicleJourney";
+    private static final String VEHICLE_MONITORING_DELIVERY = "VehicleMonitoringDelivery";
+    private static final String VEHICLE_ACTIVITY = "VehicleActivity";
+    private static final String SITUATION_EXCHANGE_DELIVERY = "SituationExchangeDelivery";
+    private static final String SITUATIONS = "Situations";
+    private static final String PT_SITUATION_ELEMENT = "PtSituationElement";
+
+    private static final QName VERSION_ATTRIBUTE = new QName("version");
+
+    private static final XMLInputFactory inputFactory;
+    private static final XMLOutputFactory outputFactory;
+    private static final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        outputFactory = XMLOutputFactory.newInstance();
+        outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+    }
+
+    private SiriXmlSplitter() {
+    }
+
+    /**
+     * @return lazy iterator producing one SIRI XML-message per split element. The stream is closed when all
+     * messages have been read.
+     */
+    public static Iterator<String> split(InputStream xml) throws XMLStreamException {
+        return new SplitIterator(inputFactory.createXMLEventReader(xml), xml);
+    }
+
+    private static class SplitIterator implements Iterator<String>, Closeable {
+
+        private final XMLEventReader reader;
+        private final InputStream stream;
+
+        // Path of SIRI-elements leading to the current position
+        private final Deque<String> path = new ArrayDeque<>();
+
+        // Namespaces declared on the elements in path - needed to keep QName-values valid in copied elements
+        private final Deque<List<Namespace>> pathNamespaces = new ArrayDeque<>();
+
+        private final List<XMLEvent> serviceDeliveryHeaders = new ArrayList<>();
+        private final List<XMLEvent> deliveryHeaders = new ArrayList<>();
+        private final List<XMLEvent> frameHeaders = new ArrayList<>();
+
+        private String next;
+        private boolean closed;
+
+        private SplitIterator(XMLEventReader reader, InputStream stream) {
+            this.reader = reader;
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !closed) {
+                try {
+                    next = advance();
+                } catch (XMLStreamException e) {
+                    close();
+                    throw new IllegalStateException("Unable to split SIRI-data", e);
+                }
+                if (next == null) {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Ignore
+            }
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        /**
+         * Reads until the next element to split has been found
+         *
+         * @return the next message, or null when the document is completed
+         */
+        private String advance() throws XMLStreamException {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isEndElement()) {
+                    if (!path.isEmpty()) {
+                        path.pop();
+                        pathNamespaces.pop();
+                    }
+                    continue;
+                }
+                if (!event.isStartElement()) {
+                    continue;
+                }
+
+                StartElement element = event.asStartElement();
+                String name = element.getName().getLocalPart();
+                if (!SIRI_NS.equals(element.getName().getNamespaceURI())) {
+                    skip();
+                    continue;
+                }
+
+                String parent = path.peek();
+                if (parent == null) {
+                    if (!SIRI.equals(name)) {
+                        skip();
+                        continue;
+                    }
+                } else if (SIRI.equals(parent)) {
+                    if (!SERVICE_DELIVERY.equals(name)) {
+                        skip();
+                        continue;
+                    }
+                    serviceDeliveryHeaders.clear();
+                } else if (SERVICE_DELIVERY.equals(parent)) {
+                    if (RESPONSE_TIMESTAMP.equals(name) || PRODUCER_REF.equals(name)) {
+                        capture(element, serviceDeliveryHeaders);
+                        continue;
+                    }
+                    if (!ESTIMATED_TIMETABLE_DELIVERY.equals(name) &&
+                            !VEHICLE_MONITORING_DELIVERY.equals(name) &&
+                            !SITUATION_EXCHANGE_DELIVERY.equals(name)) {
+                        skip();
+                        continue;
+                    }
+                    deliveryHeaders.clear();
+                } else if (isDelivery(parent) && RESPONSE_TIMESTAMP.equals(name)) {
+                    capture(element, deliveryHeaders);
+                    continue;
+                } else if (ESTIMATED_TIMETABLE_DELIVERY.equals(parent) && ESTIMATED_JOURNEY_VERSION_FRAME.equals(name)) {
+                    frameHeaders.clear();
+                } else if (SITUATION_EXCHANGE_DELIVERY.equals(parent) && SITUATIONS.equals(name)) {
+                    // Continue into situations
+                } else if (ESTIMATED_JOURNEY_VERSION_FRAME.equals(parent) && RECORDED_AT_TIME.equals(name)) {
+                    capture(element, frameHeaders);
+                    continue;
+                } else if (ESTIMATED_JOURNEY_VERSION_FRAME.equals(parent) && ESTIMATED_VEHICLE_JOURNEY.equals(name)) {
+                    return createMessage(element, ESTIMATED_TIMETABLE_DELIVERY);
+                } else if (VEHICLE_MONITORING_DELIVERY.equals(parent) && VEHICLE_ACTIVITY.equals(name)) {
+                    return createMessage(element, VEHICLE_MONITORING_DELIVERY);
+                } else if (SITUATIONS.equals(parent) && PT_SITUATION_ELEMENT.equals(name)) {
+                    return createMessage(element, SITUATION_EXCHANGE_DELIVERY);
+                } else {
+                    skip();
+                    continue;
+                }
+
+                path.push(name);
+                pathNamespaces.push(getNamespaces(element));
+            }
+            return null;
+        }
+
+        /**
+         * Wraps the element in a Siri-document with the collected headers, and consumes the element from the reader
+         */
+        private String createMessage(StartElement element, String deliveryName) throws XMLStreamException {
+            StringWriter out = new StringWriter();
+            XMLEventWriter writer = outputFactory.createXMLEventWriter(out);
+
+            writer.add(eventFactory.createStartElement("", SIRI_NS, SIRI));
+            writer.add(eventFactory.createAttribute(VERSION_ATTRIBUTE, VERSION));
+            writer.add(eventFactory.createStartElement("", SIRI_NS, SERVICE_DELIVERY));
+            addAll(writer, serviceDeliveryHeaders);
+            writer.add(eventFactory.createStartElement("", SIRI_NS, deliveryName));
+            writer.add(eventFactory.createAttribute(VERSION_ATTRIBUTE, VERSION));
+            addAll(writer, deliveryHeaders);
+
+            String wrapperName = null;
+            if (ESTIMATED_TIMETABLE_DELIVERY.equals(deliveryName)) {
+                wrapperName = ESTIMATED_JOURNEY_VERSION_FRAME;
+                writer.add(eventFactory.createStartElement("", SIRI_NS, wrapperName));
+                addAll(writer, frameHeaders);
+            } else if (SITUATION_EXCHANGE_DELIVERY.equals(deliveryName)) {
+                wrapperName = SITUATIONS;
+                writer.add(eventFactory.createStartElement("", SIRI_NS, wrapperName));
+            }
+
+            copy(withInheritedNamespaces(element), writer);
+
+            if (wrapperName != null) {
+                writer.add(eventFactory.createEndElement("", SIRI_NS, wrapperName));
+            }
+            writer.add(eventFactory.createEndElement("", SIRI_NS, deliveryName));
+            writer.add(eventFactory.createEndElement("", SIRI_NS, SERVICE_DELIVERY));
+            writer.add(eventFactory.createEndElement("", SIRI_NS, SIRI));
+            writer.close();
+
+            return out.toString();
+        }
+
+        /**
+         * Writes the started element, and all events until the matching end-element
+         */
+        private void copy(StartElement element, XMLEventWriter writer) throws XMLStreamException {
+            writer.add(element);
+            int depth = 1;
+            while (depth > 0) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+                writer.add(event);
+            }
+        }
+
+        /**
+         * Keeps the started element, and all events until the matching end-element
+         */
+        private void capture(StartElement element, List<XMLEvent> target) throws XMLStreamException {
+            target.add(withInheritedNamespaces(element));
+            int depth = 1;
+            while (depth > 0) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+                target.add(event);
+            }
+        }
+
+        private void skip() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * Adds namespaces declared on the ancestors of the element, as copied elements are moved to a new document
+         */
+        private StartElement withInheritedNamespaces(StartElement element) {
+            Map<String, Namespace> namespaces = new LinkedHashMap<>();
+            Iterator<List<Namespace>> ancestors = pathNamespaces.descendingIterator();
+            while (ancestors.hasNext()) {
+                for (Namespace namespace : ancestors.next()) {
+                    namespaces.put(namespace.getPrefix(), namespace);
+                }
+            }
+            if (namespaces.isEmpty()) {
+                return element;
+            }
+            for (Namespace namespace : getNamespaces(element)) {
+                namespaces.put(namespace.getPrefix(), namespace);
+            }
+            return eventFactory.createStartElement(element.getName(), element.getAttributes(), namespaces.values().iterator());
+        }
+
+        private static List<Namespace> getNamespaces(StartElement element) {
+            List<Namespace> namespaces = new ArrayList<>();
+            Iterator<Namespace> iterator = element.getNamespaces();
+            while (iterator.hasNext()) {
+                Namespace namespace = iterator.next();
+                if (!XMLConstants.DEFAULT_NS_PREFIX.equals(namespace.getPrefix())) {
+                    // Default namespace is resolved by the writer
+                    namespaces.add(namespace);
+                }
+            }
+            return namespaces;
+        }
+
+        private static boolean isDelivery(String name) {
+            return ESTIMATED_TIMETABLE_DELIVERY.equals(name) ||
+                    VEHICLE_MONITORING_DELIVERY.equals(name) ||
+                    SITUATION_EXCHANGE_DELIVERY.equals(name);
+        }
+
+        private static void addAll(XMLEventWriter writer, List<XMLEvent> events) throws XMLStreamException {
+            for (XMLEvent event : events) {
+                writer.add(event);
+            }
+        }
+    }
+}
@@ -15,9 +15,18 @@
 
 package no.rutebanken.anshar.routes.outbound;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import no.rutebanken.anshar.data.EstimatedTimetables;
+import no.rutebanken.anshar.data.VehicleActivities;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import org.apache.camel.Produce;
 import org.apache.camel.ProducerTemplate;
+import org.entur.siri.validator.SiriValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -25,19 +34,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
 import uk.org.siri.siri21.ServiceDelivery;
 import uk.org.siri.siri21.Siri;
 import uk.org.siri.siri21.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri21.VehicleActivityStructure;
 import uk.org.siri.siri21.VehicleMonitoringDeliveryStructure;
 
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static no.rutebanken.anshar.routes.HttpParameter.SIRI_VERSION_HEADER_NAME;
 import static no.rutebanken.anshar.routes.siri.transformer.SiriOutputTransformerRoute.OUTPUT_ADAPTERS_HEADER_NAME;
@@ -55,48 +67,189 @@ public class CamelRouteManager {
     @Value("${anshar.default.max.elements.per.delivery:1000}")
     private int maximumSizePerDelivery;
 
-    @Value("${anshar.default.max.threads.per.outbound.subscription:20}")
-    private int maximumThreadsPerOutboundSubscription;
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    @Autowired
+    private OutboundDispatcher dispatcher;
 
     @Produce(uri = "direct:send.to.external.subscription")
     protected ProducerTemplate siriSubscriptionProcessor;
 
+    @Produce(uri = "direct:encode.outbound.siri")
+    protected ProducerTemplate siriEncoder;
+
+    @Autowired
+    private SiriObjectFactory siriObjectFactory;
+
+    private final Map<String, ConflationBuffer> conflationBuffers = new ConcurrentHashMap<>();
+
     /**
      * Splits SIRI-data if applicable, and pushes data to external subscription
      * @param payload
      * @param subscriptionRequest
      */
     void pushSiriData(Siri payload, OutboundSubscriptionSetup subscriptionRequest, boolean logBody) {
-        String consumerAddress = subscriptionRequest.getAddress();
-        if (consumerAddress == null) {
-            logger.info("ConsumerAddress is null - ignoring data.");
-            return;
+        pushSiriData(payload, List.of(subscriptionRequest), logBody);
+    }
+
+    /**
+     * Pushes the same payload to multiple external subscriptions.
+     *
+     * Recipients are grouped by encoding profile (filter, outbound adapters, SIRI-version and delivery size), and the
+     * payload is filtered, split, transformed and marshalled once per group. All recipients in a group are sent the
+     * same encoded bytes.
+     *
+     * @param payload
+     * @param recipients
+     * @param logBody Full body is logged for the first recipient
+     */
+    void pushSiriData(Siri payload, List<OutboundSubscriptionSetup> recipients, boolean logBody) {
+        pushSiriData(payload, recipients, logBody, false);
+    }
+
+    /**
+     * Pushes payload that has already been assembled from the elements matching the recipients' filter, i.e. the
+     * filter is not applied again.
+     *
+     * @param filteredPayload
+     * @param recipients Subscriptions sharing the same filter
+     * @param logBody
+     */
+    void pushFilteredSiriData(Siri filteredPayload, List<OutboundSubscriptionSetup> recipients, boolean logBody) {
+        pushSiriData(filteredPayload, recipients, logBody, true);
+    }
+
+    private void pushSiriData(Siri payload, List<OutboundSubscriptionSetup> recipients, boolean logBody, boolean prefiltered) {
+        Map<EncodingProfile, List<OutboundSubscriptionSetup>> recipientsByProfile = new LinkedHashMap<>();
+        for (OutboundSubscriptionSetup recipient : recipients) {
+            if (recipient.getAddress() == null) {
+                logger.info("ConsumerAddress is null - ignoring data.");
+                continue;
+            }
+            recipientsByProfile.computeIfAbsent(new EncodingProfile(recipient, getDeliverySize(recipient)), p -> new ArrayList<>())
+                    .add(recipient);
         }
+
+        // Unfiltered payload is shared between groups, and would be altered by the outbound adapters
+        final boolean copyUnfilteredPayload = recipientsByProfile.size() > 1;
+
         final String breadcrumbId = MDC.get("camel.breadcrumbId");
-        ExecutorService executorService = getOrCreateExecutorService(subscriptionRequest);
-        executorService.submit(() -> {
-            try {
-                MDC.put("camel.breadcrumbId", breadcrumbId);
-                if (!subscriptionManager.subscriptions.containsKey(subscriptionRequest.getSubscriptionId())) {
-                    // Short circuit if subscription has been terminated while waiting
-                    return;
-                }
+        boolean showBody = logBody;
+        for (Map.Entry<EncodingProfile, List<OutboundSubscriptionSetup>> group : recipientsByProfile.entrySet()) {
+            final EncodingProfile profile = group.getKey();
+            final int groupSize = group.getValue().size();
+
+            // Encoded by the first recipient that needs it
+            Supplier<List<EncodedDelivery>> encodedDeliveries = Suppliers.memoize(() ->
+                    encode(payload, profile, copyUnfilteredPayload, prefiltered, groupSize)
+            );
+
+            for (OutboundSubscriptionSetup recipient : group.getValue()) {
+                pushEncodedData(encodedDeliveries, recipient, breadcrumbId, showBody);
+                showBody = false;
+            }
+        }
+    }
 
-                Siri filteredPayload = SiriHelper.filterSiriPayload(payload, subscriptionRequest.getFilterMap());
+    /**
+     * Adds updated elements to the pending updates of each recipient.
+     *
+     * Pending updates are keyed by SiriObjectStorageKey, and replaced in place - a recipient that falls behind only
+     * receives the latest version of each element in its next delivery.
+     *
+     * @param dataType
+     * @param updates Updated EstimatedVehicleJourneys or VehicleActivities
+     * @param datasetId
+     * @param recipients
+     */
+    void pushConflatedUpdates(SiriDataType dataType, List updates, String datasetId, List<OutboundSubscriptionSetup> recipients) {
+        Map<Object, Object> keyedUpdates = new LinkedHashMap<>();
+        for (Object update : updates) {
+            keyedUpdates.put(createKey(datasetId, update), update);
+        }
 
-                int deliverySize = this.maximumSizePerDelivery;
-                if (subscriptionRequest.getDatasetId() != null) {
-                    deliverySize = Integer.MAX_VALUE;
-                }
+        final String breadcrumbId = MDC.get("camel.breadcrumbId");
+        for (OutboundSubscriptionSetup recipient : recipients) {
+            if (recipient.getAddress() == null) {
+                logger.info("ConsumerAddress is null - ignoring data.");
+                continue;
+            }
+            ConflationBuffer buffer = conflationBuffers.computeIfAbsent(recipient.getSubscriptionId(), id -> new ConflationBuffer());
+            if (buffer.add(keyedUpdates)) {
+                final EncodingProfile profile = new EncodingProfile(recipient, getDeliverySize(recipient));
+
+                // Pending updates are collected when the delivery is executed
+                Runnable delivery = createDelivery(Suppliers.memoize(() ->
+                        encode(createServiceDelivery(dataType, buffer.drain()), profile, true, false, 1)
+                ), recipient, breadcrumbId, false);
+
+                dispatcher.submit(recipient.getSubscriptionId(), new OutboundDispatcher.DroppableDelivery() {
+                    @Override
+                    public void run() {
+                        delivery.run();
+                    }
+
+                    @Override
+                    public void onDropped() {
+                        // Pending updates are kept, and delivered with the next update
+                        buffer.unschedule();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Discards queued deliveries and pending conflated updates for a terminated subscription
+     */
+    void removeSubscription(String subscriptionId) {
+        dispatcher.removeQueue(subscriptionId);
+        conflationBuffers.remove(subscriptionId);
+    }
+
+    // for unittest
+    boolean hasConflationBuffer(String subscriptionId) {
+        return conflationBuffers.containsKey(subscriptionId);
+    }
 
-                List<Siri> splitSiri = siriHelper.splitDeliveries(filteredPayload, deliverySize);
+    private Siri createServiceDelivery(SiriDataType dataType, List elements) {
+        if (dataType == SiriDataType.VEHICLE_MONITORING) {
+            return siriObjectFactory.createVMServiceDelivery(elements);
+        }
+        return siriObjectFactory.createETServiceDelivery(elements);
+    }
+
+    private static Object createKey(String datasetId, Object element) {
+        if (element instanceof EstimatedVehicleJourney) {
+            return EstimatedTimetables.createKey(datasetId, (EstimatedVehicleJourney) element);
+        }
+        if (element instanceof VehicleActivityStructure &&
+                ((VehicleActivityStructure) element).getMonitoredVehicleJourney() != null) {
+            return VehicleActivities.createKey(datasetId, ((VehicleActivityStructure) element).getMonitoredVehicleJourney());
+        }
+        // Not possible to identify - element is never replaced
+        return element;
+    }
 
-                if (splitSiri.size() > 1) {
-                    logger.info("Object split into {} deliveries for subscription {}.", splitSiri.size(), subscriptionRequest);
+    private void pushEncodedData(Supplier<List<EncodedDelivery>> encodedDeliveries, OutboundSubscriptionSetup subscriptionRequest,
+                                 String breadcrumbId, boolean logBody) {
+        dispatcher.submit(subscriptionRequest.getSubscriptionId(), createDelivery(encodedDeliveries, subscriptionRequest, breadcrumbId, logBody));
+    }
+
+    private Runnable createDelivery(Supplier<List<EncodedDelivery>> encodedDeliveries, OutboundSubscriptionSetup subscriptionRequest,
+                                    String breadcrumbId, boolean logBody) {
+        return () -> {
+            try {
+                MDC.put("camel.breadcrumbId", breadcrumbId);
+                if (!subscriptionManager.subscriptions.containsKey(subscriptionRequest.getSubscriptionId())) {
+                    // Short circuit if subscription has been terminated while waiting - possibly on another instance
+                    removeSubscription(subscriptionRequest.getSubscriptionId());
+                    return;
                 }
 
-                for (Siri siri : splitSiri) {
-                    postDataToSubscription(siri, subscriptionRequest, logBody);
+                for (EncodedDelivery delivery : encodedDeliveries.get()) {
+                    postDataToSubscription(delivery, subscriptionRequest, logBody);
                 }
             } catch (Exception e) {
                 logger.info("Failed to push data for subscription {}: {}", subscriptionRequest, e);
@@ -112,64 +265,71 @@ public class CamelRouteManager {
                 }
                 subscriptionManager.pushFailedForSubscription(subscriptionRequest.getSubscriptionId());
 
-                removeDeadSubscriptionExecutors(subscriptionManager);
+                Set<String> activeSubscriptionIds = subscriptionManager.subscriptions.keySet();
+                dispatcher.removeQueues(activeSubscriptionIds);
+                conflationBuffers.keySet().retainAll(activeSubscriptionIds);
             } finally {
                 MDC.remove("camel.breadcrumbId");
             }
-        });
+        };
     }
 
-    Map<String, ExecutorService> threadFactoryMap = new HashMap<>();
-    private ExecutorService getOrCreateExecutorService(OutboundSubscriptionSetup subscriptionRequest) {
+    /**
+     * Filters, splits, transforms and marshals payload according to the given profile
+     */
+    private List<EncodedDelivery> encode(Siri payload, EncodingProfile profile, boolean copyUnfilteredPayload,
+                                         boolean prefiltered, int recipientCount) {
+        Siri filteredPayload;
+        if (prefiltered) {
+            // Only contains matching elements, but these are shared with other deliveries
+            filteredPayload = SiriObjectFactory.deepCopy(payload);
+        } else {
+            filteredPayload = SiriHelper.filterSiriPayload(payload, profile.filterMap);
+            if (filteredPayload == payload && copyUnfilteredPayload) {
+                filteredPayload = SiriObjectFactory.deepCopy(payload);
+            }
+        }
 
-        final String subscriptionId = subscriptionRequest.getSubscriptionId();
-        if (!threadFactoryMap.containsKey(subscriptionId)) {
-            ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("outbound"+subscriptionId).build();
+        List<Siri> splitSiri = siriHelper.splitDeliveries(filteredPayload, profile.deliverySize);
 
-            threadFactoryMap.put(subscriptionId, Executors.newSingleThreadExecutor(factory));
+        if (splitSiri.size() > 1) {
+            logger.info("Object split into {} deliveries for {} subscription(s).", splitSiri.size(), recipientCount);
         }
 
-        return threadFactoryMap.get(subscriptionId);
-    }
-
+        List<EncodedDelivery> encodedDeliveries = new ArrayList<>();
+        for (Siri siri : splitSiri) {
+            if (serviceDeliveryContainsData(siri)) {
+                Map<String, Object> headers = new HashMap<>();
+                headers.put("breadcrumbId", MDC.get("camel.breadcrumbId"));
+                headers.put(SIRI_VERSION_HEADER_NAME, profile.siriVersion);
+                headers.put(OUTPUT_ADAPTERS_HEADER_NAME, profile.valueAdapters);
 
-    /**
-     * Clean up dead ExecutorServices
-     * @param subscriptionManager
-     */
-    private void removeDeadSubscriptionExecutors(ServerSubscriptionManager subscriptionManager) {
-        List<String> idsToRemove = new ArrayList<>();
-        for (String id : threadFactoryMap.keySet()) {
-            if (!subscriptionManager.subscriptions.containsKey(id)) {
-                final ExecutorService service = threadFactoryMap.get(id);
-                idsToRemove.add(id);
-                // Force shutdown since outbound subscription has been stopped
-                service.shutdownNow();
+                byte[] body = siriEncoder.requestBodyAndHeaders(siriEncoder.getDefaultEndpoint(), siri, headers, byte[].class);
+                encodedDeliveries.add(new EncodedDelivery(siri, body));
             }
         }
-        if (!idsToRemove.isEmpty()) {
-            for (String id : idsToRemove) {
-                logger.info("Remove executor for subscription {}", id);
-                threadFactoryMap.remove(id);
-            }
+        return encodedDeliveries;
+    }
+
+    private int getDeliverySize(OutboundSubscriptionSetup subscriptionRequest) {
+        if (subscriptionRequest.getDatasetId() != null) {
+            return Integer.MAX_VALUE;
         }
+        return this.maximumSizePerDelivery;
     }
 
-    private void postDataToSubscription(Siri payload, OutboundSubscriptionSetup subscription, boolean showBody) {
+    private void postDataToSubscription(EncodedDelivery delivery, OutboundSubscriptionSetup subscription, boolean showBody) {
+        String remoteEndPoint = subscription.getAddress();
 
-        if (serviceDeliveryContainsData(payload)) {
-            String remoteEndPoint = subscription.getAddress();
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("breadcrumbId", MDC.get("camel.breadcrumbId"));
+        headers.put("endpoint", remoteEndPoint);
+        headers.put("SubscriptionId", subscription.getSubscriptionId());
+        headers.put("showBody", showBody);
 
-            Map<String, Object> headers = new HashMap<>();
-            headers.put("breadcrumbId", MDC.get("camel.breadcrumbId"));
-            headers.put("endpoint", remoteEndPoint);
-            headers.put("SubscriptionId", subscription.getSubscriptionId());
-            headers.put("showBody", showBody);
-            headers.put(SIRI_VERSION_HEADER_NAME, subscription.getSiriVersion());
-            headers.put(OUTPUT_ADAPTERS_HEADER_NAME, subscription.getValueAdapters());
+        metrics.countOutgoingData(delivery.siri, SubscriptionSetup.SubscriptionMode.SUBSCRIBE);
 
-            siriSubscriptionProcessor.sendBodyAndHeaders(payload, headers);
-        }
+        siriSubscriptionProcessor.sendBodyAndHeaders(delivery.body, headers);
     }
 
     /**
@@ -202,4 +362,78 @@ public class CamelRouteManager {
         }
         return true;
     }
+
+    /**
+     * Recipients with equal profiles receive byte-identical data
+     */
+    private static class EncodingProfile {
+        private final Map<Class, Set<String>> filterMap;
+        private final List<ValueAdapter> valueAdapters;
+        private final SiriValidator.Version siriVersion;
+        private final int deliverySize;
+
+        private EncodingProfile(OutboundSubscriptionSetup subscription, int deliverySize) {
+            this.filterMap = subscription.getFilterMap() != null ? subscription.getFilterMap() : Map.of();
+            this.valueAdapters = subscription.getValueAdapters();
+            this.siriVersion = subscription.getSiriVersion();
+            this.deliverySize = deliverySize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof EncodingProfile)) return false;
+            EncodingProfile that = (EncodingProfile) o;
+            return deliverySize == that.deliverySize &&
+                    filterMap.equals(that.filterMap) &&
+                    Objects.equals(valueAdapters, that.valueAdapters) &&
+                    siriVersion == that.siriVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filterMap, valueAdapters, siriVersion, deliverySize);
+        }
+    }
+
+    /**
+     * Latest version of each updated element, waiting to be delivered
+     */
+    private static class ConflationBuffer {
+        private final Map<Object, Object> pending = new LinkedHashMap<>();
+        private boolean scheduled;
+
+        /**
+         * @return true if a delivery needs to be scheduled
+         */
+        private synchronized boolean add(Map<Object, Object> updates) {
+            pending.putAll(updates);
+            if (scheduled || pending.isEmpty()) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        private synchronized List<Object> drain() {
+            List<Object> elements = new ArrayList<>(pending.values());
+            pending.clear();
+            scheduled = false;
+            return elements;
+        }
+
+        private synchronized void unschedule() {
+            scheduled = false;
+        }
+    }
+
+    private static class EncodedDelivery {
+        private final Siri siri;
+        private final byte[] body;
+
+        private EncodedDelivery(Siri siri, byte[] body) {
+            this.siri = siri;
+            this.body = body;
+        }
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.outbound;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches outbound deliveries to subscriptions using a shared, bounded thread pool.
+ *
+ * Each subscription has its own bounded queue of pending deliveries, and at most a configured number of deliveries
+ * in flight. A queue is served one delivery at a time before being rescheduled, so a slow recipient only occupies
+ * its own in-flight slots, and does not delay delivery to other recipients.
+ *
+ * Drop-policy: When the queue for a subscription is full, the oldest pending delivery is dropped in favour of
+ * the newest. Deliveries implementing {@link DroppableDelivery} are notified when dropped.
+ */
+@Service
+public class OutboundDispatcher {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    @Value("${anshar.outbound.dispatcher.threads:20}")
+    private int threads;
+
+    @Value("${anshar.outbound.dispatcher.queue.size.per.subscription:100}")
+    private int maxQueueSize;
+
+    @Value("${anshar.outbound.dispatcher.in.flight.per.subscription:1}")
+    private int maxInFlight;
+
+    @Value("${anshar.outbound.dispatcher.fanout.queue.size:1000}")
+    private int fanOutQueueSize;
+
+    private final ConcurrentHashMap<String, SubscriptionQueue> queues = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor deliveryExecutor;
+
+    private ThreadPoolExecutor fanOutExecutor;
+
+    @PostConstruct
+    void init() {
+        deliveryExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                // Contains at most maxInFlight tasks per subscription
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("outbound-%d").build()
+        );
+        deliveryExecutor.allowCoreThreadTimeOut(true);
+
+        // Fan-out is processed in order - producer is slowed down when the queue is full
+        fanOutExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fanOutQueueSize),
+                new ThreadFactoryBuilder().setNameFormat("outbound-fanout-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fanOutExecutor.shutdownNow();
+        deliveryExecutor.shutdownNow();
+    }
+
+    /**
+     * Executes fan-out of updated data to all recipients
+     */
+    public void submitFanOut(Runnable task) {
+        fanOutExecutor.execute(task);
+    }
+
+    /**
+     * Queues delivery to the given subscription
+     */
+    public void submit(String subscriptionId, Runnable delivery) {
+        SubscriptionQueue queue = queues.computeIfAbsent(subscriptionId, this::createQueue);
+        if (queue.offer(delivery)) {
+            deliveryExecutor.execute(queue::runNext);
+        }
+    }
+
+    /**
+     * Removes queues for subscriptions that no longer exist - pending deliveries are discarded
+     */
+    public void removeQueues(Set<String> activeSubscriptionIds) {
+        for (String subscriptionId : queues.keySet()) {
+            if (!activeSubscriptionIds.contains(subscriptionId)) {
+                removeQueue(subscriptionId);
+            }
+        }
+    }
+
+    /**
+     * Removes queue for a terminated subscription - pending deliveries are discarded
+     */
+    public void removeQueue(String subscriptionId) {
+        SubscriptionQueue queue = queues.remove(subscriptionId);
+        if (queue != null) {
+            logger.info("Remove outbound queue for subscription {}", subscriptionId);
+            queue.clear();
+            metrics.removeOutboundQueue(subscriptionId);
+        }
+    }
+
+    // for unittest
+    boolean hasQueue(String subscriptionId) {
+        return queues.containsKey(subscriptionId);
+    }
+
+    public int getQueueDepth(String subscriptionId) {
+        SubscriptionQueue queue = queues.get(subscriptionId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Delivery that needs to know if it is dropped without being executed
+     */
+    interface DroppableDelivery extends Runnable {
+        void onDropped();
+    }
+
+    private SubscriptionQueue createQueue(String subscriptionId) {
+        SubscriptionQueue queue = new SubscriptionQueue(subscriptionId);
+        metrics.gaugeOutboundQueue(subscriptionId, queue, SubscriptionQueue::size);
+        return queue;
+    }
+
+    private class SubscriptionQueue {
+        private final String subscriptionId;
+        private final Deque<Runnable> pending = new ArrayDeque<>();
+        private int inFlight;
+
+        private SubscriptionQueue(String subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+
+        /**
+         * @return true if a new worker should be scheduled for this queue
+         */
+        private boolean offer(Runnable delivery) {
+            Runnable dropped = null;
+            boolean schedule = false;
+            synchronized (this) {
+                if (pending.size() >= maxQueueSize) {
+                    dropped = pending.poll();
+                }
+                pending.add(delivery);
+                if (inFlight < maxInFlight) {
+                    inFlight++;
+                    schedule = true;
+                }
+            }
+            if (dropped != null) {
+                logger.warn("Outbound queue for subscription {} is full - oldest delivery dropped", subscriptionId);
+                metrics.registerDroppedOutboundDelivery(subscriptionId);
+                if (dropped instanceof DroppableDelivery) {
+                    ((DroppableDelivery) dropped).onDropped();
+                }
+            }
+            return schedule;
+        }
+
+        /**
+         * Runs one delivery, and reschedules the queue if more deliveries are pending
+         */
+        private void runNext() {
+            Runnable delivery;
+            synchronized (this) {
+                delivery = pending.poll();
+                if (delivery == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            try {
+                delivery.run();
+            } catch (Exception e) {
+                logger.warn("Outbound delivery to subscription {} failed", subscriptionId, e);
+            } finally {
+                boolean reschedule;
+                synchronized (this) {
+                    reschedule = !pending.isEmpty();
+                    if (!reschedule) {
+                        inFlight--;
+                    }
+                }
+                if (reschedule) {
+                    deliveryExecutor.execute(this::runNext);
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return pending.size();
+        }
+
+        private synchronized void clear() {
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.outbound;
+
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.LineRef;
+import uk.org.siri.siri21.VehicleActivityStructure;
+import uk.org.siri.siri21.VehicleRef;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local index of outbound subscriptions, used to route updates without reading all subscriptions from the
+ * distributed map on every push.
+ *
+ * Subscriptions are indexed by datatype and dataset, and filtered ET/VM-subscriptions additionally by the
+ * LineRef/VehicleRef they subscribe to. The index is kept up to date by entry-listeners on the subscription-map, and
+ * is rebuilt as an immutable snapshot on every change.
+ */
+@Component
+public class OutboundRoutingIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundRoutingIndex.class);
+
+    @Autowired
+    private IMap<String, OutboundSubscriptionSetup> subscriptions;
+
+    private final Map<String, OutboundSubscriptionSetup> localSubscriptions = new ConcurrentHashMap<>();
+
+    private volatile Map<BucketKey, Bucket> buckets = Collections.emptyMap();
+
+    @PostConstruct
+    void init() {
+        subscriptions.addEntryListener((EntryAddedListener<String, OutboundSubscriptionSetup>) entryEvent ->
+                add(entryEvent.getValue()), true);
+        subscriptions.addEntryListener((EntryUpdatedListener<String, OutboundSubscriptionSetup>) entryEvent ->
+                add(entryEvent.getValue()), true);
+        subscriptions.addEntryListener((EntryRemovedListener<String, OutboundSubscriptionSetup>) entryEvent ->
+                remove(entryEvent.getKey()), false);
+        subscriptions.addEntryListener((EntryExpiredListener<String, OutboundSubscriptionSetup>) entryEvent ->
+                remove(entryEvent.getKey()), false);
+        subscriptions.addEntryListener((EntryEvictedListener<String, OutboundSubscriptionSetup>) entryEvent ->
+                remove(entryEvent.getKey()), false);
+
+        subscriptions.forEach(localSubscriptions::put);
+        rebuild();
+        logger.info("Outbound routing index initialized with {} subscriptions", localSubscriptions.size());
+    }
+
+    /**
+     * Adds or replaces subscription in the index
+     */
+    void add(OutboundSubscriptionSetup subscription) {
+        if (subscription != null) {
+            localSubscriptions.put(subscription.getSubscriptionId(), subscription);
+            rebuild();
+        }
+    }
+
+    void remove(String subscriptionId) {
+        if (localSubscriptions.remove(subscriptionId) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @return All subscriptions of the given type that receive data from the given dataset, regardless of filter
+     */
+    List<OutboundSubscriptionSetup> getSubscriptions(SiriDataType dataType, String datasetId) {
+        Map<BucketKey, Bucket> current = buckets;
+        List<OutboundSubscriptionSetup> result = new ArrayList<>();
+        for (Bucket bucket : getBuckets(current, dataType, datasetId)) {
+            result.addAll(bucket.all);
+        }
+        return result;
+    }
+
+    /**
+     * Routes updated ET/VM-elements to the subscriptions they match
+     *
+     * @param dataType ESTIMATED_TIMETABLE or VEHICLE_MONITORING
+     * @param datasetId
+     * @param updates EstimatedVehicleJourneys or VehicleActivities
+     * @return Matching subscriptions
+     */
+    Routing route(SiriDataType dataType, String datasetId, List updates) {
+        List<Bucket> matchingBuckets = getBuckets(buckets, dataType, datasetId);
+
+        List<OutboundSubscriptionSetup> unfiltered = new ArrayList<>();
+        Map<Map<Class, Set<String>>, FilteredRecipients> filtered = new LinkedHashMap<>();
+
+        for (Bucket bucket : matchingBuckets) {
+            unfiltered.addAll(bucket.unfiltered);
+        }
+
+        for (Object update : updates) {
+            String lineRef = getLineRef(update);
+            String vehicleRef = getVehicleRef(update);
+
+            for (Bucket bucket : matchingBuckets) {
+                if (lineRef != null) {
+                    addMatches(filtered, bucket.byLineRef.get(lineRef), update, lineRef, vehicleRef);
+                }
+                if (vehicleRef != null) {
+                    addMatches(filtered, bucket.byVehicleRef.get(vehicleRef), update, lineRef, vehicleRef);
+                }
+            }
+        }
+        return new Routing(unfiltered, filtered.values());
+    }
+
+    private static void addMatches(Map<Map<Class, Set<String>>, FilteredRecipients> filtered,
+                                   List<OutboundSubscriptionSetup> candidates, Object update,
+                                   String lineRef, String vehicleRef) {
+        if (candidates == null) {
+            return;
+        }
+        for (OutboundSubscriptionSetup candidate : candidates) {
+            if (matches(candidate.getFilterMap(), lineRef, vehicleRef)) {
+                FilteredRecipients recipients = filtered.computeIfAbsent(candidate.getFilterMap(), f -> new FilteredRecipients());
+                recipients.add(candidate, update);
+            }
+        }
+    }
+
+    /**
+     * Same criteria as SiriHelper.filterSiriPayload - all given filters must match
+     */
+    private static boolean matches(Map<Class, Set<String>> filter, String lineRef, String vehicleRef) {
+        Set<String> lineRefs = filter.get(LineRef.class);
+        if (lineRefs != null && !lineRefs.isEmpty() && (lineRef == null || !lineRefs.contains(lineRef))) {
+            return false;
+        }
+        Set<String> vehicleRefs = filter.get(VehicleRef.class);
+        return vehicleRefs == null || vehicleRefs.isEmpty() || (vehicleRef != null && vehicleRefs.contains(vehicleRef));
+    }
+
+    private static List<Bucket> getBuckets(Map<BucketKey, Bucket> current, SiriDataType dataType, String datasetId) {
+        List<Bucket> result = new ArrayList<>(2);
+        Bucket allDatasets = current.get(new BucketKey(dataType, null));
+        if (allDatasets != null) {
+            result.add(allDatasets);
+        }
+        if (datasetId != null) {
+            Bucket dataset = current.get(new BucketKey(dataType, datasetId));
+            if (dataset != null) {
+                result.add(dataset);
+            }
+        }
+        return result;
+    }
+
+    private synchronized void rebuild() {
+        Map<BucketKey, Bucket> rebuilt = new HashMap<>();
+        for (OutboundSubscriptionSetup subscription : localSubscriptions.values()) {
+            rebuilt.computeIfAbsent(new BucketKey(subscription.getSubscriptionType(), subscription.getDatasetId()), k -> new Bucket())
+                    .add(subscription);
+        }
+        buckets = rebuilt;
+    }
+
+    private static String getLineRef(Object update) {
+        LineRef lineRef = null;
+        if (update instanceof EstimatedVehicleJourney) {
+            lineRef = ((EstimatedVehicleJourney) update).getLineRef();
+        } else if (update instanceof VehicleActivityStructure &&
+                ((VehicleActivityStructure) update).getMonitoredVehicleJourney() != null) {
+            lineRef = ((VehicleActivityStructure) update).getMonitoredVehicleJourney().getLineRef();
+        }
+        return lineRef != null ? lineRef.getValue() : null;
+    }
+
+    private static String getVehicleRef(Object update) {
+        VehicleRef vehicleRef = null;
+        if (update instanceof EstimatedVehicleJourney) {
+            vehicleRef = ((EstimatedVehicleJourney) update).getVehicleRef();
+        } else if (update instanceof VehicleActivityStructure &&
+                ((VehicleActivityStructure) update).getMonitoredVehicleJourney() != null) {
+            vehicleRef = ((VehicleActivityStructure) update).getMonitoredVehicleJourney().getVehicleRef();
+        }
+        return vehicleRef != null ? vehicleRef.getValue() : null;
+    }
+
+    /**
+     * Result of routing a set of updates
+     */
+    static class Routing {
+        private final List<OutboundSubscriptionSetup> unfiltered;
+        private final Collection<FilteredRecipients> filtered;
+
+        private Routing(List<OutboundSubscriptionSetup> unfiltered, Collection<FilteredRecipients> filtered) {
+            this.unfiltered = unfiltered;
+            this.filtered = filtered;
+        }
+
+        /**
+         * @return Subscriptions without filter, receiving all updates
+         */
+        List<OutboundSubscriptionSetup> getUnfiltered() {
+            return unfiltered;
+        }
+
+        /**
+         * @return Filtered subscriptions grouped by filter, with the updates matching that filter
+         */
+        Collection<FilteredRecipients> getFiltered() {
+            return filtered;
+        }
+
+        int getRecipientCount() {
+            return unfiltered.size() + filtered.stream().mapToInt(r -> r.recipients.size()).sum();
+        }
+    }
+
+    /**
+     * Subscriptions sharing the same filter, and the updates matching it
+     */
+    static class FilteredRecipients {
+        private final List<OutboundSubscriptionSetup> recipients = new ArrayList<>();
+        private final List<Object> updates = new ArrayList<>();
+        private Object lastUpdate;
+
+        private void add(OutboundSubscriptionSetup recipient, Object update) {
+            if (!recipients.contains(recipient)) {
+                recipients.add(recipient);
+            }
+            // Subscriptions with equal filter are matched by the same update right after each other
+            if (lastUpdate != update) {
+                updates.add(update);
+                lastUpdate = update;
+            }
+        }
+
+        List<OutboundSubscriptionSetup> getRecipients() {
+            return recipients;
+        }
+
+        List getUpdates() {
+            return updates;
+        }
+    }
+
+    private static class Bucket {
+        private final List<OutboundSubscriptionSetup> all = new ArrayList<>();
+        private final List<OutboundSubscriptionSetup> unfiltered = new ArrayList<>();
+        private final Map<String, List<OutboundSubscriptionSetup>> byLineRef = new HashMap<>();
+        private final Map<String, List<OutboundSubscriptionSetup>> byVehicleRef = new HashMap<>();
+
+        private void add(OutboundSubscriptionSetup subscription) {
+            all.add(subscription);
+
+            Map<Class, Set<String>> filter = subscription.getFilterMap();
+            Set<String> lineRefs = filter != null ? filter.get(LineRef.class) : null;
+            Set<String> vehicleRefs = filter != null ? filter.get(VehicleRef.class) : null;
+
+            // Indexed once - by LineRef if present, since all filters must match
+            if (lineRefs != null && !lineRefs.isEmpty()) {
+                for (String lineRef : lineRefs) {
+                    byLineRef.computeIfAbsent(lineRef, l -> new ArrayList<>()).add(subscription);
+                }
+            } else if (vehicleRefs != null && !vehicleRefs.isEmpty()) {
+                for (String vehicleRef : vehicleRefs) {
+                    byVehicleRef.computeIfAbsent(vehicleRef, v -> new ArrayList<>()).add(subscription);
+                }
+            } else {
+                unfiltered.add(subscription);
+            }
+        }
+    }
+
+    private static class BucketKey {
+        private final SiriDataType dataType;
+        private final String datasetId;
+
+        private BucketKey(SiriDataType dataType, String datasetId) {
+            this.dataType = dataType;
+            this.datasetId = datasetId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BucketKey that = (BucketKey) o;
+            return dataType == that.dataType && Objects.equals(datasetId, that.datasetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataType, datasetId);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package no.rutebanken.anshar.routes.outbound;
 
-import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
 import org.apache.camel.Configuration;
 import org.apache.camel.Exchange;
@@ -24,9 +23,6 @@ public class OutboundSiriDistributionRoute extends RouteBuilder {
     @Autowired
     private ServerSubscriptionManager subscriptionManager;
 
-    @Autowired
-    private PrometheusMetricsService metrics;
-
 
     @Value("${anshar.outbound.error.redelivery.delay.millis:1000}")
     private int redeliveryDelay;
@@ -50,12 +46,11 @@ public class OutboundSiriDistributionRoute extends RouteBuilder {
             .log("Retry triggered")
         ;
 
-        from("direct:send.to.external.subscription")
-                .routeId("send.to.external.subscription")
-                .log(LoggingLevel.INFO, "POST data to ${header.SubscriptionId}")
-                .setHeader("CamelHttpMethod", constant("POST"))
-                .setHeader(Exchange.CONTENT_TYPE, constant(MediaType.APPLICATION_XML))
-                .bean(metrics, "countOutgoingData(${body}, SUBSCRIBE)")
+        /*
+         * Transforms and marshals data once per encoding profile - result is shared by all recipients with the same profile
+         */
+        from("direct:encode.outbound.siri")
+                .routeId("encode.outbound.siri")
                 .to("direct:siri.transform.data")
                 .choice()
                     .when(header(SIRI_VERSION_HEADER_NAME).isEqualTo(SiriValidator.Version.VERSION_2_1))
@@ -67,6 +62,14 @@ public class OutboundSiriDistributionRoute extends RouteBuilder {
                         })
                         .marshal(SiriDataFormatHelper.getSiriJaxbDataformat(SiriValidator.Version.VERSION_2_0))
                 .end()
+                .convertBodyTo(byte[].class)
+        ;
+
+        from("direct:send.to.external.subscription")
+                .routeId("send.to.external.subscription")
+                .log(LoggingLevel.INFO, "POST data to ${header.SubscriptionId}")
+                .setHeader("CamelHttpMethod", constant("POST"))
+                .setHeader(Exchange.CONTENT_TYPE, constant(MediaType.APPLICATION_XML))
                 .setHeader("httpClient.socketTimeout", constant(socketTimeout))
                 .setHeader("httpClient.connectTimeout", constant(connectTimeout))
                 .choice()
@@ -42,6 +42,7 @@ public class OutboundSubscriptionSetup implements Serializable {
     private String datasetId;
     private String clientTrackingName;
     private long changeBeforeUpdates;
+    private boolean conflateUpdates;
 
     public OutboundSubscriptionSetup(ZonedDateTime requestTimestamp, SiriDataType subscriptionType, String address, long heartbeatInterval,
                                      long changeBeforeUpdates, Map<Class, Set<String>> filterMap, List<ValueAdapter> valueAdapters,
@@ -130,6 +131,17 @@ public class OutboundSubscriptionSetup implements Serializable {
         return siriVersion;
     }
 
+    /**
+     * @return true if pending updates should be conflated, i.e. only the latest version of each element is delivered
+     */
+    public boolean isConflateUpdates() {
+        return conflateUpdates;
+    }
+
+    void setConflateUpdates(boolean conflateUpdates) {
+        this.conflateUpdates = conflateUpdates;
+    }
+
     public String toString() {
         return MessageFormat.format("[subscriptionId={0}, clientTrackingName={1}, requestorRef={2}, address={3}]", subscriptionId, clientTrackingName, requestorRef, address);
     }
@@ -53,8 +53,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
@@ -96,6 +95,21 @@ public class ServerSubscriptionManager {
     @Value("${anshar.outbound.pubsub.topic.enabled}")
     private boolean pushToTopicEnabled;
 
+    @Autowired
+    private OutboundRoutingIndex routingIndex;
+
+    /**
+     * Default for all ET/VM-subscriptions
+     */
+    @Value("${anshar.outbound.conflation.enabled:false}")
+    private boolean conflationEnabled;
+
+    /**
+     * RequestorRefs of subscribers that get conflated updates regardless of the default
+     */
+    @Value("${anshar.outbound.conflation.requestors:}")
+    private List<String> conflationRequestors;
+
     @Produce(uri = "direct:send.to.pubsub.topic.estimated_timetable")
     protected ProducerTemplate siriEtTopicProducer;
 
@@ -108,6 +122,9 @@ public class ServerSubscriptionManager {
     @Autowired
     private CamelRouteManager camelRouteManager;
 
+    @Autowired
+    private OutboundDispatcher outboundDispatcher;
+
     @Autowired
     private SiriHelper siriHelper;
 
@@ -146,6 +163,8 @@ public class ServerSubscriptionManager {
 
         OutboundSubscriptionSetup subscription = createSubscription(subscriptionRequest, datasetId, outboundIdMappingPolicy, clientTrackingName);
 
+        subscription.setConflateUpdates(isConflationEnabled(subscription));
+
         boolean hasError = false;
         String errorText = null;
 
@@ -176,7 +195,7 @@ public class ServerSubscriptionManager {
             Siri subscriptionResponse = siriObjectFactory.createSubscriptionResponse(subscription.getSubscriptionId(), true, null);
 
             final String breadcrumbId = MDC.get("camel.breadcrumbId");
-            Executors.newSingleThreadScheduledExecutor().execute(() -> {
+            outboundDispatcher.submit(subscription.getSubscriptionId(), () -> {
                 try {
                     MDC.put("camel.breadcrumbId", breadcrumbId);
 
@@ -221,6 +240,17 @@ public class ServerSubscriptionManager {
                 );
     }
 
+    /**
+     * Conflation is only supported for ET and VM, and is enabled by default or for the subscriber's RequestorRef
+     */
+    boolean isConflationEnabled(OutboundSubscriptionSetup subscription) {
+        if (subscription.getSubscriptionType() != SiriDataType.ESTIMATED_TIMETABLE &&
+                subscription.getSubscriptionType() != SiriDataType.VEHICLE_MONITORING) {
+            return false;
+        }
+        return conflationEnabled || conflationRequestors.contains(subscription.getRequestorRef());
+    }
+
     // public for unittest
     public long getHeartbeatInterval(SubscriptionRequest subscriptionRequest) {
         long heartbeatInterval = 0;
@@ -264,12 +294,16 @@ public class ServerSubscriptionManager {
 
     private void addSubscription(OutboundSubscriptionSetup subscription) {
         subscriptions.put(subscription.getSubscriptionId(), subscription);
+        // Listener-events are asynchronous - update local index immediately
+        routingIndex.add(subscription);
     }
 
     private OutboundSubscriptionSetup removeSubscription(String subscriptionId) {
         logger.info("Removing subscription {}", subscriptionId);
         failTrackerMap.delete(subscriptionId);
         heartbeatTimestampMap.remove(subscriptionId);
+        routingIndex.remove(subscriptionId);
+        camelRouteManager.removeSubscription(subscriptionId);
         return subscriptions.remove(subscriptionId);
     }
 
@@ -345,16 +379,15 @@ public class ServerSubscriptionManager {
 
         final String breadcrumbId = MDC.get("camel.breadcrumbId");
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
         switch (datatype) {
             case ESTIMATED_TIMETABLE:
-                executorService.submit(() -> pushUpdatedEstimatedTimetables(updates, datasetId, breadcrumbId));
+                outboundDispatcher.submitFanOut(() -> pushUpdatedEstimatedTimetables(updates, datasetId, breadcrumbId));
                 break;
             case SITUATION_EXCHANGE:
-                executorService.submit(() -> pushUpdatedSituations(updates, datasetId, breadcrumbId));
+                outboundDispatcher.submitFanOut(() -> pushUpdatedSituations(updates, datasetId, breadcrumbId));
                 break;
             case VEHICLE_MONITORING:
-                executorService.submit(() -> pushUpdatedVehicleActivities(updates, datasetId, breadcrumbId));
+                outboundDispatcher.submitFanOut(() -> pushUpdatedVehicleActivities(updates, datasetId, breadcrumbId));
                 break;
             default:
                 // Ignore
@@ -376,28 +409,7 @@ public class ServerSubscriptionManager {
             siriVmTopicProducer.asyncRequestBodyAndHeader(siriVmTopicProducer.getDefaultEndpoint(), delivery, CODESPACE_ID_KAFKA_HEADER_NAME, datasetId);
         }
 
-        final List<OutboundSubscriptionSetup> recipients = subscriptions
-            .values()
-            .stream()
-            .filter(subscriptionRequest -> (
-                    subscriptionRequest.getSubscriptionType().equals(SiriDataType.VEHICLE_MONITORING)
-                        && (
-                        subscriptionRequest.getDatasetId() == null || (
-                            subscriptionRequest
-                                .getDatasetId()
-                                .equals(datasetId)
-                        )
-                    )
-                )
-
-            )
-            .collect(Collectors.toList());
-
-        boolean logFullContents = false;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
-        }
+        pushRoutedUpdates(SiriDataType.VEHICLE_MONITORING, delivery, addedOrUpdated, datasetId, false);
 
         MDC.remove("camel.breadcrumbId");
     }
@@ -417,28 +429,9 @@ public class ServerSubscriptionManager {
             siriSxTopicProducer.asyncRequestBodyAndHeader(siriSxTopicProducer.getDefaultEndpoint(), delivery, CODESPACE_ID_KAFKA_HEADER_NAME, datasetId);
         }
 
-        final List<OutboundSubscriptionSetup> recipients = subscriptions
-            .values()
-            .stream()
-            .filter(subscriptionRequest -> (
-                    subscriptionRequest.getSubscriptionType().equals(SiriDataType.SITUATION_EXCHANGE)
-                        && (
-                        subscriptionRequest.getDatasetId() == null || (
-                            subscriptionRequest
-                                .getDatasetId()
-                                .equals(datasetId)
-                        )
-                    )
-                )
-
-            )
-            .collect(Collectors.toList());
-
-        boolean logFullContents = true;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
-        }
+        final List<OutboundSubscriptionSetup> recipients = routingIndex.getSubscriptions(SiriDataType.SITUATION_EXCHANGE, datasetId);
+
+        camelRouteManager.pushSiriData(delivery, recipients, true);
 
         MDC.remove("camel.breadcrumbId");
     }
@@ -457,31 +450,52 @@ public class ServerSubscriptionManager {
             siriEtTopicProducer.asyncRequestBodyAndHeader(siriEtTopicProducer.getDefaultEndpoint(), delivery, CODESPACE_ID_KAFKA_HEADER_NAME, datasetId);
         }
 
-        final List<OutboundSubscriptionSetup> recipients = subscriptions
-            .values()
+        pushRoutedUpdates(SiriDataType.ESTIMATED_TIMETABLE, delivery, addedOrUpdated, datasetId, true);
+        MDC.remove("camel.breadcrumbId");
+    }
+
+    /**
+     * Routes ET/VM-updates using the routing index - unfiltered subscriptions receive the complete delivery, while
+     * filtered subscriptions receive a delivery assembled from only the matching elements
+     */
+    private void pushRoutedUpdates(SiriDataType dataType, Siri delivery, List addedOrUpdated, String datasetId,
+                                   boolean logFullContents) {
+        OutboundRoutingIndex.Routing routing = routingIndex.route(dataType, datasetId, addedOrUpdated);
+
+        if (dataType == SiriDataType.ESTIMATED_TIMETABLE) {
+            logger.info("Pushing {} ET updates to {} outbound subscriptions", addedOrUpdated.size(), routing.getRecipientCount());
+        }
+
+        pushToRecipients(dataType, delivery, addedOrUpdated, datasetId, routing.getUnfiltered(), false, logFullContents);
+
+        for (OutboundRoutingIndex.FilteredRecipients filtered : routing.getFiltered()) {
+            Siri filteredDelivery = dataType == SiriDataType.VEHICLE_MONITORING ?
+                siriObjectFactory.createVMServiceDelivery(filtered.getUpdates()) :
+                siriObjectFactory.createETServiceDelivery(filtered.getUpdates());
+
+            pushToRecipients(dataType, filteredDelivery, filtered.getUpdates(), datasetId, filtered.getRecipients(), true, false);
+        }
+    }
+
+    /**
+     * Pushes complete delivery to regular recipients, while recipients with conflation enabled get the updated
+     * elements added to their pending updates
+     */
+    private void pushToRecipients(SiriDataType dataType, Siri delivery, List addedOrUpdated, String datasetId,
+                                  List<OutboundSubscriptionSetup> recipients, boolean prefiltered, boolean logFullContents) {
+        Map<Boolean, List<OutboundSubscriptionSetup>> recipientsByConflation = recipients
             .stream()
-            .filter(subscriptionRequest -> (
-                    subscriptionRequest.getSubscriptionType().equals(SiriDataType.ESTIMATED_TIMETABLE)
-                        && (
-                        subscriptionRequest.getDatasetId() == null || (
-                            subscriptionRequest
-                                .getDatasetId()
-                                .equals(datasetId)
-                        )
-                    )
-                )
-
-            )
-            .collect(Collectors.toList());
-
-        logger.info("Pushing {} ET updates to {} outbound subscriptions", addedOrUpdated.size(), recipients.size());
-
-        boolean logFullContents = true;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
+            .collect(Collectors.partitioningBy(OutboundSubscriptionSetup::isConflateUpdates));
+
+        if (prefiltered) {
+            camelRouteManager.pushFilteredSiriData(delivery, recipientsByConflation.get(false), logFullContents);
+        } else {
+            camelRouteManager.pushSiriData(delivery, recipientsByConflation.get(false), logFullContents);
+        }
+
+        if (!recipientsByConflation.get(true).isEmpty()) {
+            camelRouteManager.pushConflatedUpdates(dataType, addedOrUpdated, datasetId, recipientsByConflation.get(true));
         }
-        MDC.remove("camel.breadcrumbId");
     }
 
     public void pushFailedForSubscription(String subscriptionId) {
@@ -20,21 +20,37 @@ public class ProtobufConverterRoute extends RouteBuilder {
 
 
         from("direct:compress.jaxb")
-                .setBody(body().convertToString())
-                .process(p -> {
-                    final String body = fixEncodingErrorsInXml(p.getIn().getBody(String.class), p.getIn().getHeader("subscriptionId", String.class));
-                    p.getOut().setBody(body);
-                    p.getOut().setHeaders(p.getIn().getHeaders());
-                    p.getOut().setHeader(CONTENT_LENGTH, body.getBytes().length);
-                })
-                .bean(kryoSerializer, "write")
+                .choice()
+                    .when(body().isInstanceOf(uk.org.siri.siri21.Siri.class))
+                        // Binary payload - object is serialized as is
+                        .process(p -> {
+                            final byte[] body = kryoSerializer.write(p.getIn().getBody());
+                            p.getOut().setBody(body);
+                            p.getOut().setHeaders(p.getIn().getHeaders());
+                            p.getOut().setHeader(CONTENT_LENGTH, body.length);
+                        })
+                    .endChoice()
+                    .otherwise()
+                        .setBody(body().convertToString())
+                        .process(p -> {
+                            final String body = fixEncodingErrorsInXml(p.getIn().getBody(String.class), p.getIn().getHeader("subscriptionId", String.class));
+                            p.getOut().setBody(body);
+                            p.getOut().setHeaders(p.getIn().getHeaders());
+                            p.getOut().setHeader(CONTENT_LENGTH, body.getBytes().length);
+                        })
+                        .bean(kryoSerializer, "write")
+                .end()
         ;
 
         from("direct:decompress.jaxb")
                 .bean(kryoSerializer, "read")
                 .process(p -> {
-                    final String body = p.getIn().getBody(String.class);
-                    p.getOut().setBody(body);
+                    final Object body = p.getIn().getBody();
+                    if (body instanceof uk.org.siri.siri21.Siri) {
+                        p.getOut().setBody(body);
+                    } else {
+                        p.getOut().setBody(p.getIn().getBody(String.class));
+                    }
                     p.getOut().setHeaders(p.getIn().getHeaders());
                 })
         ;
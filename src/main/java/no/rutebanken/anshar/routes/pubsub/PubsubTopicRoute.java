@@ -1,5 +1,6 @@
 package no.rutebanken.anshar.routes.pubsub;
 
+import no.rutebanken.anshar.routes.messaging.SiriXmlSplitter;
 import org.apache.camel.builder.RouteBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -37,8 +38,7 @@ public class PubsubTopicRoute extends RouteBuilder {
              */
             from("direct:send.to.pubsub.topic.estimated_timetable")
                     .to("direct:siri.transform.data")
-                    .to("xslt-saxon:xsl/split.xsl")
-                    .split().tokenizeXML("Siri").streaming()
+                    .split(method(SiriXmlSplitter.class, "split")).streaming()
                     .wireTap("direct:kafka.et.xml")         // Send to Kafka as XML
                     .wireTap("direct:publish.et.avro")        // Publish to kafka as Avro
                     .to("direct:map.jaxb.to.protobuf")
@@ -52,8 +52,7 @@ public class PubsubTopicRoute extends RouteBuilder {
              */
             from("direct:send.to.pubsub.topic.vehicle_monitoring")
                     .to("direct:siri.transform.data")
-                    .to("xslt-saxon:xsl/split.xsl")
-                    .split().tokenizeXML("Siri").streaming()
+                    .split(method(SiriXmlSplitter.class, "split")).streaming()
                     .wireTap("direct:kafka.vm.xml")// Send to Kafka as XML
                     .wireTap("direct:publish.vm.avro")// Publish to kafka as Avro
                     .to("direct:map.jaxb.to.protobuf")
@@ -67,8 +66,7 @@ public class PubsubTopicRoute extends RouteBuilder {
              */
             from("direct:send.to.pubsub.topic.situation_exchange")
                     .to("direct:siri.transform.data")
-                    .to("xslt-saxon:xsl/split.xsl")
-                    .split().tokenizeXML("Siri").streaming()
+                    .split(method(SiriXmlSplitter.class, "split")).streaming()
                     .wireTap("direct:kafka.sx.xml")// Send to Kafka as XML
                     .wireTap("direct:publish.sx.avro")// Publish to kafka as Avro
                     .to("direct:map.jaxb.to.protobuf")
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri;
+
+import no.rutebanken.anshar.metrics.PollingStatus;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Detects unchanged responses when polling a producer.
+ *
+ * Uses HTTP conditional requests (ETag/Last-Modified) when offered by the producer, and otherwise compares
+ * a hash of the raw payload with the previous response.
+ *
+ * Unchanged data is reprocessed at least every maxSkipMillis, so that data removed locally (e.g. by
+ * DataNotReceivedAction or admin-operations) is restored.
+ *
+ * A changed response is only remembered when {@link #commit()} is called after it has been processed - if processing
+ * fails, the same response is processed again on the next poll.
+ */
+class PollingChangeDetector {
+
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+    static final String IF_NONE_MATCH = "If-None-Match";
+    static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final long maxSkipMillis;
+
+    private String etag;
+    private String lastModified;
+    private byte[] payloadHash;
+    private long lastProcessed;
+
+    private String pendingEtag;
+    private String pendingLastModified;
+    private byte[] pendingPayloadHash;
+
+    PollingChangeDetector(long maxSkipMillis) {
+        this.maxSkipMillis = maxSkipMillis;
+    }
+
+    /**
+     * Adds conditional headers to the request if the producer has provided ETag or Last-Modified
+     */
+    synchronized void addConditionalHeaders(Message request) {
+        if (isRefreshDue()) {
+            return;
+        }
+        if (etag != null) {
+            request.setHeader(IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            request.setHeader(IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Checks if the response differs from the previous one. The body is converted to byte[] when hashed.
+     */
+    synchronized PollingStatus checkResponse(Message response) {
+        Integer responseCode = response.getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+        if (responseCode != null && responseCode == HTTP_NOT_MODIFIED) {
+            return PollingStatus.NOT_MODIFIED;
+        }
+
+        String responseEtag = response.getHeader(ETAG, String.class);
+        String responseLastModified = response.getHeader(LAST_MODIFIED, String.class);
+
+        byte[] payload = response.getBody(byte[].class);
+        response.setBody(payload);
+
+        byte[] hash = hash(payload);
+        if (!isRefreshDue() && Arrays.equals(hash, payloadHash)) {
+            // Same data as already processed
+            etag = responseEtag;
+            lastModified = responseLastModified;
+            return PollingStatus.DUPLICATE;
+        }
+
+        pendingEtag = responseEtag;
+        pendingLastModified = responseLastModified;
+        pendingPayloadHash = hash;
+        return PollingStatus.PROCESSED;
+    }
+
+    /**
+     * Remembers the last response returned as PROCESSED - called when it has been processed successfully
+     */
+    synchronized void commit() {
+        if (pendingPayloadHash == null) {
+            return;
+        }
+        etag = pendingEtag;
+        lastModified = pendingLastModified;
+        payloadHash = pendingPayloadHash;
+        lastProcessed = System.currentTimeMillis();
+
+        pendingEtag = null;
+        pendingLastModified = null;
+        pendingPayloadHash = null;
+    }
+
+    private boolean isRefreshDue() {
+        return System.currentTimeMillis() - lastProcessed >= maxSkipMillis;
+    }
+
+    private static byte[] hash(byte[] payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (payload != null) {
+                digest.update(payload);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -16,8 +16,11 @@
 package no.rutebanken.anshar.routes.siri;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.metrics.PollingStatus;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
 import no.rutebanken.anshar.routes.siri.helpers.SiriRequestFactory;
+import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import org.apache.camel.Exchange;
@@ -32,6 +35,8 @@ import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
 
 public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilder {
 
+    private static final String POLLING_STATUS = "AnsharPollingStatus";
+
     public Siri20ToSiriRS20RequestResponse(AnsharConfiguration config, SubscriptionSetup subscriptionSetup, SubscriptionManager subscriptionManager) {
         super(config, subscriptionManager);
         this.subscriptionSetup = subscriptionSetup;
@@ -46,6 +51,17 @@ public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilde
 
         String httpOptions = getTimeout();
 
+        PrometheusMetricsService metrics = ApplicationContextHolder.getContext().getBean(PrometheusMetricsService.class);
+
+        // Skips responses that are unchanged since last poll
+        PollingChangeDetector changeDetector;
+        if (config.isPollingChangeDetection()) {
+            changeDetector = new PollingChangeDetector(config.getPollingMaxSkipSeconds() * 1000L);
+            httpOptions += "&okStatusCodeRange=200-299,304";
+        } else {
+            changeDetector = null;
+        }
+
         String monitoringRouteId = "monitor.rs.20." + subscriptionSetup.getSubscriptionType() + "." + subscriptionSetup.getVendor();
         boolean releaseLeadershipOnError;
         if (subscriptionSetup.getSubscriptionMode() == SubscriptionSetup.SubscriptionMode.REQUEST_RESPONSE |
@@ -74,15 +90,39 @@ public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilde
             .setHeader(Exchange.CONTENT_TYPE, constant(subscriptionSetup.getContentType())) // Necessary when talking to Microsoft web services
             .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.POST))
             .process(addCustomHeaders())
-            .to("log:request:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+            .process(p -> {
+                if (changeDetector != null) {
+                    changeDetector.addConditionalHeaders(p.getMessage());
+                }
+            })
+            .to("log:request:" + getClass().getSimpleName() + "?level=DEBUG&showAll=true&multiline=true")
             .doTry()
                 .to(getRequestUrl(subscriptionSetup, httpOptions))
-                .setHeader("CamelHttpPath", constant("/appContext" + subscriptionSetup.buildUrl(false)))
-                .log("Got response " + subscriptionSetup.toString())
-                .to("log:response:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
-                .setHeader(PARAM_SUBSCRIPTION_ID, simple(subscriptionSetup.getSubscriptionId()))
-                .setHeader(INTERNAL_SIRI_DATA_TYPE, simple(subscriptionSetup.getSubscriptionType().name()))
-                .to("direct:enqueue.message")
+                .process(p -> {
+                    PollingStatus status = changeDetector != null ? changeDetector.checkResponse(p.getMessage()) : PollingStatus.PROCESSED;
+                    p.setProperty(POLLING_STATUS, status);
+                    metrics.registerPolling(subscriptionSetup.getSubscriptionType(), subscriptionSetup.getDatasetId(), status);
+                })
+                .choice()
+                    .when(exchangeProperty(POLLING_STATUS).isNotEqualTo(PollingStatus.PROCESSED))
+                        .log("Got unchanged response (${exchangeProperty." + POLLING_STATUS + "}) - skipping " + subscriptionSetup.toString())
+                        // Producer is alive, and data is still current
+                        .process(p -> subscriptionManager.dataReceived(subscriptionSetup.getSubscriptionId()))
+                    .otherwise()
+                        .setHeader("CamelHttpPath", constant("/appContext" + subscriptionSetup.buildUrl(false)))
+                        .log("Got response " + subscriptionSetup.toString())
+                        .to("log:response:" + getClass().getSimpleName() + "?level=DEBUG&showAll=true&multiline=true")
+                        .setHeader(PARAM_SUBSCRIPTION_ID, simple(subscriptionSetup.getSubscriptionId()))
+                        .setHeader(INTERNAL_SIRI_DATA_TYPE, simple(subscriptionSetup.getSubscriptionType().name()))
+                        .to("direct:enqueue.message")
+                        .process(p -> {
+                            // Response is only treated as duplicate when it has been enqueued
+                            if (changeDetector != null) {
+                                changeDetector.commit();
+                            }
+                        })
+                .end()
+            .endDoTry()
             .doCatch(Exception.class)
                 .log("Caught exception -" + (releaseLeadershipOnError ? "":" NOT") + " releasing leadership: " + subscriptionSetup.toString())
                 .to("log:response:" + getClass().getSimpleName() + "?showCaughtException=true&showAll=true&multiline=true")
@@ -29,6 +29,7 @@ import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
+import org.apache.camel.Exchange;
 import org.apache.camel.model.rest.RestParamType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,8 +40,11 @@ import uk.org.siri.siri21.VehicleActivityStructure;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_DATASET_ID;
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_EXCLUDED_DATASET_ID;
@@ -72,6 +76,9 @@ public class SiriLiteRoute extends RestRouteBuilder {
     @Autowired
     private SiriObjectFactory siriObjectFactory;
 
+    @Autowired
+    private SiriResponseCache responseCache;
+
     @Override
     public void configure() throws Exception {
         super.configure();
@@ -122,22 +129,26 @@ public class SiriLiteRoute extends RestRouteBuilder {
                         if (maxSizeStr != null) {
                             maxSize = maxSizeStr.intValue();
                         }
+                        final int limit = maxSize;
 
-                        Siri response = situations.createServiceDelivery(requestorId, datasetId, etClientName, maxSize);
-
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                            SiriDataType.SITUATION_EXCHANGE,
-                            SiriHandler.getIdMappingPolicy(originalId)
-                        );
-                        if ("test".equals(originalId)) {
-                            outboundAdapters = null;
+                        SiriResponseCache.Key cacheKey = null;
+                        if (requestorId == null) {
+                            cacheKey = createCacheKey(p, "sx", SiriDataType.SITUATION_EXCHANGE, datasetId, null, originalId, limit);
                         }
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
-
-                        metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
                         HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
-                        streamOutput(p, response, out);
+                        streamOutput(p, out, cacheKey, situations.getDataVersion(datasetId, null), () -> {
+                            Siri response = situations.createServiceDelivery(requestorId, datasetId, etClientName, limit);
+
+                            List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                SiriDataType.SITUATION_EXCHANGE,
+                                SiriHandler.getIdMappingPolicy(originalId)
+                            );
+                            if ("test".equals(originalId)) {
+                                outboundAdapters = null;
+                            }
+                            return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        });
                     })
                     .log("RequestTracer - Request done (SX)")
                 .otherwise()
@@ -171,27 +182,37 @@ public class SiriLiteRoute extends RestRouteBuilder {
                             }
                         }
 
-                        Siri response;
-                        if (lineRef != null) {
-                            response = vehicleActivities.createServiceDelivery(lineRef);
-                        } else {
-                            response = vehicleActivities.createServiceDelivery(requestorId, datasetId, etClientName, excludedIdList, maxSize);
-                        }
+                        final int limit = maxSize;
 
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                            SiriDataType.VEHICLE_MONITORING,
-                            SiriHandler.getIdMappingPolicy(originalId)
-                        );
-                        if ("test".equals(originalId)) {
-                            outboundAdapters = null;
+                        SiriResponseCache.Key cacheKey = null;
+                        long dataVersion = 0;
+                        if (lineRef != null) {
+                            cacheKey = createCacheKey(p, "vm", SiriDataType.VEHICLE_MONITORING, null, lineRef, originalId);
+                            dataVersion = vehicleActivities.getDataVersion(null, lineRef);
+                        } else if (requestorId == null) {
+                            cacheKey = createCacheKey(p, "vm", SiriDataType.VEHICLE_MONITORING, datasetId, null, originalId, excludedIdList, limit);
+                            dataVersion = vehicleActivities.getDataVersion(isEmpty(excludedIdList) ? datasetId : null, null);
                         }
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
-
-                        metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
                         HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                        streamOutput(p, response, out);
+                        streamOutput(p, out, cacheKey, dataVersion, () -> {
+                            Siri response;
+                            if (lineRef != null) {
+                                response = vehicleActivities.createServiceDelivery(lineRef);
+                            } else {
+                                response = vehicleActivities.createServiceDelivery(requestorId, datasetId, etClientName, excludedIdList, limit);
+                            }
+
+                            List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                SiriDataType.VEHICLE_MONITORING,
+                                SiriHandler.getIdMappingPolicy(originalId)
+                            );
+                            if ("test".equals(originalId)) {
+                                outboundAdapters = null;
+                            }
+                            return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        });
                     })
                     .log("RequestTracer - Request done (VM)")
                 .otherwise()
@@ -231,28 +252,39 @@ public class SiriLiteRoute extends RestRouteBuilder {
                             int minutes = Integer.parseInt(previewIntervalMinutesStr);
                             previewIntervalMillis = minutes*60*1000;
                         }
+                        final int limit = maxSize;
+                        final long previewInterval = previewIntervalMillis;
 
-                        Siri response;
+                        // Content for previewInterval depends on time of request - not cached
+                        SiriResponseCache.Key cacheKey = null;
+                        long dataVersion = 0;
                         if (lineRef != null) {
-                            response = estimatedTimetables.createServiceDelivery(lineRef);
-                        } else {
-                            response = estimatedTimetables.createServiceDelivery(requestorId, datasetId, etClientName, excludedIdList, maxSize, previewIntervalMillis);
-                        }
-
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                            SiriDataType.ESTIMATED_TIMETABLE,
-                            SiriHandler.getIdMappingPolicy(originalId)
-                        );
-                        if ("test".equals(originalId)) {
-                            outboundAdapters = null;
+                            cacheKey = createCacheKey(p, "et", SiriDataType.ESTIMATED_TIMETABLE, null, lineRef, originalId);
+                            dataVersion = estimatedTimetables.getDataVersion(null, lineRef);
+                        } else if (requestorId == null && previewInterval < 0) {
+                            cacheKey = createCacheKey(p, "et", SiriDataType.ESTIMATED_TIMETABLE, datasetId, null, originalId, excludedIdList, limit);
+                            dataVersion = estimatedTimetables.getDataVersion(isEmpty(excludedIdList) ? datasetId : null, null);
                         }
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
-
-                        metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
                         HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                        streamOutput(p, response, out);
+                        streamOutput(p, out, cacheKey, dataVersion, () -> {
+                            Siri response;
+                            if (lineRef != null) {
+                                response = estimatedTimetables.createServiceDelivery(lineRef);
+                            } else {
+                                response = estimatedTimetables.createServiceDelivery(requestorId, datasetId, etClientName, excludedIdList, limit, previewInterval);
+                            }
+
+                            List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                SiriDataType.ESTIMATED_TIMETABLE,
+                                SiriHandler.getIdMappingPolicy(originalId)
+                            );
+                            if ("test".equals(originalId)) {
+                                outboundAdapters = null;
+                            }
+                            return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        });
                     })
                     .log("RequestTracer - Request done (ET)")
                 .otherwise()
@@ -268,22 +300,21 @@ public class SiriLiteRoute extends RestRouteBuilder {
                 .process(p -> {
 
 
-                    logger.info("Fetching monitored ET-data");
-                    Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllMonitored());
-
-                    List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                                                                                    SiriDataType.ESTIMATED_TIMETABLE,
-                                                                                    OutboundIdMappingPolicy.DEFAULT
-                                                                                );
+                    SiriResponseCache.Key cacheKey = createCacheKey(p, "et-monitored", SiriDataType.ESTIMATED_TIMETABLE, null, null, null);
 
-                    logger.info("Transforming monitored ET-data");
-                    response = SiriValueTransformer.transform(response, outboundAdapters, false, true);
+                    HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+                    streamOutput(p, out, cacheKey, estimatedTimetables.getDataVersion(null, null), () -> {
+                        logger.info("Fetching monitored ET-data");
+                        Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllMonitored());
 
-                    metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                                                                        SiriDataType.ESTIMATED_TIMETABLE,
+                                                                                        OutboundIdMappingPolicy.DEFAULT
+                                                                                    );
 
-                    HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
-                    logger.info("Streaming monitored ET-data");
-                    streamOutput(p, response, out);
+                        logger.info("Transforming monitored ET-data");
+                        return SiriValueTransformer.transform(response, outboundAdapters, false, true);
+                    });
                     logger.info("Done processing monitored ET-data");
                 })
                 .log("RequestTracer - Request done (ET)")
@@ -302,25 +333,27 @@ public class SiriLiteRoute extends RestRouteBuilder {
                         String datasetId = p.getIn().getHeader(PARAM_DATASET_ID, String.class);
                         String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                        logger.info("Fetching cached SX-data");
-                        Siri response = siriObjectFactory.createSXServiceDelivery(situations.getAllCachedUpdates(requestorId,
-                            datasetId, clientTrackingName
-                        ));
-
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                                                                                        SiriDataType.SITUATION_EXCHANGE,
-                                                                                        OutboundIdMappingPolicy.DEFAULT
-                                                                                    );
+                        SiriResponseCache.Key cacheKey = null;
+                        if (requestorId == null) {
+                            cacheKey = createCacheKey(p, "sx-cache", SiriDataType.SITUATION_EXCHANGE, datasetId, null, null);
+                        }
 
-                        logger.info("Transforming cached SX-data");
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                        metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+                        streamOutput(p, out, cacheKey, situations.getDataVersion(datasetId, null), () -> {
+                            logger.info("Fetching cached SX-data");
+                            Siri response = siriObjectFactory.createSXServiceDelivery(situations.getAllCachedUpdates(requestorId,
+                                datasetId, clientTrackingName
+                            ));
 
-                        HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+                            List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                                                                            SiriDataType.SITUATION_EXCHANGE,
+                                                                                            OutboundIdMappingPolicy.DEFAULT
+                                                                                        );
 
-                        logger.info("Streaming cached SX-data");
-                        streamOutput(p, response, out);
+                            logger.info("Transforming cached SX-data");
+                            return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        });
                         logger.info("Done processing cached SX-data");
                     })
                     .log("RequestTracer - Request done (SX)")
@@ -341,38 +374,41 @@ public class SiriLiteRoute extends RestRouteBuilder {
                         String lineRef = p.getIn().getHeader(PARAM_LINE_REF, String.class);
                         String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                        logger.info("Fetching cached VM-data");
-                        final Collection<VehicleActivityStructure> cachedUpdates = vehicleActivities
-                            .getAllCachedUpdates(requestorId, datasetId, lineRef, clientTrackingName, maxSize);
                         List<String> excludedIdList = getParameterValuesAsList(p.getIn(), PARAM_EXCLUDED_DATASET_ID);
 
-                        if (excludedIdList != null && !excludedIdList.isEmpty()) {
-                            cachedUpdates.removeIf(vehicle -> {
-                                if (vehicle.getMonitoredVehicleJourney() != null &&
-                                    vehicle.getMonitoredVehicleJourney().getDataSource() != null) {
-                                    // Return 'true' if codespaceId should be excluded
-                                    return excludedIdList.contains(vehicle.getMonitoredVehicleJourney().getDataSource());
-                                }
-                                return false;
-                            });
+                        SiriResponseCache.Key cacheKey = null;
+                        if (requestorId == null) {
+                            cacheKey = createCacheKey(p, "vm-cache", SiriDataType.VEHICLE_MONITORING, datasetId, lineRef, null, excludedIdList, maxSize);
                         }
 
-                        Siri response = siriObjectFactory.createVMServiceDelivery(cachedUpdates);
-
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                                                                                        SiriDataType.VEHICLE_MONITORING,
-                                                                                        OutboundIdMappingPolicy.DEFAULT
-                                                                                    );
+                        HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                        logger.info("Transforming cached VM-data");
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        streamOutput(p, out, cacheKey, vehicleActivities.getDataVersion(datasetId, lineRef), () -> {
+                            logger.info("Fetching cached VM-data");
+                            final Collection<VehicleActivityStructure> cachedUpdates = vehicleActivities
+                                .getAllCachedUpdates(requestorId, datasetId, lineRef, clientTrackingName, maxSize);
+
+                            if (excludedIdList != null && !excludedIdList.isEmpty()) {
+                                cachedUpdates.removeIf(vehicle -> {
+                                    if (vehicle.getMonitoredVehicleJourney() != null &&
+                                        vehicle.getMonitoredVehicleJourney().getDataSource() != null) {
+                                        // Return 'true' if codespaceId should be excluded
+                                        return excludedIdList.contains(vehicle.getMonitoredVehicleJourney().getDataSource());
+                                    }
+                                    return false;
+                                });
+                            }
 
-                        metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+                            Siri response = siriObjectFactory.createVMServiceDelivery(cachedUpdates);
 
-                        HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+                            List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                                                                            SiriDataType.VEHICLE_MONITORING,
+                                                                                            OutboundIdMappingPolicy.DEFAULT
+                                                                                        );
 
-                        logger.info("Streaming cached VM-data");
-                        streamOutput(p, response, out);
+                            logger.info("Transforming cached VM-data");
+                            return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        });
                         logger.info("Done processing cached VM-data");
                     })
                     .log("RequestTracer - Request done (VM)")
@@ -393,25 +429,27 @@ public class SiriLiteRoute extends RestRouteBuilder {
                     String lineRef = p.getIn().getHeader(PARAM_LINE_REF, String.class);
                     String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                    logger.info("Fetching cached ET-data");
-                    Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(requestorId,
-                            datasetId, lineRef, clientTrackingName, maxSize
-                    ));
-
-                    List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                            SiriDataType.ESTIMATED_TIMETABLE,
-                            OutboundIdMappingPolicy.DEFAULT
-                    );
+                    SiriResponseCache.Key cacheKey = null;
+                    if (requestorId == null) {
+                        cacheKey = createCacheKey(p, "et-cache", SiriDataType.ESTIMATED_TIMETABLE, datasetId, lineRef, null, maxSize);
+                    }
 
-                    logger.info("Transforming cached ET-data");
-                    response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                    HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                    metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+                    streamOutput(p, out, cacheKey, estimatedTimetables.getDataVersion(datasetId, lineRef), () -> {
+                        logger.info("Fetching cached ET-data");
+                        Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(requestorId,
+                                datasetId, lineRef, clientTrackingName, maxSize
+                        ));
 
-                    HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                SiriDataType.ESTIMATED_TIMETABLE,
+                                OutboundIdMappingPolicy.DEFAULT
+                        );
 
-                    logger.info("Streaming cached ET-data");
-                    streamOutput(p, response, out);
+                        logger.info("Transforming cached ET-data");
+                        return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                    });
                     logger.info("Done processing cached ET-data");
                 })
                 .log("RequestTracer - Request done (ET)")
@@ -428,26 +466,25 @@ public class SiriLiteRoute extends RestRouteBuilder {
             .when(e -> isTrackingHeaderAcceptable(e))
             .process(p -> {
 
-                logger.info("Fetching cached ET-data");
-
                 String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(null, null, clientTrackingName));
+                SiriResponseCache.Key cacheKey = createCacheKey(p, "et-monitored-cache", SiriDataType.ESTIMATED_TIMETABLE, null, null, null);
 
-                List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                    SiriDataType.ESTIMATED_TIMETABLE,
-                    OutboundIdMappingPolicy.DEFAULT
-                );
+                HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
 
-                logger.info("Transforming cached ET-data");
-                response = SiriValueTransformer.transform(response, outboundAdapters, false, true);
+                streamOutput(p, out, cacheKey, estimatedTimetables.getDataVersion(null, null), () -> {
+                    logger.info("Fetching cached ET-data");
 
-                metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+                    Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(null, null, clientTrackingName));
 
-                HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+                    List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                        SiriDataType.ESTIMATED_TIMETABLE,
+                        OutboundIdMappingPolicy.DEFAULT
+                    );
 
-                logger.info("Streaming cached ET-data");
-                streamOutput(p, response, out);
+                    logger.info("Transforming cached ET-data");
+                    return SiriValueTransformer.transform(response, outboundAdapters, false, true);
+                });
                 logger.info("Done processing cached ET-data");
             })
             .log("RequestTracer - Request done (ET)")
@@ -457,6 +494,43 @@ public class SiriLiteRoute extends RestRouteBuilder {
         ;
     }
 
+    /**
+     * Creates and streams response. Responses that do not depend on the requestor (i.e. cacheKey is set) are
+     * served from the response-cache as long as the data-version is unchanged.
+     */
+    private void streamOutput(Exchange p, HttpServletResponse out, SiriResponseCache.Key cacheKey, long dataVersion, Callable<Siri> responseFactory) throws Exception {
+        if (cacheKey == null || !responseCache.isEnabled()) {
+            Siri response = responseFactory.call();
+            metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
+            streamOutput(p, response, out);
+            return;
+        }
+
+        final AtomicBoolean created = new AtomicBoolean();
+        SiriResponseCache.CachedResponse response = responseCache.get(cacheKey, dataVersion, () -> {
+            created.set(true);
+            Siri siri = responseFactory.call();
+            long count = metrics.countOutgoingData(siri, SubscriptionSetup.SubscriptionMode.LITE);
+            String mediaType = resolveMediaType(p);
+            return new SiriResponseCache.CachedResponse(encodeOutput(siri, mediaType, isSiri21Requested(p)), mediaType, count);
+        });
+
+        if (!created.get()) {
+            metrics.countOutgoingData(cacheKey.getDataType(), SubscriptionSetup.SubscriptionMode.LITE, response.getElementCount());
+        }
+        streamOutput(p, response, out, configuration.isResponseCacheGzipEnabled());
+    }
+
+    private SiriResponseCache.Key createCacheKey(Exchange p, String endpoint, SiriDataType dataType, String datasetId,
+                                                 String lineRef, String idMappingPolicy, Object... parameters) {
+        return new SiriResponseCache.Key(endpoint, dataType, datasetId, lineRef, idMappingPolicy, Arrays.asList(parameters),
+                isSiri21Requested(p), resolveMediaType(p));
+    }
+
+    private static boolean isEmpty(List<String> list) {
+        return list == null || list.isEmpty();
+    }
+
     /**
      * If http-parameter requestorId is not provided in request, it will be generated based on
      * client IP and requested resource for uniqueness
@@ -0,0 +1,231 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of already encoded responses for requests that do not depend on the requestor.
+ *
+ * Each entry is stored with the data-version it was created from, and is replaced when the data has changed.
+ * Concurrent requests for the same key while a response is being created wait for - and reuse - that response.
+ */
+@Service
+public class SiriResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiriResponseCache.class);
+
+    @Autowired
+    private AnsharConfiguration configuration;
+
+    private Cache<Key, Entry> cache;
+
+    @PostConstruct
+    void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getResponseCacheMaxEntries())
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return configuration.isResponseCacheEnabled();
+    }
+
+    /**
+     * Returns cached response if it was created from the current data-version (or is within the allowed
+     * staleness), otherwise a new response is created by the provided loader.
+     */
+    public CachedResponse get(Key key, long dataVersion, Callable<CachedResponse> loader) throws Exception {
+        final ConcurrentMap<Key, Entry> entries = cache.asMap();
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && isValid(entry, dataVersion)) {
+                return entry.await();
+            }
+
+            Entry newEntry = new Entry(dataVersion);
+            boolean installed = entry == null ?
+                    entries.putIfAbsent(key, newEntry) == null :
+                    entries.replace(key, entry, newEntry);
+
+            if (installed) {
+                try {
+                    CachedResponse response = loader.call();
+                    newEntry.response.complete(response);
+                    logger.debug("Created cached response for {}, version {}", key, dataVersion);
+                    return response;
+                } catch (Exception e) {
+                    entries.remove(key, newEntry);
+                    newEntry.response.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            // Another request replaced the entry - retry
+        }
+    }
+
+    private boolean isValid(Entry entry, long dataVersion) {
+        if (entry.dataVersion >= dataVersion) {
+            return true;
+        }
+        long maxStalenessMillis = TimeUnit.SECONDS.toMillis(configuration.getResponseCacheMaxStalenessSeconds());
+        return System.currentTimeMillis() - entry.created < maxStalenessMillis;
+    }
+
+    private static class Entry {
+        private final long dataVersion;
+        private final long created = System.currentTimeMillis();
+        private final CompletableFuture<CachedResponse> response = new CompletableFuture<>();
+
+        private Entry(long dataVersion) {
+            this.dataVersion = dataVersion;
+        }
+
+        private CachedResponse await() throws Exception {
+            try {
+                return response.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Identifies a response - all request-parameters affecting the content must be included
+     */
+    public static class Key {
+        private final String endpoint;
+        private final SiriDataType dataType;
+        private final String datasetId;
+        private final String lineRef;
+        private final String idMappingPolicy;
+        private final List<Object> parameters;
+        private final boolean siri21Version;
+        private final String mediaType;
+
+        public Key(String endpoint, SiriDataType dataType, String datasetId, String lineRef, String idMappingPolicy,
+                   List<Object> parameters, boolean siri21Version, String mediaType) {
+            this.endpoint = endpoint;
+            this.dataType = dataType;
+            this.datasetId = datasetId;
+            this.lineRef = lineRef;
+            this.idMappingPolicy = idMappingPolicy;
+            this.parameters = parameters;
+            this.siri21Version = siri21Version;
+            this.mediaType = mediaType;
+        }
+
+        public SiriDataType getDataType() {
+            return dataType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return siri21Version == key.siri21Version &&
+                    Objects.equals(endpoint, key.endpoint) &&
+                    dataType == key.dataType &&
+                    Objects.equals(datasetId, key.datasetId) &&
+                    Objects.equals(lineRef, key.lineRef) &&
+                    Objects.equals(idMappingPolicy, key.idMappingPolicy) &&
+                    Objects.equals(parameters, key.parameters) &&
+                    Objects.equals(mediaType, key.mediaType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, dataType, datasetId, lineRef, idMappingPolicy, parameters, siri21Version, mediaType);
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + "[" + dataType + ", datasetId=" + datasetId + ", lineRef=" + lineRef +
+                    ", idMappingPolicy=" + idMappingPolicy + ", parameters=" + parameters +
+                    ", siri21=" + siri21Version + ", mediaType=" + mediaType + "]";
+        }
+    }
+
+    /**
+     * Encoded response, with the number of elements included for metrics
+     */
+    public static class CachedResponse {
+        private final byte[] body;
+        private final String mediaType;
+        private final long elementCount;
+        private volatile byte[] gzippedBody;
+
+        public CachedResponse(byte[] body, String mediaType, long elementCount) {
+            this.body = body;
+            this.mediaType = mediaType;
+            this.elementCount = elementCount;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public long getElementCount() {
+            return elementCount;
+        }
+
+        /**
+         * @return gzipped body - compressed once on first request
+         */
+        public byte[] getGzippedBody() throws IOException {
+            if (gzippedBody == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                    gzip.write(body);
+                }
+                gzippedBody = bytes.toByteArray();
+            }
+            return gzippedBody;
+        }
+    }
+}
@@ -322,9 +322,7 @@ public class SiriHandler {
      */
     private void processSiriClientRequest(String subscriptionId, InputStream xml)
             throws XMLStreamException, JAXBException {
-        SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
-
-        if (subscriptionSetup != null) {
+        if (subscriptionManager.get(subscriptionId) != null) {
 
             int receivedBytes;
             try {
@@ -336,6 +334,28 @@ long t1 = System.currentTimeMillis();
             Siri incoming = SiriXml.parseXml(xml);
 long t2 = System.currentTimeMillis();
             logger.info("Parsing XML took {} ms, {} bytes", (t2-t1), receivedBytes);
+
+            processSiriClientRequest(subscriptionId, incoming, receivedBytes);
+        } else {
+            logger.debug("ServiceDelivery for invalid subscriptionId [{}] ignored.", subscriptionId);
+        }
+    }
+
+    /**
+     * Handling incoming data from external servers that has already been parsed, i.e. binary queue-payload
+     *
+     * @param subscriptionId
+     * @param incoming
+     * @param receivedBytes Size of the received payload
+     */
+    public void handleIncomingSiri(String subscriptionId, Siri incoming, int receivedBytes) {
+        processSiriClientRequest(subscriptionId, incoming, receivedBytes);
+    }
+
+    private void processSiriClientRequest(String subscriptionId, Siri incoming, int receivedBytes) {
+        SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
+
+        if (subscriptionSetup != null) {
             if (incoming == null) {
                 return;
             }
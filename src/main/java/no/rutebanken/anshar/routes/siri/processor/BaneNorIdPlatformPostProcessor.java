@@ -29,9 +29,9 @@ import uk.org.siri.siri21.NaturalLanguageStringStructure;
 import uk.org.siri.siri21.RecordedCall;
 import uk.org.siri.siri21.Siri;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static no.rutebanken.anshar.routes.siri.transformer.MappingNames.STOP_AND_PLATFORM_TO_NSR;
 
@@ -47,7 +47,7 @@ public class BaneNorIdPlatformPostProcessor extends ValueAdapter implements Post
     public BaneNorIdPlatformPostProcessor(SiriDataType type, String datasetId) {
         this.datasetId = datasetId;
         this.type = type;
-        unmappedAlreadyAdded = new HashSet<>();
+        unmappedAlreadyAdded = ConcurrentHashMap.newKeySet();
     }
 
 
@@ -70,13 +70,11 @@ public class BaneNorIdPlatformPostProcessor extends ValueAdapter implements Post
         String id = stopPointRefValue + ":" + platform;
         String nsrId = stopPlaceService.get(id);
         if (nsrId == null) {
-            if (unmappedAlreadyAdded.add(id)) {
-                healthManager.addUnmappedId(type, datasetId, id);
-            }
+            unmappedAlreadyAdded.add(id);
+            healthManager.addUnmappedId(type, datasetId, id);
             return null;
-        } else if (unmappedAlreadyAdded.contains(id)) {
+        } else if (unmappedAlreadyAdded.remove(id)) {
             healthManager.removeUnmappedId(type, datasetId, id);
-            unmappedAlreadyAdded.remove(id);
         }
         return OutboundIdAdapter.createCombinedId(stopPointRefValue, nsrId);
     }
@@ -26,6 +26,7 @@ import uk.org.siri.siri21.SituationExchangeDeliveryStructure;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 public class RemoveEmojiPostProcessor extends ValueAdapter implements PostProcessor {
     private Logger logger = LoggerFactory.getLogger(RemoveEmojiPostProcessor.class);
@@ -100,4 +101,19 @@ public class RemoveEmojiPostProcessor extends ValueAdapter implements PostProces
     private boolean keepCharacter(char c) {
         return (c > 30 && c <= 500) || specialCharactersToKeep.contains(c);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RemoveEmojiPostProcessor)) return false;
+
+        RemoveEmojiPostProcessor that = (RemoveEmojiPostProcessor) o;
+
+        return outboundIdMappingPolicy == that.outboundIdMappingPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), outboundIdMappingPolicy);
+    }
 }
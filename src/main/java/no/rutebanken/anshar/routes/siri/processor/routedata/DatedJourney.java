@@ -0,0 +1,41 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+/**
+ * The parts of a NeTEx DatedServiceJourney needed to resolve planned cancellations
+ */
+final class DatedJourney {
+
+    private final String operatingDayRef;
+    private final boolean cancelled;
+
+    DatedJourney(String operatingDayRef, boolean cancelled) {
+        this.operatingDayRef = operatingDayRef;
+        this.cancelled = cancelled;
+    }
+
+    String getOperatingDayRef() {
+        return operatingDayRef;
+    }
+
+    /**
+     * @return true if the journey is planned as cancelled or replaced
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Stop times for a single trip, read directly from a memory-mapped route-data snapshot.
+ */
+final class MappedStopTimes extends AbstractList<StopTime> implements RandomAccess {
+
+    static final int BYTES_PER_STOP = 4 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int size;
+    private final String[] strings;
+
+    MappedStopTimes(ByteBuffer buffer, int offset, int size, String[] strings) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.size = size;
+        this.strings = strings;
+    }
+
+    @Override
+    public StopTime get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        // Absolute reads only - buffer is shared between threads
+        int position = offset + index * BYTES_PER_STOP;
+        int stopId = buffer.getInt(position);
+        return new StopTime(
+                stopId >= 0 ? strings[stopId] : null,
+                buffer.getInt(position + 4),
+                buffer.getInt(position + 8),
+                buffer.getInt(position + 12)
+        );
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
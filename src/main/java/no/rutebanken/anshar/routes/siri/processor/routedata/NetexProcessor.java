@@ -15,86 +15,72 @@
 
 package no.rutebanken.anshar.routes.siri.processor.routedata;
 
-import org.apache.commons.io.IOUtils;
-import org.rutebanken.netex.model.AllVehicleModesOfTransportEnumeration;
-import org.rutebanken.netex.model.Common_VersionFrameStructure;
-import org.rutebanken.netex.model.CompositeFrame;
-import org.rutebanken.netex.model.DatedServiceJourney;
-import org.rutebanken.netex.model.DayTypeAssignment;
-import org.rutebanken.netex.model.DayTypeRefStructure;
-import org.rutebanken.netex.model.JourneyPattern;
-import org.rutebanken.netex.model.JourneyPatternsInFrame_RelStructure;
-import org.rutebanken.netex.model.JourneyRefStructure;
-import org.rutebanken.netex.model.Journey_VersionStructure;
-import org.rutebanken.netex.model.JourneysInFrame_RelStructure;
 import org.rutebanken.netex.model.LocationStructure;
-import org.rutebanken.netex.model.OperatingDay;
-import org.rutebanken.netex.model.OperatingDayRefStructure;
-import org.rutebanken.netex.model.OperatingDaysInFrame_RelStructure;
-import org.rutebanken.netex.model.PassengerStopAssignment;
-import org.rutebanken.netex.model.PointInLinkSequence_VersionedChildStructure;
-import org.rutebanken.netex.model.PublicationDeliveryStructure;
-import org.rutebanken.netex.model.Quay;
 import org.rutebanken.netex.model.ServiceAlterationEnumeration;
-import org.rutebanken.netex.model.ServiceCalendarFrame;
-import org.rutebanken.netex.model.ServiceFrame;
-import org.rutebanken.netex.model.ServiceJourney;
-import org.rutebanken.netex.model.SiteFrame;
-import org.rutebanken.netex.model.StopAssignment_VersionStructure;
-import org.rutebanken.netex.model.StopAssignmentsInFrame_RelStructure;
-import org.rutebanken.netex.model.StopPlace;
-import org.rutebanken.netex.model.StopPointInJourneyPattern;
-import org.rutebanken.netex.model.TimetableFrame;
-import org.rutebanken.netex.model.TimetabledPassingTime;
 import org.rutebanken.netex.model.VehicleModeEnumeration;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import java.io.ByteArrayInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.time.LocalDateTime;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+/**
+ * Streams NeTEx-files, and extracts only the data needed when processing ET-data.
+ *
+ * Zip-entries are parsed in parallel, and stop-ids are shared through the provided string-pool to avoid
+ * duplicates across trips and datasets.
+ */
 @SuppressWarnings("WeakerAccess")
 public class NetexProcessor {
 
-    private static JAXBContext jaxbContext;
-
-    private Map<String, DayTypeAssignment> dayTypeAssignmentByDayTypeId = new HashMap<>();
-    private Map<String, OperatingDay> operatingDaysById = new HashMap<>();
-    private Map<String, ServiceJourney> serviceJourneyById = new HashMap<>();
-    private Map<String, List<DatedServiceJourney>> datedServiceJourneyForServiceJourneyId = new HashMap<>();
-    private Map<String, String> quayIdByStopPointRef = new HashMap<>();
-    private Map<String, String> publicCodeByQuayId = new HashMap<>();
-    private Map<String, String> journeyPatternIdByServiceJourneyId = new HashMap<>();
-    private Map<String, List<PointInLinkSequence_VersionedChildStructure>> pointsInSequenceByJourneyPatternId = new HashMap<>();
-
-    private Map<String, List<StopTime>> tripStops = new HashMap<>();
-    private Map<String, Set<String>> trainNumberTrips = new HashMap<>();
-    private Map<String, List<ServiceDate>> tripDates = new HashMap<>();
-    private static Map<String, String> parentStops = new HashMap<>();
-    private Map<String, LocationStructure> locations = new HashMap<>();
-    private Map<String, VehicleModeEnumeration> modes = new HashMap<>();
-
-    static {
-        try {
-            jaxbContext = JAXBContext.newInstance(PublicationDeliveryStructure.class);
-        } catch (JAXBException e) {
-            e.printStackTrace();
-        }
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    private static final String RAIL = "rail";
+
+    private final Map<String, String> stringPool;
+
+    private final Map<String, ServiceDate> dateByDayTypeId = new ConcurrentHashMap<>();
+    private final Map<String, ServiceDate> operatingDaysById = new ConcurrentHashMap<>();
+    private final Map<String, ServiceJourneyData> serviceJourneyById = new ConcurrentHashMap<>();
+    private final Map<String, List<DatedJourney>> datedServiceJourneyForServiceJourneyId = new ConcurrentHashMap<>();
+    private final Map<String, String> quayIdByStopPointRef = new ConcurrentHashMap<>();
+    private final Map<String, String> publicCodeByQuayId = new ConcurrentHashMap<>();
+    private final Map<String, JourneyPatternData> journeyPatternById = new ConcurrentHashMap<>();
+
+    private final Map<String, List<StopTime>> tripStops = new HashMap<>();
+    private final Map<String, Set<String>> trainNumberTrips = new HashMap<>();
+    private final Map<String, List<ServiceDate>> tripDates = new HashMap<>();
+    private final Map<String, String> parentStops = new ConcurrentHashMap<>();
+    private final Map<String, LocationStructure> locations = new ConcurrentHashMap<>();
+    private final Map<String, VehicleModeEnumeration> modes = new ConcurrentHashMap<>();
+
+    public NetexProcessor() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param stringPool Shared pool for ids referenced from many objects
+     */
+    public NetexProcessor(Map<String, String> stringPool) {
+        this.stringPool = stringPool;
     }
 
     public Map<String, List<StopTime>> getTripStops() {
@@ -105,10 +91,11 @@ public class NetexProcessor {
         return trainNumberTrips;
     }
 
-    public Map<String, List<DatedServiceJourney>> getDatedServiceJourneyForServiceJourneyId() {
+    Map<String, List<DatedJourney>> getDatedServiceJourneyForServiceJourneyId() {
         return datedServiceJourneyForServiceJourneyId;
     }
-    public Map<String, OperatingDay> getOperatingDayRefs() {
+
+    public Map<String, ServiceDate> getOperatingDays() {
         return operatingDaysById;
     }
 
@@ -132,268 +119,552 @@ public class NetexProcessor {
         return modes;
     }
 
-    private Unmarshaller createUnmarshaller() throws JAXBException {
-        return jaxbContext.createUnmarshaller();
+    public void loadFiles(File file) throws IOException {
+        loadFiles(file, Runnable::run).join();
     }
 
-    public void loadFiles(File file) throws IOException {
+    /**
+     * Parses all entries in the zip-file using the provided executor
+     *
+     * @return Future completed when all entries are read, and trips are populated
+     */
+    public CompletableFuture<NetexProcessor> loadFiles(File file, Executor executor) throws IOException {
         ZipFile zipFile = new ZipFile(file, ZipFile.OPEN_READ);
-        zipFile.stream().forEach(entry -> loadFile(entry, zipFile));
-        populateTrips();
+
+        CompletableFuture<?>[] entries = zipFile.stream()
+                .map(entry -> CompletableFuture.runAsync(() -> loadFile(entry, zipFile), executor))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(entries)
+                .whenComplete((result, throwable) -> close(zipFile))
+                .thenApplyAsync(result -> {
+                    populateTrips();
+                    return this;
+                }, executor);
+    }
+
+    private static void close(ZipFile zipFile) {
+        try {
+            zipFile.close();
+        } catch (IOException e) {
+            // Ignore
+        }
     }
 
     private void populateTrips() {
-        for (ServiceJourney serviceJourney : serviceJourneyById.values()) {
-            String serviceJourneyId = serviceJourney.getId();
-            if (serviceJourney.getDayTypes() != null) {
+        for (ServiceJourneyData serviceJourney : serviceJourneyById.values()) {
+            String serviceJourneyId = serviceJourney.id;
+
+            if (serviceJourney.trainNumber != null && !serviceJourney.cancelled) {
+                trainNumberTrips.computeIfAbsent(serviceJourney.trainNumber, k -> new HashSet<>()).add(serviceJourneyId);
+            }
+
+            if (serviceJourney.dayTypeRefs != null) {
                 ArrayList<ServiceDate> dates = new ArrayList<>();
-                List<JAXBElement<? extends DayTypeRefStructure>> dayTypeRefs = serviceJourney.getDayTypes().getDayTypeRef();
-                for (JAXBElement<? extends DayTypeRefStructure> dayTypeRef : dayTypeRefs) {
-                    DayTypeAssignment dayTypeAssignment = dayTypeAssignmentByDayTypeId.get(dayTypeRef.getValue().getRef());
-                    if (dayTypeAssignment != null) {
-                        LocalDateTime date = dayTypeAssignment.getDate();
-                        final ServiceDate d = new ServiceDate(date.getYear(),
-                                date.getMonthValue(),
-                                date.getDayOfMonth()
-                        );
-                        dates.add(d);
+                for (String dayTypeRef : serviceJourney.dayTypeRefs) {
+                    ServiceDate date = dateByDayTypeId.get(dayTypeRef);
+                    if (date != null) {
+                        dates.add(date);
                     }
                 }
                 tripDates.put(serviceJourneyId, dates);
             } else if (datedServiceJourneyForServiceJourneyId.containsKey(serviceJourneyId)) {
-                List<DatedServiceJourney> datedServiceJourneys = datedServiceJourneyForServiceJourneyId.get(serviceJourneyId);
                 ArrayList<ServiceDate> dates = new ArrayList<>();
-                for (DatedServiceJourney dsj : datedServiceJourneys) {
-                    OperatingDayRefStructure operatingDayRef = dsj.getOperatingDayRef();
-                    OperatingDay operatingDay = operatingDaysById.get(operatingDayRef.getRef());
-                    if (operatingDay != null) {
-                        LocalDateTime date = operatingDay.getCalendarDate();
-                        final ServiceDate d = new ServiceDate(date.getYear(),
-                                date.getMonthValue(),
-                                date.getDayOfMonth()
-                        );
-                        dates.add(d);
+                for (DatedJourney dsj : datedServiceJourneyForServiceJourneyId.get(serviceJourneyId)) {
+                    ServiceDate date = operatingDaysById.get(dsj.getOperatingDayRef());
+                    if (date != null) {
+                        dates.add(date);
                     }
                 }
                 tripDates.put(serviceJourneyId, dates);
             }
-        }
 
-        for (Map.Entry<String, String> serviceJourneyIdAndJourneyPatternId : journeyPatternIdByServiceJourneyId.entrySet()) {
-            String journeyPatternId = serviceJourneyIdAndJourneyPatternId.getValue();
-            List<PointInLinkSequence_VersionedChildStructure> pointsInSequence = pointsInSequenceByJourneyPatternId.get(journeyPatternId);
-            String serviceJourneyId = serviceJourneyIdAndJourneyPatternId.getKey();
-            ServiceJourney serviceJourney = serviceJourneyById.get(serviceJourneyId);
-            ArrayList<StopTime> stopTimes = new ArrayList<>();
-            List<TimetabledPassingTime> passingTimes = serviceJourney.getPassingTimes().getTimetabledPassingTime();
-            for (PointInLinkSequence_VersionedChildStructure point : pointsInSequence) {
-                int order = point.getOrder().intValue() - 1; //We want order to start on 0, not 1 as they here
-                String stopPointRef = ((StopPointInJourneyPattern)point).getScheduledStopPointRef().getValue().getRef();
-                String quay = quayIdByStopPointRef.get(stopPointRef);
-                TimetabledPassingTime timetabledPassingTime = passingTimes.get(order);
-                int arrivalTime = getTimeInSecondsOfDay(timetabledPassingTime.getArrivalTime(), timetabledPassingTime.getArrivalDayOffset());
-                int departureTime = getTimeInSecondsOfDay(timetabledPassingTime.getDepartureTime(), timetabledPassingTime.getDepartureDayOffset());
-                //TODO: The if-statement below is there to give same result as the original gtfs service, remove it if it's not needed any more
-                if (arrivalTime == 0) {
-                    arrivalTime = departureTime;
-                } else if (departureTime == 0) {
-                    departureTime = arrivalTime;
+            if (serviceJourney.journeyPatternRef != null) {
+                JourneyPatternData journeyPattern = journeyPatternById.get(serviceJourney.journeyPatternRef);
+                if (journeyPattern != null) {
+                    tripStops.put(serviceJourneyId, createStopTimes(serviceJourney, journeyPattern));
                 }
-                stopTimes.add(new StopTime(quay, order, arrivalTime, departureTime));
             }
-            tripStops.put(serviceJourneyId, stopTimes);
         }
-
     }
 
-    private int getTimeInSecondsOfDay(LocalTime time, BigInteger dayOffset) {
-        if (time == null) return 0;
-        int seconds = time.toSecondOfDay();
-        if (dayOffset != null) {
-            seconds += dayOffset.intValue() * 86400; //24x60x60
+    private TripStopTimes createStopTimes(ServiceJourneyData serviceJourney, JourneyPatternData journeyPattern) {
+        int count = journeyPattern.stopPointRefs.length;
+        String[] stopIds = new String[count];
+        int[] stopSequences = new int[count];
+        int[] arrivalTimes = new int[count];
+        int[] departureTimes = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            int order = journeyPattern.orders[i] - 1; //We want order to start on 0, not 1 as they here
+            int arrivalTime = serviceJourney.arrivalTimes[order];
+            int departureTime = serviceJourney.departureTimes[order];
+            //TODO: The if-statement below is there to give same result as the original gtfs service, remove it if it's not needed any more
+            if (arrivalTime == 0) {
+                arrivalTime = departureTime;
+            } else if (departureTime == 0) {
+                departureTime = arrivalTime;
+            }
+            stopIds[i] = quayIdByStopPointRef.get(journeyPattern.stopPointRefs[i]);
+            stopSequences[i] = order;
+            arrivalTimes[i] = arrivalTime;
+            departureTimes[i] = departureTime;
         }
-        return seconds;
+        return new TripStopTimes(stopIds, stopSequences, arrivalTimes, departureTimes);
     }
 
-    private byte[] entryAsBytes(ZipFile zipFile, ZipEntry entry) {
-        try {
-            return IOUtils.toByteArray(zipFile.getInputStream(entry));
-        } catch (IOException e) {
+    private void loadFile(ZipEntry entry, ZipFile zipFile) {
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(stream);
+            try {
+                readPublicationDelivery(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    private void loadFile(ZipEntry entry, ZipFile zipFile) {
-        try {
-            byte[] bytesArray = entryAsBytes(zipFile, entry);
-            PublicationDeliveryStructure value = parseXmlDoc(bytesArray);
-            List<JAXBElement<? extends Common_VersionFrameStructure>> compositeFrameOrCommonFrames = value.getDataObjects().getCompositeFrameOrCommonFrame();
-            for (JAXBElement frame : compositeFrameOrCommonFrames) {
-                if (frame.getValue() instanceof CompositeFrame) {
-                    CompositeFrame cf = (CompositeFrame) frame.getValue();
-                    List<JAXBElement<? extends Common_VersionFrameStructure>> commonFrames = cf.getFrames().getCommonFrame();
-                    for (JAXBElement commonFrame : commonFrames) {
-                        loadServiceFrames(commonFrame);
-                        loadServiceCalendarFrames(commonFrame);
-                        loadTimeTableFrames(commonFrame);
+    /**
+     * Service-, calendar- and timetable-data is read from CompositeFrames, stops from standalone SiteFrames.
+     */
+    private void readPublicationDelivery(XMLStreamReader reader) throws XMLStreamException {
+        int compositeFrameDepth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT && "CompositeFrame".equals(reader.getLocalName())) {
+                compositeFrameDepth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("CompositeFrame".equals(name)) {
+                    compositeFrameDepth++;
+                } else if (compositeFrameDepth > 0) {
+                    readCompositeFrameContent(reader, name);
+                } else if ("stopPlaces".equals(name)) {
+                    while (nextChild(reader)) {
+                        readStopPlace(reader);
                     }
-                } else {
-                    loadSiteFrames(frame);
                 }
             }
-        } catch (JAXBException e) {
-            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    private PublicationDeliveryStructure parseXmlDoc(byte[] bytesArray) throws JAXBException {
-        JAXBElement<PublicationDeliveryStructure> root;
-        ByteArrayInputStream stream = new ByteArrayInputStream(bytesArray);
-        //noinspection unchecked
-        root = (JAXBElement<PublicationDeliveryStructure>) createUnmarshaller().unmarshal(stream);
-        return root.getValue();
-    }
-
-    private void loadTimeTableFrames(JAXBElement commonFrame) {
-        if (commonFrame.getValue() instanceof TimetableFrame) {
-            TimetableFrame timetableFrame = (TimetableFrame) commonFrame.getValue();
-            JourneysInFrame_RelStructure vehicleJourneys = timetableFrame.getVehicleJourneys();
-            List<Journey_VersionStructure> datedServiceJourneyOrDeadRunOrServiceJourney = vehicleJourneys.getVehicleJourneyOrDatedVehicleJourneyOrNormalDatedVehicleJourney();
-            for (Journey_VersionStructure jStructure : datedServiceJourneyOrDeadRunOrServiceJourney) {
-                if (jStructure instanceof ServiceJourney) {
-                    ServiceJourney sj = (ServiceJourney) jStructure;
-
-                    //Only process RAIL-mode
-                    if (AllVehicleModesOfTransportEnumeration.RAIL.equals(sj.getTransportMode())) {
-                        if (sj.getPrivateCode() != null) {
-                            String trainNumber = sj.getPrivateCode().getValue();
-                            if (sj.getServiceAlteration() != null && sj.getServiceAlteration() == ServiceAlterationEnumeration.CANCELLATION) {
-                                //Ignore planned cancellations
-                            } else {
-                                Set<String> trips = trainNumberTrips.getOrDefault(trainNumber, new HashSet<>());
-                                trips.add(sj.getId());
-                                trainNumberTrips.put(trainNumber, trips);
-                            }
-                        }
-                        if (sj.getJourneyPatternRef() != null && sj.getJourneyPatternRef().getValue() != null) {
-                            journeyPatternIdByServiceJourneyId.put(sj.getId(), sj.getJourneyPatternRef().getValue().getRef());
-                        }
-                        serviceJourneyById.put(sj.getId(), sj);
+    private void readCompositeFrameContent(XMLStreamReader reader, String name) throws XMLStreamException {
+        switch (name) {
+            case "vehicleJourneys":
+                while (nextChild(reader)) {
+                    if ("ServiceJourney".equals(reader.getLocalName())) {
+                        readServiceJourney(reader);
+                    } else if ("DatedServiceJourney".equals(reader.getLocalName())) {
+                        readDatedServiceJourney(reader);
+                    } else {
+                        skipElement(reader);
                     }
-                } else if (jStructure instanceof DatedServiceJourney) {
-                    DatedServiceJourney dsj = (DatedServiceJourney) jStructure;
+                }
+                break;
+            case "dayTypeAssignments":
+                while (nextChild(reader)) {
+                    readDayTypeAssignment(reader);
+                }
+                break;
+            case "operatingDays":
+                while (nextChild(reader)) {
+                    readOperatingDay(reader);
+                }
+                break;
+            case "stopAssignments":
+                while (nextChild(reader)) {
+                    if ("PassengerStopAssignment".equals(reader.getLocalName())) {
+                        readPassengerStopAssignment(reader);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                break;
+            case "journeyPatterns":
+                while (nextChild(reader)) {
+                    if ("JourneyPattern".equals(reader.getLocalName())) {
+                        readJourneyPattern(reader);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
 
-                    Optional<JAXBElement<? extends JourneyRefStructure>> first = dsj.getJourneyRef().stream().findFirst();
-                    if (first.isPresent()) {
-                        JourneyRefStructure journeyRefStructure = first.get().getValue();
-                        String serviceJourneyRef = journeyRefStructure.getRef();
+    private void readServiceJourney(XMLStreamReader reader) throws XMLStreamException {
+        ServiceJourneyData sj = new ServiceJourneyData(reader.getAttributeValue(null, "id"));
+        String transportMode = null;
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "TransportMode":
+                    transportMode = reader.getElementText();
+                    break;
+                case "PrivateCode":
+                    sj.trainNumber = reader.getElementText();
+                    break;
+                case "ServiceAlteration":
+                    sj.cancelled = ServiceAlterationEnumeration.CANCELLATION.value().equals(reader.getElementText());
+                    break;
+                case "JourneyPatternRef":
+                    sj.journeyPatternRef = reader.getAttributeValue(null, "ref");
+                    skipElement(reader);
+                    break;
+                case "dayTypes":
+                    sj.dayTypeRefs = readRefs(reader);
+                    break;
+                case "passingTimes":
+                    readPassingTimes(reader, sj);
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
 
-                        List<DatedServiceJourney> datedServiceJourneys = datedServiceJourneyForServiceJourneyId.getOrDefault(serviceJourneyRef, new ArrayList<>());
-                        datedServiceJourneys.add(dsj);
+        //Only process RAIL-mode
+        if (RAIL.equals(transportMode)) {
+            serviceJourneyById.put(sj.id, sj);
+        }
+    }
 
-                        datedServiceJourneyForServiceJourneyId.put(serviceJourneyRef, datedServiceJourneys);
-                    }
+    private void readPassingTimes(XMLStreamReader reader, ServiceJourneyData sj) throws XMLStreamException {
+        int count = 0;
+        int[] arrivalTimes = new int[16];
+        int[] departureTimes = new int[16];
+        while (nextChild(reader)) {
+            String arrivalTime = null;
+            String arrivalDayOffset = null;
+            String departureTime = null;
+            String departureDayOffset = null;
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "ArrivalTime":
+                        arrivalTime = reader.getElementText();
+                        break;
+                    case "ArrivalDayOffset":
+                        arrivalDayOffset = reader.getElementText();
+                        break;
+                    case "DepartureTime":
+                        departureTime = reader.getElementText();
+                        break;
+                    case "DepartureDayOffset":
+                        departureDayOffset = reader.getElementText();
+                        break;
+                    default:
+                        skipElement(reader);
                 }
             }
+            if (count == arrivalTimes.length) {
+                arrivalTimes = Arrays.copyOf(arrivalTimes, count * 2);
+                departureTimes = Arrays.copyOf(departureTimes, count * 2);
+            }
+            arrivalTimes[count] = getTimeInSecondsOfDay(arrivalTime, arrivalDayOffset);
+            departureTimes[count] = getTimeInSecondsOfDay(departureTime, departureDayOffset);
+            count++;
         }
+        sj.arrivalTimes = Arrays.copyOf(arrivalTimes, count);
+        sj.departureTimes = Arrays.copyOf(departureTimes, count);
     }
 
-    private void loadServiceCalendarFrames(JAXBElement commonFrame) {
-        if (commonFrame.getValue() instanceof ServiceCalendarFrame) {
-            ServiceCalendarFrame scf = (ServiceCalendarFrame) commonFrame.getValue();
-            if (scf.getDayTypeAssignments() != null) {
-                List<DayTypeAssignment> dayTypeAssignments = scf.getDayTypeAssignments().getDayTypeAssignment();
-                for (DayTypeAssignment dayTypeAssignment : dayTypeAssignments) {
-                    String ref = dayTypeAssignment.getDayTypeRef().getValue().getRef();
-                    dayTypeAssignmentByDayTypeId.put(ref, dayTypeAssignment);
-                }
-            } else if (scf.getOperatingDays() != null) {
-                OperatingDaysInFrame_RelStructure operatingDaysInFrame = scf.getOperatingDays();
-                if (operatingDaysInFrame != null && operatingDaysInFrame.getOperatingDay() != null) {
-                    List<OperatingDay> operatingDays = operatingDaysInFrame.getOperatingDay();
-                    for (OperatingDay operatingDay : operatingDays) {
-                        String id = operatingDay.getId();
-                        operatingDaysById.put(id, operatingDay);
-                    }
+    private void readDatedServiceJourney(XMLStreamReader reader) throws XMLStreamException {
+        String serviceJourneyRef = null;
+        String operatingDayRef = null;
+        String serviceAlteration = null;
+        while (nextChild(reader)) {
+            String name = reader.getLocalName();
+            if (serviceJourneyRef == null && name.endsWith("JourneyRef")) {
+                serviceJourneyRef = reader.getAttributeValue(null, "ref");
+                skipElement(reader);
+            } else if ("OperatingDayRef".equals(name)) {
+                operatingDayRef = reader.getAttributeValue(null, "ref");
+                skipElement(reader);
+            } else if ("ServiceAlteration".equals(name)) {
+                serviceAlteration = reader.getElementText();
+            } else {
+                skipElement(reader);
+            }
+        }
+
+        if (serviceJourneyRef != null) {
+            boolean cancelled = ServiceAlterationEnumeration.CANCELLATION.value().equals(serviceAlteration) ||
+                    ServiceAlterationEnumeration.REPLACED.value().equals(serviceAlteration);
+            DatedJourney dsj = new DatedJourney(operatingDayRef, cancelled);
+            datedServiceJourneyForServiceJourneyId.compute(serviceJourneyRef, (ref, datedServiceJourneys) -> {
+                if (datedServiceJourneys == null) {
+                    datedServiceJourneys = new ArrayList<>();
                 }
+                datedServiceJourneys.add(dsj);
+                return datedServiceJourneys;
+            });
+        }
+    }
+
+    private void readDayTypeAssignment(XMLStreamReader reader) throws XMLStreamException {
+        String dayTypeRef = null;
+        ServiceDate date = null;
+        while (nextChild(reader)) {
+            if ("DayTypeRef".equals(reader.getLocalName())) {
+                dayTypeRef = reader.getAttributeValue(null, "ref");
+                skipElement(reader);
+            } else if ("Date".equals(reader.getLocalName())) {
+                date = parseDate(reader.getElementText());
+            } else {
+                skipElement(reader);
             }
         }
+        if (dayTypeRef != null && date != null) {
+            dateByDayTypeId.put(dayTypeRef, date);
+        }
     }
 
-    private void loadServiceFrames(JAXBElement commonFrame) {
-        if (commonFrame.getValue() instanceof ServiceFrame) {
-            ServiceFrame sf = (ServiceFrame) commonFrame.getValue();
+    private void readOperatingDay(XMLStreamReader reader) throws XMLStreamException {
+        String id = reader.getAttributeValue(null, "id");
+        ServiceDate date = null;
+        while (nextChild(reader)) {
+            if ("CalendarDate".equals(reader.getLocalName())) {
+                date = parseDate(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (id != null && date != null) {
+            operatingDaysById.put(id, date);
+        }
+    }
+
+    private void readPassengerStopAssignment(XMLStreamReader reader) throws XMLStreamException {
+        String stopPointRef = null;
+        String quayRef = null;
+        while (nextChild(reader)) {
+            if ("ScheduledStopPointRef".equals(reader.getLocalName())) {
+                stopPointRef = reader.getAttributeValue(null, "ref");
+            } else if ("QuayRef".equals(reader.getLocalName())) {
+                quayRef = reader.getAttributeValue(null, "ref");
+            }
+            skipElement(reader);
+        }
+        if (stopPointRef != null && quayRef != null) {
+            quayIdByStopPointRef.put(stopPointRef, intern(quayRef));
+        }
+    }
 
-            //stop assignments
-            StopAssignmentsInFrame_RelStructure stopAssignments = sf.getStopAssignments();
-            if (stopAssignments != null) {
-                List<JAXBElement<? extends StopAssignment_VersionStructure>> assignments = stopAssignments.getStopAssignment();
-                for (JAXBElement assignment : assignments) {
-                    if (assignment.getValue() instanceof PassengerStopAssignment) {
-                        PassengerStopAssignment passengerStopAssignment =  (PassengerStopAssignment) assignment.getValue();
-                        String quayRef = passengerStopAssignment.getQuayRef().getRef();
-                        quayIdByStopPointRef.put(passengerStopAssignment.getScheduledStopPointRef().getValue().getRef(), quayRef);
+    private void readJourneyPattern(XMLStreamReader reader) throws XMLStreamException {
+        String id = reader.getAttributeValue(null, "id");
+        List<String> stopPointRefs = null;
+        List<Integer> orders = null;
+        while (nextChild(reader)) {
+            if (!"pointsInSequence".equals(reader.getLocalName())) {
+                skipElement(reader);
+                continue;
+            }
+            stopPointRefs = new ArrayList<>();
+            orders = new ArrayList<>();
+            while (nextChild(reader)) {
+                if (!"StopPointInJourneyPattern".equals(reader.getLocalName())) {
+                    skipElement(reader);
+                    continue;
+                }
+                orders.add(Integer.parseInt(reader.getAttributeValue(null, "order")));
+                String stopPointRef = null;
+                while (nextChild(reader)) {
+                    if ("ScheduledStopPointRef".equals(reader.getLocalName())) {
+                        stopPointRef = reader.getAttributeValue(null, "ref");
                     }
+                    skipElement(reader);
                 }
+                stopPointRefs.add(stopPointRef);
             }
+        }
+        if (id != null && stopPointRefs != null) {
+            journeyPatternById.put(id, new JourneyPatternData(
+                    stopPointRefs.toArray(new String[0]),
+                    orders.stream().mapToInt(Integer::intValue).toArray()
+            ));
+        }
+    }
 
-            //journeyPatterns
-            JourneyPatternsInFrame_RelStructure journeyPatterns = sf.getJourneyPatterns();
-            if (journeyPatterns != null) {
-                List<JAXBElement<?>> journeyPattern_orJourneyPatternView = journeyPatterns.getJourneyPattern_OrJourneyPatternView();
-                for (JAXBElement pattern : journeyPattern_orJourneyPatternView) {
-                    if (pattern.getValue() instanceof JourneyPattern) {
-                        JourneyPattern journeyPattern = (JourneyPattern) pattern.getValue();
-                        if (journeyPattern.getPointsInSequence() != null) {
-                            List<PointInLinkSequence_VersionedChildStructure> pointsInSequence = journeyPattern.getPointsInSequence().getPointInJourneyPatternOrStopPointInJourneyPatternOrTimingPointInJourneyPattern();
-                            pointsInSequenceByJourneyPatternId.put(journeyPattern.getId(), pointsInSequence);
+    private void readStopPlace(XMLStreamReader reader) throws XMLStreamException {
+        String parentId = intern(reader.getAttributeValue(null, "id"));
+        VehicleModeEnumeration mode = null;
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Centroid":
+                    LocationStructure location = readCentroid(reader);
+                    if (location != null) {
+                        locations.put(parentId, location);
+                    }
+                    break;
+                case "TransportMode":
+                    mode = parseMode(reader.getElementText());
+                    if (mode != null) {
+                        modes.put(parentId, mode);
+                    }
+                    break;
+                case "quays":
+                    while (nextChild(reader)) {
+                        if ("Quay".equals(reader.getLocalName())) {
+                            readQuay(reader, parentId, mode);
+                        } else {
+                            skipElement(reader);
                         }
                     }
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+    }
+
+    private void readQuay(XMLStreamReader reader, String parentId, VehicleModeEnumeration mode) throws XMLStreamException {
+        String quayId = intern(reader.getAttributeValue(null, "id"));
+        parentStops.put(quayId, parentId);
+        if (mode != null) {
+            modes.put(quayId, mode);
+        }
+        while (nextChild(reader)) {
+            if ("PublicCode".equals(reader.getLocalName())) {
+                String publicCode = reader.getElementText();
+                if (!publicCode.isEmpty()) {
+                    publicCodeByQuayId.put(quayId, publicCode);
+                }
+            } else if ("Centroid".equals(reader.getLocalName())) {
+                LocationStructure location = readCentroid(reader);
+                if (location != null) {
+                    locations.put(quayId, location);
                 }
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
 
+    private LocationStructure readCentroid(XMLStreamReader reader) throws XMLStreamException {
+        String longitude = null;
+        String latitude = null;
+        while (nextChild(reader)) {
+            if (!"Location".equals(reader.getLocalName())) {
+                skipElement(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if ("Longitude".equals(reader.getLocalName())) {
+                    longitude = reader.getElementText();
+                } else if ("Latitude".equals(reader.getLocalName())) {
+                    latitude = reader.getElementText();
+                } else {
+                    skipElement(reader);
+                }
             }
         }
+        if (longitude == null || latitude == null) {
+            return null;
+        }
+        return new LocationStructure()
+                .withLongitude(new BigDecimal(longitude.trim()))
+                .withLatitude(new BigDecimal(latitude.trim()));
     }
 
-    private void loadSiteFrames(JAXBElement commonFrame) {
-        if (commonFrame.getValue() instanceof SiteFrame) {
-            SiteFrame sf = (SiteFrame) commonFrame.getValue();
-            if (sf.getStopPlaces() != null) {
-                List<StopPlace> stopPlaces = sf.getStopPlaces().getStopPlace();
-                for (StopPlace stopPlace : stopPlaces) {
-                    String parentId = stopPlace.getId();
+    private List<String> readRefs(XMLStreamReader reader) throws XMLStreamException {
+        List<String> refs = new ArrayList<>();
+        while (nextChild(reader)) {
+            String ref = reader.getAttributeValue(null, "ref");
+            if (ref != null) {
+                refs.add(ref);
+            }
+            skipElement(reader);
+        }
+        return refs;
+    }
 
-                    if (stopPlace.getCentroid() != null && stopPlace.getCentroid().getLocation() != null) {
-                        locations.put(stopPlace.getId(), stopPlace.getCentroid().getLocation());
-                    }
-                    VehicleModeEnumeration mode = null;
-                    if (stopPlace.getTransportMode() != null) {
-                         mode = stopPlace.getTransportMode();
-                         modes.put(stopPlace.getId(), mode);
-                    }
+    /**
+     * Moves to the next child-element of the current element
+     *
+     * @return false when the end of the current element is reached
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
 
-                    if (stopPlace.getQuays() != null) {
-                        List<Object> quayRefOrQuay = stopPlace.getQuays().getQuayRefOrQuay();
-                        for (Object o : quayRefOrQuay) {
-                            if (o instanceof Quay) {
-                                Quay quay = (Quay) o;
-                                parentStops.put(quay.getId(), parentId);
-                                modes.put(quay.getId(), mode);
-
-                                if (quay.getPublicCode() != null && !quay.getPublicCode().isEmpty()) {
-                                    publicCodeByQuayId.put(quay.getId(), quay.getPublicCode());
-                                }
-
-                                if (quay.getCentroid() != null && quay.getCentroid().getLocation() != null) {
-                                    locations.put(quay.getId(), quay.getCentroid().getLocation());
-                                } else {
-                                    System.err.println();
-                                }
-                            }
-                        }
-                    }
-                }
+    /**
+     * Moves to the end of the current element
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
         }
     }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = stringPool.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private static int getTimeInSecondsOfDay(String time, String dayOffset) {
+        if (time == null) return 0;
+        int seconds = LocalTime.parse(time.trim()).toSecondOfDay();
+        if (dayOffset != null) {
+            seconds += Integer.parseInt(dayOffset.trim()) * 86400; //24x60x60
+        }
+        return seconds;
+    }
+
+    private static ServiceDate parseDate(String value) {
+        // Dates may be provided with time
+        LocalDate date = LocalDate.parse(value.trim().substring(0, 10));
+        return new ServiceDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    private static VehicleModeEnumeration parseMode(String value) {
+        try {
+            return VehicleModeEnumeration.fromValue(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class ServiceJourneyData {
+        private final String id;
+        private String trainNumber;
+        private boolean cancelled;
+        private String journeyPatternRef;
+        private List<String> dayTypeRefs;
+        private int[] arrivalTimes = new int[0];
+        private int[] departureTimes = new int[0];
+
+        private ServiceJourneyData(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class JourneyPatternData {
+        private final String[] stopPointRefs;
+        private final int[] orders;
+
+        private JourneyPatternData(String[] stopPointRefs, int[] orders) {
+            this.stopPointRefs = stopPointRefs;
+            this.orders = orders;
+        }
+    }
 }
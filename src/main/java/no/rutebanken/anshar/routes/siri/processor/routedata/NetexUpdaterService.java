@@ -15,13 +15,11 @@
 
 package no.rutebanken.anshar.routes.siri.processor.routedata;
 
-import org.rutebanken.netex.model.DatedServiceJourney;
 import org.rutebanken.netex.model.LocationStructure;
-import org.rutebanken.netex.model.OperatingDay;
-import org.rutebanken.netex.model.ServiceAlterationEnumeration;
 import org.rutebanken.netex.model.VehicleModeEnumeration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
@@ -33,10 +31,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +52,9 @@ public class NetexUpdaterService {
     private static final int UPDATE_FREQUENCY = 6;
     private static final TimeUnit FREQUENCY_TIME_UNIT = TimeUnit.HOURS;
 
+    // Leaves capacity for processing realtime-data while updating
+    private static final int LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
     // Kept non-configurable since this whole adapter is a temporary hack - ROR-326/ROR-329
     private static final String[] urls = {
         "https://storage.googleapis.com/marduk-production/outbound/netex/rb_nsb-aggregated-netex.zip", // NSB
@@ -67,8 +72,8 @@ public class NetexUpdaterService {
     private static Map<String, List<ServiceDate>> tripDates = new HashMap<>();
     private static Map<String, String> parentStops = new HashMap<>();
     private static Map<String, String> quayPublicCodes = new HashMap<>();
-    private static Map<String, List<DatedServiceJourney>> datedServiceJourneysForTrip = new HashMap<>();
-    private static Map<String, OperatingDay> operatingDayRefs = new HashMap<>();
+    private static Map<String, List<DatedJourney>> datedServiceJourneysForTrip = new HashMap<>();
+    private static Map<String, ServiceDate> operatingDays = new HashMap<>();
 
     //public for testing-purposes
     public static Map<String, LocationStructure> locations = new HashMap<>();
@@ -108,15 +113,12 @@ public class NetexUpdaterService {
     public static boolean isDsjCancelled(String serviceJourneyId, ServiceDate serviceDate) {
         if (serviceJourneyId != null) {
             if (datedServiceJourneysForTrip.containsKey(serviceJourneyId)) {
-                List<DatedServiceJourney> datedServiceJourneys = datedServiceJourneysForTrip.get(serviceJourneyId);
-                for (DatedServiceJourney dsj : datedServiceJourneys) {
-
-                    OperatingDay operatingDay = operatingDayRefs.get(dsj.getOperatingDayRef().getRef());
-                    if (isSameDate(operatingDay, serviceDate)) {
-                        return dsj.getServiceAlteration() != null && (
-                                dsj.getServiceAlteration() == ServiceAlterationEnumeration.CANCELLATION ||
-                                dsj.getServiceAlteration() == ServiceAlterationEnumeration.REPLACED
-                                );
+                List<DatedJourney> datedServiceJourneys = datedServiceJourneysForTrip.get(serviceJourneyId);
+                for (DatedJourney dsj : datedServiceJourneys) {
+
+                    ServiceDate operatingDay = operatingDays.get(dsj.getOperatingDayRef());
+                    if (serviceDate.equals(operatingDay)) {
+                        return dsj.isCancelled();
                     }
                 }
             }
@@ -124,20 +126,28 @@ public class NetexUpdaterService {
         return false;
     }
 
-    private static boolean isSameDate(OperatingDay operatingDay, ServiceDate serviceDate) {
-        return (
-                operatingDay.getCalendarDate().getYear() == serviceDate.year &&
-                operatingDay.getCalendarDate().getMonthValue() == serviceDate.month &&
-                operatingDay.getCalendarDate().getDayOfMonth() == serviceDate.day);
-    }
-
     public static boolean serviceJourneyIdExists(String serviceJourneyId) {
         return serviceJourneyId != null && tripStops.containsKey(serviceJourneyId);
     }
 
+    @Value("${anshar.routedata.snapshot.path:}")
+    private String snapshotPath;
+
     @PostConstruct
-    synchronized static void initializeUpdater() {
+    synchronized void initializeUpdater() {
         logger.info("Starting the NeTEx updater service");
+
+        final File snapshot = snapshotPath != null && !snapshotPath.isEmpty() ? new File(snapshotPath) : null;
+
+        long initialDelay = 0;
+        if (snapshot != null && snapshot.exists()) {
+            // Previously compiled route-data is available immediately - NeTEx is only re-read when it is outdated
+            if (loadSnapshot(snapshot)) {
+                long age = System.currentTimeMillis() - snapshot.lastModified();
+                initialDelay = Math.max(0, FREQUENCY_TIME_UNIT.toMillis(UPDATE_FREQUENCY) - age);
+            }
+        }
+
         ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
         executor.scheduleWithFixedDelay(() -> {
                     long t1 = System.currentTimeMillis();
@@ -159,11 +169,54 @@ public class NetexUpdaterService {
                     } finally {
                         cleanup(paths);
                     }
+
+                    if (snapshot != null) {
+                        try {
+                            writeSnapshot(snapshot);
+                            // Replaces parsed stop times with the memory-mapped snapshot
+                            loadSnapshot(snapshot);
+                        } catch (IOException e) {
+                            logger.warn("Could not write route-data snapshot to {}", snapshot, e);
+                        }
+                    }
                     logger.info("Updating NeTEx-data - done: {} ms", (System.currentTimeMillis() - t1));
                 },
-                0,
-                UPDATE_FREQUENCY,
-                FREQUENCY_TIME_UNIT);
+                initialDelay,
+                FREQUENCY_TIME_UNIT.toMillis(UPDATE_FREQUENCY),
+                TimeUnit.MILLISECONDS);
+    }
+
+    static void writeSnapshot(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        new RouteDataSnapshot(tripStops, trainNumberTrips, tripDates, parentStops, quayPublicCodes, locations, modes,
+                datedServiceJourneysForTrip, operatingDays).write(file);
+        logger.info("Wrote route-data snapshot {} in {} ms", file, (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @return true if route-data was replaced by the snapshot
+     */
+    static boolean loadSnapshot(File file) {
+        long start = System.currentTimeMillis();
+        try {
+            RouteDataSnapshot snapshot = RouteDataSnapshot.read(file);
+
+            // Swapping updated data
+            tripStops = snapshot.tripStops;
+            trainNumberTrips = snapshot.trainNumberTrips;
+            datedServiceJourneysForTrip = snapshot.datedServiceJourneysForTrip;
+            tripDates = snapshot.tripDates;
+            parentStops = snapshot.parentStops;
+            quayPublicCodes = snapshot.quayPublicCodes;
+            locations = snapshot.locations;
+            modes = snapshot.modes;
+            operatingDays = snapshot.operatingDays;
+            logger.info("Read route-data snapshot {} in {} ms", file, (System.currentTimeMillis() - start));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read route-data snapshot from {}", file, e);
+        }
+        return false;
     }
 
     private static void cleanup(String... paths) {
@@ -185,17 +238,44 @@ public class NetexUpdaterService {
         long start = System.currentTimeMillis();
         Map<String, List<StopTime>> tmpTripStops = new HashMap<>();
         Map<String, Set<String>> tmpTrainNumberTrips = new HashMap<>();
-        Map<String, List<DatedServiceJourney>> tmpDatedServiceJourneysForTrip = new HashMap<>();
+        Map<String, List<DatedJourney>> tmpDatedServiceJourneysForTrip = new HashMap<>();
         Map<String, List<ServiceDate>> tmpTripDates = new HashMap<>();
         Map<String, String> tmpParentStops = new HashMap<>();
         Map<String, String> tmpQuayPublicCodes = new HashMap<>();
         Map<String, LocationStructure> tmpLocations = new HashMap<>();
         Map<String, VehicleModeEnumeration> tmpModes = new HashMap<>();
-        Map<String, OperatingDay> tmpOperatingDayRefs = new HashMap<>();
+        Map<String, ServiceDate> tmpOperatingDays = new HashMap<>();
+
+        // All files are read in parallel, and merged in the given order
+        ExecutorService executor = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "netex-loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        try {
+            Map<String, String> stringPool = new ConcurrentHashMap<>();
+            List<CompletableFuture<NetexProcessor>> processors = new ArrayList<>();
+            for (String path : paths) {
+                processors.add(readNeTEx(path, stringPool, executor));
+            }
 
-        for (String path : paths) {
-            readNeTEx(path, tmpTripStops, tmpTrainNumberTrips, tmpDatedServiceJourneysForTrip, tmpTripDates, tmpParentStops, tmpQuayPublicCodes,
-                tmpLocations, tmpModes, tmpOperatingDayRefs);
+            for (CompletableFuture<NetexProcessor> processor : processors) {
+                NetexProcessor netexProcessor = processor.join();
+                if (netexProcessor != null) {
+                    tmpTripStops.putAll(netexProcessor.getTripStops());
+                    tmpTrainNumberTrips.putAll(netexProcessor.getTrainNumberTrips());
+                    tmpDatedServiceJourneysForTrip.putAll(netexProcessor.getDatedServiceJourneyForServiceJourneyId());
+                    tmpOperatingDays.putAll(netexProcessor.getOperatingDays());
+                    tmpTripDates.putAll(netexProcessor.getTripDates());
+                    tmpParentStops.putAll(netexProcessor.getParentStops());
+                    tmpQuayPublicCodes.putAll(netexProcessor.getPublicCodeByQuayId());
+                    tmpLocations.putAll(netexProcessor.getLocations());
+                    tmpModes.putAll(netexProcessor.getModes());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
 
         // Swapping updated data
@@ -207,8 +287,8 @@ public class NetexUpdaterService {
         quayPublicCodes = tmpQuayPublicCodes;
         locations = tmpLocations;
         modes = tmpModes;
-        operatingDayRefs = tmpOperatingDayRefs;
-        logger.info("Read and merged {} NeTEx files in {} ms", paths.length, (System.currentTimeMillis()-start));
+        operatingDays = tmpOperatingDays;
+        logger.info("Read and merged {} NeTEx files in {} ms", paths.length, (System.currentTimeMillis()-start));
     }
 
     private static String readUrl(String url) {
@@ -251,32 +331,12 @@ public class NetexUpdaterService {
         return null;
     }
 
-    private static void readNeTEx(
-            String path, Map<String, List<StopTime>> tripStops,
-            Map<String, Set<String>> trainNumberTrips,
-            Map<String, List<DatedServiceJourney>> datedServiceJourneysForTrip,
-            Map<String, List<ServiceDate>> tripDates,
-            Map<String, String> parentStops, Map<String, String> quayPublicCodes,
-            Map<String, LocationStructure> locations, Map<String, VehicleModeEnumeration> tmpModes,
-            Map<String, OperatingDay> operatingDayRefs) {
+    private static CompletableFuture<NetexProcessor> readNeTEx(String path, Map<String, String> stringPool, ExecutorService executor) {
         try {
-
-            NetexProcessor netexProcessor = new NetexProcessor();
-            netexProcessor.loadFiles(new File(path));
-            tripStops.putAll(netexProcessor.getTripStops());
-            trainNumberTrips.putAll(netexProcessor.getTrainNumberTrips());
-            datedServiceJourneysForTrip.putAll(netexProcessor.getDatedServiceJourneyForServiceJourneyId());
-            operatingDayRefs.putAll(netexProcessor.getOperatingDayRefs());
-            tripDates.putAll(netexProcessor.getTripDates());
-            parentStops.putAll(netexProcessor.getParentStops());
-            quayPublicCodes.putAll(netexProcessor.getPublicCodeByQuayId());
-            locations.putAll(netexProcessor.getLocations());
-            tmpModes.putAll(netexProcessor.getModes());
+            return new NetexProcessor(stringPool).loadFiles(new File(path), executor);
         } catch (IOException e) {
             logger.error("Could not load NeTEx file from path {}", path);
         }
+        return CompletableFuture.completedFuture(null);
     }
-
-
-
 }
@@ -0,0 +1,354 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+import org.rutebanken.netex.model.LocationStructure;
+import org.rutebanken.netex.model.VehicleModeEnumeration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled route-data, persisted as a compact binary file.
+ *
+ * All ids are written once to a string-table, and referenced by index. When read, the file is memory-mapped, and
+ * stop times are accessed directly from the mapped file instead of being copied to the heap.
+ */
+final class RouteDataSnapshot {
+
+    private static final int MAGIC = 0x414e5244; // "ANRD"
+    private static final int VERSION = 1;
+
+    private static final VehicleModeEnumeration[] VEHICLE_MODES = VehicleModeEnumeration.values();
+
+    final Map<String, List<StopTime>> tripStops;
+    final Map<String, Set<String>> trainNumberTrips;
+    final Map<String, List<ServiceDate>> tripDates;
+    final Map<String, String> parentStops;
+    final Map<String, String> quayPublicCodes;
+    final Map<String, LocationStructure> locations;
+    final Map<String, VehicleModeEnumeration> modes;
+    final Map<String, List<DatedJourney>> datedServiceJourneysForTrip;
+    final Map<String, ServiceDate> operatingDays;
+
+    RouteDataSnapshot(
+            Map<String, List<StopTime>> tripStops, Map<String, Set<String>> trainNumberTrips,
+            Map<String, List<ServiceDate>> tripDates, Map<String, String> parentStops,
+            Map<String, String> quayPublicCodes, Map<String, LocationStructure> locations,
+            Map<String, VehicleModeEnumeration> modes, Map<String, List<DatedJourney>> datedServiceJourneysForTrip,
+            Map<String, ServiceDate> operatingDays
+    ) {
+        this.tripStops = tripStops;
+        this.trainNumberTrips = trainNumberTrips;
+        this.tripDates = tripDates;
+        this.parentStops = parentStops;
+        this.quayPublicCodes = quayPublicCodes;
+        this.locations = locations;
+        this.modes = modes;
+        this.datedServiceJourneysForTrip = datedServiceJourneysForTrip;
+        this.operatingDays = operatingDays;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file that atomically replaces the given file. Readers that have already
+     * mapped the previous file are not affected.
+     */
+    void write(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                write(new DataOutputStream(new BufferedOutputStream(out, 64 * 1024)));
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Integer> stringTable = createStringTable();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(stringTable.size());
+        for (String value : stringTable.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(tripStops.size());
+        for (Map.Entry<String, List<StopTime>> entry : tripStops.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (StopTime stopTime : entry.getValue()) {
+                out.writeInt(indexOf(stringTable, stopTime.getStopId()));
+                out.writeInt(stopTime.getStopSequence());
+                out.writeInt(stopTime.getArrivalTime());
+                out.writeInt(stopTime.getDepartureTime());
+            }
+        }
+
+        out.writeInt(trainNumberTrips.size());
+        for (Map.Entry<String, Set<String>> entry : trainNumberTrips.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (String trip : entry.getValue()) {
+                out.writeInt(stringTable.get(trip));
+            }
+        }
+
+        out.writeInt(tripDates.size());
+        for (Map.Entry<String, List<ServiceDate>> entry : tripDates.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (ServiceDate serviceDate : entry.getValue()) {
+                out.writeInt(pack(serviceDate));
+            }
+        }
+
+        writeStrings(out, stringTable, parentStops);
+        writeStrings(out, stringTable, quayPublicCodes);
+
+        out.writeInt(locations.size());
+        for (Map.Entry<String, LocationStructure> entry : locations.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeDouble(entry.getValue().getLongitude().doubleValue());
+            out.writeDouble(entry.getValue().getLatitude().doubleValue());
+        }
+
+        int modeCount = 0;
+        for (VehicleModeEnumeration mode : modes.values()) {
+            if (mode != null) {
+                modeCount++;
+            }
+        }
+        out.writeInt(modeCount);
+        for (Map.Entry<String, VehicleModeEnumeration> entry : modes.entrySet()) {
+            if (entry.getValue() != null) {
+                out.writeInt(stringTable.get(entry.getKey()));
+                out.writeInt(entry.getValue().ordinal());
+            }
+        }
+
+        out.writeInt(datedServiceJourneysForTrip.size());
+        for (Map.Entry<String, List<DatedJourney>> entry : datedServiceJourneysForTrip.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (DatedJourney datedJourney : entry.getValue()) {
+                out.writeInt(indexOf(stringTable, datedJourney.getOperatingDayRef()));
+                out.writeInt(datedJourney.isCancelled() ? 1 : 0);
+            }
+        }
+
+        out.writeInt(operatingDays.size());
+        for (Map.Entry<String, ServiceDate> entry : operatingDays.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(pack(entry.getValue()));
+        }
+        out.flush();
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> stringTable, Map<String, String> values) throws IOException {
+        out.writeInt(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(indexOf(stringTable, entry.getValue()));
+        }
+    }
+
+    private Map<String, Integer> createStringTable() {
+        Map<String, Integer> stringTable = new LinkedHashMap<>();
+        for (Map.Entry<String, List<StopTime>> entry : tripStops.entrySet()) {
+            add(stringTable, entry.getKey());
+            for (StopTime stopTime : entry.getValue()) {
+                add(stringTable, stopTime.getStopId());
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : trainNumberTrips.entrySet()) {
+            add(stringTable, entry.getKey());
+            entry.getValue().forEach(trip -> add(stringTable, trip));
+        }
+        tripDates.keySet().forEach(trip -> add(stringTable, trip));
+        parentStops.forEach((quay, parent) -> {
+            add(stringTable, quay);
+            add(stringTable, parent);
+        });
+        quayPublicCodes.forEach((quay, publicCode) -> {
+            add(stringTable, quay);
+            add(stringTable, publicCode);
+        });
+        locations.keySet().forEach(id -> add(stringTable, id));
+        modes.keySet().forEach(id -> add(stringTable, id));
+        for (Map.Entry<String, List<DatedJourney>> entry : datedServiceJourneysForTrip.entrySet()) {
+            add(stringTable, entry.getKey());
+            entry.getValue().forEach(datedJourney -> add(stringTable, datedJourney.getOperatingDayRef()));
+        }
+        operatingDays.keySet().forEach(id -> add(stringTable, id));
+        return stringTable;
+    }
+
+    private static void add(Map<String, Integer> stringTable, String value) {
+        if (value != null) {
+            stringTable.putIfAbsent(value, stringTable.size());
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> stringTable, String value) {
+        return value != null ? stringTable.get(value) : -1;
+    }
+
+    /**
+     * Maps the given file, and reads the snapshot
+     */
+    static RouteDataSnapshot read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported route-data snapshot: " + file);
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int count = buffer.getInt();
+        Map<String, List<StopTime>> tripStops = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String trip = strings[buffer.getInt()];
+            int size = buffer.getInt();
+            tripStops.put(trip, new MappedStopTimes(buffer, buffer.position(), size, strings));
+            buffer.position(buffer.position() + size * MappedStopTimes.BYTES_PER_STOP);
+        }
+
+        count = buffer.getInt();
+        Map<String, Set<String>> trainNumberTrips = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String trainNumber = strings[buffer.getInt()];
+            int size = buffer.getInt();
+            Set<String> trips = new HashSet<>(capacity(size));
+            for (int j = 0; j < size; j++) {
+                trips.add(strings[buffer.getInt()]);
+            }
+            trainNumberTrips.put(trainNumber, trips);
+        }
+
+        Map<Integer, ServiceDate> serviceDates = new HashMap<>();
+        count = buffer.getInt();
+        Map<String, List<ServiceDate>> tripDates = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String trip = strings[buffer.getInt()];
+            int size = buffer.getInt();
+            List<ServiceDate> dates = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                dates.add(serviceDates.computeIfAbsent(buffer.getInt(), RouteDataSnapshot::unpack));
+            }
+            tripDates.put(trip, dates);
+        }
+
+        Map<String, String> parentStops = readStrings(buffer, strings);
+        Map<String, String> quayPublicCodes = readStrings(buffer, strings);
+
+        count = buffer.getInt();
+        Map<String, LocationStructure> locations = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String id = strings[buffer.getInt()];
+            locations.put(id, new LocationStructure()
+                    .withLongitude(BigDecimal.valueOf(buffer.getDouble()))
+                    .withLatitude(BigDecimal.valueOf(buffer.getDouble())));
+        }
+
+        count = buffer.getInt();
+        Map<String, VehicleModeEnumeration> modes = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String id = strings[buffer.getInt()];
+            modes.put(id, VEHICLE_MODES[buffer.getInt()]);
+        }
+
+        count = buffer.getInt();
+        Map<String, List<DatedJourney>> datedServiceJourneysForTrip = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String trip = strings[buffer.getInt()];
+            int size = buffer.getInt();
+            List<DatedJourney> datedJourneys = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                int operatingDayRef = buffer.getInt();
+                datedJourneys.add(new DatedJourney(operatingDayRef >= 0 ? strings[operatingDayRef] : null, buffer.getInt() == 1));
+            }
+            datedServiceJourneysForTrip.put(trip, datedJourneys);
+        }
+
+        count = buffer.getInt();
+        Map<String, ServiceDate> operatingDays = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String id = strings[buffer.getInt()];
+            operatingDays.put(id, serviceDates.computeIfAbsent(buffer.getInt(), RouteDataSnapshot::unpack));
+        }
+
+        return new RouteDataSnapshot(tripStops, trainNumberTrips, tripDates, parentStops, quayPublicCodes, locations,
+                modes, datedServiceJourneysForTrip, operatingDays);
+    }
+
+    private static Map<String, String> readStrings(MappedByteBuffer buffer, String[] strings) {
+        int count = buffer.getInt();
+        Map<String, String> values = new HashMap<>(capacity(count));
+        for (int i = 0; i < count; i++) {
+            String key = strings[buffer.getInt()];
+            int value = buffer.getInt();
+            values.put(key, value >= 0 ? strings[value] : null);
+        }
+        return values;
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    private static int pack(ServiceDate serviceDate) {
+        return serviceDate.year * 10000 + serviceDate.month * 100 + serviceDate.day;
+    }
+
+    private static ServiceDate unpack(int packed) {
+        return new ServiceDate(packed / 10000, (packed / 100) % 100, packed % 100);
+    }
+}
@@ -1,56 +1,29 @@
 package no.rutebanken.anshar.routes.siri.processor.routedata;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import org.apache.commons.lang3.tuple.Pair;
-import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.locationtech.jts.geom.Coordinate;
-import org.opengis.referencing.operation.TransformException;
 import org.rutebanken.netex.model.LocationStructure;
 import org.rutebanken.netex.model.VehicleModeEnumeration;
 import uk.org.siri.siri21.VehicleModesEnumeration;
 
 import java.time.ZonedDateTime;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 import static no.rutebanken.anshar.routes.siri.processor.routedata.NetexUpdaterService.locations;
 import static no.rutebanken.anshar.routes.siri.processor.routedata.NetexUpdaterService.modes;
 
 public class StopsUtil {
 
-    private static final LoadingCache<Pair<String, String>, Double> distanceCache = CacheBuilder.newBuilder()
-        .expireAfterWrite(120, TimeUnit.MINUTES)
-        .build(
-            new CacheLoader<Pair<String, String>, Double>() {
-                public Double load(Pair<String, String> fromAndTo) {
-
-                    double distance = -1;
-
-                    final LocationStructure from = locations.get(fromAndTo.getLeft());
-                    final LocationStructure to = locations.get(fromAndTo.getRight());
-
-                    if (from != null && to!= null) {
-                        Coordinate fromCoord = new Coordinate(from.getLongitude().doubleValue(), from.getLatitude().doubleValue());
-                        Coordinate toCoord = new Coordinate(to.getLongitude().doubleValue(), to.getLatitude().doubleValue());
-                        try {
-                            distance = JTS.orthodromicDistance(
-                                fromCoord,
-                                toCoord,
-                                DefaultGeographicCRS.WGS84);
-                        }
-                        catch (TransformException e) {
-                            //Ignore
-                        }
-                    }
-                    return distance;
+    // WGS84
+    private static final double SEMI_MAJOR_AXIS = 6378137.0;
+    private static final double FLATTENING = 1 / 298.257223563;
+    private static final double SEMI_MINOR_AXIS = SEMI_MAJOR_AXIS * (1 - FLATTENING);
 
-                }
-            })
-        ;
+    private static final int MAX_ITERATIONS = 100;
+
+    private static final int DISTANCE_CACHE_SIZE = 1 << 16;
+
+    private static volatile LocationIndex locationIndex = new LocationIndex(Map.of());
 
     public static boolean doesVehicleModeMatchStopMode(List<VehicleModesEnumeration> reportedModes, String stopRef) {
         final VehicleModeEnumeration stopMode = modes.get(stopRef);
@@ -81,14 +54,35 @@ public class StopsUtil {
         return calculateSpeedKph(getDistance(fromRef, toRef), departureTime, arrivalTime);
     }
 
+    /**
+     * @return Distance in meters between the stops, or -1 if the location of any of them is unknown
+     */
     //public for testing-purposes
     public static double getDistance(String fromRef, String toRef) {
-        try {
-            return distanceCache.get(Pair.of(fromRef, toRef));
+        LocationIndex index = getLocationIndex();
+        Integer from = index.indexById.get(fromRef);
+        Integer to = index.indexById.get(toRef);
+        if (from == null || to == null) {
+            return -1;
         }
-        catch (ExecutionException e) {
-            return 0D;
+        return index.getDistance(from, to);
+    }
+
+    /**
+     * Index is rebuilt when locations are replaced or added
+     */
+    private static LocationIndex getLocationIndex() {
+        LocationIndex index = locationIndex;
+        if (index.source != locations || index.sourceSize != locations.size()) {
+            synchronized (StopsUtil.class) {
+                index = locationIndex;
+                if (index.source != locations || index.sourceSize != locations.size()) {
+                    index = new LocationIndex(locations);
+                    locationIndex = index;
+                }
+            }
         }
+        return index;
     }
 
     public static int calculateSpeedKph(double distanceInMeters, ZonedDateTime departureTime, ZonedDateTime arrivalTime) {
@@ -105,4 +99,121 @@ public class StopsUtil {
         return arrivalTime.toEpochSecond() - departureTime.toEpochSecond();
     }
 
+
+    /**
+     * Geodesic distance on the WGS84-ellipsoid using Vincenty's inverse formula, with reduced latitudes precalculated
+     */
+    static double vincentyDistance(double sinU1, double cosU1, double lon1, double sinU2, double cosU2, double lon2) {
+        double lonDiff = lon2 - lon1;
+        double lambda = lonDiff;
+
+        double sinSigma;
+        double cosSigma;
+        double sigma;
+        double cosSqAlpha;
+        double cos2SigmaM;
+
+        int iterations = 0;
+        double previousLambda;
+        do {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double a = cosU2 * sinLambda;
+            double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(a * a + b * b);
+            if (sinSigma == 0) {
+                return 0; // Same location
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0; // Equatorial line
+            double c = FLATTENING / 16 * cosSqAlpha * (4 + FLATTENING * (4 - 3 * cosSqAlpha));
+            previousLambda = lambda;
+            lambda = lonDiff + (1 - c) * FLATTENING * sinAlpha *
+                    (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+        } while (Math.abs(lambda - previousLambda) > 1e-12 && ++iterations < MAX_ITERATIONS);
+
+        if (iterations >= MAX_ITERATIONS) {
+            // Nearly antipodal points - does not apply to stops
+            return SEMI_MINOR_AXIS * sigma;
+        }
+
+        double uSq = cosSqAlpha * (SEMI_MAJOR_AXIS * SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS * SEMI_MINOR_AXIS) / (SEMI_MINOR_AXIS * SEMI_MINOR_AXIS);
+        double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
+                b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+
+        return SEMI_MINOR_AXIS * a * (sigma - deltaSigma);
+    }
+
+    /**
+     * Stop locations indexed by dense int-ids, with a bounded cache of calculated distances
+     */
+    private static final class LocationIndex {
+        private final Map<String, LocationStructure> source;
+        private final int sourceSize;
+
+        private final Map<String, Integer> indexById;
+        private final double[] sinReducedLatitudes;
+        private final double[] cosReducedLatitudes;
+        private final double[] longitudes;
+
+        // Direct-mapped - colliding pairs replace each other
+        private final CachedDistance[] distanceCache = new CachedDistance[DISTANCE_CACHE_SIZE];
+
+        private LocationIndex(Map<String, LocationStructure> source) {
+            this.source = source;
+            this.sourceSize = source.size();
+
+            int size = source.size();
+            indexById = new HashMap<>((int) (size / 0.75f) + 1);
+            sinReducedLatitudes = new double[size];
+            cosReducedLatitudes = new double[size];
+            longitudes = new double[size];
+
+            int index = 0;
+            for (Map.Entry<String, LocationStructure> entry : source.entrySet()) {
+                LocationStructure location = entry.getValue();
+                if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+                    continue;
+                }
+                double reducedLatitude = Math.atan((1 - FLATTENING) * Math.tan(Math.toRadians(location.getLatitude().doubleValue())));
+                sinReducedLatitudes[index] = Math.sin(reducedLatitude);
+                cosReducedLatitudes[index] = Math.cos(reducedLatitude);
+                longitudes[index] = Math.toRadians(location.getLongitude().doubleValue());
+                indexById.put(entry.getKey(), index);
+                index++;
+            }
+        }
+
+        private double getDistance(int from, int to) {
+            long key = ((long) from << 32) | (to & 0xffffffffL);
+            int slot = (int) (key ^ (key >>> 29) ^ (key >>> 47)) & (DISTANCE_CACHE_SIZE - 1);
+
+            CachedDistance cached = distanceCache[slot];
+            if (cached != null && cached.key == key) {
+                return cached.distance;
+            }
+
+            double distance = vincentyDistance(
+                    sinReducedLatitudes[from], cosReducedLatitudes[from], longitudes[from],
+                    sinReducedLatitudes[to], cosReducedLatitudes[to], longitudes[to]
+            );
+            distanceCache[slot] = new CachedDistance(key, distance);
+            return distance;
+        }
+    }
+
+    private static final class CachedDistance {
+        private final long key;
+        private final double distance;
+
+        private CachedDistance(long key, double distance) {
+            this.key = key;
+            this.distance = distance;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Stop times for a single trip, stored as primitive arrays. StopTime-objects are only created when accessed.
+ */
+final class TripStopTimes extends AbstractList<StopTime> implements RandomAccess {
+
+    private final String[] stopIds;
+    private final int[] stopSequences;
+    private final int[] arrivalTimes;
+    private final int[] departureTimes;
+
+    TripStopTimes(String[] stopIds, int[] stopSequences, int[] arrivalTimes, int[] departureTimes) {
+        this.stopIds = stopIds;
+        this.stopSequences = stopSequences;
+        this.arrivalTimes = arrivalTimes;
+        this.departureTimes = departureTimes;
+    }
+
+    @Override
+    public StopTime get(int index) {
+        return new StopTime(stopIds[index], stopSequences[index], arrivalTimes[index], departureTimes[index]);
+    }
+
+    @Override
+    public int size() {
+        return stopIds.length;
+    }
+}
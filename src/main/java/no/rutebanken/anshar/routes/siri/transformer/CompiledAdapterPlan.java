@@ -0,0 +1,339 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.transformer;
+
+import no.rutebanken.anshar.routes.siri.transformer.impl.OutboundIdAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer.SEPARATOR;
+
+/**
+ * Precompiled traversal of the SIRI object-model for a given set of adapter target-classes.
+ *
+ * For every SIRI-class a {@link NodePlan} is built once, holding MethodHandles for
+ * - getters returning one of the target-classes (values are mapped)
+ * - getters that may lead to a target-class further down (traversed)
+ *
+ * Getters that can never lead to a target-class (Strings, dates, enums, or SIRI-structures without
+ * any matching descendants) are dropped from the plan, so each node is visited once for all adapters,
+ * and irrelevant subtrees are never entered.
+ */
+class CompiledAdapterPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledAdapterPlan.class);
+
+    private static final String SIRI_PACKAGE_PREFIX = "uk.org.siri";
+
+    private static final Set<String> methodsToIgnore = Set.of("getMonitoringError");
+
+    private static final Set<Class<?>> onewayMappingList = Set.of(uk.org.siri.siri21.LineRef.class);
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, String.class);
+
+    private static final Map<Set<Class<?>>, CompiledAdapterPlan> plans = new ConcurrentHashMap<>();
+
+    private static final NodePlan EMPTY = new NodePlan(new ValueStep[0], new ChildStep[0]);
+
+    private final Set<Class<?>> targetClasses;
+
+    private final Map<Class<?>, NodePlan> nodePlans = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, ValueAccessor> valueAccessors = new HashMap<>();
+
+    private CompiledAdapterPlan(Set<Class<?>> targetClasses) {
+        this.targetClasses = targetClasses;
+        for (Class<?> targetClass : targetClasses) {
+            valueAccessors.put(targetClass, ValueAccessor.create(targetClass));
+        }
+    }
+
+    /**
+     * Returns the (cached) plan for the provided set of target-classes.
+     */
+    static CompiledAdapterPlan forTargetClasses(Set<Class<?>> targetClasses) {
+        return plans.computeIfAbsent(Set.copyOf(targetClasses), CompiledAdapterPlan::new);
+    }
+
+    /**
+     * Applies all adapters to the object-tree in a single traversal.
+     *
+     * @param obj root-object
+     * @param adaptersByClass adapters grouped by target-class, in the order they should be applied
+     */
+    void apply(Object obj, Map<Class<?>, ValueAdapter[]> adaptersByClass) throws Throwable {
+        if (obj == null) {
+            return;
+        }
+        NodePlan plan = getPlan(obj.getClass());
+        if (plan == EMPTY) {
+            return;
+        }
+
+        for (ValueStep step : plan.values) {
+            Object value = step.getter.invokeExact(obj);
+            if (value != null) {
+                applyAdapters(value, step.accessor, adaptersByClass.get(step.targetClass));
+                apply(value, adaptersByClass);
+            }
+        }
+
+        for (ChildStep step : plan.children) {
+            Object value = step.getter.invokeExact(obj);
+            if (value instanceof List) {
+                for (Object o : (List<?>) value) {
+                    apply(o, adaptersByClass);
+                }
+            } else if (value != null) {
+                apply(value, adaptersByClass);
+            }
+        }
+    }
+
+    private void applyAdapters(Object valueObject, ValueAccessor accessor, ValueAdapter[] adapters) throws Throwable {
+        if (adapters == null) {
+            return;
+        }
+        String value = (String) accessor.getValue.invokeExact(valueObject);
+        if (value == null) {
+            return;
+        }
+        String alteredValue = value;
+        for (ValueAdapter adapter : adapters) {
+            try {
+                alteredValue = applyAdapter(alteredValue, adapter);
+            } catch (Throwable t) {
+                logger.warn("Caught exception while applying adapter {} to value {}.", adapter, alteredValue, t);
+            }
+        }
+        if (!value.equals(alteredValue)) {
+            accessor.setValue.invokeExact(valueObject, alteredValue);
+        }
+    }
+
+    private static String applyAdapter(String value, ValueAdapter adapter) {
+        if (value == null) {
+            return null;
+        }
+        if (adapter instanceof OutboundIdAdapter) {
+            return adapter.apply(value);
+        }
+
+        String originalId = value;
+        String alteredValue;
+        if (value.contains(SEPARATOR)) {
+            originalId = value.substring(0, value.indexOf(SEPARATOR));
+            alteredValue = adapter.apply(value.substring(value.indexOf(SEPARATOR) + SEPARATOR.length()));
+        } else {
+            alteredValue = adapter.apply(value);
+        }
+        if (!originalId.equals(alteredValue) &&                     // No need to map already correct ids
+                !onewayMappingList.contains(adapter.getClassToApply())) {      // Check for oneway-mapping
+            alteredValue = originalId + SEPARATOR + alteredValue;
+        }
+        return alteredValue;
+    }
+
+    private NodePlan getPlan(Class<?> clazz) {
+        NodePlan plan = nodePlans.get(clazz);
+        if (plan == null) {
+            synchronized (this) {
+                plan = nodePlans.get(clazz);
+                if (plan == null) {
+                    Map<Class<?>, NodePlan> compiled = new HashMap<>();
+                    plan = compile(clazz, compiled, new HashSet<>());
+                    nodePlans.putAll(compiled);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Builds plan for the given class, and all SIRI-classes reachable from it.
+     *
+     * Classes currently being compiled (i.e. cyclic references) are treated as possibly containing
+     * target-classes to avoid pruning subtrees that could contain data to map.
+     */
+    private NodePlan compile(Class<?> clazz, Map<Class<?>, NodePlan> compiled, Set<Class<?>> inProgress) {
+        NodePlan existing = nodePlans.get(clazz);
+        if (existing == null) {
+            existing = compiled.get(clazz);
+        }
+        if (existing != null) {
+            return existing;
+        }
+
+        if (!isSiriClass(clazz) || clazz.isEnum()) {
+            compiled.put(clazz, EMPTY);
+            return EMPTY;
+        }
+
+        inProgress.add(clazz);
+
+        List<ValueStep> values = new ArrayList<>();
+        List<ChildStep> children = new ArrayList<>();
+        boolean dependsOnCycle = false;
+
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterCount() != 0 ||
+                    method.getReturnType() == void.class ||
+                    method.getDeclaringClass() == Object.class ||
+                    methodsToIgnore.contains(method.getName())) {
+                continue;
+            }
+
+            Class<?> returnType = method.getReturnType();
+            if (targetClasses.contains(returnType)) {
+                values.add(new ValueStep(unreflect(method), returnType, valueAccessors.get(returnType)));
+                continue;
+            }
+
+            Class<?> childType = returnType;
+            if (List.class.isAssignableFrom(returnType)) {
+                childType = getListElementType(method);
+            }
+
+            if (isDynamic(childType)) {
+                // Actual type is only known at runtime - always traverse
+                children.add(new ChildStep(unreflect(method)));
+            } else if (isSiriClass(childType) && !childType.isEnum()) {
+                if (inProgress.contains(childType)) {
+                    dependsOnCycle = true;
+                    children.add(new ChildStep(unreflect(method)));
+                } else if (compile(childType, compiled, inProgress) != EMPTY) {
+                    children.add(new ChildStep(unreflect(method)));
+                }
+            }
+        }
+
+        inProgress.remove(clazz);
+
+        NodePlan plan;
+        if (values.isEmpty() && children.isEmpty() && !dependsOnCycle) {
+            plan = EMPTY;
+        } else {
+            plan = new NodePlan(values.toArray(new ValueStep[0]), children.toArray(new ChildStep[0]));
+        }
+        compiled.put(clazz, plan);
+        return plan;
+    }
+
+    private static Class<?> getListElementType(Method method) {
+        Type genericReturnType = method.getGenericReturnType();
+        if (genericReturnType instanceof ParameterizedType) {
+            Type[] typeArguments = ((ParameterizedType) genericReturnType).getActualTypeArguments();
+            if (typeArguments.length == 1 && typeArguments[0] instanceof Class) {
+                return (Class<?>) typeArguments[0];
+            }
+        }
+        return Object.class;
+    }
+
+    /**
+     * Types where the actual SIRI-class can only be resolved at runtime
+     */
+    private static boolean isDynamic(Class<?> type) {
+        return type == Object.class ||
+                type.isInterface() ||
+                (isSiriClass(type) && Modifier.isAbstract(type.getModifiers()));
+    }
+
+    private static boolean isSiriClass(Class<?> clazz) {
+        return clazz.getName().startsWith(SIRI_PACKAGE_PREFIX);
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to access " + method, e);
+        }
+    }
+
+    private static class NodePlan {
+        private final ValueStep[] values;
+        private final ChildStep[] children;
+
+        private NodePlan(ValueStep[] values, ChildStep[] children) {
+            this.values = values;
+            this.children = children;
+        }
+    }
+
+    private static class ValueStep {
+        private final MethodHandle getter;
+        private final Class<?> targetClass;
+        private final ValueAccessor accessor;
+
+        private ValueStep(MethodHandle getter, Class<?> targetClass, ValueAccessor accessor) {
+            this.getter = getter;
+            this.targetClass = targetClass;
+            this.accessor = accessor;
+        }
+    }
+
+    private static class ChildStep {
+        private final MethodHandle getter;
+
+        private ChildStep(MethodHandle getter) {
+            this.getter = getter;
+        }
+    }
+
+    /**
+     * Handles for getValue()/setValue(String) on the mapped classes
+     */
+    private static class ValueAccessor {
+        private final MethodHandle getValue;
+        private final MethodHandle setValue;
+
+        private ValueAccessor(MethodHandle getValue, MethodHandle setValue) {
+            this.getValue = getValue;
+            this.setValue = setValue;
+        }
+
+        private static ValueAccessor create(Class<?> clazz) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                return new ValueAccessor(
+                        lookup.unreflect(clazz.getMethod("getValue"))
+                                .asType(MethodType.methodType(String.class, Object.class)),
+                        lookup.unreflect(clazz.getMethod("setValue", String.class))
+                                .asType(SETTER_TYPE)
+                );
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Unable to map values of class " + clazz, e);
+            }
+        }
+    }
+}
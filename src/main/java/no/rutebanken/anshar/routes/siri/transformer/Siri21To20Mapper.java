@@ -0,0 +1,623 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.transformer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlValue;
+import javax.xml.namespace.QName;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps SIRI 2.1 object-model directly to the corresponding SIRI 2.0 object-model without marshalling to XML.
+ *
+ * Classes are matched by name ("siri21"-packages are mapped to the equivalent "siri20"-packages), and properties are
+ * matched by XML-name, i.e. the name of the element or attribute. As when parsing 2.1-XML with the 2.0-model:
+ * - Elements that only exist in 2.1 are dropped
+ * - Enum-values that do not exist in 2.0 are dropped
+ * - When a single element in 2.0 is repeatable in 2.1, the last value is kept
+ * Dropped types, properties and values are logged once per type.
+ *
+ * Mapping-plans are built once per class, and cached.
+ */
+public class Siri21To20Mapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(Siri21To20Mapper.class);
+
+    private static final String SOURCE_PACKAGE_TOKEN = ".siri21.";
+    private static final String TARGET_PACKAGE_TOKEN = ".siri20.";
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final Map<Class<?>, Optional<Class<?>>> targetClasses = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Map<Class<?>, ClassMapping>> classMappings = new ConcurrentHashMap<>();
+
+    private static final Map<Enum<?>, String> enumXmlValues = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Map<String, Enum<?>>> targetEnumValues = new ConcurrentHashMap<>();
+
+    /**
+     * Dropped types and values that have already been logged
+     */
+    private static final Set<String> loggedDrops = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Types that have been renamed in 2.1, and may occur in untyped lists where the declared type cannot be used
+     */
+    private static final Map<String, String> renamedTypes = Map.of(
+            "uk.org.siri.siri21.SubscriptionRefStructure", "uk.org.siri.siri20.SubscriptionQualifierStructure",
+            "uk.org.siri.siri21.StopPointRefStructure", "uk.org.siri.siri20.StopPointRef"
+    );
+
+    private Siri21To20Mapper() {
+    }
+
+    public static uk.org.siri.siri20.Siri map(uk.org.siri.siri21.Siri siri) {
+        return (uk.org.siri.siri20.Siri) mapValue(siri, uk.org.siri.siri21.Siri.class, uk.org.siri.siri20.Siri.class);
+    }
+
+    /**
+     * Maps value to the type expected by the target property
+     *
+     * @param sourceType declared type of the source property
+     * @param targetType declared type of the target property
+     * @return mapped value, or null if value cannot be represented as the target type
+     */
+    private static Object mapValue(Object value, Class<?> sourceType, Class<?> targetType) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof JAXBElement) {
+            return mapJaxbElement((JAXBElement<?>) value, targetType);
+        }
+
+        Class<?> sourceClass = value.getClass();
+        if (!isSourceClass(sourceClass)) {
+            if (value instanceof String && targetType != null && targetType.isEnum()) {
+                // Plain strings in 2.1 that are enumerations in 2.0
+                Enum<?> mapped = getTargetEnumValues(targetType).get(value);
+                if (mapped == null) {
+                    logDropped(targetType.getName() + ":" + value, "Value {} does not exist in {} - will be ignored", value, targetType.getName());
+                }
+                return mapped;
+            }
+            // Shared/immutable types - e.g. String, ZonedDateTime, BigInteger
+            if (isAssignable(targetType, sourceClass)) {
+                return value;
+            }
+            logDropped(sourceClass.getName() + ">" + targetType.getName(), "{} can not be mapped to {} - will be ignored", sourceClass.getName(), targetType.getName());
+            return null;
+        }
+
+        Class<?> targetClass = resolveTargetClass(sourceClass, sourceType, targetType);
+        if (targetClass == null) {
+            return mapSimpleContent(value, targetType);
+        }
+
+        if (sourceClass.isEnum()) {
+            return mapEnum((Enum<?>) value, targetClass);
+        }
+
+        return getClassMapping(sourceClass, targetClass).map(value);
+    }
+
+    private static Object mapJaxbElement(JAXBElement<?> element, Class<?> targetType) {
+        if (!isAssignable(targetType, JAXBElement.class)) {
+            return mapValue(element.getValue(), element.getDeclaredType(), targetType);
+        }
+
+        Class<?> declaredType = element.getDeclaredType();
+        if (isSourceClass(declaredType)) {
+            declaredType = findTargetClass(declaredType);
+            if (declaredType == null) {
+                return null;
+            }
+        }
+
+        Class<?> scope = element.getScope();
+        if (scope != null && isSourceClass(scope)) {
+            scope = findTargetClass(scope);
+            if (scope == null) {
+                scope = JAXBElement.GlobalScope.class;
+            }
+        }
+
+        Object value = mapValue(element.getValue(), element.getDeclaredType(), declaredType);
+        if (value == null && element.getValue() != null) {
+            return null;
+        }
+
+        JAXBElement<?> mapped = createJaxbElement(element.getName(), declaredType, scope, value);
+        mapped.setNil(element.isNil());
+        return mapped;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> JAXBElement<T> createJaxbElement(QName name, Class<T> declaredType, Class<?> scope, Object value) {
+        // Value is mapped to declaredType
+        return new JAXBElement<>(name, declaredType, scope, (T) value);
+    }
+
+    /**
+     * Structures with simple content (value and attributes) in 2.1 that are plain values in 2.0 - only the value is kept
+     */
+    private static Object mapSimpleContent(Object value, Class<?> targetType) {
+        Object simpleValue = resolveSimpleContent(value, targetType);
+        if (simpleValue == null) {
+            logDropped(value.getClass().getName() + ">" + targetType, "{} can not be mapped to {} - will be ignored",
+                    value.getClass().getName(), targetType != null ? targetType.getName() : null);
+        }
+        return simpleValue;
+    }
+
+    private static Object resolveSimpleContent(Object value, Class<?> targetType) {
+        if (targetType == null || targetType == Object.class || targetType.isInterface() || isTargetClass(targetType)) {
+            return null;
+        }
+        if (value instanceof Enum) {
+            // Enumerations in 2.1 that are plain strings in 2.0
+            return isAssignable(targetType, String.class) ? ClassMapping.getEnumValue((Enum<?>) value) : null;
+        }
+        Method getter = findGetter(value.getClass(), "getValue");
+        if (getter == null) {
+            return null;
+        }
+        try {
+            Object simpleValue = getter.invoke(value);
+            if (simpleValue instanceof Enum) {
+                simpleValue = ClassMapping.getEnumValue((Enum<?>) simpleValue);
+            }
+            return simpleValue != null && isAssignable(targetType, simpleValue.getClass()) ? simpleValue : null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Object mapEnum(Enum<?> value, Class<?> targetClass) {
+        if (!targetClass.isEnum()) {
+            return null;
+        }
+        return getClassMapping(value.getClass(), targetClass).mapEnum(value);
+    }
+
+    /**
+     * Resolves the class to create. As when parsing XML, values of the declared source-type are created as the
+     * declared target-type, while subtypes (i.e. xsi:type) are created as the 2.0-equivalent of the actual class.
+     */
+    private static Class<?> resolveTargetClass(Class<?> sourceClass, Class<?> sourceType, Class<?> targetType) {
+        boolean isConcreteTargetType = targetType != null && isTargetClass(targetType) && !targetType.isInterface() &&
+                !Modifier.isAbstract(targetType.getModifiers()) && sourceClass.isEnum() == targetType.isEnum();
+
+        if (sourceClass == sourceType && isConcreteTargetType) {
+            return targetType;
+        }
+        Class<?> targetClass = findTargetClass(sourceClass);
+        if (targetClass != null && isAssignable(targetType, targetClass)) {
+            return targetClass;
+        }
+        return isConcreteTargetType ? targetType : null;
+    }
+
+    private static Class<?> findTargetClass(Class<?> sourceClass) {
+        return targetClasses.computeIfAbsent(sourceClass, c -> {
+            String targetClassName = renamedTypes.getOrDefault(c.getName(),
+                    c.getName().replace(SOURCE_PACKAGE_TOKEN, TARGET_PACKAGE_TOKEN));
+            try {
+                return Optional.<Class<?>>of(Class.forName(targetClassName, true, c.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                // Only resolved once per class
+                logger.warn("No SIRI 2.0-equivalent of {} - will be ignored", c.getName());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * Logs dropped data once per key
+     */
+    private static void logDropped(String key, String message, Object... arguments) {
+        if (loggedDrops.add(key)) {
+            logger.warn(message, arguments);
+        }
+    }
+
+    private static boolean isAssignable(Class<?> targetType, Class<?> valueClass) {
+        if (targetType == null || targetType == Object.class) {
+            return true;
+        }
+        if (targetType.isPrimitive()) {
+            return wrap(targetType) == valueClass;
+        }
+        return targetType.isAssignableFrom(valueClass);
+    }
+
+    private static boolean isSourceClass(Class<?> clazz) {
+        return clazz.getName().contains(SOURCE_PACKAGE_TOKEN);
+    }
+
+    private static boolean isTargetClass(Class<?> clazz) {
+        return clazz.getName().contains(TARGET_PACKAGE_TOKEN);
+    }
+
+    private static Map<String, Enum<?>> getTargetEnumValues(Class<?> targetClass) {
+        return targetEnumValues.computeIfAbsent(targetClass, c -> {
+            Map<String, Enum<?>> values = new HashMap<>();
+            for (Object constant : c.getEnumConstants()) {
+                values.put(ClassMapping.getEnumValue((Enum<?>) constant), (Enum<?>) constant);
+            }
+            return values;
+        });
+    }
+
+    private static ClassMapping getClassMapping(Class<?> sourceClass, Class<?> targetClass) {
+        return classMappings
+                .computeIfAbsent(sourceClass, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(targetClass, t -> ClassMapping.create(sourceClass, t));
+    }
+
+    private static class ClassMapping {
+        private final MethodHandle constructor;
+        private final PropertyMapping[] properties;
+        private final Map<Enum<?>, Enum<?>> enumValues;
+
+        private ClassMapping(MethodHandle constructor, PropertyMapping[] properties, Map<Enum<?>, Enum<?>> enumValues) {
+            this.constructor = constructor;
+            this.properties = properties;
+            this.enumValues = enumValues;
+        }
+
+        private static ClassMapping create(Class<?> sourceClass, Class<?> targetClass) {
+            if (sourceClass.isEnum()) {
+                return new ClassMapping(null, null, createEnumValues(sourceClass, targetClass));
+            }
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                MethodHandle constructor = lookup.findConstructor(targetClass, MethodType.methodType(void.class))
+                        .asType(CONSTRUCTOR_TYPE);
+
+                Map<String, Method> sourceGetters = getGettersByXmlName(sourceClass);
+                Set<Method> unmappedSourceGetters = new HashSet<>(sourceGetters.values());
+
+                List<PropertyMapping> properties = new ArrayList<>();
+                for (Method targetGetter : targetClass.getMethods()) {
+                    String propertyName = getPropertyName(targetGetter);
+                    if (propertyName == null) {
+                        continue;
+                    }
+                    Method sourceGetter = findSourceGetter(sourceClass, sourceGetters, targetClass, targetGetter);
+                    if (sourceGetter == null) {
+                        continue;
+                    }
+                    unmappedSourceGetters.remove(sourceGetter);
+
+                    MethodHandle sourceHandle = null;
+                    boolean sourceIsList = List.class.isAssignableFrom(sourceGetter.getReturnType());
+                    if (sourceIsList) {
+                        // List-getters initialize empty lists - reading the field leaves the source untouched
+                        sourceHandle = unreflectField(sourceClass, getPropertyName(sourceGetter));
+                    }
+                    if (sourceHandle == null) {
+                        sourceHandle = lookup.unreflect(sourceGetter).asType(GETTER_TYPE);
+                    }
+                    Class<?> sourceType = sourceIsList ? getListElementType(sourceGetter) : sourceGetter.getReturnType();
+                    Class<?> targetType = targetGetter.getReturnType();
+
+                    if (List.class.isAssignableFrom(targetType)) {
+                        properties.add(new PropertyMapping(sourceHandle, sourceIsList, sourceType,
+                                lookup.unreflect(targetGetter).asType(GETTER_TYPE), null,
+                                getListElementType(targetGetter)));
+                    } else {
+                        Method setter = findSetter(targetClass, "set" + propertyName, targetType);
+                        if (setter == null && targetType.isPrimitive()) {
+                            // Optional attribute with default-value - getter never returns null, so the field is read
+                            setter = findSetter(targetClass, "set" + propertyName, wrap(targetType));
+                            sourceHandle = unreflectField(sourceClass, propertyName);
+                            targetType = wrap(targetType);
+                        }
+                        if (setter != null && sourceHandle != null) {
+                            properties.add(new PropertyMapping(sourceHandle, sourceIsList, sourceType,
+                                    null, lookup.unreflect(setter).asType(SETTER_TYPE), targetType));
+                        }
+                    }
+                }
+                if (!unmappedSourceGetters.isEmpty()) {
+                    Set<String> unmapped = new TreeSet<>();
+                    unmappedSourceGetters.forEach(getter -> unmapped.add(getPropertyName(getter)));
+                    logger.warn("Properties {} of {} do not exist in SIRI 2.0 - will be ignored", unmapped, sourceClass.getName());
+                }
+                return new ClassMapping(constructor, properties.toArray(new PropertyMapping[0]), null);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Unable to map " + sourceClass + " to " + targetClass, e);
+            }
+        }
+
+        private Object map(Object source) {
+            try {
+                Object target = constructor.invokeExact();
+                for (PropertyMapping property : properties) {
+                    property.copy(source, target);
+                }
+                return target;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Unable to map " + source.getClass(), t);
+            }
+        }
+
+        private Object mapEnum(Enum<?> value) {
+            return enumValues.get(value);
+        }
+
+        /**
+         * Enum-constants are matched by XML-value - constants that do not exist in the target are not included
+         */
+        private static Map<Enum<?>, Enum<?>> createEnumValues(Class<?> sourceClass, Class<?> targetClass) {
+            Map<String, Enum<?>> targetValues = getTargetEnumValues(targetClass);
+            Map<Enum<?>, Enum<?>> values = new HashMap<>();
+            Set<String> unmapped = new TreeSet<>();
+            for (Object constant : sourceClass.getEnumConstants()) {
+                Enum<?> target = targetValues.get(getEnumValue((Enum<?>) constant));
+                if (target != null) {
+                    values.put((Enum<?>) constant, target);
+                } else {
+                    unmapped.add(getEnumValue((Enum<?>) constant));
+                }
+            }
+            if (!unmapped.isEmpty()) {
+                logger.warn("Values {} of {} do not exist in SIRI 2.0 - will be ignored", unmapped, sourceClass.getName());
+            }
+            return values;
+        }
+
+        /**
+         * JAXB-enums expose the XML-value through value()
+         */
+        private static String getEnumValue(Enum<?> value) {
+            return enumXmlValues.computeIfAbsent(value, ClassMapping::resolveEnumValue);
+        }
+
+        private static String resolveEnumValue(Enum<?> value) {
+            try {
+                Object xmlValue = value.getClass().getMethod("value").invoke(value);
+                if (xmlValue != null) {
+                    return xmlValue.toString();
+                }
+            } catch (ReflectiveOperationException e) {
+                // Fall back to name
+            }
+            return value.name();
+        }
+    }
+
+    /**
+     * Copies one property. Target-lists are populated through the live list returned by the getter (JAXB-style),
+     * other properties are set through the setter.
+     *
+     * When a single element in 2.0 has become a list in 2.1, the last value is used - as when unmarshalling repeated
+     * elements to a single property. Dropped values are logged once per property.
+     */
+    private static class PropertyMapping {
+        private final MethodHandle sourceGetter;
+        private final boolean sourceIsList;
+        private final Class<?> sourceType;
+        private final MethodHandle targetListGetter;
+        private final MethodHandle targetSetter;
+        private final Class<?> targetType;
+
+        private PropertyMapping(MethodHandle sourceGetter, boolean sourceIsList, Class<?> sourceType,
+                                MethodHandle targetListGetter, MethodHandle targetSetter, Class<?> targetType) {
+            this.sourceGetter = sourceGetter;
+            this.sourceIsList = sourceIsList;
+            this.sourceType = sourceType;
+            this.targetListGetter = targetListGetter;
+            this.targetSetter = targetSetter;
+            this.targetType = targetType;
+        }
+
+        private void copy(Object source, Object target) throws Throwable {
+            Object value = sourceGetter.invokeExact(source);
+            if (value == null) {
+                return;
+            }
+            if (targetListGetter != null) {
+                List<?> sourceValues = sourceIsList ? (List<?>) value : List.of(value);
+                if (sourceValues.isEmpty()) {
+                    return;
+                }
+                List<Object> targetList = asTargetList(targetListGetter.invokeExact(target));
+                for (Object o : sourceValues) {
+                    Object mapped = mapValue(o, sourceType, targetType);
+                    if (mapped != null) {
+                        targetList.add(mapped);
+                    }
+                }
+            } else {
+                if (sourceIsList) {
+                    List<?> sourceValues = (List<?>) value;
+                    if (sourceValues.isEmpty()) {
+                        return;
+                    }
+                    if (sourceValues.size() > 1) {
+                        logDropped(target.getClass().getName() + "#" + targetType.getName(),
+                                "Multiple values of {} in {} - only the last value is kept in SIRI 2.0", sourceType.getName(), source.getClass().getName());
+                    }
+                    value = sourceValues.get(sourceValues.size() - 1);
+                }
+                Object mapped = mapValue(value, sourceType, targetType);
+                if (mapped != null) {
+                    targetSetter.invokeExact(target, mapped);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<Object> asTargetList(Object list) {
+            // Live list - elements are mapped to the element-type
+            return (List<Object>) list;
+        }
+    }
+
+    private static String getPropertyName(Method method) {
+        if (method.getParameterCount() != 0 || method.getReturnType() == void.class ||
+                method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            return name.substring(3);
+        }
+        if (name.startsWith("is") && name.length() > 2) {
+            return name.substring(2);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the source getter for the same XML element or attribute - JAXB pluralizes the getter when an element is
+     * repeatable in 2.1. Falls back to getter-name for properties without a single XML-name (e.g. choices).
+     */
+    private static Method findSourceGetter(Class<?> sourceClass, Map<String, Method> sourceGetters, Class<?> targetClass, Method targetGetter) {
+        String xmlName = getXmlName(findField(targetClass, getPropertyName(targetGetter)));
+        if (xmlName != null && sourceGetters.containsKey(xmlName)) {
+            return sourceGetters.get(xmlName);
+        }
+        return findGetter(sourceClass, targetGetter.getName());
+    }
+
+    /**
+     * @return getters by XML element or attribute name
+     */
+    private static Map<String, Method> getGettersByXmlName(Class<?> clazz) {
+        Map<String, Method> getters = new HashMap<>();
+        for (Method method : clazz.getMethods()) {
+            String propertyName = getPropertyName(method);
+            if (propertyName != null) {
+                String xmlName = getXmlName(findField(clazz, propertyName));
+                getters.putIfAbsent(xmlName != null ? xmlName : method.getName(), method);
+            }
+        }
+        return getters;
+    }
+
+    /**
+     * @return name of the XML element or attribute bound to the field - attributes and simple content are prefixed
+     * to avoid collisions with elements. Null if the field is not bound to a single name.
+     */
+    private static String getXmlName(Field field) {
+        if (field == null) {
+            return null;
+        }
+        XmlElement element = field.getAnnotation(XmlElement.class);
+        if (element != null) {
+            return "##default".equals(element.name()) ? field.getName() : element.name();
+        }
+        XmlElementRef elementRef = field.getAnnotation(XmlElementRef.class);
+        if (elementRef != null) {
+            return "##default".equals(elementRef.name()) ? null : elementRef.name();
+        }
+        XmlAttribute attribute = field.getAnnotation(XmlAttribute.class);
+        if (attribute != null) {
+            return "@" + ("##default".equals(attribute.name()) ? field.getName() : attribute.name());
+        }
+        if (field.isAnnotationPresent(XmlValue.class)) {
+            return "#value";
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> clazz, String propertyName) {
+        String fieldName = Character.toLowerCase(propertyName.charAt(0)) + propertyName.substring(1);
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                // Check superclass
+            }
+        }
+        return null;
+    }
+
+    private static Method findGetter(Class<?> clazz, String name) {
+        try {
+            Method method = clazz.getMethod(name);
+            return getPropertyName(method) != null ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflectField(Class<?> clazz, String propertyName) throws IllegalAccessException {
+        Field field = findField(clazz, propertyName);
+        if (field == null) {
+            return null;
+        }
+        return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectGetter(field).asType(GETTER_TYPE);
+    }
+
+    private static Class<?> wrap(Class<?> primitiveType) {
+        return MethodType.methodType(primitiveType).wrap().returnType();
+    }
+
+    private static Method findSetter(Class<?> clazz, String name, Class<?> parameterType) {
+        try {
+            return clazz.getMethod(name, parameterType);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> getListElementType(Method method) {
+        Type genericReturnType = method.getGenericReturnType();
+        if (genericReturnType instanceof ParameterizedType) {
+            Type[] typeArguments = ((ParameterizedType) genericReturnType).getActualTypeArguments();
+            if (typeArguments.length == 1) {
+                Type typeArgument = typeArguments[0];
+                if (typeArgument instanceof Class) {
+                    return (Class<?>) typeArgument;
+                }
+                if (typeArgument instanceof ParameterizedType) {
+                    return (Class<?>) ((ParameterizedType) typeArgument).getRawType();
+                }
+            }
+        }
+        return Object.class;
+    }
+}
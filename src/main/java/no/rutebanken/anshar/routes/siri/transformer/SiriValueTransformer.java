@@ -15,30 +15,21 @@
 
 package no.rutebanken.anshar.routes.siri.transformer;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.routes.siri.processor.PostProcessor;
-import no.rutebanken.anshar.routes.siri.transformer.impl.OutboundIdAdapter;
 import org.entur.siri21.util.SiriXml;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.org.siri.siri21.LineRef;
 import uk.org.siri.siri21.Siri;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.stream.XMLStreamException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class SiriValueTransformer {
 
@@ -46,28 +37,6 @@ public class SiriValueTransformer {
 
     private static final Logger logger = LoggerFactory.getLogger(SiriValueTransformer.class);
 
-    private static final Map<GetterKey, Set<Method>> cachedGettersForAdapter = new HashMap<>();
-
-    private static Set<Class> onewayMappingList = Set.of(LineRef.class);
-
-    private static final LoadingCache<Class, List<Method>> getterMethodsCache = CacheBuilder.newBuilder()
-            .build(
-                    new CacheLoader<Class, List<Method>>() {
-                        public List<Method> load(Class clazz) {
-                            Method[] methods = clazz.getMethods();
-                            List<Method> getterMethods = new ArrayList<>();
-                            for (Method method : methods) {
-                                if (method.getParameterCount() == 0 &&
-                                        !("void".equals(method.getReturnType().getName()))) {
-                                    getterMethods.add(method);
-                                }
-                            }
-                            return getterMethods;
-                        }
-                    });
-
-    private static final List<String> methodsToIgnore = Collections.singletonList("getMonitoringError");
-
     /**
      *
      * @param xml
@@ -149,16 +118,15 @@ public class SiriValueTransformer {
             if (detailedLogging) {
                 logger.debug("SIRI Transform: {} postProcessors added", postProcessors.size());
             }
-            for (ValueAdapter a : valueAdapters) {
+            if (!valueAdapters.isEmpty()) {
                 try {
-                    applyAdapter(transformed, a);
+                    applyAdapters(transformed, valueAdapters);
 
                     if (detailedLogging) {
-                        logger.debug("SIRI Transform: valueAdapter {} processed", a.toString());
+                        logger.debug("SIRI Transform: valueAdapters {} processed", valueAdapters);
                     }
                 } catch (Throwable t) {
                     logger.warn("Caught exception while transforming SIRI-object.", t);
-                    logger.debug("SIRI Transform: valueAdapter {} failed", a.toString());
                 }
             }
             if (detailedLogging) {
@@ -186,118 +154,29 @@ public class SiriValueTransformer {
     }
 
     /**
-     * Recursively applies ValueAdapter to all fields of the specified type within SIRI-packages.
+     * Applies all ValueAdapters to all fields of the specified types within SIRI-packages in a single traversal.
      *
+     * Adapters are grouped by the class they apply to, and applied in the order they are defined.
      * Uses getValue()/setValue(...) apply adapters
      *
      * @param obj
-     * @param adapter
-     * @throws NoSuchMethodException
-     * @throws InvocationTargetException
-     * @throws IllegalAccessException
+     * @param valueAdapters
      */
-    private static void applyAdapter(Object obj, ValueAdapter adapter) throws Throwable {
-
-        //Only apply to Siri-classes
-        if (obj != null && obj.getClass().getName().startsWith("uk.org.siri")) {
-
-            GetterKey getterKey = new GetterKey(obj.getClass(), adapter);
-            Set<Method> allMethods = cachedGettersForAdapter.get(getterKey);
-
-            if (allMethods == null) {
-                allMethods = new HashSet<>();
-                allMethods.addAll(getterMethodsCache.get(obj.getClass()));
-            }
-            for (Method method : allMethods) {
-                if (methodsToIgnore.contains(method.getName())) {
-                    continue;
-                }
-
-
-                if (method.getReturnType().equals(adapter.getClassToApply())) {
-
-                    Set<Method> methods = cachedGettersForAdapter.getOrDefault(getterKey, new HashSet<>());
-                    methods.add(method);
-                    cachedGettersForAdapter.put(getterKey, methods);
-
-                    Object previousValue = method.invoke(obj);
-                    if (previousValue != null) {
-                        String value = (String) previousValue.getClass().getMethod("getValue").invoke(previousValue);
-                        String alteredValue;
-
-                        String originalId = value;
-
-                        if (adapter instanceof OutboundIdAdapter) {
-                            alteredValue = adapter.apply(value);
-                        } else {
-                            if (value.contains(SEPARATOR)) {
-                                originalId = value.substring(0, value.indexOf(SEPARATOR));
-                                alteredValue = adapter.apply(value.substring(value.indexOf(SEPARATOR) + SEPARATOR.length()));
-                            } else {
-                                alteredValue = adapter.apply(value);
-                            }
-                            if (!originalId.equals(alteredValue) &&                     // No need to map already correct ids
-                                    !isOnewayMapping(adapter.getClassToApply())) {      // Check for oneway-mapping
-                                alteredValue = originalId + SEPARATOR + alteredValue;
-                            }
-                        }
-
-
-                        Method valueSetter = previousValue.getClass().getMethod("setValue", String.class);
-                        valueSetter.invoke(previousValue, alteredValue);
-                    }
-                } else {
-                    Object currentValue = method.invoke(obj);
-                    if (currentValue != null) {
-                        if (currentValue instanceof List) {
-                            List list = (List) currentValue;
-                            for (Object o : list) {
-                                applyAdapter(o, adapter);
-                            }
-                        } else {
-                            applyAdapter(currentValue, adapter);
-                        }
-                    }
-                }
+    private static void applyAdapters(Object obj, List<ValueAdapter> valueAdapters) throws Throwable {
+        Map<Class<?>, List<ValueAdapter>> groupedAdapters = new LinkedHashMap<>();
+        for (ValueAdapter adapter : valueAdapters) {
+            if (adapter.getClassToApply() == null) {
+                continue;
             }
+            groupedAdapters.computeIfAbsent(adapter.getClassToApply(), c -> new ArrayList<>()).add(adapter);
         }
-    }
-
-    private static boolean isOnewayMapping(Class classToApply) {
-        return onewayMappingList.contains(classToApply);
-    }
-
-    private static class GetterKey {
-        private final ValueAdapter adapter;
-        private final Class clazz;
-
-        public GetterKey(Class clazz, ValueAdapter adapter) {
-            this.clazz = clazz;
-            this.adapter = adapter;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-
-            GetterKey getterKey = (GetterKey) o;
 
-            if (adapter != null ? !adapter.equals(getterKey.adapter) : getterKey.adapter != null) {
-                return false;
-            }
-            return clazz != null ? clazz.equals(getterKey.clazz) : getterKey.clazz == null;
+        Map<Class<?>, ValueAdapter[]> adaptersByClass = new HashMap<>();
+        for (Map.Entry<Class<?>, List<ValueAdapter>> entry : groupedAdapters.entrySet()) {
+            adaptersByClass.put(entry.getKey(), entry.getValue().toArray(new ValueAdapter[0]));
         }
 
-        @Override
-        public int hashCode() {
-            int result = adapter != null ? adapter.hashCode() : 0;
-            result = 31 * result + (clazz != null ? clazz.hashCode() : 0);
-            return result;
-        }
+        CompiledAdapterPlan.forTargetClasses(adaptersByClass.keySet())
+                .apply(obj, adaptersByClass);
     }
 }
@@ -22,8 +22,8 @@ import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
 import no.rutebanken.anshar.subscription.SiriDataType;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static no.rutebanken.anshar.routes.siri.transformer.MappingNames.TRAIN_STATION_TO_NSR;
 
@@ -40,7 +40,7 @@ public class JbvCodeMapper extends ValueAdapter {
         super(clazz);
         this.datasetId = datasetId;
         this.type = type;
-        unmappedAlreadyAdded = new HashSet<>();
+        unmappedAlreadyAdded = ConcurrentHashMap.newKeySet();
     }
 
 
@@ -61,14 +61,12 @@ public class JbvCodeMapper extends ValueAdapter {
                 return mappedValue;
             }
         } finally {
-            if (mappedValue != null && unmappedAlreadyAdded.contains(id)) {
+            if (mappedValue != null && unmappedAlreadyAdded.remove(id)) {
                 healthManager.removeUnmappedId(type, datasetId, id);
-                unmappedAlreadyAdded.remove(id);
             }
         }
-        if (unmappedAlreadyAdded.add(id)) {
-            healthManager.addUnmappedId(type, datasetId, id);
-        }
+        unmappedAlreadyAdded.add(id);
+        healthManager.addUnmappedId(type, datasetId, id);
         return id;
     }
 
@@ -24,9 +24,9 @@ import no.rutebanken.anshar.subscription.SiriDataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static no.rutebanken.anshar.routes.siri.transformer.MappingNames.INVALID_NSR_ID;
 import static no.rutebanken.anshar.routes.siri.transformer.MappingNames.ORIGINAL_ID_TO_NSR;
@@ -40,7 +40,7 @@ public class StopPlaceRegisterMapper extends ValueAdapter {
     private final List<String> prefixes;
     private final String datatype;
 
-    private static final Set<String> unmappedAlreadyAdded = new HashSet<>();
+    private static final Set<String> unmappedAlreadyAdded = ConcurrentHashMap.newKeySet();
 
     private final String datasetId;
     private final SiriDataType type;
@@ -68,15 +68,12 @@ public class StopPlaceRegisterMapper extends ValueAdapter {
 
         if (id == null || id.isEmpty() || id.startsWith("NSR:")) {
             if (!stopPlaceService.isKnownId(id)) {
-                if (unmappedAlreadyAdded.add(id)) {
-                    if (metricsEnabled) {
-                        getMetricsService().registerDataMapping(type, datasetId, INVALID_NSR_ID, 1);
-                    }
-                    healthManager.addUnmappedId(type, datasetId, id);
+                if (unmappedAlreadyAdded.add(id) && metricsEnabled) {
+                    getMetricsService().registerDataMapping(type, datasetId, INVALID_NSR_ID, 1);
                 }
-            } else if (unmappedAlreadyAdded.contains(id)) {
+                healthManager.addUnmappedId(type, datasetId, id);
+            } else if (unmappedAlreadyAdded.remove(id)) {
                 healthManager.removeUnmappedId(type, datasetId, id);
-                unmappedAlreadyAdded.remove(id);
             }
             return id;
         }
@@ -107,15 +104,13 @@ public class StopPlaceRegisterMapper extends ValueAdapter {
                 }
             }
         } finally {
-            if (mappedValue != null && unmappedAlreadyAdded.contains(id)) {
+            if (mappedValue != null && unmappedAlreadyAdded.remove(id)) {
                 healthManager.removeUnmappedId(type, datasetId, id);
-                unmappedAlreadyAdded.remove(id);
             }
         }
 
-        if (unmappedAlreadyAdded.add(id)) {
-            healthManager.addUnmappedId(type, datasetId, id);
-        }
+        unmappedAlreadyAdded.add(id);
+        healthManager.addUnmappedId(type, datasetId, id);
         return id;
     }
 
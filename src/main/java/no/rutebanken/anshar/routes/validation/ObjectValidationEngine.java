@@ -0,0 +1,134 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.EstimatedVersionFrameStructure;
+import uk.org.siri.siri21.MonitoredCallStructure;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
+import uk.org.siri.siri21.RecordedCall;
+import uk.org.siri.siri21.ServiceDelivery;
+import uk.org.siri.siri21.Siri;
+import uk.org.siri.siri21.VehicleActivityStructure;
+import uk.org.siri.siri21.VehicleMonitoringDeliveryStructure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the profile-rules implemented as {@link SiriElementValidator} directly to the object-model.
+ *
+ * Rules are grouped by element-type, and all rules are applied in a single traversal of the delivery - without
+ * copying or marshalling the object. Only the parts of the tree that have rules are traversed.
+ */
+class ObjectValidationEngine {
+
+    private final Map<Class<?>, List<CustomValidator>> rulesByType = new HashMap<>();
+
+    /**
+     * @param rules Rules implementing {@link SiriElementValidator}
+     */
+    ObjectValidationEngine(Collection<CustomValidator> rules) {
+        for (CustomValidator rule : rules) {
+            final Class<?> elementType = ((SiriElementValidator<?>) rule).getElementType();
+            rulesByType.computeIfAbsent(elementType, t -> new ArrayList<>()).add(rule);
+        }
+    }
+
+    ProfileValidationEngine.Result validate(Siri siri, SiriValidationEventHandler handler) {
+        final ProfileValidationEngine.Result result = new ProfileValidationEngine.Result();
+        final ServiceDelivery serviceDelivery = siri.getServiceDelivery();
+        if (serviceDelivery == null) {
+            return result;
+        }
+        apply(ServiceDelivery.class, serviceDelivery, handler, result);
+
+        if (hasRules(EstimatedVehicleJourney.class, RecordedCall.class, EstimatedCall.class)) {
+            for (EstimatedTimetableDeliveryStructure delivery : serviceDelivery.getEstimatedTimetableDeliveries()) {
+                for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                    for (EstimatedVehicleJourney journey : frame.getEstimatedVehicleJourneies()) {
+                        validate(journey, handler, result);
+                    }
+                }
+            }
+        }
+
+        if (hasRules(VehicleActivityStructure.class, MonitoredVehicleJourneyStructure.class, MonitoredCallStructure.class)) {
+            for (VehicleMonitoringDeliveryStructure delivery : serviceDelivery.getVehicleMonitoringDeliveries()) {
+                for (VehicleActivityStructure activity : delivery.getVehicleActivities()) {
+                    validate(activity, handler, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void validate(EstimatedVehicleJourney journey, SiriValidationEventHandler handler, ProfileValidationEngine.Result result) {
+        apply(EstimatedVehicleJourney.class, journey, handler, result);
+
+        if (journey.getRecordedCalls() != null && hasRules(RecordedCall.class)) {
+            for (RecordedCall call : journey.getRecordedCalls().getRecordedCalls()) {
+                apply(RecordedCall.class, call, handler, result);
+            }
+        }
+        if (journey.getEstimatedCalls() != null && hasRules(EstimatedCall.class)) {
+            for (EstimatedCall call : journey.getEstimatedCalls().getEstimatedCalls()) {
+                apply(EstimatedCall.class, call, handler, result);
+            }
+        }
+    }
+
+    private void validate(VehicleActivityStructure activity, SiriValidationEventHandler handler, ProfileValidationEngine.Result result) {
+        apply(VehicleActivityStructure.class, activity, handler, result);
+
+        final MonitoredVehicleJourneyStructure journey = activity.getMonitoredVehicleJourney();
+        if (journey != null) {
+            apply(MonitoredVehicleJourneyStructure.class, journey, handler, result);
+            if (journey.getMonitoredCall() != null) {
+                apply(MonitoredCallStructure.class, journey.getMonitoredCall(), handler, result);
+            }
+        }
+    }
+
+    private boolean hasRules(Class<?>... elementTypes) {
+        for (Class<?> elementType : elementTypes) {
+            if (rulesByType.containsKey(elementType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void apply(Class<T> elementType, T element, SiriValidationEventHandler handler, ProfileValidationEngine.Result result) {
+        final List<CustomValidator> rules = rulesByType.get(elementType);
+        if (rules == null) {
+            return;
+        }
+        result.validatedNodes++;
+        for (CustomValidator rule : rules) {
+            result.errors += ProfileValidationEngine.report(rule, ((SiriElementValidator<T>) rule).isValid(element), handler);
+        }
+    }
+}
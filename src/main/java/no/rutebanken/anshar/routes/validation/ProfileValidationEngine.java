@@ -0,0 +1,371 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.ProfileValidationEventOrList;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import uk.org.siri.siri21.Siri;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the xpath-based profile-rules for one datatype in a single streaming pass.
+ *
+ * All rule-xpaths are compiled into a tree of element-names when the engine is created. While streaming the XML, only
+ * the elements needed by a rule are built as DOM-nodes - i.e. the matched element, and its parent if the rule reads
+ * sibling-nodes - and the rule is applied when that element is complete. Fragments are released as soon as the
+ * rules are applied, so the complete document is never held in memory.
+ *
+ * Names are matched against the qualified element-name, same as XPath over a non-namespace-aware DOM.
+ *
+ * Rules can also be applied to the object-model, by marshalling it as SAX-events into the same pass. This is only
+ * used for rules not implemented for {@link ObjectValidationEngine}.
+ */
+class ProfileValidationEngine {
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+
+    private static final Pattern SIMPLE_PATH = Pattern.compile("[\\w.\\-:]+(/[\\w.\\-:]+)*");
+
+    private static final int NOT_CAPTURED = -1;
+
+    private final PathNode root = new PathNode();
+
+    private final int ruleCount;
+
+    /**
+     * @param rules Rules with simple, absolute child-paths - e.g. "Siri/ServiceDelivery"
+     */
+    ProfileValidationEngine(Collection<CustomValidator> rules) {
+        for (CustomValidator rule : rules) {
+            String xpath = rule.getXpath();
+            if (xpath == null || !SIMPLE_PATH.matcher(xpath).matches()) {
+                throw new IllegalArgumentException("Unsupported xpath [" + xpath + "] for rule " + rule.getClass().getSimpleName());
+            }
+            PathNode node = root;
+            for (String name : xpath.split("/")) {
+                node = node.children.computeIfAbsent(name, n -> new PathNode());
+            }
+            node.rules.add(rule);
+        }
+        root.compile();
+        ruleCount = rules.size();
+    }
+
+    int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Streams the provided XML, and applies all matching rules
+     *
+     * @return Number of validated nodes, and number of reported events
+     */
+    Result validate(InputStream xml, SiriValidationEventHandler handler) throws XMLStreamException, ParserConfigurationException {
+        Pass pass = new Pass(handler);
+
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        Element element = pass.startElement(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+                        if (element != null) {
+                            addAttributes(reader, element);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        pass.endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        pass.text(reader.getText());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        pass.cdata(reader.getText());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        pass.comment(reader.getText());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return pass.result;
+    }
+
+    /**
+     * Applies all matching rules to the XML-representation of the provided object, without creating the XML.
+     *
+     * Elements are matched by local name. Values are validated as marshalled from the object-model, i.e. after
+     * parsing - values that could not be parsed are not present.
+     *
+     * @return Number of validated nodes, and number of reported events
+     */
+    Result validate(Siri siri, Marshaller marshaller, SiriValidationEventHandler handler) throws JAXBException, ParserConfigurationException {
+        Pass pass = new Pass(handler);
+        marshaller.marshal(siri, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                Element element = pass.startElement(localName != null && !localName.isEmpty() ? localName : qName);
+                if (element != null) {
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+                    }
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                pass.endElement();
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                pass.text(new String(ch, start, length));
+            }
+        });
+        return pass.result;
+    }
+
+    /**
+     * Adds the event(s) to the handler
+     *
+     * @return Number of reported events
+     */
+    static int report(CustomValidator rule, ValidationEvent event, SiriValidationEventHandler handler) {
+        if (event == null) {
+            return 0;
+        }
+        if (event instanceof ProfileValidationEventOrList) {
+            int count = 0;
+            for (ValidationEvent validationEvent : ((ProfileValidationEventOrList) event).getEvents()) {
+                handler.handleCategorizedEvent(rule.getCategoryName(), validationEvent);
+                count++;
+            }
+            return count;
+        }
+        handler.handleCategorizedEvent(rule.getCategoryName(), event);
+        return 1;
+    }
+
+    private static void addAttributes(XMLStreamReader reader, Element element) {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(
+                    getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i)
+            );
+        }
+    }
+
+    private static String getQualifiedName(String prefix, String localName) {
+        if (prefix == null || prefix.isEmpty()) {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+
+    /**
+     * State for validating one document
+     */
+    private class Pass {
+        private final Document document;
+        private final SiriValidationEventHandler handler;
+        private final Result result = new Result();
+        private final Deque<Frame> stack = new ArrayDeque<>();
+
+        private Pass(SiriValidationEventHandler handler) throws ParserConfigurationException {
+            this.document = builderFactory.newDocumentBuilder().newDocument();
+            this.handler = handler;
+        }
+
+        /**
+         * @return Created DOM-element, or null if the element is not needed by any rule
+         */
+        private Element startElement(String name) {
+            Frame parent = stack.peek();
+
+            PathNode pathNode;
+            if (parent == null) {
+                pathNode = root.children.get(name);
+            } else {
+                pathNode = parent.pathNode != null ? parent.pathNode.children.get(name) : null;
+            }
+
+            int remainingDepth = parent != null ? parent.remainingDepth - 1 : NOT_CAPTURED;
+            if (pathNode != null) {
+                remainingDepth = Math.max(remainingDepth, pathNode.captureDepth);
+            }
+
+            Element element = null;
+            if (remainingDepth >= 0) {
+                element = document.createElement(name);
+                if (isChildCaptured(parent)) {
+                    parent.element.appendChild(element);
+                }
+            }
+
+            Frame frame = new Frame(pathNode, element, remainingDepth);
+            if (pathNode != null) {
+                for (CustomValidator rule : pathNode.rules) {
+                    // Rules reading siblings are applied when the parent is complete
+                    Frame context = rule.isSiblingContextRequired() && parent != null ? parent : frame;
+                    context.addMatch(rule, element);
+                }
+            }
+            stack.push(frame);
+            return element;
+        }
+
+        private void endElement() {
+            Frame frame = stack.pop();
+            if (frame.matches != null) {
+                for (Match match : frame.matches) {
+                    result.validatedNodes++;
+                    result.errors += report(match.rule, match.rule.isValid(match.node), handler);
+                }
+            }
+        }
+
+        private void text(String text) {
+            Frame frame = stack.peek();
+            if (!isChildCaptured(frame)) {
+                return;
+            }
+            Node last = frame.element.getLastChild();
+            if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+                // Adjacent text is merged, as done by the DOM-parser
+                last.setNodeValue(last.getNodeValue() + text);
+            } else {
+                frame.element.appendChild(document.createTextNode(text));
+            }
+        }
+
+        private void cdata(String text) {
+            if (isChildCaptured(stack.peek())) {
+                stack.peek().element.appendChild(document.createCDATASection(text));
+            }
+        }
+
+        private void comment(String text) {
+            if (isChildCaptured(stack.peek())) {
+                stack.peek().element.appendChild(document.createComment(text));
+            }
+        }
+
+        private boolean isChildCaptured(Frame frame) {
+            return frame != null && frame.element != null && frame.remainingDepth >= 1;
+        }
+    }
+
+    static class Result {
+        int validatedNodes;
+        int errors;
+    }
+
+    /**
+     * Element-name in the compiled rule-paths
+     */
+    private static class PathNode {
+        private final Map<String, PathNode> children = new HashMap<>();
+        private final List<CustomValidator> rules = new ArrayList<>();
+
+        /**
+         * Levels of descendants to build as DOM when this element is matched
+         */
+        private int captureDepth = NOT_CAPTURED;
+
+        private void compile() {
+            for (CustomValidator rule : rules) {
+                if (!rule.isSiblingContextRequired()) {
+                    captureDepth = Math.max(captureDepth, rule.getRequiredDepth());
+                }
+            }
+            for (PathNode child : children.values()) {
+                for (CustomValidator rule : child.rules) {
+                    if (rule.isSiblingContextRequired()) {
+                        int depth = rule.getRequiredDepth();
+                        captureDepth = Math.max(captureDepth, depth == Integer.MAX_VALUE ? depth : depth + 1);
+                    }
+                }
+                child.compile();
+            }
+        }
+    }
+
+    /**
+     * Currently open element
+     */
+    private static class Frame {
+        private final PathNode pathNode;
+        private final Element element;
+        private final int remainingDepth;
+        private List<Match> matches;
+
+        private Frame(PathNode pathNode, Element element, int remainingDepth) {
+            this.pathNode = pathNode;
+            this.element = element;
+            this.remainingDepth = remainingDepth;
+        }
+
+        private void addMatch(CustomValidator rule, Node node) {
+            if (matches == null) {
+                matches = new ArrayList<>();
+            }
+            matches.add(new Match(rule, node));
+        }
+    }
+
+    private static class Match {
+        private final CustomValidator rule;
+        private final Node node;
+
+        private Match(CustomValidator rule, Node node) {
+            this.rule = rule;
+            this.node = node;
+        }
+    }
+}
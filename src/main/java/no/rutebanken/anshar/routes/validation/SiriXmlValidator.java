@@ -15,15 +15,15 @@
 
 package no.rutebanken.anshar.routes.validation;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hazelcast.map.IMap;
 import com.hazelcast.replicatedmap.ReplicatedMap;
 import java.io.InputStreamReader;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
-import no.rutebanken.anshar.routes.validation.validators.ProfileValidationEventOrList;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.SiriObjectValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
@@ -39,8 +39,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 import uk.org.siri.siri21.Siri;
 
@@ -49,18 +47,12 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEvent;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -73,10 +65,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 import static java.util.Collections.EMPTY_LIST;
@@ -93,7 +81,6 @@ public class SiriXmlValidator extends ApplicationContextHolder {
     private static JAXBContext jaxbContext;
     private static Schema schema;
     private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-    private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
 
 
     @Autowired
@@ -134,16 +121,25 @@ public class SiriXmlValidator extends ApplicationContextHolder {
 
     private final Map<SiriDataType, Set<CustomValidator>> validationRules = new EnumMap(SiriDataType.class);
 
-    private ExecutorService validationExecutorService;
+    /**
+     * Compiled xpath-rules per datatype
+     */
+    private final Map<SiriDataType, ProfileValidationEngine> validationEngines = new EnumMap(SiriDataType.class);
+
+    /**
+     * Rules applied directly to the object-model per datatype
+     */
+    private final Map<SiriDataType, ObjectValidationEngine> objectValidationEngines = new EnumMap(SiriDataType.class);
 
-    public  SiriXmlValidator() {
-        ThreadFactory factory = new ThreadFactoryBuilder()
-            .setNameFormat("validation")
-            .setDaemon(true)
-            .build();
+    /**
+     * Compiled xpath-rules per datatype that are not implemented for the object-model
+     */
+    private final Map<SiriDataType, ProfileValidationEngine> objectModelXpathEngines = new EnumMap(SiriDataType.class);
 
-        validationExecutorService = Executors.newCachedThreadPool(factory);
-    }
+    private volatile boolean validationRulesPopulated;
+
+    @Autowired
+    private ValidationExecutor validationExecutor;
 
     static {
         if (jaxbContext == null) {
@@ -160,7 +156,10 @@ public class SiriXmlValidator extends ApplicationContextHolder {
         }
     }
 
-    private void populateValidationRules() {
+    private synchronized void populateValidationRules() {
+        if (validationRulesPopulated) {
+            return;
+        }
         Map<String, Object> validatorBeans = getContext().getBeansWithAnnotation(Validator.class);
 
         for (Object o : validatorBeans.values()) {
@@ -175,6 +174,29 @@ public class SiriXmlValidator extends ApplicationContextHolder {
                 }
             }
         }
+
+        for (Map.Entry<SiriDataType, Set<CustomValidator>> rules : validationRules.entrySet()) {
+            List<CustomValidator> xpathRules = new ArrayList<>();
+            List<CustomValidator> elementRules = new ArrayList<>();
+            List<CustomValidator> remainingXpathRules = new ArrayList<>();
+            for (CustomValidator rule : rules.getValue()) {
+                if (!(rule instanceof SiriObjectValidator)) {
+                    xpathRules.add(rule);
+                    if (rule instanceof SiriElementValidator) {
+                        elementRules.add(rule);
+                    } else {
+                        remainingXpathRules.add(rule);
+                    }
+                }
+            }
+            validationEngines.put(rules.getKey(), new ProfileValidationEngine(xpathRules));
+            objectValidationEngines.put(rules.getKey(), new ObjectValidationEngine(elementRules));
+            if (!remainingXpathRules.isEmpty()) {
+                objectModelXpathEngines.put(rules.getKey(), new ProfileValidationEngine(remainingXpathRules));
+            }
+            logger.info("Compiled {} profile-rules for {}, {} implemented for the object-model", xpathRules.size(), rules.getKey(), elementRules.size());
+        }
+        validationRulesPopulated = true;
     }
 
     public Siri parseXml(SubscriptionSetup subscriptionSetup, InputStream xml)
@@ -205,12 +227,26 @@ public class SiriXmlValidator extends ApplicationContextHolder {
             final String breadcrumbId = MDC.get("camel.breadcrumbId");
 
             if (siri.getServiceDelivery() != null && validate) {
-                validationExecutorService.execute(() -> {
-                    MDC.put("subscriptionId", subscriptionSetup.getSubscriptionId());
-                    MDC.put("camel.breadcrumbId", breadcrumbId);
-                    performProfileValidation(subscriptionSetup, xml, siri, schemaValidationHandler);
-                    MDC.remove("camel.breadcrumbId");
-                    MDC.remove("subscriptionId");
+                validationExecutor.submit(subscriptionSetup, () -> {
+                    final InputStream originalXml;
+                    final Siri validatedSiri;
+                    if (configuration.isObjectModelValidation()) {
+                        // XML is only kept when a report is created
+                        originalXml = subscriptionSetup.isValidation() ? xml : null;
+
+                        // Mapping alters the parsed object - only the copy is taken here, rules are applied on the copy
+                        validatedSiri = SiriObjectFactory.deepCopy(siri);
+                    } else {
+                        originalXml = xml;
+                        validatedSiri = siri;
+                    }
+                    return () -> {
+                        MDC.put("subscriptionId", subscriptionSetup.getSubscriptionId());
+                        MDC.put("camel.breadcrumbId", breadcrumbId);
+                        performProfileValidation(subscriptionSetup, originalXml, validatedSiri, schemaValidationHandler, new SiriValidationEventHandler());
+                        MDC.remove("camel.breadcrumbId");
+                        MDC.remove("subscriptionId");
+                    };
                 });
             }
 
@@ -257,11 +293,10 @@ public class SiriXmlValidator extends ApplicationContextHolder {
             schemaHandler.categorizedEvents.isEmpty(), profileHandler.categorizedEvents.isEmpty());
     }
 
-    private static AtomicInteger concurrentValidationThreads = new AtomicInteger();
     private boolean performProfileValidation(
-        SubscriptionSetup subscriptionSetup, InputStream xml, Siri siri, SiriValidationEventHandler schemaValidationResults
+        SubscriptionSetup subscriptionSetup, InputStream xml, Siri siri, SiriValidationEventHandler schemaValidationResults,
+        SiriValidationEventHandler profileValidationResults
     ) {
-        concurrentValidationThreads.incrementAndGet();
         long validationStart = System.currentTimeMillis();
 
         try {
@@ -274,20 +309,26 @@ public class SiriXmlValidator extends ApplicationContextHolder {
                 return false;
             }
 
-            /*
-             * Re-marshalling SIRI-data for filtering-purposes
-             */
-            xml.reset();
-
-            String originalXml = new String(xml.readAllBytes());
-
-            SiriValidationEventHandler profileValidationResults = new SiriValidationEventHandler();
-
-            validateAttributes(originalXml, type, siri, profileValidationResults);
+            if (configuration.isObjectModelValidation()) {
+                validateObjectModel(type, siri, profileValidationResults);
+                if (objectModelXpathEngines.containsKey(type)) {
+                    validateRemainingXpathRules(type, siri, profileValidationResults);
+                }
+            } else {
+                /*
+                 * Re-reading original XML for profile-validation
+                 */
+                xml.reset();
+                validateAttributes(xml, type, siri, profileValidationResults);
+            }
 
             if (subscriptionSetup.isValidation()) {
                 final long t1 = System.currentTimeMillis();
 
+                // Original XML is only kept in memory when a report is created
+                xml.reset();
+                String originalXml = new String(xml.readAllBytes());
+
                 if (hasValidationFilter(subscriptionSetup) &&
                     !originalXml.contains(subscriptionSetup.getValidationFilter())) {
                     logger.info("Incoming XML does not contain \"{}\", skip validation-report for this request.",
@@ -320,9 +361,9 @@ public class SiriXmlValidator extends ApplicationContextHolder {
 
             long validationDone = System.currentTimeMillis();
 
-            logger.info("Async validation took: {} ms, {} concurrent validations queued",
+            logger.info("Async validation took: {} ms, {} validations queued",
                 validationDone-validationStart,
-                concurrentValidationThreads.decrementAndGet());
+                validationExecutor.getQueueDepth());
         }
         return false;
     }
@@ -331,64 +372,75 @@ public class SiriXmlValidator extends ApplicationContextHolder {
         return subscriptionSetup.getValidationFilter() != null && !subscriptionSetup.getValidationFilter().isEmpty();
     }
 
+    /**
+     * Applies all rules for the given type to the XML
+     */
     private void validateAttributes(
-        String siriXml, SiriDataType type, Siri siri, SiriValidationEventHandler handler
-    ) throws XPathExpressionException, ParserConfigurationException, IOException, SAXException {
-        if (validationRules.isEmpty()) {
+        InputStream xml, SiriDataType type, Siri siri, SiriValidationEventHandler handler
+    ) throws XMLStreamException, ParserConfigurationException {
+        if (!validationRulesPopulated) {
             populateValidationRules();
         }
-        XPathFactory xpathFactory = XPathFactory.newInstance();
-        XPath xpath = xpathFactory.newXPath();
-        DocumentBuilder builder = builderFactory.newDocumentBuilder();
 
-        InputStream stream = new ByteArrayInputStream(siriXml.getBytes(StandardCharsets.UTF_8));
+        int errorCounter = 0;
+        int ruleCounter = 0;
+        for (CustomValidator rule : validationRules.getOrDefault(type, Set.of())) {
+            if (rule instanceof SiriObjectValidator) {
+                ValidationEvent event = ((SiriObjectValidator)rule).isValid(siri);
+                ruleCounter++;
+                errorCounter += ProfileValidationEngine.report(rule, event, handler);
+            }
+        }
+
+        final ProfileValidationEngine engine = validationEngines.get(type);
+        if (engine != null) {
+            ProfileValidationEngine.Result result = engine.validate(xml, handler);
+            ruleCounter += result.validatedNodes;
+            errorCounter += result.errors;
+        }
+        logger.info("Found {} custom rule violations in SIRI XML, validated {} objects", errorCounter, ruleCounter);
+    }
 
-        Document xmlDocument = builder.parse(stream);
+    /**
+     * Applies the rules implemented for the object-model in a single traversal of the parsed object
+     */
+    private void validateObjectModel(SiriDataType type, Siri siri, SiriValidationEventHandler handler) {
+        if (type == null) {
+            return;
+        }
+        if (!validationRulesPopulated) {
+            populateValidationRules();
+        }
 
         int errorCounter = 0;
         int ruleCounter = 0;
-        for (CustomValidator rule : validationRules.get(type)) {
+        for (CustomValidator rule : validationRules.getOrDefault(type, Set.of())) {
             if (rule instanceof SiriObjectValidator) {
                 ValidationEvent event = ((SiriObjectValidator)rule).isValid(siri);
                 ruleCounter++;
-                if (event != null) {
-                    if (event instanceof ProfileValidationEventOrList) {
-                        for (ValidationEvent validationEvent : ((ProfileValidationEventOrList) event).getEvents()) {
-                            handler.handleCategorizedEvent(rule.getCategoryName(), validationEvent);
-                            errorCounter++;
-                        }
-                    } else {
-                        handler.handleCategorizedEvent(rule.getCategoryName(), event);
-                        errorCounter++;
-                    }
-                }
-            } else {
-                NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(),
-                    xmlDocument,
-                    XPathConstants.NODESET
-                );
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    ValidationEvent event = rule.isValid(nodes.item(i));
-                    ruleCounter++;
-                    if (event != null) {
-                        if (event instanceof ProfileValidationEventOrList) {
-                            for (ValidationEvent validationEvent : ((ProfileValidationEventOrList) event)
-                                .getEvents()) {
-                                handler.handleCategorizedEvent(rule.getCategoryName(),
-                                    validationEvent
-                                );
-                                errorCounter++;
-                            }
-                        }
-                        else {
-                            handler.handleCategorizedEvent(rule.getCategoryName(), event);
-                            errorCounter++;
-                        }
-                    }
-                }
+                errorCounter += ProfileValidationEngine.report(rule, event, handler);
             }
         }
-        logger.info("Found {} custom rule violations in SIRI XML, validated {} objects", errorCounter, ruleCounter);
+
+        final ObjectValidationEngine engine = objectValidationEngines.get(type);
+        if (engine != null) {
+            ProfileValidationEngine.Result result = engine.validate(siri, handler);
+            ruleCounter += result.validatedNodes;
+            errorCounter += result.errors;
+        }
+        logger.info("Found {} custom rule violations in SIRI object, validated {} objects", errorCounter, ruleCounter);
+    }
+
+    /**
+     * Applies the xpath-rules that are not implemented for the object-model by marshalling the object
+     */
+    private void validateRemainingXpathRules(SiriDataType type, Siri siri, SiriValidationEventHandler handler)
+        throws JAXBException, ParserConfigurationException {
+        final ProfileValidationEngine engine = objectModelXpathEngines.get(type);
+        if (engine != null) {
+            ProfileValidationEngine.Result result = engine.validate(siri, jaxbContext.createMarshaller(), handler);
+            logger.info("Found {} custom rule violations in marshalled SIRI object, validated {} objects", result.errors, result.validatedNodes);
+        }
     }
 
     public void clearValidationResults(String subscriptionId) {
@@ -0,0 +1,224 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Executes asynchronous validation using a fixed number of low-priority workers and a bounded queue, so that
+ * enabling validation can not starve ingest of CPU or memory.
+ *
+ * Validations requested for a subscription (i.e. creating a validation-report) are prioritized before validation
+ * enabled for all subscriptions. When the queue is more than half full, only 1 of N deliveries is validated for
+ * each subscription. When the queue is full, the oldest non-prioritized validation is dropped in favour of a
+ * prioritized one - otherwise the new validation is dropped.
+ */
+@Component
+public class ValidationExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ValidationExecutor.class);
+
+    static final String DROPPED_QUEUE_FULL = "queue_full";
+    static final String DROPPED_SAMPLED = "sampled";
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    @Value("${anshar.validation.threads:2}")
+    private int threads;
+
+    @Value("${anshar.validation.queue.size:50}")
+    private int maxQueueSize;
+
+    @Value("${anshar.validation.sampling.rate:10}")
+    private int samplingRate;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, AtomicLong> deliveryCounters = new ConcurrentHashMap<>();
+
+    /** Accepted validations that are still being prepared, guarded by this */
+    private int reserved;
+
+    private PriorityBlockingQueue<Runnable> queue;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        queue = new PriorityBlockingQueue<>(maxQueueSize);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("validation-%d")
+                        .setDaemon(true)
+                        .setPriority(Thread.MIN_PRIORITY)
+                        .build()
+        );
+        // All tasks go through the queue to be prioritized
+        executor.prestartAllCoreThreads();
+        metrics.gaugeValidationQueue(queue, PriorityBlockingQueue::size);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues validation of a delivery from the given subscription
+     *
+     * @return false if the validation was dropped
+     */
+    public boolean submit(SubscriptionSetup subscriptionSetup, Runnable validation) {
+        return submit(subscriptionSetup, () -> validation);
+    }
+
+    /**
+     * Queues validation of a delivery from the given subscription. The validation is only created after
+     * it is accepted by sampling and a queue slot is reserved, so any preparation (e.g. copying data)
+     * is skipped for dropped deliveries. Failures when preparing the validation are logged, and the
+     * validation is dropped - they never propagate to the caller.
+     *
+     * @return false if the validation was dropped
+     */
+    public boolean submit(SubscriptionSetup subscriptionSetup, Supplier<Runnable> validationFactory) {
+        final String subscriptionId = subscriptionSetup.getSubscriptionId();
+
+        if (queue.size() >= maxQueueSize / 2 && !isSampled(subscriptionId)) {
+            registerDropped(subscriptionSetup, DROPPED_SAMPLED);
+            return false;
+        }
+
+        final boolean prioritized = subscriptionSetup.isValidation();
+
+        ValidationTask evicted = null;
+        synchronized (this) {
+            if (queue.size() + reserved >= maxQueueSize) {
+                evicted = prioritized ? findOldestNonPrioritized() : null;
+                if (evicted == null || !queue.remove(evicted)) {
+                    logger.warn("Validation queue is full - validation for subscription {} dropped", subscriptionId);
+                    registerDropped(subscriptionSetup, DROPPED_QUEUE_FULL);
+                    return false;
+                }
+            }
+            // Slot is reserved while the validation is prepared outside the lock
+            reserved++;
+        }
+        if (evicted != null) {
+            logger.warn("Validation queue is full - validation for subscription {} dropped in favour of requested validation",
+                    evicted.subscriptionSetup.getSubscriptionId());
+            registerDropped(evicted.subscriptionSetup, DROPPED_QUEUE_FULL);
+        }
+
+        Runnable validation;
+        try {
+            validation = validationFactory.get();
+        } catch (RuntimeException e) {
+            releaseReservation();
+            logger.warn("Preparing validation for subscription {} failed - validation dropped", subscriptionId, e);
+            return false;
+        }
+
+        synchronized (this) {
+            reserved--;
+            executor.execute(new ValidationTask(subscriptionSetup, prioritized, sequence.incrementAndGet(), validation));
+        }
+        return true;
+    }
+
+    private synchronized void releaseReservation() {
+        reserved--;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Every N'th delivery for each subscription is validated
+     */
+    private boolean isSampled(String subscriptionId) {
+        return deliveryCounters.computeIfAbsent(subscriptionId, id -> new AtomicLong())
+                .getAndIncrement() % Math.max(1, samplingRate) == 0;
+    }
+
+    private ValidationTask findOldestNonPrioritized() {
+        ValidationTask oldest = null;
+        for (Runnable queued : queue) {
+            ValidationTask task = (ValidationTask) queued;
+            if (!task.prioritized && (oldest == null || task.sequence < oldest.sequence)) {
+                oldest = task;
+            }
+        }
+        return oldest;
+    }
+
+    private void registerDropped(SubscriptionSetup subscriptionSetup, String reason) {
+        metrics.registerDroppedValidation(subscriptionSetup.getSubscriptionType(), subscriptionSetup.getDatasetId(), reason);
+    }
+
+    private class ValidationTask implements Runnable, Comparable<ValidationTask> {
+        private final SubscriptionSetup subscriptionSetup;
+        private final boolean prioritized;
+        private final long sequence;
+        private final Runnable validation;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private ValidationTask(SubscriptionSetup subscriptionSetup, boolean prioritized, long sequence, Runnable validation) {
+            this.subscriptionSetup = subscriptionSetup;
+            this.prioritized = prioritized;
+            this.sequence = sequence;
+            this.validation = validation;
+        }
+
+        @Override
+        public void run() {
+            final long started = System.currentTimeMillis();
+            try {
+                validation.run();
+            } catch (Exception e) {
+                logger.warn("Validation for subscription {} failed", subscriptionSetup.getSubscriptionId(), e);
+            } finally {
+                metrics.registerValidationLatency(subscriptionSetup.getSubscriptionType(),
+                        started - queuedAt, System.currentTimeMillis() - started);
+            }
+        }
+
+        @Override
+        public int compareTo(ValidationTask other) {
+            if (prioritized != other.prioritized) {
+                return prioritized ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -59,9 +60,34 @@ public abstract class CustomValidator {
         }
     }
 
+    protected long getEpochSeconds(ZonedDateTime time) {
+        if (time == null) {
+            return 0;
+        }
+        return time.toEpochSecond();
+    }
+
     public abstract String getXpath();
     public abstract ValidationEvent isValid(Node node);
 
+    /**
+     * Validators reading sibling-nodes of the validated node need the parent-node to be available when the XML is
+     * validated as a stream
+     * @return
+     */
+    public boolean isSiblingContextRequired() {
+        return false;
+    }
+
+    /**
+     * Levels of descendants of the validated node that are read when validating - e.g. 1 means direct child-nodes
+     * only. Defaults to the complete subtree.
+     * @return
+     */
+    public int getRequiredDepth() {
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * General, default categoryname if implementing class does not override method
      * @return
@@ -114,6 +140,28 @@ public abstract class CustomValidator {
         return null;
     }
 
+    /**
+     * Checks if a value in the object-model is set, same as a non-empty element in the XML - lists are set when not
+     * empty
+     * @param value
+     * @return
+     */
+    protected static boolean isSet(Object value) {
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        return value != null;
+    }
+
+    /**
+     * Adds the fieldname to the list if the value in the object-model is not set
+     */
+    protected static void addIfMissing(List<String> missingFields, String fieldName, Object value) {
+        if (!isSet(value)) {
+            missingFields.add(fieldName);
+        }
+    }
+
     protected String getChildNodeValue(Node node, String name) {
         return getNodeValue(getChildNodeByName(node, name));
     }
@@ -229,61 +277,71 @@ public abstract class CustomValidator {
 
     /**
      *
-     * @param node Node that is validated
+     * @param node Node or object-model element that is validated
      * @param fieldname Name of attribute that fails validation
      * @param expectedValues Expected value or description of expected value
      * @param actualValue Actual value of node
      * @param severity
      * @return
      */
-    protected ValidationEvent createEvent(Node node, String fieldname, Object expectedValues, String actualValue, int severity) {
+    protected ValidationEvent createEvent(Object node, String fieldname, Object expectedValues, String actualValue, int severity) {
         String message = MessageFormat.format("Value [{0}] is invalid for field [{1}], expected {2}", actualValue, fieldname, expectedValues);
-        return new ValidationEventImpl(severity, message, new ValidationEventLocatorImpl(node));
+        return new ValidationEventImpl(severity, message, createLocator(node));
     }
 
     /**
      *
-     * @param node Node that is validated
+     * @param node Node or object-model element that is validated
      * @param fieldname Name of attribute that fails validation
      * @param missingFields Missing fields
      * @param severity
      * @return
      */
-    protected ValidationEvent createMissingFieldEvent(Node node, String fieldname, List<String> missingFields, int severity) {
+    protected ValidationEvent createMissingFieldEvent(Object node, String fieldname, List<String> missingFields, int severity) {
         ProfileValidationEventOrList eventList = new ProfileValidationEventOrList();
         for (String missingField : missingFields) {
             String message = MessageFormat.format("Missing required attribute: {0} for field {1}", missingField, fieldname);
-            eventList.addEvent(new ValidationEventImpl(severity, message, new ValidationEventLocatorImpl(node)));
+            eventList.addEvent(new ValidationEventImpl(severity, message, createLocator(node)));
         }
         return eventList;
     }
 
     /**
      *
-     * @param node Node that is validated
+     * @param node Node or object-model element that is validated
      * @param fieldname Name of attribute that fails validation
      * @param missingFields Missing fields
      * @param severity
      * @return
      */
-    private ValidationEvent createInvalidFieldEvent(Node node, String fieldname, List<String> missingFields, int severity) {
+    protected ValidationEvent createInvalidFieldEvent(Object node, String fieldname, List<String> missingFields, int severity) {
         ProfileValidationEventOrList eventList = new ProfileValidationEventOrList();
         for (String missingField : missingFields) {
             String message = MessageFormat.format("Invalid attribute: {0} for field {1}", missingField, fieldname);
-            eventList.addEvent(new ValidationEventImpl(severity, message, new ValidationEventLocatorImpl(node)));
+            eventList.addEvent(new ValidationEventImpl(severity, message, createLocator(node)));
         }
         return eventList;
     }
 
     /**
      *
-     * @param node Node that is validated
+     * @param node Node or object-model element that is validated
      * @param message Validation-message
      * @param severity
      * @return
      */
-    protected ValidationEvent createCustomFieldEvent(Node node, String message, int severity) {
-        return new ValidationEventImpl(severity, message, new ValidationEventLocatorImpl(node));
+    protected ValidationEvent createCustomFieldEvent(Object node, String message, int severity) {
+        return new ValidationEventImpl(severity, message, createLocator(node));
+    }
+
+    /**
+     * Locates the validated DOM-node, or the validated element in the object-model
+     */
+    private ValidationEventLocatorImpl createLocator(Object node) {
+        if (node instanceof Node) {
+            return new ValidationEventLocatorImpl((Node) node);
+        }
+        return new ValidationEventLocatorImpl(node);
     }
 
     public void prepareTestData(String id) {
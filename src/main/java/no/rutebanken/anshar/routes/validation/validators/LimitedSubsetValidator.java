@@ -47,4 +47,17 @@ public abstract class LimitedSubsetValidator extends CustomValidator {
         }
         return null;
     }
+
+    /**
+     * Validates a value from the object-model - values that are not set are not validated
+     * @param element
+     * @param value
+     * @return
+     */
+    protected ValidationEvent isValidValue(Object element, String value) {
+        if (value != null && !expectedValues.contains(value)) {
+            return  createEvent(element, FIELDNAME, "one of " + expectedValues, value, ValidationEvent.ERROR);
+        }
+        return null;
+    }
 }
@@ -46,4 +46,18 @@ public abstract class NsrGenericIdValidator extends CustomValidator {
 
         return null;
     }
+
+    /**
+     * Validates a value from the object-model - values that are not set are not validated
+     * @param element
+     * @param value
+     * @return
+     */
+    protected ValidationEvent isValidValue(Object element, String value) {
+        if (value != null && !isValidGenericId(ID_PATTERN, value)) {
+            return  createEvent(element, FIELDNAME, "valid NeTEx-id formatted like CODESPACE:" + ID_PATTERN + ":ID", value, ValidationEvent.FATAL_ERROR);
+        }
+
+        return null;
+    }
 }
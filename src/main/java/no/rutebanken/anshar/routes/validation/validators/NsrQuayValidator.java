@@ -48,4 +48,26 @@ public abstract class NsrQuayValidator extends CustomValidator {
 
         return null;
     }
+
+    /**
+     * Validates a value from the object-model - values that are not set are not validated
+     * @param element
+     * @param value
+     * @return
+     */
+    protected ValidationEvent isValidValue(Object element, String value) {
+        if (value == null) {
+            return null;
+        }
+
+        if (!isValidNsrId("NSR:Quay:", value)) {
+            return  createEvent(element, FIELDNAME, "valid ID from NSR - formatted like NSR:Quay:ID", value, ValidationEvent.FATAL_ERROR);
+        }
+
+        if (!idExists(value)) {
+            return createCustomFieldEvent(element, "The ID ´" + value + "` does not exist in NSR.", ValidationEvent.FATAL_ERROR);
+        }
+
+        return null;
+    }
 }
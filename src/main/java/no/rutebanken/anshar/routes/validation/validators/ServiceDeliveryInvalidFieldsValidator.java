@@ -1,6 +1,7 @@
 package no.rutebanken.anshar.routes.validation.validators;
 
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.ServiceDelivery;
 
 import javax.xml.bind.ValidationEvent;
 import java.util.ArrayList;
@@ -9,7 +10,7 @@ import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.SERVICE_DELIVERY;
 
-public abstract class ServiceDeliveryInvalidFieldsValidator extends CustomValidator {
+public abstract class ServiceDeliveryInvalidFieldsValidator extends CustomValidator implements SiriElementValidator<ServiceDelivery> {
 
     private static final String FIELDNAME = "ServiceDelivery";
     private String path = SERVICE_DELIVERY;
@@ -37,6 +38,14 @@ public abstract class ServiceDeliveryInvalidFieldsValidator extends CustomValida
         return FIELDNAME + " for this SubscriptionType";
     }
 
+    /**
+     * Only the names of the deliveries, and whether they have content, are read
+     */
+    @Override
+    public int getRequiredDepth() {
+        return 2;
+    }
+
     /**
      * Verifies that the string-value of the provided node is built up using the pattern defined
      * @param node
@@ -47,6 +56,38 @@ public abstract class ServiceDeliveryInvalidFieldsValidator extends CustomValida
         return verifyNonExistingFields(node, FIELDNAME, invalidDeliveryTypes);
     }
 
+    @Override
+    public Class<ServiceDelivery> getElementType() {
+        return ServiceDelivery.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(ServiceDelivery serviceDelivery) {
+        List<String> invalidFields = new ArrayList<>();
+        for (String type : invalidDeliveryTypes) {
+            if (hasDelivery(serviceDelivery, type)) {
+                invalidFields.add(type);
+            }
+        }
+        if (!invalidFields.isEmpty()) {
+            return createInvalidFieldEvent(serviceDelivery, FIELDNAME, invalidFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
+
+    private static boolean hasDelivery(ServiceDelivery serviceDelivery, String type) {
+        switch (type) {
+            case SX_DELIVERY:
+                return isSet(serviceDelivery.getSituationExchangeDeliveries());
+            case ET_DELIVERY:
+                return isSet(serviceDelivery.getEstimatedTimetableDeliveries());
+            case VM_DELIVERY:
+                return isSet(serviceDelivery.getVehicleMonitoringDeliveries());
+            default:
+                return false;
+        }
+    }
+
     @Override
     public String getXpath() {
         return path;
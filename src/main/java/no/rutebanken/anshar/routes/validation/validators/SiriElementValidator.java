@@ -0,0 +1,33 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation.validators;
+
+import javax.xml.bind.ValidationEvent;
+
+/**
+ * Rule that is also applied directly to the object-model, without the XML-representation
+ *
+ * All rules for a datatype are applied in a single traversal of the parsed object, each rule to every element of
+ * the given type. The rule itself checks that the validated field is set, as the xpath only matches existing elements.
+ *
+ * @param <T> Validated element - e.g. EstimatedCall
+ */
+public interface SiriElementValidator<T> {
+
+    Class<T> getElementType();
+
+    ValidationEvent isValid(T element);
+}
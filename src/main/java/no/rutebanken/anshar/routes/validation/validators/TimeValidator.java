@@ -16,6 +16,9 @@
 package no.rutebanken.anshar.routes.validation.validators;
 
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.CallStatusEnumeration;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
 import java.time.ZonedDateTime;
@@ -24,6 +27,11 @@ public abstract class TimeValidator extends CustomValidator {
 
     protected enum Mode {BEFORE, AFTER}
 
+    @Override
+    public boolean isSiblingContextRequired() {
+        return true;
+    }
+
     /**
      * Checks validity of field named @fieldName from @node
      *
@@ -68,6 +76,44 @@ public abstract class TimeValidator extends CustomValidator {
         return null;
     }
 
+    /**
+     * Same as {@link #checkTimeValidity(Node, String, String, Mode)} for times from the object-model, where
+     * unparseable times are not set
+     *
+     * @param call
+     * @param cancelled
+     * @param fieldname
+     * @param time
+     * @param comparisonFieldName
+     * @param comparisonTime
+     * @param mode
+     * @return
+     */
+    protected ValidationEvent checkTimeValidity(Object call, boolean cancelled, String fieldname, ZonedDateTime time,
+                                                String comparisonFieldName, ZonedDateTime comparisonTime, TimeValidator.Mode mode) {
+        if (cancelled || time == null || comparisonTime == null) {
+            return null;
+        }
+        if (!isValid(time, comparisonTime, mode)) {
+            return createEvent(call, fieldname,  "" + mode  + " " + comparisonFieldName + " [" + comparisonTime + "]", time.toString(), ValidationEvent.FATAL_ERROR);
+        }
+        return null;
+    }
+
+    protected boolean isCancelled(EstimatedCall call) {
+        return isCancelled(call.isCancellation(), call.getArrivalStatus(), call.getDepartureStatus());
+    }
+
+    protected boolean isCancelled(RecordedCall call) {
+        return isCancelled(call.isCancellation(), call.getArrivalStatus(), call.getDepartureStatus());
+    }
+
+    private boolean isCancelled(Boolean cancellation, CallStatusEnumeration arrivalStatus, CallStatusEnumeration departureStatus) {
+        return Boolean.TRUE.equals(cancellation) ||
+                arrivalStatus == CallStatusEnumeration.CANCELLED ||
+                departureStatus == CallStatusEnumeration.CANCELLED;
+    }
+
     /**
      * Checks if time-objects are equal or before/after according to mode
      * @param time_1
@@ -2,7 +2,10 @@ package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.StopPointRefStructure;
 
+import java.math.BigInteger;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,4 +27,23 @@ public abstract class CallRequiredFieldsValidator extends CustomValidator {
         }
         return missingFields;
     }
+
+    List<String> validateCommonFields(StopPointRefStructure stopPointRef, BigInteger order,
+                                      ZonedDateTime aimedArrivalTime, ZonedDateTime aimedDepartureTime) {
+
+        List<String> missingFields = new ArrayList<>();
+
+        if (stopPointRef == null) {
+            missingFields.add("StopPointRef");
+        }
+
+        if (order == null) {
+            missingFields.add("Order");
+        }
+
+        if (aimedArrivalTime == null && aimedDepartureTime == null) {
+            missingFields.add("AimedArrivalTime/AimedDepartureTime");
+        }
+        return missingFields;
+    }
 }
@@ -17,10 +17,14 @@ package no.rutebanken.anshar.routes.validation.validators.et;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.LimitedSubsetValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import uk.org.siri.siri21.DepartureBoardingActivityEnumeration;
+import uk.org.siri.siri21.EstimatedCall;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_CALL;
 
@@ -30,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class DepartureBoardingActivityValidator extends LimitedSubsetValidator {
+public class DepartureBoardingActivityValidator extends LimitedSubsetValidator implements SiriElementValidator<EstimatedCall> {
 
     private String path;
 
@@ -48,4 +52,14 @@ public class DepartureBoardingActivityValidator extends LimitedSubsetValidator {
         return path;
     }
 
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+        final DepartureBoardingActivityEnumeration value = call.getDepartureBoardingActivity();
+        return isValidValue(call, value != null ? value.value() : null);
+    }
 }
@@ -16,11 +16,13 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.TimeValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -32,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedAimedDepartureTimeValidator extends TimeValidator {
+public class EstimatedAimedDepartureTimeValidator extends TimeValidator implements SiriElementValidator<EstimatedCall> {
 
 
     private static final String FIELDNAME = "AimedDepartureTime";
@@ -50,4 +52,13 @@ public class EstimatedAimedDepartureTimeValidator extends TimeValidator {
         return checkTimeValidity(node, FIELDNAME, comparisonFieldName, Mode.AFTER);
     }
 
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+        return checkTimeValidity(call, isCancelled(call), FIELDNAME, call.getAimedDepartureTime(), comparisonFieldName, call.getAimedArrivalTime(), Mode.AFTER);
+    }
 }
@@ -16,12 +16,16 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
 
 import javax.xml.bind.ValidationEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_CALL;
 
@@ -31,7 +35,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedCallInvalidFieldsValidator extends CustomValidator {
+public class EstimatedCallInvalidFieldsValidator extends CustomValidator implements SiriElementValidator<EstimatedCall> {
 
     private static final String FIELDNAME = "EstimatedCall";
     private String path = ESTIMATED_CALL;
@@ -50,4 +54,24 @@ public class EstimatedCallInvalidFieldsValidator extends CustomValidator {
     public ValidationEvent isValid(Node node) {
         return verifyNonExistingFields(node, FIELDNAME,"EarliestExpectedDepartureTime", "VisitNumber");
     }
+
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+        List<String> invalidFields = new ArrayList<>();
+        if (isSet(call.getEarliestExpectedDepartureTime())) {
+            invalidFields.add("EarliestExpectedDepartureTime");
+        }
+        if (isSet(call.getVisitNumber())) {
+            invalidFields.add("VisitNumber");
+        }
+        if (!invalidFields.isEmpty()) {
+            return createInvalidFieldEvent(call, FIELDNAME, invalidFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
@@ -15,10 +15,12 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
 
 import javax.xml.bind.ValidationEvent;
 import java.util.List;
@@ -32,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedCallRequiredFieldsValidator extends CallRequiredFieldsValidator {
+public class EstimatedCallRequiredFieldsValidator extends CallRequiredFieldsValidator implements SiriElementValidator<EstimatedCall> {
 
     private static final String FIELDNAME = "EstimatedCall";
     private String path = ESTIMATED_CALL;
@@ -60,4 +62,24 @@ public class EstimatedCallRequiredFieldsValidator extends CallRequiredFieldsVali
         }
         return null;
     }
+
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+
+        List <String> missingFields = validateCommonFields(call.getStopPointRef(), call.getOrder(),
+                call.getAimedArrivalTime(), call.getAimedDepartureTime());
+
+        if (call.getExpectedArrivalTime() == null && call.getExpectedDepartureTime() == null) {
+            missingFields.add("ExpectedArrivalTime/ExpectedDepartureTime");
+        }
+        if (!missingFields.isEmpty()) {
+            return createMissingFieldEvent(call, FIELDNAME, missingFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
@@ -15,11 +15,13 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.TimeValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -31,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedExpectedArrivalTimeValidator extends TimeValidator {
+public class EstimatedExpectedArrivalTimeValidator extends TimeValidator implements SiriElementValidator<EstimatedCall> {
 
 
     private static final String FIELDNAME = "ExpectedArrivalTime";
@@ -49,4 +51,13 @@ public class EstimatedExpectedArrivalTimeValidator extends TimeValidator {
         return checkTimeValidity(node, FIELDNAME, comparisonFieldName, Mode.BEFORE);
     }
 
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+        return checkTimeValidity(call, isCancelled(call), FIELDNAME, call.getExpectedArrivalTime(), comparisonFieldName, call.getExpectedDepartureTime(), Mode.BEFORE);
+    }
 }
@@ -16,9 +16,14 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.StopPointRefStructure;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_CALL;
 
@@ -28,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedStopPointRefValidator extends NsrQuayValidator {
+public class EstimatedStopPointRefValidator extends NsrQuayValidator implements SiriElementValidator<EstimatedCall> {
 
     private String path;
     public EstimatedStopPointRefValidator() {
@@ -41,4 +46,14 @@ public class EstimatedStopPointRefValidator extends NsrQuayValidator {
         return path;
     }
 
+    @Override
+    public Class<EstimatedCall> getElementType() {
+        return EstimatedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedCall call) {
+        final StopPointRefStructure value = call.getStopPointRef();
+        return isValidValue(call, value != null ? value.getValue() : null);
+    }
 }
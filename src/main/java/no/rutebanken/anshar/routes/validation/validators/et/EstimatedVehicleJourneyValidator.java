@@ -16,10 +16,13 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.FramedVehicleJourneyRefStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.util.ArrayList;
@@ -34,7 +37,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EstimatedVehicleJourneyValidator extends CustomValidator {
+public class EstimatedVehicleJourneyValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private static final String FIELDNAME = "EstimatedVehicleJourney";
     private String path = ESTIMATED_VEHICLE_JOURNEY;
@@ -78,4 +81,41 @@ public class EstimatedVehicleJourneyValidator extends CustomValidator {
         }
         return verifyRequiredFields(node, FIELDNAME, fieldNames.toArray(new String[fieldNames.size()]));
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        List<String> missingFields = new ArrayList<>();
+
+        addIfMissing(missingFields, "LineRef", journey.getLineRef());
+        addIfMissing(missingFields, "DirectionRef", journey.getDirectionRef());
+        addIfMissing(missingFields, "DataSource", journey.getDataSource());
+        addIfMissing(missingFields, "IsCompleteStopSequence", journey.isIsCompleteStopSequence());
+
+        if (Boolean.TRUE.equals(journey.isExtraJourney())) {
+            addIfMissing(missingFields, "EstimatedVehicleJourneyCode", journey.getEstimatedVehicleJourneyCode());
+            addIfMissing(missingFields, "RouteRef", journey.getRouteRef());
+            addIfMissing(missingFields, "GroupOfLinesRef", journey.getGroupOfLinesRef());
+            addIfMissing(missingFields, "ExternalLineRef", journey.getExternalLineRef());
+        } else {
+
+            FramedVehicleJourneyRefStructure framedVehicleJourneyRef = journey.getFramedVehicleJourneyRef();
+
+            if (framedVehicleJourneyRef == null ||
+                    framedVehicleJourneyRef.getDatedVehicleJourneyRef() == null) {
+                if (journey.getDatedVehicleJourneyRef() == null) {
+                    missingFields.add("FramedVehicleJourneyRef or DatedVehicleJourneyRef");
+                }
+            }
+
+        }
+        if (!missingFields.isEmpty()) {
+            return createMissingFieldEvent(journey, FIELDNAME, missingFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
@@ -16,9 +16,14 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrGenericIdValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.DatedVehicleJourneyRef;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_VEHICLE_JOURNEY;
 
@@ -28,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EtDatedVehicleJourneyRefValidator extends NsrGenericIdValidator {
+public class EtDatedVehicleJourneyRefValidator extends NsrGenericIdValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private String path;
 
@@ -42,4 +47,15 @@ public class EtDatedVehicleJourneyRefValidator extends NsrGenericIdValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        final DatedVehicleJourneyRef value = journey.getDatedVehicleJourneyRef();
+        return isValidValue(journey, value != null ? value.getValue() : null);
+    }
 }
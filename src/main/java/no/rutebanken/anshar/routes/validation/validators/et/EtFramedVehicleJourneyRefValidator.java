@@ -17,10 +17,14 @@ package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
 import no.rutebanken.anshar.routes.validation.validators.ProfileValidationEventOrList;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.DataFrameRefStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.FramedVehicleJourneyRefStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.time.format.DateTimeFormatter;
@@ -38,7 +42,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class EtFramedVehicleJourneyRefValidator extends CustomValidator {
+public class EtFramedVehicleJourneyRefValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private static final String FIELDNAME = "FramedVehicleJourneyRef";
     private static final String DATA_FRAMEREF_FIELDNAME = "DataFrameRef";
@@ -63,9 +67,12 @@ public class EtFramedVehicleJourneyRefValidator extends CustomValidator {
 
     @Override
     public ValidationEvent isValid(Node node) {
+        return validate(node, getChildNodeValue(node, DATA_FRAMEREF_FIELDNAME), getChildNodeValue(node, "DatedVehicleJourneyRef"));
+    }
+
+    private ValidationEvent validate(Object node, String dataFrameRef, String datedVehicleJourneyRef) {
         ProfileValidationEventOrList validationEvents = new ProfileValidationEventOrList();
 
-        String dataFrameRef = getChildNodeValue(node, DATA_FRAMEREF_FIELDNAME);
         if (dataFrameRef == null) {
             validationEvents.addEvent(createEvent(node, DATA_FRAMEREF_FIELDNAME, "valid date", dataFrameRef, ValidationEvent.FATAL_ERROR));
         } else {
@@ -75,7 +82,6 @@ public class EtFramedVehicleJourneyRefValidator extends CustomValidator {
             }
         }
 
-        String datedVehicleJourneyRef = getChildNodeValue(node, "DatedVehicleJourneyRef");
         if (!isValidGenericId("ServiceJourney", datedVehicleJourneyRef)) {
 
             validationEvents.addEvent(createEvent(node, "DatedVehicleJourneyRef", "valid NeTEx-ID - formatted like CODESPACE:ServiceJourney:ID", datedVehicleJourneyRef, ValidationEvent.FATAL_ERROR));
@@ -95,4 +101,19 @@ public class EtFramedVehicleJourneyRefValidator extends CustomValidator {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        final FramedVehicleJourneyRefStructure framedVehicleJourneyRef = journey.getFramedVehicleJourneyRef();
+        if (framedVehicleJourneyRef == null) {
+            return null;
+        }
+        final DataFrameRefStructure dataFrameRef = framedVehicleJourneyRef.getDataFrameRef();
+        return validate(journey, dataFrameRef != null ? dataFrameRef.getValue() : null, framedVehicleJourneyRef.getDatedVehicleJourneyRef());
+    }
+}
@@ -16,10 +16,13 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrGenericIdValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.LineRef;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -32,7 +35,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class ExternalLineRefValidator extends NsrGenericIdValidator {
+public class ExternalLineRefValidator extends NsrGenericIdValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
 
     private String path;
@@ -59,4 +62,20 @@ public class ExternalLineRefValidator extends NsrGenericIdValidator {
         }
         return validationEvent;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        final LineRef externalLineRef = journey.getExternalLineRef();
+        final String value = externalLineRef != null ? externalLineRef.getValue() : null;
+        final ValidationEvent validationEvent = isValidValue(journey, value);
+        if (validationEvent == null && value != null && value.equals("NSB:Line:xx")) {
+            return createEvent(journey, FIELDNAME, "Valid reference to actual line", value, ValidationEvent.FATAL_ERROR);
+        }
+        return validationEvent;
+    }
 }
@@ -17,10 +17,13 @@ package no.rutebanken.anshar.routes.validation.validators.et;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
 import uk.org.siri.siri21.VehicleModesEnumeration;
 
 import javax.xml.bind.ValidationEvent;
@@ -39,7 +42,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class ExtraJourneyValidator extends CustomValidator {
+public class ExtraJourneyValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private static final String FIELDNAME = "ExtraJourney";
     private String path = ESTIMATED_VEHICLE_JOURNEY + FIELD_DELIMITER + FIELDNAME;
@@ -69,6 +72,11 @@ public class ExtraJourneyValidator extends CustomValidator {
         return path;
     }
 
+    @Override
+    public boolean isSiblingContextRequired() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
         String isExtraJourney = getNodeValue(node);
@@ -139,4 +147,62 @@ public class ExtraJourneyValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+
+        if (Boolean.TRUE.equals(journey.isExtraJourney())) {
+            // ExtraJourney == true
+
+            String expectedValuesMessageText = "not null when ExtraJourney=true";
+
+            // VehicleMode - required
+            final String vehicleMode = !journey.getVehicleModes().isEmpty() ? journey.getVehicleModes().get(0).value() : null;
+            if (vehicleMode == null) {
+                return  createEvent(journey, VEHICLE_MODE_NODE_NAME, expectedValuesMessageText, vehicleMode, ValidationEvent.ERROR);
+            } else if (!validVehicleModes.contains(vehicleMode)) {
+                return  createEvent(journey, VEHICLE_MODE_NODE_NAME, validVehicleModes, vehicleMode, ValidationEvent.ERROR);
+            }
+
+            // RouteRef - required
+            final String routeRef = journey.getRouteRef() != null ? journey.getRouteRef().getValue() : null;
+            if (routeRef == null) {
+                return  createEvent(journey, ROUTE_REF_NODE_NAME, expectedValuesMessageText, routeRef, ValidationEvent.ERROR);
+            } else if (!routeRef.contains(":Route:")) {
+                return  createEvent(journey, ROUTE_REF_NODE_NAME, "valid RouteRef - CODESPACE:Route:ID", routeRef, ValidationEvent.ERROR);
+            }
+
+            // GroupOfLinesRef - required
+            final String groupOfLines = journey.getGroupOfLinesRef() != null ? journey.getGroupOfLinesRef().getValue() : null;
+            if (groupOfLines == null) {
+                return  createEvent(journey, GROUP_OF_LINES_REF_NODE_NAME, expectedValuesMessageText, groupOfLines, ValidationEvent.ERROR);
+            } else if (!groupOfLines.contains(":Network:")) {
+                return  createEvent(journey, GROUP_OF_LINES_REF_NODE_NAME, "valid GroupOfLinesRef - CODESPACE:Network:ID", groupOfLines, ValidationEvent.ERROR);
+            }
+
+            // EstimatedVehicleJourneyCode - required
+            final String estimatedVehicleJourneyCode = journey.getEstimatedVehicleJourneyCode();
+            if (estimatedVehicleJourneyCode == null) {
+                return  createEvent(journey, ESTIMATED_VEHICLE_JOURNEY_CODE_NODE_NAME, expectedValuesMessageText, groupOfLines, ValidationEvent.ERROR);
+            } else if (!estimatedVehicleJourneyCode.contains(":ServiceJourney:")) {
+                return  createEvent(journey, estimatedVehicleJourneyCode, "valid EstimatedVehicleJourneyCode - CODESPACE:ServiceJourney:ID", estimatedVehicleJourneyCode, ValidationEvent.ERROR);
+            }
+
+            // EstimatedCall - DestinationDisplay
+            if (journey.getEstimatedCalls() != null) {
+                for (EstimatedCall call : journey.getEstimatedCalls().getEstimatedCalls()) {
+                    if (call.getDestinationDisplaies().isEmpty()) {
+                        return  createEvent(journey, ESTIMATED_CALL_NODE_NAME + "." + DESTINATION_DISPLAY_NODE_NAME, expectedValuesMessageText, null, ValidationEvent.ERROR);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
 }
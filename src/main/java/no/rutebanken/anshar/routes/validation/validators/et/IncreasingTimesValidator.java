@@ -16,10 +16,15 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.CallStatusEnumeration;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
 import java.text.MessageFormat;
@@ -36,7 +41,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class IncreasingTimesValidator extends CustomValidator {
+public class IncreasingTimesValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private String path = ESTIMATED_VEHICLE_JOURNEY;
 
@@ -150,13 +155,20 @@ public class IncreasingTimesValidator extends CustomValidator {
     }
 
     private long validateIncreasingTimes(long previousDeparture, Node call) throws NegativeDwelltimeException, NegativeRuntimeException{
-        long aimedArrivalTime = getEpochSeconds(getChildNodeValue(call, AIMED_ARRIVAL_NODE_NAME));
-        long expectedArrivalTime = getEpochSeconds(getChildNodeValue(call, EXPECTED_ARRIVAL_NODE_NAME));
-        long actualArrivalTime = getEpochSeconds(getChildNodeValue(call, ACTUAL_ARRIVAL_NODE_NAME));
+        return validateIncreasingTimes(previousDeparture,
+                getEpochSeconds(getChildNodeValue(call, AIMED_ARRIVAL_NODE_NAME)),
+                getEpochSeconds(getChildNodeValue(call, EXPECTED_ARRIVAL_NODE_NAME)),
+                getEpochSeconds(getChildNodeValue(call, ACTUAL_ARRIVAL_NODE_NAME)),
+                getEpochSeconds(getChildNodeValue(call, AIMED_DEPARTURE_NODE_NAME)),
+                getEpochSeconds(getChildNodeValue(call, EXPECTED_DEPARTURE_NODE_NAME)),
+                getEpochSeconds(getChildNodeValue(call, ACTUAL_DEPARTURE_NODE_NAME))
+        );
+    }
 
-        long aimedDepartureTime = getEpochSeconds(getChildNodeValue(call, AIMED_DEPARTURE_NODE_NAME));
-        long expectedDepartureTime = getEpochSeconds(getChildNodeValue(call, EXPECTED_DEPARTURE_NODE_NAME));
-        long actualDepartureTime = getEpochSeconds(getChildNodeValue(call, ACTUAL_DEPARTURE_NODE_NAME));
+    private long validateIncreasingTimes(long previousDeparture,
+                                         long aimedArrivalTime, long expectedArrivalTime, long actualArrivalTime,
+                                         long aimedDepartureTime, long expectedDepartureTime, long actualDepartureTime)
+            throws NegativeDwelltimeException, NegativeRuntimeException{
 
         long arrival = -1;
 
@@ -200,4 +212,77 @@ public class IncreasingTimesValidator extends CustomValidator {
 
     private class NegativeDwelltimeException extends Exception {
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+
+        long previousDeparture = -1;
+
+        String lineRef = journey.getLineRef() != null ? journey.getLineRef().getValue() : null;
+        String vehicleRef = journey.getVehicleRef() != null ? journey.getVehicleRef().getValue() : null;
+
+        // Comparing aimed- and actual-times for RecordedCall
+        if (journey.getRecordedCalls() != null) {
+            for (RecordedCall call : journey.getRecordedCalls().getRecordedCalls()) {
+
+                String stopPointRef = call.getStopPointRef() != null ? call.getStopPointRef().getValue() : null;
+
+                try {
+                    previousDeparture = validateIncreasingTimes(previousDeparture,
+                            getEpochSeconds(call.getAimedArrivalTime()),
+                            getEpochSeconds(call.getExpectedArrivalTime()),
+                            getEpochSeconds(call.getActualArrivalTime()),
+                            getEpochSeconds(call.getAimedDepartureTime()),
+                            getEpochSeconds(call.getExpectedDepartureTime()),
+                            getEpochSeconds(call.getActualDepartureTime())
+                    );
+                } catch (NegativeDwelltimeException e) {
+                    if (!isCancelled(call.isCancellation(), call.getDepartureStatus())) {
+                        return createCustomFieldEvent(journey, "Departure before arrival - at " + getIdentifierString(stopPointRef, lineRef, vehicleRef), ValidationEvent.FATAL_ERROR);
+                    }
+                } catch (NegativeRuntimeException e) {
+                    if (!isCancelled(call.isCancellation(), call.getArrivalStatus())) {
+                        return createCustomFieldEvent(journey, "Arrival before departure from previous stop - at " + getIdentifierString(stopPointRef, lineRef, vehicleRef), ValidationEvent.FATAL_ERROR);
+                    }
+                }
+            }
+        }
+        // Comparing aimed- and expected times for EstimatedCall
+        if (journey.getEstimatedCalls() != null) {
+            for (EstimatedCall call : journey.getEstimatedCalls().getEstimatedCalls()) {
+
+                String stopPointRef = call.getStopPointRef() != null ? call.getStopPointRef().getValue() : null;
+
+                try {
+                    previousDeparture = validateIncreasingTimes(previousDeparture,
+                            getEpochSeconds(call.getAimedArrivalTime()),
+                            getEpochSeconds(call.getExpectedArrivalTime()),
+                            0,
+                            getEpochSeconds(call.getAimedDepartureTime()),
+                            getEpochSeconds(call.getExpectedDepartureTime()),
+                            0
+                    );
+                } catch (NegativeDwelltimeException e) {
+                    if (!isCancelled(call.isCancellation(), call.getDepartureStatus())) { // Do not flag negative dwell-time as an error when departure is cancelled.
+                        return createCustomFieldEvent(journey, "Departure before arrival - at " + getIdentifierString(stopPointRef, lineRef, vehicleRef), ValidationEvent.FATAL_ERROR);
+                    }
+                } catch (NegativeRuntimeException e) {
+                    if (!isCancelled(call.isCancellation(), call.getArrivalStatus())) { // Do not flag negative run-time as an error when arrival is cancelled.
+                        return createCustomFieldEvent(journey, "Arrival before departure from previous stop - at " + getIdentifierString(stopPointRef, lineRef, vehicleRef), ValidationEvent.FATAL_ERROR);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isCancelled(Boolean cancellation, CallStatusEnumeration status) {
+        return Boolean.TRUE.equals(cancellation) || status == CallStatusEnumeration.CANCELLED;
+    }
 }
@@ -16,10 +16,12 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -31,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class IsCompleteStopSequenceValidator extends CustomValidator {
+public class IsCompleteStopSequenceValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private static final String FIELDNAME = "IsCompleteStopSequence";
     private String path = ESTIMATED_VEHICLE_JOURNEY;
@@ -56,4 +58,20 @@ public class IsCompleteStopSequenceValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+
+        Boolean isComplete = journey.isIsCompleteStopSequence();
+        if (!Boolean.TRUE.equals(isComplete)) {
+            return  createEvent(journey, FIELDNAME, true, isComplete != null ? isComplete.toString() : null, ValidationEvent.WARNING);
+        }
+
+        return null;
+    }
 }
@@ -17,11 +17,15 @@ package no.rutebanken.anshar.routes.validation.validators.et;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.LimitedSubsetValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
 import uk.org.siri.siri21.OccupancyEnumeration;
 
+import javax.xml.bind.ValidationEvent;
+
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_VEHICLE_JOURNEY;
 
 /**
@@ -30,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class OccupancyValidator extends LimitedSubsetValidator {
+public class OccupancyValidator extends LimitedSubsetValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
 
 
@@ -50,4 +54,15 @@ public class OccupancyValidator extends LimitedSubsetValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        final OccupancyEnumeration value = journey.getOccupancy();
+        return isValidValue(journey, value != null ? value.value() : null);
+    }
 }
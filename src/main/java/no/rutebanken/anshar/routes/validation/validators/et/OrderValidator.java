@@ -16,12 +16,17 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
+import java.math.BigInteger;
 import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_VEHICLE_JOURNEY;
@@ -32,7 +37,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class OrderValidator extends CustomValidator {
+public class OrderValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private static final String FIELDNAME = "Order";
     private String path = ESTIMATED_VEHICLE_JOURNEY;
@@ -94,4 +99,47 @@ public class OrderValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+
+        int expectedOrderValue = 1;
+
+        if (journey.getRecordedCalls() != null) {
+            for (RecordedCall recordedCall : journey.getRecordedCalls().getRecordedCalls()) {
+                ValidationEvent event = validateOrder(journey, recordedCallNodeName, recordedCall.getOrder(), expectedOrderValue);
+                if (event != null) {
+                    return event;
+                }
+                expectedOrderValue++;
+            }
+        }
+
+        if (journey.getEstimatedCalls() != null) {
+            for (EstimatedCall estimatedCall : journey.getEstimatedCalls().getEstimatedCalls()) {
+                ValidationEvent event = validateOrder(journey, estimatedCallNodeName, estimatedCall.getOrder(), expectedOrderValue);
+                if (event != null) {
+                    return event;
+                }
+                expectedOrderValue++;
+            }
+        }
+
+        return null;
+    }
+
+    private ValidationEvent validateOrder(EstimatedVehicleJourney journey, String callName, BigInteger order, int expectedOrderValue) {
+        if (order == null) {
+            return  createEvent(journey, callName + FIELD_DELIMITER + FIELDNAME, "it to be set", null, ValidationEvent.ERROR);
+        }
+        if (order.intValue() != expectedOrderValue) {
+            return  createEvent(journey, callName + FIELD_DELIMITER + FIELDNAME, "increasing positiveInteger (expected " + expectedOrderValue + ")", order.toString(), ValidationEvent.FATAL_ERROR);
+        }
+        return null;
+    }
 }
@@ -16,11 +16,13 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.TimeValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -32,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORD
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class RecordedAimedArrivalTimeValidator extends TimeValidator {
+public class RecordedAimedArrivalTimeValidator extends TimeValidator implements SiriElementValidator<RecordedCall> {
 
 
     private static final String FIELDNAME = "AimedArrivalTime";
@@ -50,4 +52,13 @@ public class RecordedAimedArrivalTimeValidator extends TimeValidator {
         return checkTimeValidity(node, FIELDNAME, comparisonFieldName, Mode.BEFORE);
     }
 
+    @Override
+    public Class<RecordedCall> getElementType() {
+        return RecordedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(RecordedCall call) {
+        return checkTimeValidity(call, isCancelled(call), FIELDNAME, call.getAimedArrivalTime(), comparisonFieldName, call.getAimedDepartureTime(), Mode.BEFORE);
+    }
 }
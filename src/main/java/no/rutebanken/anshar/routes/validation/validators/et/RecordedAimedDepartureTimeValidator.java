@@ -15,11 +15,13 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.TimeValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -31,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORD
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class RecordedAimedDepartureTimeValidator extends TimeValidator {
+public class RecordedAimedDepartureTimeValidator extends TimeValidator implements SiriElementValidator<RecordedCall> {
 
 
     private static final String FIELDNAME = "AimedDepartureTime";
@@ -49,4 +51,13 @@ public class RecordedAimedDepartureTimeValidator extends TimeValidator {
         return checkTimeValidity(node, FIELDNAME, comparisonFieldName, Mode.AFTER);
     }
 
+    @Override
+    public Class<RecordedCall> getElementType() {
+        return RecordedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(RecordedCall call) {
+        return checkTimeValidity(call, isCancelled(call), FIELDNAME, call.getAimedDepartureTime(), comparisonFieldName, call.getAimedArrivalTime(), Mode.AFTER);
+    }
 }
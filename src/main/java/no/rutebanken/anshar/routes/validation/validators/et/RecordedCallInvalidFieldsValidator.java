@@ -16,12 +16,15 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
+import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORDED_CALL;
 
@@ -31,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORD
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class RecordedCallInvalidFieldsValidator extends CustomValidator {
+public class RecordedCallInvalidFieldsValidator extends CustomValidator implements SiriElementValidator<RecordedCall> {
 
     private static final String FIELDNAME = "RecordedCall";
     private String path = RECORDED_CALL;
@@ -50,4 +53,17 @@ public class RecordedCallInvalidFieldsValidator extends CustomValidator {
     public ValidationEvent isValid(Node node) {
         return verifyNonExistingFields(node, FIELDNAME,"VisitNumber");
     }
+
+    @Override
+    public Class<RecordedCall> getElementType() {
+        return RecordedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(RecordedCall call) {
+        if (isSet(call.getVisitNumber())) {
+            return createInvalidFieldEvent(call, FIELDNAME, List.of("VisitNumber"), ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
@@ -15,10 +15,12 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.RecordedCall;
 
 import javax.xml.bind.ValidationEvent;
 import java.util.List;
@@ -32,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORD
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class RecordedCallRequiredFieldsValidator extends CallRequiredFieldsValidator {
+public class RecordedCallRequiredFieldsValidator extends CallRequiredFieldsValidator implements SiriElementValidator<RecordedCall> {
 
     private static final String FIELDNAME = "RecordedCall";
     private String path = RECORDED_CALL;
@@ -71,4 +73,35 @@ public class RecordedCallRequiredFieldsValidator extends CallRequiredFieldsValid
         }
         return null;
     }
+
+    @Override
+    public Class<RecordedCall> getElementType() {
+        return RecordedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(RecordedCall call) {
+
+        List <String> missingFields = validateCommonFields(call.getStopPointRef(), call.getOrder(),
+                call.getAimedArrivalTime(), call.getAimedDepartureTime());
+
+        if (call.getAimedArrivalTime() != null && call.getActualArrivalTime() == null) {
+            // AimedArrival is set, but neither Actual- nor ExpectedArrivalTime
+            if (call.getExpectedArrivalTime() == null) {
+                missingFields.add("ExpectedArrivalTime or ActualArrivalTime");
+            }
+        }
+
+        if (call.getAimedDepartureTime() != null && call.getActualDepartureTime() == null) {
+            // AimedDeparture is set, but neither Actual- nor ExpectedDeparture
+            if (call.getExpectedDepartureTime() == null) {
+                missingFields.add("ExpectedDepartureTime or ActualDepartureTime");
+            }
+        }
+
+        if (!missingFields.isEmpty()) {
+            return createMissingFieldEvent(call, FIELDNAME, missingFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
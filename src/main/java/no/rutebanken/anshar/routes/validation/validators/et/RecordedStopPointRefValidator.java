@@ -16,9 +16,14 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.RecordedCall;
+import uk.org.siri.siri21.StopPointRefStructure;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORDED_CALL;
 
@@ -28,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.RECORD
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class RecordedStopPointRefValidator extends NsrQuayValidator {
+public class RecordedStopPointRefValidator extends NsrQuayValidator implements SiriElementValidator<RecordedCall> {
 
 
     private String path;
@@ -43,4 +48,14 @@ public class RecordedStopPointRefValidator extends NsrQuayValidator {
         return path;
     }
 
+    @Override
+    public Class<RecordedCall> getElementType() {
+        return RecordedCall.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(RecordedCall call) {
+        final StopPointRefStructure value = call.getStopPointRef();
+        return isValidValue(call, value != null ? value.getValue() : null);
+    }
 }
@@ -16,10 +16,15 @@
 package no.rutebanken.anshar.routes.validation.validators.et;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.RecordedCall;
+import uk.org.siri.siri21.StopPointRefStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.text.MessageFormat;
@@ -36,7 +41,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
 @SuppressWarnings("unchecked")
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class SaneDelayValidator extends CustomValidator {
+public class SaneDelayValidator extends CustomValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
     private String path = ESTIMATED_VEHICLE_JOURNEY;
 
@@ -116,14 +121,19 @@ public class SaneDelayValidator extends CustomValidator {
     }
 
     private void validateSaneDelays(Node call) throws TooLongDelayException {
+        validateSaneDelays(
+                getEpochSeconds(getChildNodeValue(call, aimedArrivalNodeName)),
+                getEpochSeconds(getChildNodeValue(call, expectedArrivalNodeName)),
+                getEpochSeconds(getChildNodeValue(call, actualArrivalNodeName)),
+                getEpochSeconds(getChildNodeValue(call, aimedDepartureNodeName)),
+                getEpochSeconds(getChildNodeValue(call, expectedDepartureNodeName)),
+                getEpochSeconds(getChildNodeValue(call, actualDepartureNodeName))
+        );
+    }
 
-        long aimedArrivalTime = getEpochSeconds(getChildNodeValue(call, aimedArrivalNodeName));
-        long expectedArrivalTime = getEpochSeconds(getChildNodeValue(call, expectedArrivalNodeName));
-        long actualArrivalTime = getEpochSeconds(getChildNodeValue(call, actualArrivalNodeName));
-
-        long aimedDepartureTime = getEpochSeconds(getChildNodeValue(call, aimedDepartureNodeName));
-        long expectedDepartureTime = getEpochSeconds(getChildNodeValue(call, expectedDepartureNodeName));
-        long actualDepartureTime = getEpochSeconds(getChildNodeValue(call, actualDepartureNodeName));
+    private void validateSaneDelays(long aimedArrivalTime, long expectedArrivalTime, long actualArrivalTime,
+                                    long aimedDepartureTime, long expectedDepartureTime, long actualDepartureTime)
+            throws TooLongDelayException {
 
         long arrivalDelay = 0;
         long updatedArrival = -1;
@@ -206,4 +216,58 @@ public class SaneDelayValidator extends CustomValidator {
 
         }
     }
+
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+
+        String lineRef = journey.getLineRef() != null ? journey.getLineRef().getValue() : null;
+        String vehicleRef = journey.getVehicleRef() != null ? journey.getVehicleRef().getValue() : null;
+
+        // Checking delays for RecordedCall
+        if (journey.getRecordedCalls() != null) {
+            for (RecordedCall call : journey.getRecordedCalls().getRecordedCalls()) {
+                try {
+                    validateSaneDelays(
+                            getEpochSeconds(call.getAimedArrivalTime()),
+                            getEpochSeconds(call.getExpectedArrivalTime()),
+                            getEpochSeconds(call.getActualArrivalTime()),
+                            getEpochSeconds(call.getAimedDepartureTime()),
+                            getEpochSeconds(call.getExpectedDepartureTime()),
+                            getEpochSeconds(call.getActualDepartureTime())
+                    );
+                } catch (TooLongDelayException e) {
+                    return createCustomFieldEvent(journey, e.getMessage() + " - at " + getIdentifierString(getStopPointRef(call.getStopPointRef()), lineRef, vehicleRef), ValidationEvent.WARNING);
+                }
+            }
+        }
+
+        // Checking delays for EstimatedCall
+        if (journey.getEstimatedCalls() != null) {
+            for (EstimatedCall call : journey.getEstimatedCalls().getEstimatedCalls()) {
+                try {
+                    validateSaneDelays(
+                            getEpochSeconds(call.getAimedArrivalTime()),
+                            getEpochSeconds(call.getExpectedArrivalTime()),
+                            0,
+                            getEpochSeconds(call.getAimedDepartureTime()),
+                            getEpochSeconds(call.getExpectedDepartureTime()),
+                            0
+                    );
+                } catch (TooLongDelayException e) {
+                    return createCustomFieldEvent(journey, e.getMessage() + " - at " + getIdentifierString(getStopPointRef(call.getStopPointRef()), lineRef, vehicleRef), ValidationEvent.WARNING);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static String getStopPointRef(StopPointRefStructure stopPointRef) {
+        return stopPointRef != null ? stopPointRef.getValue() : null;
+    }
 }
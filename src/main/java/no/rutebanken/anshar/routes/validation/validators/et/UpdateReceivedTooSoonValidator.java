@@ -15,11 +15,14 @@
 
 package no.rutebanken.anshar.routes.validation.validators.et;
 
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.TimeValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
 
 import javax.xml.bind.ValidationEvent;
 import java.time.ZonedDateTime;
@@ -33,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMA
  */
 @Validator(profileName = "norway", targetType = SiriDataType.ESTIMATED_TIMETABLE)
 @Component
-public class UpdateReceivedTooSoonValidator extends TimeValidator {
+public class UpdateReceivedTooSoonValidator extends TimeValidator implements SiriElementValidator<EstimatedVehicleJourney> {
 
 
     private static final String FIELDNAME = "EstimatedCall";
@@ -73,4 +76,33 @@ public class UpdateReceivedTooSoonValidator extends TimeValidator {
         return null;
     }
 
+    @Override
+    public Class<EstimatedVehicleJourney> getElementType() {
+        return EstimatedVehicleJourney.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(EstimatedVehicleJourney journey) {
+        if (journey.getEstimatedCalls() == null || journey.getEstimatedCalls().getEstimatedCalls().isEmpty()) {
+            return null;
+        }
+        final EstimatedCall firstEstimatedCall = journey.getEstimatedCalls().getEstimatedCalls().get(0);
+
+        ZonedDateTime aimed;
+        if (firstEstimatedCall.getAimedArrivalTime() != null) {
+            aimed = firstEstimatedCall.getAimedArrivalTime();
+        } else {
+            aimed = firstEstimatedCall.getAimedDepartureTime();
+        }
+        if (aimed != null) {
+            ZonedDateTime currentTime = ZonedDateTime.now();
+
+            long timeUntilDeparture = ChronoUnit.HOURS.between(currentTime, aimed);
+
+            if (timeUntilDeparture > MAX_HOURS_UNTIL_FIRST_DEPARTURE) {
+                return createCustomFieldEvent(journey, "Realtime data received more than " + DAYS + " days ahead - aimed start [" + aimed + "], current time ["+ currentTime+"]" , ValidationEvent.WARNING);
+            }
+        }
+        return null;
+    }
 }
@@ -53,6 +53,11 @@ public class ValidityPeriodValidator extends CustomValidator {
         return path;
     }
 
+    @Override
+    public boolean isSiblingContextRequired() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
 
@@ -16,10 +16,12 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.time.Duration;
@@ -34,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class DelayValidator extends CustomValidator {
+public class DelayValidator extends CustomValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
 
     private static final String FIELDNAME = "Delay";
@@ -59,4 +61,23 @@ public class DelayValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        if (journey.getDelay() != null) {
+            // Valid xsd:duration, but not necessarily supported as Duration
+            String delay = journey.getDelay().toString();
+            try {
+                Duration.parse(delay);
+            } catch (DateTimeParseException e){
+                return createEvent(journey, FIELDNAME, "valid Duration", delay, ValidationEvent.ERROR);
+            }
+        }
+        return null;
+    }
 }
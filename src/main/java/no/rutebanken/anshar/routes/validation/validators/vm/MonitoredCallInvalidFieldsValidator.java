@@ -16,12 +16,16 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.MonitoredCallStructure;
 
 import javax.xml.bind.ValidationEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_CALL_STRUCTURE;
 
@@ -30,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredCallInvalidFieldsValidator extends NsrQuayValidator {
+public class MonitoredCallInvalidFieldsValidator extends NsrQuayValidator implements SiriElementValidator<MonitoredCallStructure> {
 
     private static final String FIELDNAME = "MonitoredCall";
     private String path = MONITORED_CALL_STRUCTURE;
@@ -53,4 +57,27 @@ public class MonitoredCallInvalidFieldsValidator extends NsrQuayValidator {
                 "DepartureStopAssignment");
 
     }
+
+    @Override
+    public Class<MonitoredCallStructure> getElementType() {
+        return MonitoredCallStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredCallStructure call) {
+        List<String> invalidFields = new ArrayList<>();
+        if (isSet(call.getLatestExpectedArrivalTime())) {
+            invalidFields.add("LatestExpectedArrivalTime");
+        }
+        if (isSet(call.getEarliestExpectedDepartureTime())) {
+            invalidFields.add("EarliestExpectedDepartureTime");
+        }
+        if (isSet(call.getDepartureStopAssignments())) {
+            invalidFields.add("DepartureStopAssignment");
+        }
+        if (!invalidFields.isEmpty()) {
+            return createInvalidFieldEvent(call, FIELDNAME, invalidFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
@@ -16,9 +16,14 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.MonitoredCallStructure;
+import uk.org.siri.siri21.StopPointRefStructure;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_CALL_STRUCTURE;
 
@@ -28,7 +33,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredCallStopPointRefValidator extends NsrQuayValidator {
+public class MonitoredCallStopPointRefValidator extends NsrQuayValidator implements SiriElementValidator<MonitoredCallStructure> {
 
     private String path;
 
@@ -41,4 +46,15 @@ public class MonitoredCallStopPointRefValidator extends NsrQuayValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<MonitoredCallStructure> getElementType() {
+        return MonitoredCallStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredCallStructure call) {
+        final StopPointRefStructure value = call.getStopPointRef();
+        return isValidValue(call, value != null ? value.getValue() : null);
+    }
 }
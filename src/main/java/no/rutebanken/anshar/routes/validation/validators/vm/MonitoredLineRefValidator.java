@@ -16,9 +16,14 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrGenericIdValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.LineRef;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
+
+import javax.xml.bind.ValidationEvent;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_VEHICLE_JOURNEY;
 
@@ -29,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredLineRefValidator extends NsrGenericIdValidator {
+public class MonitoredLineRefValidator extends NsrGenericIdValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
 
     private final String path;
@@ -44,4 +49,15 @@ public class MonitoredLineRefValidator extends NsrGenericIdValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        final LineRef value = journey.getLineRef();
+        return isValidValue(journey, value != null ? value.getValue() : null);
+    }
 }
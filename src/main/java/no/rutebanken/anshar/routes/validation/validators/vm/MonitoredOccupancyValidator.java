@@ -17,11 +17,15 @@ package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.LimitedSubsetValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 import uk.org.siri.siri21.OccupancyEnumeration;
 
+import javax.xml.bind.ValidationEvent;
+
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_VEHICLE_JOURNEY;
 
 
@@ -31,7 +35,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredOccupancyValidator extends LimitedSubsetValidator {
+public class MonitoredOccupancyValidator extends LimitedSubsetValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
 
     private String path;
@@ -50,4 +54,15 @@ public class MonitoredOccupancyValidator extends LimitedSubsetValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        final OccupancyEnumeration value = journey.getOccupancy();
+        return isValidValue(journey, value != null ? value.value() : null);
+    }
 }
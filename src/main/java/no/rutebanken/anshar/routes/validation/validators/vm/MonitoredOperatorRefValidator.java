@@ -16,10 +16,13 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrGenericIdValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
+import uk.org.siri.siri21.OperatorRefStructure;
 
 import javax.xml.bind.ValidationEvent;
 
@@ -31,7 +34,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredOperatorRefValidator extends NsrGenericIdValidator {
+public class MonitoredOperatorRefValidator extends NsrGenericIdValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
     private String path;
 
@@ -45,4 +48,15 @@ public class MonitoredOperatorRefValidator extends NsrGenericIdValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        final OperatorRefStructure value = journey.getOperatorRef();
+        return isValidValue(journey, value != null ? value.getValue() : null);
+    }
 }
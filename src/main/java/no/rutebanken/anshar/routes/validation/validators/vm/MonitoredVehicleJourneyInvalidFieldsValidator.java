@@ -16,12 +16,18 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 
 import javax.xml.bind.ValidationEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_VEHICLE_JOURNEY;
 
@@ -30,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredVehicleJourneyInvalidFieldsValidator extends NsrQuayValidator {
+public class MonitoredVehicleJourneyInvalidFieldsValidator extends NsrQuayValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
     private static final String FIELDNAME = "MonitoredVehicleJourney";
     private String path = MONITORED_VEHICLE_JOURNEY;
@@ -62,4 +68,37 @@ public class MonitoredVehicleJourneyInvalidFieldsValidator extends NsrQuayValida
                 "LocationRecordedAtTime");
 
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("JourneyPatternRef", journey.getJourneyPatternRef());
+        fields.put("DirectionRef", journey.getDirectionRef());
+        fields.put("Via", journey.getVias());
+        fields.put("JourneyNote", journey.getJourneyNotes());
+        fields.put("MonitoringError", journey.getMonitoringError());
+        fields.put("InPanic", journey.isInPanic());
+        fields.put("BlockRef", journey.getBlockRef());
+        fields.put("PreviousCalls", journey.getPreviousCalls());
+        fields.put("OnwardCalls", journey.getOnwardCalls());
+        fields.put("ProgressStatus", journey.getProgressStatuses());
+        fields.put("CourseOfJourneyRef", journey.getCourseOfJourneyRef());
+        fields.put("LocationRecordedAtTime", journey.getLocationRecordedAtTime());
+
+        List<String> invalidFields = new ArrayList<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (isSet(field.getValue())) {
+                invalidFields.add(field.getKey());
+            }
+        }
+        if (!invalidFields.isEmpty()) {
+            return createInvalidFieldEvent(journey, FIELDNAME, invalidFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
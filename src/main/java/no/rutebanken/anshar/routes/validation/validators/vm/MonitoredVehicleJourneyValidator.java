@@ -31,12 +31,16 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.NsrQuayValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 
 import javax.xml.bind.ValidationEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_VEHICLE_JOURNEY;
 
@@ -45,7 +49,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredVehicleJourneyValidator extends NsrQuayValidator {
+public class MonitoredVehicleJourneyValidator extends NsrQuayValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
     private static final String FIELDNAME = "MonitoredVehicleJourney";
     private String path = MONITORED_VEHICLE_JOURNEY;
@@ -71,4 +75,26 @@ public class MonitoredVehicleJourneyValidator extends NsrQuayValidator {
                 "Delay");
 
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        List<String> missingFields = new ArrayList<>();
+
+        addIfMissing(missingFields, "LineRef", journey.getLineRef());
+        addIfMissing(missingFields, "FramedVehicleJourneyRef", journey.getFramedVehicleJourneyRef());
+        addIfMissing(missingFields, "DataSource", journey.getDataSource());
+        addIfMissing(missingFields, "VehicleLocation", journey.getVehicleLocation());
+        addIfMissing(missingFields, "VehicleRef", journey.getVehicleRef());
+        addIfMissing(missingFields, "Delay", journey.getDelay());
+
+        if (!missingFields.isEmpty()) {
+            return createMissingFieldEvent(journey, FIELDNAME, missingFields, ValidationEvent.WARNING);
+        }
+        return null;
+    }
 }
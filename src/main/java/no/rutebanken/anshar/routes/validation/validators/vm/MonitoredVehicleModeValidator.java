@@ -17,11 +17,16 @@ package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.LimitedSubsetValidator;
+import no.rutebanken.anshar.routes.validation.validators.ProfileValidationEventOrList;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 import uk.org.siri.siri21.VehicleModesEnumeration;
 
+import javax.xml.bind.ValidationEvent;
+
 import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITORED_VEHICLE_JOURNEY;
 
 
@@ -31,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class MonitoredVehicleModeValidator extends LimitedSubsetValidator {
+public class MonitoredVehicleModeValidator extends LimitedSubsetValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
     private final String path;
 
@@ -53,4 +58,27 @@ public class MonitoredVehicleModeValidator extends LimitedSubsetValidator {
     public String getXpath() {
         return path;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    /**
+     * Every VehicleMode is validated, same as every matching element in the XML
+     */
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        ProfileValidationEventOrList validationEvents = new ProfileValidationEventOrList();
+        for (VehicleModesEnumeration vehicleMode : journey.getVehicleModes()) {
+            ValidationEvent event = isValidValue(journey, vehicleMode != null ? vehicleMode.value() : null);
+            if (event != null) {
+                validationEvents.addEvent(event);
+            }
+        }
+        if (validationEvents.getEvents().isEmpty()) {
+            return null;
+        }
+        return validationEvents;
+    }
 }
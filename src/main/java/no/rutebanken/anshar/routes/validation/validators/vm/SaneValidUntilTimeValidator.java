@@ -16,10 +16,12 @@
 package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.VehicleActivityStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.time.ZonedDateTime;
@@ -34,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.VEHICL
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class SaneValidUntilTimeValidator extends CustomValidator {
+public class SaneValidUntilTimeValidator extends CustomValidator implements SiriElementValidator<VehicleActivityStructure> {
 
 
     private static final String VALID_UNTIL_TIME_NAME = "ValidUntilTime";
@@ -79,4 +81,28 @@ public class SaneValidUntilTimeValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<VehicleActivityStructure> getElementType() {
+        return VehicleActivityStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(VehicleActivityStructure activity) {
+        ZonedDateTime validUntilTime = activity.getValidUntilTime();
+        ZonedDateTime recordedAtTime = activity.getRecordedAtTime();
+
+        if (validUntilTime != null && recordedAtTime != null) {
+            final long validityPeriod = validUntilTime.toEpochSecond() - recordedAtTime.toEpochSecond();
+            if (validityPeriod > MAX_VM_VALIDITY) {
+                return createCustomFieldEvent(activity, "ValidUntilTime states too long validity (" + validUntilTime + ")" , ValidationEvent.WARNING);
+            }
+
+            final long tenMinutesAgo = ZonedDateTime.now().minusMinutes(10).toEpochSecond();
+            if (validUntilTime.toEpochSecond() < tenMinutesAgo){
+                return createCustomFieldEvent(activity, "ValidUntilTime IS EXPIRED (" + validUntilTime + ")" , ValidationEvent.WARNING);
+            }
+        }
+        return null;
+    }
 }
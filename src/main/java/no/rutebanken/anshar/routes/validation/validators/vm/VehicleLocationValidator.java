@@ -17,10 +17,13 @@ package no.rutebanken.anshar.routes.validation.validators.vm;
 
 import com.google.common.collect.Sets;
 import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
 import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Node;
+import uk.org.siri.siri21.LocationStructure;
+import uk.org.siri.siri21.MonitoredVehicleJourneyStructure;
 
 import javax.xml.bind.ValidationEvent;
 import java.util.Set;
@@ -33,7 +36,7 @@ import static no.rutebanken.anshar.routes.validation.validators.Constants.MONITO
  */
 @Validator(profileName = "norway", targetType = SiriDataType.VEHICLE_MONITORING)
 @Component
-public class VehicleLocationValidator extends CustomValidator {
+public class VehicleLocationValidator extends CustomValidator implements SiriElementValidator<MonitoredVehicleJourneyStructure> {
 
     private static final String FIELDNAME = "VehicleLocation";
     private static final String srsNameAttributeNAme = "srsName";
@@ -87,4 +90,41 @@ public class VehicleLocationValidator extends CustomValidator {
 
         return null;
     }
+
+    @Override
+    public Class<MonitoredVehicleJourneyStructure> getElementType() {
+        return MonitoredVehicleJourneyStructure.class;
+    }
+
+    @Override
+    public ValidationEvent isValid(MonitoredVehicleJourneyStructure journey) {
+        LocationStructure location = journey.getVehicleLocation();
+        if (location == null) {
+            return null;
+        }
+
+        if (location.getLongitude() != null && location.getLatitude() != null) {
+            String longitude = location.getLongitude().toPlainString();
+            String latitude = location.getLatitude().toPlainString();
+            double lon = location.getLongitude().doubleValue();
+            double lat = location.getLatitude().doubleValue();
+            if (lon > 180 || lon < -180) {
+                return  createEvent(location, LON_FIELDNAME, "Valid longitude", longitude, ValidationEvent.FATAL_ERROR);
+            } else if (lat > 90 || lat < -90) {
+                return  createEvent(location, LAT_FIELDNAME, "Valid latitude", latitude, ValidationEvent.FATAL_ERROR);
+            } else if (lat == 0 || lon == 0) {
+                return  createEvent(location, FIELDNAME, "Valid location", "Latitude: " + latitude + ", Longitude: " + longitude, ValidationEvent.FATAL_ERROR);
+            }
+        } else if (location.getCoordinates() == null) {
+            return  createEvent(location, FIELDNAME, "Valid location", null, ValidationEvent.FATAL_ERROR);
+        }
+
+        String srsNameAttribute = location.getSrsName();
+        if (srsNameAttribute != null && !srsNameAttribute.isEmpty()) {
+            if (!expectedValues.contains(srsNameAttribute)) {
+                return  createEvent(location, srsNameAttributeNAme, "one of " + expectedValues, srsNameAttribute, ValidationEvent.ERROR);
+            }
+        }
+        return null;
+    }
 }
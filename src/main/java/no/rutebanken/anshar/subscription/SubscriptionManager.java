@@ -100,16 +100,28 @@ public class SubscriptionManager {
     private VehicleActivities vm;
 
     @Autowired
-    @Qualifier("getSituationChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> sxChanges;
+    @Qualifier("getSituationChangeCursors")
+    private IMap<String, ChangeTrackerCursor> sxChanges;
 
     @Autowired
-    @Qualifier("getEstimatedTimetableChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> etChanges;
+    @Qualifier("getSituationChangeJournal")
+    private ChangeJournal sxChangeJournal;
 
     @Autowired
-    @Qualifier("getVehicleChangesMap")
-    private IMap<String, Set<SiriObjectStorageKey>> vmChanges;
+    @Qualifier("getEstimatedTimetableChangeCursors")
+    private IMap<String, ChangeTrackerCursor> etChanges;
+
+    @Autowired
+    @Qualifier("getEstimatedTimetableChangeJournal")
+    private ChangeJournal etChangeJournal;
+
+    @Autowired
+    @Qualifier("getVehicleChangeCursors")
+    private IMap<String, ChangeTrackerCursor> vmChanges;
+
+    @Autowired
+    @Qualifier("getVehicleChangeJournal")
+    private ChangeJournal vmChangeJournal;
 
     @Autowired
     private RequestorRefRepository requestorRefRepository;
@@ -389,15 +401,15 @@ public class SubscriptionManager {
 
         JSONObject etPolling = new JSONObject();
         etPolling.put("typeName", ""+ ESTIMATED_TIMETABLE);
-        etPolling.put("polling", getIdAndCount(etChanges, ESTIMATED_TIMETABLE));
+        etPolling.put("polling", getIdAndCount(etChanges, etChangeJournal, ESTIMATED_TIMETABLE));
         logger.debug("Built ET polling stats");
         JSONObject vmPolling = new JSONObject();
         vmPolling.put("typeName", ""+ VEHICLE_MONITORING);
-        vmPolling.put("polling", getIdAndCount(vmChanges, VEHICLE_MONITORING));
+        vmPolling.put("polling", getIdAndCount(vmChanges, vmChangeJournal, VEHICLE_MONITORING));
         logger.debug("Built VM polling stats");
         JSONObject sxPolling = new JSONObject();
         sxPolling.put("typeName", ""+ SITUATION_EXCHANGE);
-        sxPolling.put("polling", getIdAndCount(sxChanges, SITUATION_EXCHANGE));
+        sxPolling.put("polling", getIdAndCount(sxChanges, sxChangeJournal, SITUATION_EXCHANGE));
         logger.debug("Built SX polling stats");
 
         pollingClients.add(etPolling);
@@ -433,12 +445,13 @@ public class SubscriptionManager {
         return result;
     }
 
-    private JSONArray getIdAndCount(Map<String, Set<SiriObjectStorageKey>> map, SiriDataType dataType) {
+    private JSONArray getIdAndCount(IMap<String, ChangeTrackerCursor> map, ChangeJournal changeJournal, SiriDataType dataType) {
         JSONArray count = new JSONArray();
-        for (String key : map.keySet()) {
+        final Map<String, Integer> changeCounts = changeJournal.countChanges(map.getAll(map.keySet()));
+        for (String key : changeCounts.keySet()) {
             JSONObject keyValue = new JSONObject();
             keyValue.put("id", key);
-            keyValue.put("count", map.getOrDefault(key, new HashSet<>()).size());
+            keyValue.put("count", changeCounts.get(key));
 
             RequestorRefStats stats = requestorRefRepository.getStats(key, dataType);
             String clientTrackingName = "";
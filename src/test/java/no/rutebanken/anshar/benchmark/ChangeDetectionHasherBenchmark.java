@@ -0,0 +1,89 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.benchmark;
+
+import no.rutebanken.anshar.data.checksum.ChangeDetectionConfig;
+import no.rutebanken.anshar.data.checksum.ChangeDetectionHasher;
+import org.entur.siri21.util.SiriXml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.Siri;
+
+import java.io.FileInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares change detection checksums for all ET-elements in a BaneNor-delivery.
+ *
+ * Run with allocation-profiling:
+ *   java -cp target/test-classes:target/classes:&lt;test-classpath&gt; org.openjdk.jmh.Main ChangeDetectionHasherBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeDetectionHasherBenchmark {
+
+    @Param({"structural", "md5"})
+    private String hasherType;
+
+    private ChangeDetectionHasher hasher;
+
+    private List<EstimatedVehicleJourney> journeys;
+
+    @Setup
+    public void setup() throws Exception {
+        hasher = ChangeDetectionConfig.createHasher(hasherType);
+
+        Siri siri = SiriXml.parseXml(new FileInputStream("src/test/resources/siri-et-from-bnr.xml"));
+        journeys = siri.getServiceDelivery()
+                .getEstimatedTimetableDeliveries().get(0)
+                .getEstimatedJourneyVersionFrames().get(0)
+                .getEstimatedVehicleJourneies();
+    }
+
+    @Benchmark
+    public void checksumAllJourneys(Blackhole blackhole) {
+        for (EstimatedVehicleJourney journey : journeys) {
+            blackhole.consume(hasher.getChecksum(journey));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChangeDetectionHasherBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.benchmark;
+
+import io.micrometer.core.instrument.ImmutableTag;
+import io.micrometer.core.instrument.Tag;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.metrics.SiriContent;
+import no.rutebanken.anshar.routes.siri.transformer.MappingNames;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording metrics on the ingest-path, compared to creating tags and looking up the meter for every call.
+ *
+ * Run with allocation-profiling:
+ *   java -cp target/test-classes:target/classes:&lt;test-classpath&gt; org.openjdk.jmh.Main MetricsRecordingBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsRecordingBenchmark {
+
+    private static final String DATASET_ID = "RUT";
+
+    private PrometheusMetricsService metrics;
+
+    private String[] serviceJourneyIds;
+
+    private int counter;
+
+    @Setup
+    public void setup() {
+        metrics = new PrometheusMetricsService();
+
+        serviceJourneyIds = new String[1000];
+        for (int i = 0; i < serviceJourneyIds.length; i++) {
+            serviceJourneyIds[i] = "RUT:ServiceJourney:" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        metrics.close();
+    }
+
+    @Benchmark
+    public void registerDataMapping() {
+        metrics.registerDataMapping(SiriDataType.ESTIMATED_TIMETABLE, DATASET_ID, MappingNames.ORIGINAL_ID_TO_NSR, 1);
+    }
+
+    @Benchmark
+    public void registerSiriContent() {
+        String serviceJourneyId = serviceJourneyIds[counter++ % serviceJourneyIds.length];
+        metrics.registerSiriContent(SiriDataType.ESTIMATED_TIMETABLE, DATASET_ID, serviceJourneyId, SiriContent.OCCUPANCY_STOP);
+    }
+
+    /**
+     * Previous implementation of registerDataMapping
+     */
+    @Benchmark
+    public void registerDataMappingUncached() {
+        MappingNames mappingName = MappingNames.ORIGINAL_ID_TO_NSR;
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag("dataType", SiriDataType.ESTIMATED_TIMETABLE.name()));
+        counterTags.add(new ImmutableTag("agency", DATASET_ID));
+        counterTags.add(new ImmutableTag("mappingName", mappingName.toString()));
+        counterTags.add(new ImmutableTag("mappingId", mappingName.name()));
+
+        metrics.counter("app.anshar.data.mapping", counterTags).increment(1);
+    }
+
+    /**
+     * Previous implementation of registerSiriContent
+     */
+    @Benchmark
+    public void registerSiriContentUncached() {
+        String serviceJourneyId = serviceJourneyIds[counter++ % serviceJourneyIds.length];
+        SiriContent content = SiriContent.OCCUPANCY_STOP;
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag("dataType", SiriDataType.ESTIMATED_TIMETABLE.name()));
+        counterTags.add(new ImmutableTag("agency", DATASET_ID));
+        counterTags.add(new ImmutableTag("serviceJourney", serviceJourneyId));
+        counterTags.add(new ImmutableTag("siriContent", content.name()));
+        counterTags.add(new ImmutableTag("siriContentLabel", content.getLabel()));
+        counterTags.add(new ImmutableTag("group", "OCCUPANCY"));
+
+        metrics.counter("app.anshar.siri.content", counterTags).increment();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MetricsRecordingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.benchmark;
+
+import no.rutebanken.anshar.routes.mapping.StopPlaceUpdaterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup throughput for stop place mappings, optionally while the mapping data is continuously replaced.
+ *
+ * Run with allocation-profiling:
+ *   java -cp target/test-classes:target/classes:&lt;test-classpath&gt; org.openjdk.jmh.Main StopPlaceMappingBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class StopPlaceMappingBenchmark {
+
+    private static final int MAPPINGS = 200_000;
+
+    @Param({"false", "true"})
+    private boolean refreshing;
+
+    private StopPlaceUpdaterService stopPlaceService;
+
+    private String[] ids;
+
+    private Thread refresher;
+
+    @Setup
+    public void setup() {
+        stopPlaceService = new StopPlaceUpdaterService();
+
+        Map<String, String> mappings = new HashMap<>();
+        List<String> validIds = new ArrayList<>();
+        for (int i = 0; i < MAPPINGS; i++) {
+            mappings.put("TST:Quay:" + i, "NSR:Quay:" + i);
+            validIds.add("NSR:Quay:" + i);
+        }
+        stopPlaceService.addStopPlaceMappings(mappings);
+        stopPlaceService.addStopQuays(validIds);
+
+        ids = new String[1024];
+        for (int i = 0; i < ids.length; i++) {
+            // Every fourth id is unknown
+            int id = ThreadLocalRandom.current().nextInt(MAPPINGS + MAPPINGS / 3);
+            ids[i] = "TST:Quay:" + id;
+        }
+
+        if (refreshing) {
+            refresher = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    stopPlaceService.addStopPlaceMappings(Map.of("TST:Quay:refreshed", "NSR:Quay:0"));
+                }
+            });
+            refresher.setDaemon(true);
+            refresher.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (refresher != null) {
+            refresher.interrupt();
+            refresher.join();
+        }
+    }
+
+    @Benchmark
+    public void mapIds(Blackhole blackhole) {
+        for (String id : ids) {
+            blackhole.consume(stopPlaceService.get(id));
+        }
+    }
+
+    @Benchmark
+    public void validateIds(Blackhole blackhole) {
+        for (String id : ids) {
+            blackhole.consume(stopPlaceService.isKnownId(id));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StopPlaceMappingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChangeJournalTest extends SpringBootBaseTest {
+
+    @Autowired
+    @Qualifier("getVehicleChangeJournal")
+    private ChangeJournal changeJournal;
+
+    @Test
+    public void testReadChangesSinceCursor() {
+        String datasetId = UUID.randomUUID().toString();
+        SiriObjectStorageKey first = new SiriObjectStorageKey(datasetId, null, "1");
+        SiriObjectStorageKey second = new SiriObjectStorageKey(datasetId, null, "2");
+
+        long[] cursor = changeJournal.getNextSequences();
+
+        changeJournal.append(Set.of(first));
+        changeJournal.append(Set.of(second));
+
+        Set<SiriObjectStorageKey> changes = new HashSet<>();
+        long[] updatedCursor = changeJournal.readChanges(cursor, null, changes);
+
+        assertNotNull(updatedCursor);
+        assertTrue(changes.contains(first));
+        assertTrue(changes.contains(second));
+        assertArrayEquals(changeJournal.getNextSequences(), updatedCursor);
+
+        // Nothing new since last read
+        changes.clear();
+        changeJournal.readChanges(updatedCursor, null, changes);
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testReadSingleDatasetKeepsCursorForOtherShards() {
+        String datasetId = UUID.randomUUID().toString();
+        long[] cursor = changeJournal.getNextSequences();
+
+        changeJournal.append(Set.of(new SiriObjectStorageKey(datasetId, null, "1")));
+
+        Set<SiriObjectStorageKey> changes = new HashSet<>();
+        long[] updatedCursor = changeJournal.readChanges(cursor, datasetId, changes);
+
+        assertNotNull(updatedCursor);
+        assertEquals(1, changes.size());
+
+        int changedShards = 0;
+        for (int i = 0; i < cursor.length; i++) {
+            if (cursor[i] != updatedCursor[i]) {
+                changedShards++;
+            }
+        }
+        assertTrue(changedShards <= 1, "Only the shard for the requested dataset should be read");
+    }
+
+    @Test
+    public void testInvalidCursorIsRejected() {
+        long[] cursor = changeJournal.getNextSequences();
+        cursor[0] += 10;
+
+        assertNull(changeJournal.readChanges(cursor, null, new HashSet<>()));
+        assertNull(changeJournal.readChanges(new long[0], null, new HashSet<>()));
+    }
+
+    @Test
+    public void testCountChanges() {
+        String datasetId = UUID.randomUUID().toString();
+        long[] cursor = changeJournal.getNextSequences();
+
+        changeJournal.append(Set.of(new SiriObjectStorageKey(datasetId, null, "1"), new SiriObjectStorageKey(datasetId, null, "2")));
+
+        Set<SiriObjectStorageKey> pending = Set.of(new SiriObjectStorageKey(datasetId, null, "3"));
+        Map<String, Integer> counts = changeJournal.countChanges(Map.of(
+                "behind", new ChangeTrackerCursor(cursor, pending),
+                "current", new ChangeTrackerCursor(changeJournal.getNextSequences(), new HashSet<>())
+        ));
+
+        assertEquals(3, counts.get("behind"));
+        assertEquals(0, counts.get("current"));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetSizesTest {
+
+    @Test
+    public void testIncrementAndDecrement() {
+        DatasetSizes sizes = new DatasetSizes();
+        sizes.increment("TST");
+        sizes.increment("TST");
+        sizes.increment("OTH");
+        sizes.decrement("TST");
+        sizes.decrement("UNKNOWN");
+
+        assertEquals(1, sizes.get("TST"));
+        assertEquals(1, sizes.get("OTH"));
+        assertEquals(0, sizes.get("UNKNOWN"));
+
+        sizes.decrement("OTH");
+        assertFalse(sizes.getAll().containsKey("OTH"), "Empty codespaces should be removed");
+    }
+
+    @Test
+    public void testReset() {
+        DatasetSizes sizes = new DatasetSizes();
+        sizes.increment("TST");
+        sizes.increment("OTH");
+
+        sizes.reset(DatasetSizes.countByCodespace(List.of(
+                new SiriObjectStorageKey("TST", "TST:Line:1", "1"),
+                new SiriObjectStorageKey("TST", "TST:Line:1", "2"),
+                new SiriObjectStorageKey("NEW", null, "3")
+        )));
+
+        Map<String, Integer> all = sizes.getAll();
+        assertEquals(2, all.size());
+        assertEquals(2, all.get("TST"));
+        assertEquals(1, all.get("NEW"));
+        assertFalse(all.containsKey("OTH"));
+
+        sizes.clear();
+        assertTrue(sizes.getAll().isEmpty());
+    }
+}
@@ -252,6 +252,42 @@ public class EstimatedTimetablesTest extends SpringBootBaseTest {
         assertTrue(checkedMatchingJourney, "Did not check matching VehicleJourney");
     }
 
+    @Test
+    public void testAddAllWithResentUpdatedAndOlderJourneys() {
+        ZonedDateTime departure = ZonedDateTime.now().plusHours(1);
+        ZonedDateTime recordedAtTime = ZonedDateTime.now();
+
+        EstimatedVehicleJourney resent = createEstimatedVehicleJourney("batch-resent", "4321", 0, 10, departure, true);
+        resent.setRecordedAtTime(recordedAtTime);
+        EstimatedVehicleJourney updated = createEstimatedVehicleJourney("batch-updated", "4321", 0, 10, departure, true);
+        updated.setRecordedAtTime(recordedAtTime);
+        EstimatedVehicleJourney older = createEstimatedVehicleJourney("batch-older", "4321", 0, 10, departure, true);
+        older.setRecordedAtTime(recordedAtTime);
+
+        assertEquals(3, estimatedTimetables.addAll("test", List.of(resent, updated, older)).size());
+
+        EstimatedVehicleJourney resent2 = createEstimatedVehicleJourney("batch-resent", "4321", 0, 10, departure, true);
+        resent2.setRecordedAtTime(recordedAtTime);
+        EstimatedVehicleJourney updated2 = createEstimatedVehicleJourney("batch-updated", "4321", 0, 10, departure.plusMinutes(5), true);
+        updated2.setRecordedAtTime(recordedAtTime.plusMinutes(1));
+        EstimatedVehicleJourney older2 = createEstimatedVehicleJourney("batch-older", "4321", 0, 10, departure.plusMinutes(5), true);
+        older2.setRecordedAtTime(recordedAtTime.minusMinutes(1));
+
+        Collection<EstimatedVehicleJourney> changes = estimatedTimetables.addAll("test", List.of(resent2, updated2, older2));
+
+        assertEquals(1, changes.size(), "Only the updated journey should be changed");
+        assertEquals("batch-updated", changes.iterator().next().getLineRef().getValue());
+
+        assertEquals(3, estimatedTimetables.getAll().size());
+        for (EstimatedVehicleJourney journey : estimatedTimetables.getAll()) {
+            switch (journey.getLineRef().getValue()) {
+                case "batch-resent" -> assertEquals(recordedAtTime, journey.getRecordedAtTime());
+                case "batch-updated" -> assertEquals(recordedAtTime.plusMinutes(1), journey.getRecordedAtTime(), "Updated journey not kept");
+                case "batch-older" -> assertEquals(recordedAtTime, journey.getRecordedAtTime(), "Older journey replaced newer journey");
+            }
+        }
+    }
+
     @Test
     public void testMapEstimatedToRecordedCall() {
 
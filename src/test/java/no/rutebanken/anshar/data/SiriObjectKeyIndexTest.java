@@ -0,0 +1,64 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriObjectKeyIndexTest {
+
+    @Test
+    public void testLookupByCodespaceAndLineRef() {
+        SiriObjectKeyIndex index = new SiriObjectKeyIndex();
+        SiriObjectStorageKey first = new SiriObjectStorageKey("TST", "TST:Line:1", "1");
+        SiriObjectStorageKey second = new SiriObjectStorageKey("TST", "TST:Line:2", "2");
+        SiriObjectStorageKey other = new SiriObjectStorageKey("OTH", "TST:Line:1", "3");
+
+        index.add(first);
+        index.add(second);
+        index.add(other);
+
+        assertEquals(2, index.getByCodespace("TST").size());
+        assertEquals(1, index.getByCodespace("OTH").size());
+        assertTrue(index.getByCodespace("UNKNOWN").isEmpty());
+
+        assertEquals(2, index.getByLineRef("TST:Line:1").size());
+        assertEquals(2, index.getByLineRef("tst:line:1").size(), "LineRef-lookup should ignore case");
+    }
+
+    @Test
+    public void testRemovedKeysAreNotReturned() {
+        SiriObjectKeyIndex index = new SiriObjectKeyIndex();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1", "1");
+
+        index.add(key);
+        index.remove(key);
+
+        assertTrue(index.getByCodespace("TST").isEmpty());
+        assertTrue(index.getByLineRef("TST:Line:1").isEmpty());
+    }
+
+    @Test
+    public void testKeysWithoutLineRef() {
+        SiriObjectKeyIndex index = new SiriObjectKeyIndex();
+        index.add(new SiriObjectStorageKey("TST", null, "1"));
+
+        assertEquals(1, index.getByCodespace("TST").size());
+        assertTrue(index.getByLineRef(null).isEmpty());
+    }
+}
@@ -15,11 +15,13 @@
 
 package no.rutebanken.anshar.data;
 
+import com.hazelcast.map.IMap;
 import no.rutebanken.anshar.integration.SpringBootBaseTest;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import uk.org.siri.siri21.HalfOpenTimestampOutputRangeStructure;
 import uk.org.siri.siri21.PtSituationElement;
 import uk.org.siri.siri21.SituationNumber;
@@ -28,6 +30,8 @@ import uk.org.siri.siri21.WorkflowStatusEnumeration;
 
 import java.math.BigInteger;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 
 import static no.rutebanken.anshar.helpers.SleepUtil.sleep;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -42,6 +46,10 @@ public class SituationsTest extends SpringBootBaseTest {
     @Autowired
     private SiriObjectFactory siriObjectFactory;
 
+    @Autowired
+    @Qualifier("getSxChecksumMap")
+    private IMap<SiriObjectStorageKey, String> checksumCache;
+
     @BeforeEach
     public void init() {
         situations.clearAll();
@@ -191,6 +199,61 @@ public class SituationsTest extends SpringBootBaseTest {
 
     }
 
+    @Test
+    public void testAddAllWithResentUpdatedAndDowngradedSituations() {
+        String datasetId = "BATCH";
+
+        PtSituationElement resent = createPtSituationElement(datasetId, "BATCH:SituationNumber:1", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(1));
+        setVersion(resent, 1);
+        PtSituationElement updated = createPtSituationElement(datasetId, "BATCH:SituationNumber:2", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(1));
+        setVersion(updated, 1);
+        PtSituationElement downgraded = createPtSituationElement(datasetId, "BATCH:SituationNumber:3", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(1));
+        setVersion(downgraded, 2);
+
+        assertEquals(3, situations.addAll(datasetId, List.of(resent, updated, downgraded)).size());
+
+        PtSituationElement updated2 = createPtSituationElement(datasetId, "BATCH:SituationNumber:2", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(2));
+        setVersion(updated2, 2);
+        PtSituationElement downgraded2 = createPtSituationElement(datasetId, "BATCH:SituationNumber:3", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(2));
+        setVersion(downgraded2, 1);
+
+        Collection<PtSituationElement> changes = situations.addAll(datasetId, List.of(resent, updated2, downgraded2));
+
+        assertEquals(1, changes.size(), "Only the updated situation should be changed");
+        assertEquals("BATCH:SituationNumber:2", changes.iterator().next().getSituationNumber().getValue());
+
+        assertEquals(3, situations.getAll().size());
+        for (PtSituationElement situation : situations.getAll()) {
+            final int version = situation.getVersion().getValue().intValue();
+            switch (situation.getSituationNumber().getValue()) {
+                case "BATCH:SituationNumber:1" -> assertEquals(1, version);
+                case "BATCH:SituationNumber:2" -> assertEquals(2, version, "Updated version not kept");
+                case "BATCH:SituationNumber:3" -> assertEquals(2, version, "Older version replaced newer version");
+            }
+        }
+    }
+
+    @Test
+    public void testAddAllWhenOnlyChecksumExists() {
+        String datasetId = "BATCH";
+        PtSituationElement element = createPtSituationElement(datasetId, "BATCH:SituationNumber:4", ZonedDateTime.now().minusDays(1), ZonedDateTime.now().plusHours(1));
+
+        assertEquals(1, situations.addAll(datasetId, List.of(element)).size());
+
+        SiriObjectStorageKey key = situations.getAllAsMap().keySet().iterator().next();
+        String checksum = checksumCache.get(key);
+        situations.getAllAsMap().remove(key);
+
+        // Linked checksum is removed by entry-listener - restored to simulate that it is still present
+        for (int i = 0; i < 50 && checksumCache.containsKey(key); i++) {
+            sleep(50);
+        }
+        checksumCache.set(key, checksum);
+
+        assertEquals(1, situations.addAll(datasetId, List.of(element)).size(), "Situation with checksum only should be added");
+        assertEquals(1, situations.getAll().size());
+    }
+
     private static void setVersion(PtSituationElement element, long v) {
         SituationVersion version = new SituationVersion();
         version.setValue(BigInteger.valueOf(v));
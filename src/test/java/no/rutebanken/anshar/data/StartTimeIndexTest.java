@@ -0,0 +1,75 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StartTimeIndexTest {
+
+    @Test
+    public void testGetStartingBefore() {
+        StartTimeIndex index = new StartTimeIndex();
+        ZonedDateTime now = ZonedDateTime.now();
+
+        SiriObjectStorageKey early = new SiriObjectStorageKey("TST", null, "early");
+        SiriObjectStorageKey sameTime = new SiriObjectStorageKey("TST", null, "sameTime");
+        SiriObjectStorageKey late = new SiriObjectStorageKey("TST", null, "late");
+
+        index.put(early, now.plusMinutes(5));
+        index.put(sameTime, now.plusMinutes(5));
+        index.put(late, now.plusHours(5));
+
+        Set<SiriObjectStorageKey> startingSoon = index.getStartingBefore(now.plusMinutes(10));
+        assertEquals(2, startingSoon.size());
+        assertTrue(startingSoon.contains(early));
+        assertTrue(startingSoon.contains(sameTime));
+
+        assertTrue(index.getStartingBefore(now).isEmpty());
+        assertEquals(3, index.getStartingBefore(now.plusDays(1)).size());
+    }
+
+    @Test
+    public void testUpdatedStartTimeReplacesPrevious() {
+        StartTimeIndex index = new StartTimeIndex();
+        ZonedDateTime now = ZonedDateTime.now();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", null, "1");
+
+        index.put(key, now.plusMinutes(5));
+        index.put(key, now.plusHours(5));
+
+        assertFalse(index.getStartingBefore(now.plusMinutes(10)).contains(key));
+        assertEquals(1, index.getStartingBefore(now.plusDays(1)).size());
+    }
+
+    @Test
+    public void testRemove() {
+        StartTimeIndex index = new StartTimeIndex();
+        ZonedDateTime now = ZonedDateTime.now();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", null, "1");
+
+        index.put(key, now.plusMinutes(5));
+        index.remove(key);
+
+        assertTrue(index.getStartingBefore(now.plusDays(1)).isEmpty());
+    }
+}
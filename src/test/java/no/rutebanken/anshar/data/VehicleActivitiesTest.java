@@ -15,11 +15,13 @@
 
 package no.rutebanken.anshar.data;
 
+import com.hazelcast.map.IMap;
 import no.rutebanken.anshar.integration.SpringBootBaseTest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import uk.org.siri.siri21.CourseOfJourneyRefStructure;
 import uk.org.siri.siri21.LocationStructure;
 import uk.org.siri.siri21.ProgressBetweenStopsStructure;
@@ -30,6 +32,8 @@ import uk.org.siri.siri21.VehicleRef;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -44,6 +48,10 @@ public class VehicleActivitiesTest extends SpringBootBaseTest {
 
     @Autowired
     private VehicleActivities vehicleActivities;
+
+    @Autowired
+    @Qualifier("getVehicleChangeCursors")
+    private IMap<String, ChangeTrackerCursor> vehicleChangeCursors;
     
     @BeforeEach
     public void init() {
@@ -60,6 +68,33 @@ public class VehicleActivitiesTest extends SpringBootBaseTest {
         assertEquals(previousSize + 1, vehicleActivities.getAll().size(), "Vehicle not added");
     }
 
+    @Test
+    public void testDatasetSize() {
+        vehicleActivities.add("size", createVehicleActivityStructure(ZonedDateTime.now().plusMinutes(1), UUID.randomUUID().toString()));
+        vehicleActivities.add("size", createVehicleActivityStructure(ZonedDateTime.now().plusMinutes(1), UUID.randomUUID().toString()));
+
+        // Sizes are updated by entry-listeners
+        for (int i = 0; i < 50 && vehicleActivities.getDatasetSize("size") < 2; i++) {
+            sleep(50);
+        }
+        assertEquals(2, vehicleActivities.getDatasetSize("size"));
+        assertEquals(2, vehicleActivities.getDatasetSize().get("size"));
+        assertEquals(2, vehicleActivities.getLocalDatasetSize().get("size"), "Single node should own all entries");
+    }
+
+    @Test
+    public void testClearAllByDatasetIdDoesNotDependOnKeyIndex() {
+        vehicleActivities.add("clear", createVehicleActivityStructure(ZonedDateTime.now().plusMinutes(1), UUID.randomUUID().toString()));
+        vehicleActivities.add("clear", createVehicleActivityStructure(ZonedDateTime.now().plusMinutes(1), UUID.randomUUID().toString()));
+        vehicleActivities.add("keep", createVehicleActivityStructure(ZonedDateTime.now().plusMinutes(1), UUID.randomUUID().toString()));
+
+        // Key-index is updated by entry-listeners, and may be behind the actual data
+        vehicleActivities.clearCache();
+        vehicleActivities.clearAllByDatasetId("clear");
+
+        assertEquals(1, vehicleActivities.getAll().size());
+    }
+
     @Test
     public void testNullVehicle() {
         int previousSize = vehicleActivities.getAll().size();
@@ -146,6 +181,38 @@ public class VehicleActivitiesTest extends SpringBootBaseTest {
         assertEquals(BigDecimal.ONE, test.getProgressBetweenStops().getPercentage(), "VM has been wrongfully updated");
     }
 
+    @Test
+    public void testAddAllWithResentUpdatedAndOlderVehicles() {
+        ZonedDateTime recordedAtTime = ZonedDateTime.now().plusMinutes(1);
+        String resentReference = UUID.randomUUID().toString();
+        String updatedReference = UUID.randomUUID().toString();
+        String olderReference = UUID.randomUUID().toString();
+
+        VehicleActivityStructure resent = createVehicleActivityStructure(recordedAtTime, resentReference);
+        VehicleActivityStructure updated = createVehicleActivityStructure(recordedAtTime, updatedReference);
+        VehicleActivityStructure older = createVehicleActivityStructure(recordedAtTime, olderReference);
+
+        assertEquals(3, vehicleActivities.addAll("test", List.of(resent, updated, older)).size());
+
+        VehicleActivityStructure updated2 = createVehicleActivityStructure(recordedAtTime.plusMinutes(1), updatedReference);
+        VehicleActivityStructure older2 = createVehicleActivityStructure(recordedAtTime.minusMinutes(1), olderReference);
+
+        Collection<VehicleActivityStructure> changes = vehicleActivities.addAll("test", List.of(resent, updated2, older2));
+
+        assertEquals(1, changes.size(), "Only the updated vehicle should be changed");
+        assertEquals(updatedReference, changes.iterator().next().getMonitoredVehicleJourney().getVehicleRef().getValue());
+
+        assertEquals(3, vehicleActivities.getAll().size());
+        for (VehicleActivityStructure activity : vehicleActivities.getAll()) {
+            final String vehicleRef = activity.getMonitoredVehicleJourney().getVehicleRef().getValue();
+            if (vehicleRef.equals(updatedReference)) {
+                assertEquals(recordedAtTime.plusMinutes(1), activity.getRecordedAtTime(), "Updated vehicle not kept");
+            } else {
+                assertEquals(recordedAtTime, activity.getRecordedAtTime(), "Older vehicle replaced newer vehicle");
+            }
+        }
+    }
+
     @Test
     @Disabled
     public void testUpdatedVehicleNoRecordedAtTime() {
@@ -242,6 +309,28 @@ public class VehicleActivitiesTest extends SpringBootBaseTest {
         assertEquals(previousSize+4, vehicleActivities.getAllCachedUpdates(null,null, null).size());
     }
 
+    @Test
+    public void testChangesCommittedBeforeFirstCursorIsStoredAreTracked() {
+        vehicleChangeCursors.clear();
+
+        final String datasetId = "first-cursor-vm-test";
+        final String requestorId = UUID.randomUUID().toString();
+
+        // Initial request resolves cursor before any cursor exists
+        SiriRepository.TrackedChanges initial = vehicleActivities.getTrackedChanges(requestorId, null);
+        assertFalse(initial.isTracked());
+
+        vehicleActivities.add(datasetId, createVehicleActivityStructure(ZonedDateTime.now(), UUID.randomUUID().toString()));
+        vehicleActivities.commitChanges();
+
+        vehicleActivities.updateChangeTracker(requestorId, initial.getCursor(), new HashSet<>(), 1);
+
+        SiriRepository.TrackedChanges tracked = vehicleActivities.getTrackedChanges(requestorId, null);
+        assertTrue(tracked.isTracked());
+        assertTrue(tracked.getChanges().stream().anyMatch(key -> datasetId.equals(key.getCodespaceId())),
+                "Change committed before cursor was stored has been lost");
+    }
+
     private VehicleActivityStructure createVehicleActivityStructure(ZonedDateTime recordedAtTime, String vehicleReference) {
         VehicleActivityStructure element = new VehicleActivityStructure();
         element.setRecordedAtTime(recordedAtTime);
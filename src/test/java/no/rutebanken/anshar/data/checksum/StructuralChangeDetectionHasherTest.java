@@ -0,0 +1,109 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.checksum;
+
+import org.junit.jupiter.api.Test;
+import uk.org.siri.siri21.EstimatedCall;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.LineRef;
+import uk.org.siri.siri21.StopPointRefStructure;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class StructuralChangeDetectionHasherTest {
+
+    private final ChangeDetectionHasher hasher = new StructuralChangeDetectionHasher(ChangeDetectionConfig.EXCLUDED_FIELDS);
+
+    @Test
+    public void testEqualObjectsHaveEqualChecksum() {
+        ZonedDateTime now = ZonedDateTime.now();
+        assertEquals(hasher.getChecksum(createJourney("1", now)), hasher.getChecksum(createJourney("1", now)));
+    }
+
+    @Test
+    public void testExcludedFieldIsIgnored() {
+        ZonedDateTime now = ZonedDateTime.now();
+        EstimatedVehicleJourney journey = createJourney("1", now);
+        EstimatedVehicleJourney updatedJourney = createJourney("1", now);
+        updatedJourney.setRecordedAtTime(now.plusMinutes(1));
+
+        assertEquals(hasher.getChecksum(journey), hasher.getChecksum(updatedJourney));
+        assertEquals(now.plusMinutes(1), updatedJourney.getRecordedAtTime(), "Excluded field should not be altered");
+    }
+
+    @Test
+    public void testNestedChangeIsDetected() {
+        ZonedDateTime now = ZonedDateTime.now();
+        EstimatedVehicleJourney journey = createJourney("1", now);
+        EstimatedVehicleJourney updatedJourney = createJourney("1", now);
+        updatedJourney.getEstimatedCalls().getEstimatedCalls().get(0).setExpectedDepartureTime(now.plusMinutes(2));
+
+        assertNotEquals(hasher.getChecksum(journey), hasher.getChecksum(updatedJourney));
+    }
+
+    @Test
+    public void testNullAndEmptyValuesDiffer() {
+        ZonedDateTime now = ZonedDateTime.now();
+        EstimatedVehicleJourney journey = createJourney("1", now);
+        EstimatedVehicleJourney updatedJourney = createJourney("1", now);
+        updatedJourney.getLineRef().setValue("");
+        journey.getLineRef().setValue(null);
+
+        assertNotEquals(hasher.getChecksum(journey), hasher.getChecksum(updatedJourney));
+    }
+
+    @Test
+    public void testLegacyHasherDetectsSameChanges() {
+        ZonedDateTime now = ZonedDateTime.now();
+        EstimatedVehicleJourney journey = createJourney("1", now);
+        EstimatedVehicleJourney updatedJourney = createJourney("2", now);
+
+        ChangeDetectionHasher legacyHasher = new SerializationChangeDetectionHasher(ChangeDetectionConfig.EXCLUDED_FIELDS);
+
+        assertNotEquals(legacyHasher.getChecksum(journey), legacyHasher.getChecksum(updatedJourney));
+        assertNotEquals(hasher.getChecksum(journey), hasher.getChecksum(updatedJourney));
+
+        updatedJourney = createJourney("1", now.plusMinutes(1));
+        updatedJourney.getEstimatedCalls().getEstimatedCalls().get(0).setExpectedDepartureTime(now);
+        journey.setRecordedAtTime(now.plusMinutes(1));
+
+        assertEquals(legacyHasher.getChecksum(journey), legacyHasher.getChecksum(updatedJourney));
+        assertEquals(hasher.getChecksum(journey), hasher.getChecksum(updatedJourney));
+    }
+
+    private EstimatedVehicleJourney createJourney(String lineRefValue, ZonedDateTime time) {
+        EstimatedVehicleJourney journey = new EstimatedVehicleJourney();
+        journey.setRecordedAtTime(time);
+
+        LineRef lineRef = new LineRef();
+        lineRef.setValue(lineRefValue);
+        journey.setLineRef(lineRef);
+
+        EstimatedCall call = new EstimatedCall();
+        StopPointRefStructure stopPointRef = new StopPointRefStructure();
+        stopPointRef.setValue("NSR:Quay:1");
+        call.setStopPointRef(stopPointRef);
+        call.setExpectedDepartureTime(time);
+
+        EstimatedVehicleJourney.EstimatedCalls estimatedCalls = new EstimatedVehicleJourney.EstimatedCalls();
+        estimatedCalls.getEstimatedCalls().add(call);
+        journey.setEstimatedCalls(estimatedCalls);
+        return journey;
+    }
+}
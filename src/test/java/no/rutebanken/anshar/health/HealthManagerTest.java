@@ -18,11 +18,17 @@ package no.rutebanken.anshar.health;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
 import no.rutebanken.anshar.integration.SpringBootBaseTest;
 import no.rutebanken.anshar.routes.health.HealthManager;
+import no.rutebanken.anshar.routes.health.UnmappedId;
+import no.rutebanken.anshar.subscription.SiriDataType;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class HealthManagerTest extends SpringBootBaseTest {
@@ -43,4 +49,61 @@ public class HealthManagerTest extends SpringBootBaseTest {
         extendedHazelcastService.shutdown();
         assertFalse(healthManager.isHazelcastAlive());
     }
+
+    @Test
+    public void testUnmappedIdsAggregated() {
+        String datasetId = "TST_" + System.currentTimeMillis();
+
+        for (int i = 0; i < 5; i++) {
+            healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        }
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "5678");
+
+        Map<String, UnmappedId> unmapped = healthManager.getUnmappedIdStats(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE);
+        assertEquals(2, unmapped.size());
+        assertEquals(5, unmapped.get("1234").getCount());
+        assertEquals(1, unmapped.get("5678").getCount());
+
+        // Merged with previously flushed data
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+
+        UnmappedId stats = healthManager.getUnmappedIdStats(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE).get("1234");
+        assertNotNull(stats);
+        assertEquals(6, stats.getCount());
+        assertFalse(stats.getLastSeen().isBefore(stats.getFirstSeen()));
+
+        // Latest change wins within the same flush
+        healthManager.removeUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "5678");
+        healthManager.removeUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "5678");
+
+        assertTrue(healthManager.getUnmappedIds(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE).isEmpty());
+
+        healthManager.clearUnmappedIds(datasetId);
+    }
+
+    @Test
+    public void testUnmappedIdRemovedAndAddedWithinSameFlush() {
+        String datasetId = "TST_" + System.currentTimeMillis();
+
+        for (int i = 0; i < 3; i++) {
+            healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        }
+        assertEquals(3, healthManager.getUnmappedIdStats(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE).get("1234").getCount());
+
+        // Removal is applied before the new occurrence - previously flushed occurrences are discarded
+        healthManager.removeUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+
+        UnmappedId stats = healthManager.getUnmappedIdStats(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE).get("1234");
+        assertNotNull(stats);
+        assertEquals(2, stats.getCount());
+
+        // Occurrences after the flush are merged as before
+        healthManager.addUnmappedId(SiriDataType.ESTIMATED_TIMETABLE, datasetId, "1234");
+        assertEquals(3, healthManager.getUnmappedIdStats(datasetId).get(SiriDataType.ESTIMATED_TIMETABLE).get("1234").getCount());
+
+        healthManager.clearUnmappedIds(datasetId);
+    }
 }
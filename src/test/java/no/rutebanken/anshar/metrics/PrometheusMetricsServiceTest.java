@@ -0,0 +1,75 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import no.rutebanken.anshar.routes.siri.transformer.MappingNames;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PrometheusMetricsServiceTest {
+
+    @Test
+    public void testCachedCounters() {
+        PrometheusMetricsService metrics = new PrometheusMetricsService();
+
+        metrics.registerDataMapping(SiriDataType.ESTIMATED_TIMETABLE, "TST", MappingNames.ORIGINAL_ID_TO_NSR, 1);
+        metrics.registerDataMapping(SiriDataType.ESTIMATED_TIMETABLE, "TST", MappingNames.ORIGINAL_ID_TO_NSR, 2);
+        metrics.registerDataMapping(SiriDataType.ESTIMATED_TIMETABLE, "TST", MappingNames.APPEND_PREFIX, 1);
+        metrics.registerDataMapping(SiriDataType.VEHICLE_MONITORING, "TST", MappingNames.ORIGINAL_ID_TO_NSR, 5);
+
+        Counter counter = metrics.find("app.anshar.data.mapping")
+                .tag("dataType", SiriDataType.ESTIMATED_TIMETABLE.name())
+                .tag("agency", "TST")
+                .tag("mappingId", MappingNames.ORIGINAL_ID_TO_NSR.name())
+                .counter();
+        assertNotNull(counter);
+        assertEquals(3, counter.count());
+
+        assertEquals(3, metrics.find("app.anshar.data.mapping").counters().size());
+
+        metrics.close();
+    }
+
+    @Test
+    public void testOptionalTags() {
+        PrometheusMetricsService metrics = new PrometheusMetricsService();
+
+        metrics.registerSiriContent(SiriDataType.ESTIMATED_TIMETABLE, "TST", null, SiriContent.TOO_FAR_AHEAD);
+        metrics.registerSiriContent(SiriDataType.ESTIMATED_TIMETABLE, "TST", null, SiriContent.TOO_FAR_AHEAD);
+        metrics.registerSiriContent(SiriDataType.ESTIMATED_TIMETABLE, null, "TST:ServiceJourney:1", SiriContent.TOO_FAR_AHEAD);
+
+        Counter withoutServiceJourney = metrics.find("app.anshar.siri.content")
+                .tag("agency", "TST")
+                .counter();
+        assertNotNull(withoutServiceJourney);
+        assertNull(withoutServiceJourney.getId().getTag("serviceJourney"));
+        assertEquals(2, withoutServiceJourney.count());
+
+        Counter withoutAgency = metrics.find("app.anshar.siri.content")
+                .tag("serviceJourney", "TST:ServiceJourney:1")
+                .counter();
+        assertNotNull(withoutAgency);
+        assertNull(withoutAgency.getId().getTag("agency"));
+        assertEquals(1, withoutAgency.count());
+
+        metrics.close();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.outbound;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.routes.outbound.OutboundDispatcher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundDispatcherTest extends SpringBootBaseTest {
+
+    @Autowired
+    private OutboundDispatcher dispatcher;
+
+    @Test
+    public void testSlowSubscriptionDoesNotBlockOthers() throws InterruptedException {
+        String slowSubscriptionId = "slow-" + System.currentTimeMillis();
+        String fastSubscriptionId = "fast-" + System.currentTimeMillis();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(slowSubscriptionId, () -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch fastDelivered = new CountDownLatch(1);
+        dispatcher.submit(fastSubscriptionId, fastDelivered::countDown);
+
+        assertTrue(fastDelivered.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testOldestDeliveryIsDroppedWhenQueueIsFull() throws InterruptedException {
+        String subscriptionId = "full-" + System.currentTimeMillis();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(subscriptionId, () -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // Default queue size is 100
+        int deliveries = 150;
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(100);
+        for (int i = 0; i < deliveries; i++) {
+            final int delivery = i;
+            dispatcher.submit(subscriptionId, () -> {
+                delivered.add(delivery);
+                completed.countDown();
+            });
+        }
+        assertEquals(100, dispatcher.getQueueDepth(subscriptionId));
+
+        release.countDown();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+
+        assertEquals(100, delivered.size());
+        assertEquals(50, delivered.get(0));
+        assertEquals(deliveries - 1, delivered.get(delivered.size() - 1));
+
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package no.rutebanken.anshar.outbound;
 import no.rutebanken.anshar.integration.SpringBootBaseTest;
 import no.rutebanken.anshar.routes.outbound.ServerSubscriptionManager;
 import no.rutebanken.anshar.routes.siri.handlers.OutboundIdMappingPolicy;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
 import org.entur.siri21.util.SiriXml;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +20,7 @@ import javax.xml.stream.XMLStreamException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -115,6 +118,25 @@ public class OutboundSubscriptionTest extends SpringBootBaseTest {
         serverSubscriptionManager.terminateSubscription(subscriptionId, true);
     }
 
+    @Test
+    public void testOutboundAdaptersAreComparable() {
+        // Recipients with equal adapters share the encoded payload
+        for (SiriDataType dataType : SiriDataType.values()) {
+            assertEquals(
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.DEFAULT),
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.DEFAULT)
+            );
+            assertEquals(
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.DEFAULT).hashCode(),
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.DEFAULT).hashCode()
+            );
+            assertNotEquals(
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.DEFAULT),
+                    MappingAdapterPresets.getOutboundAdapters(dataType, OutboundIdMappingPolicy.ORIGINAL_ID)
+            );
+        }
+    }
+
     SubscriptionRequest getSubscriptionRequest(long heartbeatIntervalMillis) throws DatatypeConfigurationException {
         SubscriptionRequest subscriptionRequest = new SubscriptionRequest();
         SubscriptionContextStructure context = new SubscriptionContextStructure();
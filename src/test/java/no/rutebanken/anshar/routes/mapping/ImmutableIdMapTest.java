@@ -0,0 +1,69 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.mapping;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImmutableIdMapTest {
+
+    @Test
+    public void testMappings() {
+        Map<String, String> mappings = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            mappings.put("TST:Quay:" + i, new String("NSR:Quay:" + (i % 100)));
+        }
+
+        ImmutableIdMap idMap = ImmutableIdMap.of(mappings);
+
+        assertEquals(mappings.size(), idMap.size());
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            assertEquals(entry.getValue(), idMap.get(entry.getKey()));
+        }
+        assertNull(idMap.get("TST:Quay:10000"));
+        assertNull(idMap.get(null));
+
+        // Equal values share instance
+        assertSame(idMap.get("TST:Quay:1"), idMap.get("TST:Quay:101"));
+
+        Map<String, String> copy = new HashMap<>();
+        idMap.forEach(copy::put);
+        assertEquals(mappings, copy);
+    }
+
+    @Test
+    public void testKnownIds() {
+        ImmutableIdMap ids = ImmutableIdMap.ofKeys(List.of("NSR:StopPlace:1", "NSR:Quay:2", "NSR:Quay:2"));
+
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains("NSR:StopPlace:1"));
+        assertTrue(ids.contains("NSR:Quay:2"));
+        assertFalse(ids.contains("NSR:Quay:3"));
+        assertFalse(ids.contains(null));
+
+        assertTrue(ImmutableIdMap.EMPTY.isEmpty());
+        assertFalse(ImmutableIdMap.EMPTY.contains("NSR:Quay:2"));
+    }
+}
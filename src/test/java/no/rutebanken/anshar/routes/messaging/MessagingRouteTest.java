@@ -0,0 +1,113 @@
+package no.rutebanken.anshar.routes.messaging;
+
+import com.hazelcast.map.IMap;
+import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.SubscriptionManager;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import org.apache.camel.ProducerTemplate;
+import org.entur.siri21.util.SiriXml;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import uk.org.siri.siri21.LocationStructure;
+import uk.org.siri.siri21.Siri;
+import uk.org.siri.siri21.VehicleActivityStructure;
+import uk.org.siri.siri21.VehicleRef;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static no.rutebanken.anshar.helpers.SleepUtil.sleep;
+import static no.rutebanken.anshar.routes.HttpParameter.INTERNAL_SIRI_DATA_TYPE;
+import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MessagingRouteTest extends SpringBootBaseTest {
+
+    @Autowired
+    private MessagingRoute messagingRoute;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private SubscriptionManager subscriptionManager;
+
+    @Autowired
+    private SiriObjectFactory factory;
+
+    @Autowired
+    @Qualifier("getReceivedBytesMap")
+    private IMap<String, Long> receivedBytes;
+
+    private AnsharConfiguration configuration;
+
+    @BeforeEach
+    public void init() {
+        configuration = messagingRoute.configuration;
+        messagingRoute.configuration = Mockito.spy(configuration);
+        Mockito.doReturn(true).when(messagingRoute.configuration).isBinaryQueuePayload();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        messagingRoute.configuration = configuration;
+    }
+
+    @Test
+    public void testBinaryPayloadReportsReceivedXmlSize() throws Exception {
+        SubscriptionSetup subscriptionSetup = new SubscriptionSetup();
+        subscriptionSetup.setSubscriptionId(UUID.randomUUID().toString());
+        subscriptionSetup.setDatasetId("BINARY");
+        subscriptionSetup.setSubscriptionType(SiriDataType.VEHICLE_MONITORING);
+        subscriptionManager.addSubscription(subscriptionSetup.getSubscriptionId(), subscriptionSetup);
+
+        Siri siri = factory.createVMServiceDelivery(List.of(createVehicleActivity(), createVehicleActivity()));
+        String xml = SiriXml.toXml(siri);
+
+        // Mapped, compressed, added to queue, decompressed and processed as Siri-object
+        producerTemplate.sendBodyAndHeaders("direct:enqueue.message", xml, Map.of(
+                PARAM_SUBSCRIPTION_ID, subscriptionSetup.getSubscriptionId(),
+                INTERNAL_SIRI_DATA_TYPE, SiriDataType.VEHICLE_MONITORING.name()
+        ));
+
+        // Data is processed asynchronously
+        for (int i = 0; i < 100 && receivedBytes.getOrDefault(subscriptionSetup.getSubscriptionId(), 0L) == 0; i++) {
+            sleep(50);
+        }
+
+        assertEquals(xml.getBytes(StandardCharsets.UTF_8).length, receivedBytes.get(subscriptionSetup.getSubscriptionId()),
+                "Size of received XML should be reported - not the size of the serialized object");
+
+        subscriptionManager.removeSubscription(subscriptionSetup.getSubscriptionId());
+    }
+
+    private VehicleActivityStructure createVehicleActivity() {
+        VehicleActivityStructure element = new VehicleActivityStructure();
+        element.setRecordedAtTime(ZonedDateTime.now());
+        element.setValidUntilTime(ZonedDateTime.now().plusMinutes(10));
+
+        VehicleActivityStructure.MonitoredVehicleJourney vehicleJourney = new VehicleActivityStructure.MonitoredVehicleJourney();
+        VehicleRef vehicleRef = new VehicleRef();
+        vehicleRef.setValue(UUID.randomUUID().toString());
+        vehicleJourney.setVehicleRef(vehicleRef);
+
+        LocationStructure location = new LocationStructure();
+        location.setLatitude(BigDecimal.valueOf(10.63));
+        location.setLongitude(BigDecimal.valueOf(63.10));
+        vehicleJourney.setVehicleLocation(location);
+
+        element.setMonitoredVehicleJourney(vehicleJourney);
+        return element;
+    }
+}
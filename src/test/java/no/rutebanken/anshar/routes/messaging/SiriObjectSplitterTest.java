@@ -0,0 +1,100 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.messaging;
+
+import org.entur.siri21.util.SiriXml;
+import org.junit.jupiter.api.Test;
+import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri21.ServiceDelivery;
+import uk.org.siri.siri21.Siri;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriObjectSplitterTest {
+
+    @Test
+    public void testSplitEstimatedTimetable() throws Exception {
+        Siri siri = readResource("siri-et-from-bnr.xml");
+        ServiceDelivery serviceDelivery = siri.getServiceDelivery();
+        EstimatedTimetableDeliveryStructure delivery = serviceDelivery.getEstimatedTimetableDeliveries().get(0);
+        int journeyCount = delivery.getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().size();
+        assertTrue(journeyCount > 1);
+
+        List<Siri> split = SiriObjectSplitter.split(siri);
+
+        assertEquals(journeyCount, split.size());
+        for (int i = 0; i < split.size(); i++) {
+            ServiceDelivery splitServiceDelivery = split.get(i).getServiceDelivery();
+            assertEquals(serviceDelivery.getResponseTimestamp(), splitServiceDelivery.getResponseTimestamp());
+            assertEquals(1, splitServiceDelivery.getEstimatedTimetableDeliveries().size());
+
+            EstimatedTimetableDeliveryStructure splitDelivery = splitServiceDelivery.getEstimatedTimetableDeliveries().get(0);
+            assertEquals(delivery.getResponseTimestamp(), splitDelivery.getResponseTimestamp());
+            assertEquals(1, splitDelivery.getEstimatedJourneyVersionFrames().size());
+            assertEquals(1, splitDelivery.getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().size());
+            assertSame(delivery.getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().get(i),
+                    splitDelivery.getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().get(0));
+        }
+    }
+
+    @Test
+    public void testSplitVehicleMonitoring() throws Exception {
+        Siri siri = readResource("siri-2.1/examples/siri_exm_VM/exv_vehicleMonitoring_response.xml");
+        int activityCount = siri.getServiceDelivery().getVehicleMonitoringDeliveries().stream()
+                .mapToInt(delivery -> delivery.getVehicleActivities().size())
+                .sum();
+
+        List<Siri> split = SiriObjectSplitter.split(siri);
+
+        assertEquals(activityCount, split.size());
+        for (Siri s : split) {
+            assertEquals(1, s.getServiceDelivery().getVehicleMonitoringDeliveries().get(0).getVehicleActivities().size());
+        }
+    }
+
+    @Test
+    public void testSplitSituationExchange() throws Exception {
+        Siri siri = readResource("siri-2.1/examples/siri_exm_SX/exx_situationExchange_response.xml");
+        int situationCount = siri.getServiceDelivery().getSituationExchangeDeliveries().stream()
+                .mapToInt(delivery -> delivery.getSituations().getPtSituationElements().size())
+                .sum();
+
+        List<Siri> split = SiriObjectSplitter.split(siri);
+
+        assertEquals(situationCount, split.size());
+        for (Siri s : split) {
+            assertEquals(1, s.getServiceDelivery().getSituationExchangeDeliveries().get(0).getSituations().getPtSituationElements().size());
+        }
+    }
+
+    @Test
+    public void testSplitWithoutServiceDelivery() {
+        assertTrue(SiriObjectSplitter.split(new Siri()).isEmpty());
+    }
+
+    private Siri readResource(String resource) throws Exception {
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(stream, "Resource not found: " + resource);
+            return SiriXml.parseXml(stream);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.messaging;
+
+import org.entur.siri21.util.SiriXml;
+import org.junit.jupiter.api.Test;
+import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.EstimatedVersionFrameStructure;
+import uk.org.siri.siri21.ServiceDelivery;
+import uk.org.siri.siri21.Siri;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriXmlSplitterTest {
+
+    @Test
+    public void testSplitEstimatedTimetable() throws Exception {
+        Siri original = readResource("siri-et-from-bnr.xml");
+        ServiceDelivery serviceDelivery = original.getServiceDelivery();
+        EstimatedTimetableDeliveryStructure delivery = serviceDelivery.getEstimatedTimetableDeliveries().get(0);
+        EstimatedVersionFrameStructure frame = delivery.getEstimatedJourneyVersionFrames().get(0);
+        List<EstimatedVehicleJourney> journeys = frame.getEstimatedVehicleJourneies();
+
+        List<Siri> split = split("siri-et-from-bnr.xml");
+
+        assertEquals(journeys.size(), split.size());
+        for (int i = 0; i < split.size(); i++) {
+            ServiceDelivery splitServiceDelivery = split.get(i).getServiceDelivery();
+            assertEquals(serviceDelivery.getResponseTimestamp(), splitServiceDelivery.getResponseTimestamp());
+            assertEquals(serviceDelivery.getProducerRef().getValue(), splitServiceDelivery.getProducerRef().getValue());
+
+            EstimatedTimetableDeliveryStructure splitDelivery = splitServiceDelivery.getEstimatedTimetableDeliveries().get(0);
+            assertEquals(delivery.getResponseTimestamp(), splitDelivery.getResponseTimestamp());
+
+            EstimatedVersionFrameStructure splitFrame = splitDelivery.getEstimatedJourneyVersionFrames().get(0);
+            assertEquals(frame.getRecordedAtTime(), splitFrame.getRecordedAtTime());
+            assertEquals(1, splitFrame.getEstimatedVehicleJourneies().size());
+
+            EstimatedVehicleJourney journey = splitFrame.getEstimatedVehicleJourneies().get(0);
+            assertEquals(journeys.get(i).getDatedVehicleJourneyRef().getValue(), journey.getDatedVehicleJourneyRef().getValue());
+            assertEquals(journeys.get(i).getLineRef().getValue(), journey.getLineRef().getValue());
+            assertEquals(journeys.get(i).getEstimatedCalls().getEstimatedCalls().size(), journey.getEstimatedCalls().getEstimatedCalls().size());
+        }
+    }
+
+    @Test
+    public void testSplitVehicleMonitoring() throws Exception {
+        String resource = "siri-2.1/examples/siri_exm_VM/exv_vehicleMonitoring_response.xml";
+        Siri original = readResource(resource);
+
+        List<Siri> split = split(resource);
+
+        assertEquals(original.getServiceDelivery().getVehicleMonitoringDeliveries().get(0).getVehicleActivities().size(), split.size());
+        for (Siri siri : split) {
+            assertEquals(1, siri.getServiceDelivery().getVehicleMonitoringDeliveries().get(0).getVehicleActivities().size());
+        }
+    }
+
+    @Test
+    public void testSplitSituationExchange() throws Exception {
+        String resource = "siri-2.1/examples/siri_exm_SX/exx_situationExchange_response.xml";
+        Siri original = readResource(resource);
+
+        List<Siri> split = split(resource);
+
+        assertEquals(original.getServiceDelivery().getSituationExchangeDeliveries().get(0).getSituations().getPtSituationElements().size(), split.size());
+        for (Siri siri : split) {
+            assertEquals(1, siri.getServiceDelivery().getSituationExchangeDeliveries().get(0).getSituations().getPtSituationElements().size());
+        }
+    }
+
+    @Test
+    public void testPrefixedNamespaces() throws Exception {
+        String xml = "<siri:Siri xmlns:siri=\"http://www.siri.org.uk/siri\" version=\"2.0\">" +
+                "<siri:ServiceDelivery>" +
+                "<siri:ResponseTimestamp>2023-01-01T12:00:00+01:00</siri:ResponseTimestamp>" +
+                "<siri:VehicleMonitoringDelivery version=\"2.0\">" +
+                "<siri:VehicleActivity><siri:RecordedAtTime>2023-01-01T12:00:00+01:00</siri:RecordedAtTime></siri:VehicleActivity>" +
+                "<siri:VehicleActivity><siri:RecordedAtTime>2023-01-01T12:01:00+01:00</siri:RecordedAtTime></siri:VehicleActivity>" +
+                "</siri:VehicleMonitoringDelivery>" +
+                "</siri:ServiceDelivery>" +
+                "</siri:Siri>";
+
+        Iterator<String> iterator = SiriXmlSplitter.split(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        List<Siri> split = new ArrayList<>();
+        while (iterator.hasNext()) {
+            split.add(SiriXml.parseXml(new ByteArrayInputStream(iterator.next().getBytes(StandardCharsets.UTF_8))));
+        }
+        assertEquals(2, split.size());
+        assertNotNull(split.get(1).getServiceDelivery().getResponseTimestamp());
+        assertNotNull(split.get(1).getServiceDelivery().getVehicleMonitoringDeliveries().get(0).getVehicleActivities().get(0).getRecordedAtTime());
+    }
+
+    @Test
+    public void testNoMatchingElements() throws Exception {
+        String xml = "<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\"><HeartbeatNotification/></Siri>";
+        assertFalse(SiriXmlSplitter.split(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).hasNext());
+    }
+
+    private List<Siri> split(String resource) throws Exception {
+        List<Siri> result = new ArrayList<>();
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(stream, "Resource not found: " + resource);
+            Iterator<String> iterator = SiriXmlSplitter.split(stream);
+            while (iterator.hasNext()) {
+                String xml = iterator.next();
+                assertTrue(xml.startsWith("<Siri"));
+                result.add(SiriXml.parseXml(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+            }
+        }
+        return result;
+    }
+
+    private Siri readResource(String resource) throws Exception {
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(stream, "Resource not found: " + resource);
+            return SiriXml.parseXml(stream);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.outbound;
+
+import com.hazelcast.map.IMap;
+import io.micrometer.core.instrument.Gauge;
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
+import no.rutebanken.anshar.routes.siri.transformer.impl.PrefixAdapter;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.apache.camel.Endpoint;
+import org.apache.camel.ProducerTemplate;
+import org.entur.siri.validator.SiriValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import uk.org.siri.siri21.DataFrameRefStructure;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.FramedVehicleJourneyRefStructure;
+import uk.org.siri.siri21.LineRef;
+import uk.org.siri.siri21.Siri;
+import uk.org.siri.siri21.VehicleRef;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CamelRouteManagerTest extends SpringBootBaseTest {
+
+    @Autowired
+    private CamelRouteManager camelRouteManager;
+
+    @Autowired
+    private ServerSubscriptionManager serverSubscriptionManager;
+
+    @Autowired
+    private OutboundDispatcher dispatcher;
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    @Autowired
+    private SiriObjectFactory siriObjectFactory;
+
+    @Autowired
+    @Qualifier("getHeartbeatTimestampMap")
+    private IMap<String, Instant> heartbeatTimestampMap;
+
+    private ProducerTemplate subscriptionProcessor;
+
+    private ProducerTemplate siriEncoder;
+
+    private final List<String> subscriptionIds = new ArrayList<>();
+
+    /**
+     * Posted body per subscription
+     */
+    private final List<Map.Entry<String, byte[]>> posted = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        subscriptionProcessor = camelRouteManager.siriSubscriptionProcessor;
+
+        ProducerTemplate recorder = Mockito.mock(ProducerTemplate.class);
+        Mockito.doAnswer(invocation -> {
+            Map<String, Object> headers = invocation.getArgument(1);
+            posted.add(Map.entry((String) headers.get("SubscriptionId"), (byte[]) invocation.getArgument(0)));
+            return null;
+        }).when(recorder).sendBodyAndHeaders(Mockito.any(), Mockito.anyMap());
+        camelRouteManager.siriSubscriptionProcessor = recorder;
+
+        siriEncoder = camelRouteManager.siriEncoder;
+        camelRouteManager.siriEncoder = Mockito.mock(ProducerTemplate.class, AdditionalAnswers.delegatesTo(siriEncoder));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        camelRouteManager.siriSubscriptionProcessor = subscriptionProcessor;
+        camelRouteManager.siriEncoder = siriEncoder;
+        for (String subscriptionId : subscriptionIds) {
+            serverSubscriptionManager.subscriptions.delete(subscriptionId);
+            heartbeatTimestampMap.delete(subscriptionId);
+        }
+    }
+
+    @Test
+    public void testPendingUpdatesAreReplacedInPlace() throws InterruptedException {
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(), null);
+        CountDownLatch release = blockQueue(subscription);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "first")), "TST", List.of(subscription));
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "second")), "TST", List.of(subscription));
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "2", "first")), "TST", List.of(subscription));
+
+        // Only one delivery is scheduled while updates are pending
+        assertEquals(1, dispatcher.getQueueDepth(subscription.getSubscriptionId()));
+
+        release.countDown();
+        List<String> deliveries = awaitDeliveries(subscription, 1);
+
+        String body = deliveries.get(0);
+        assertEquals(2, count(body, "<EstimatedVehicleJourney>"));
+        assertTrue(body.contains("<VehicleRef>second</VehicleRef>"));
+        assertEquals(1, count(body, "<VehicleRef>first</VehicleRef>"));
+    }
+
+    @Test
+    public void testOneDeliveryIsScheduledPerSubscription() throws InterruptedException {
+        OutboundSubscriptionSetup first = createSubscription(Map.of(), null);
+        OutboundSubscriptionSetup second = createSubscription(Map.of(), null);
+        CountDownLatch releaseFirst = blockQueue(first);
+        CountDownLatch releaseSecond = blockQueue(second);
+
+        for (int i = 0; i < 10; i++) {
+            camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "" + i, "1234")), "TST", List.of(first, second));
+        }
+
+        assertEquals(1, dispatcher.getQueueDepth(first.getSubscriptionId()));
+        assertEquals(1, dispatcher.getQueueDepth(second.getSubscriptionId()));
+
+        releaseFirst.countDown();
+        releaseSecond.countDown();
+
+        assertEquals(10, count(awaitDeliveries(first, 1).get(0), "<EstimatedVehicleJourney>"));
+        assertEquals(10, count(awaitDeliveries(second, 1).get(0), "<EstimatedVehicleJourney>"));
+    }
+
+    @Test
+    public void testPendingUpdatesAreKeptWhenDeliveryIsDropped() throws InterruptedException {
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(), null);
+        CountDownLatch release = blockQueue(subscription);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "1234")), "TST", List.of(subscription));
+
+        // Default queue size is 100 - scheduled delivery is dropped as the oldest
+        for (int i = 0; i < 100; i++) {
+            dispatcher.submit(subscription.getSubscriptionId(), () -> {});
+        }
+
+        // Next update schedules a new delivery with all pending updates
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "2", "1234")), "TST", List.of(subscription));
+
+        release.countDown();
+        String body = awaitDeliveries(subscription, 1).get(0);
+
+        assertEquals(2, count(body, "<EstimatedVehicleJourney>"));
+        assertTrue(body.contains("TST:ServiceJourney:1"));
+        assertTrue(body.contains("TST:ServiceJourney:2"));
+    }
+
+    @Test
+    public void testFilterAndAdaptersAreApplied() throws InterruptedException {
+        List<ValueAdapter> adapters = List.of(new PrefixAdapter(SiriDataType.ESTIMATED_TIMETABLE, "TST", LineRef.class, "PREFIX:"));
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(LineRef.class, Set.of("TST:Line:1")), adapters);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(
+                createJourney("TST:Line:1", "1", "1234"),
+                createJourney("TST:Line:2", "2", "1234")
+        ), "TST", List.of(subscription));
+
+        String body = awaitDeliveries(subscription, 1).get(0);
+
+        assertEquals(1, count(body, "<EstimatedVehicleJourney>"));
+        assertTrue(body.contains("<LineRef>PREFIX:TST:Line:1</LineRef>"));
+        assertFalse(body.contains("TST:Line:2"));
+    }
+
+    @Test
+    public void testPayloadIsEncodedOncePerProfile() throws InterruptedException {
+        List<OutboundSubscriptionSetup> recipients = List.of(
+                createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_0),
+                createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_0),
+                createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_0)
+        );
+
+        camelRouteManager.pushSiriData(createServiceDelivery(), recipients, false);
+
+        for (OutboundSubscriptionSetup recipient : recipients) {
+            awaitDeliveries(recipient, 1);
+        }
+        verifyEncoded(1);
+
+        byte[] body = getDeliveredBytes(recipients.get(0)).get(0);
+        for (OutboundSubscriptionSetup recipient : recipients) {
+            assertArrayEquals(body, getDeliveredBytes(recipient).get(0));
+        }
+    }
+
+    @Test
+    public void testPayloadIsEncodedPerProfile() throws InterruptedException {
+        List<ValueAdapter> adapters = List.of(new PrefixAdapter(SiriDataType.ESTIMATED_TIMETABLE, "TST", LineRef.class, "PREFIX:"));
+        OutboundSubscriptionSetup first = createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_0);
+        OutboundSubscriptionSetup second = createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_0);
+        OutboundSubscriptionSetup withAdapters = createSubscription(Map.of(), adapters, null, SiriValidator.Version.VERSION_2_0);
+        OutboundSubscriptionSetup withFilter = createSubscription(Map.of(LineRef.class, Set.of("TST:Line:1")), null, null, SiriValidator.Version.VERSION_2_0);
+        OutboundSubscriptionSetup withVersion = createSubscription(Map.of(), null, null, SiriValidator.Version.VERSION_2_1);
+        // Delivery size is not limited for subscriptions to a single dataset
+        OutboundSubscriptionSetup withDeliverySize = createSubscription(Map.of(), null, "TST", SiriValidator.Version.VERSION_2_0);
+
+        camelRouteManager.pushSiriData(createServiceDelivery(), List.of(first, second, withAdapters, withFilter, withVersion, withDeliverySize), false);
+
+        for (OutboundSubscriptionSetup recipient : List.of(first, second, withAdapters, withFilter, withVersion, withDeliverySize)) {
+            awaitDeliveries(recipient, 1);
+        }
+        verifyEncoded(5);
+
+        assertArrayEquals(getDeliveredBytes(first).get(0), getDeliveredBytes(second).get(0));
+        assertTrue(getDeliveries(withAdapters).get(0).contains("<LineRef>PREFIX:TST:Line:1</LineRef>"));
+        assertFalse(getDeliveries(withFilter).get(0).contains("TST:Line:2"));
+        assertFalse(getDeliveries(first).get(0).contains("PREFIX:"));
+        assertTrue(getDeliveries(first).get(0).contains("TST:Line:2"));
+    }
+
+    @Test
+    public void testBufferIsRemovedWhenSubscriptionIsTerminated() throws InterruptedException {
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(), null);
+        CountDownLatch release = blockQueue(subscription);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "1234")), "TST", List.of(subscription));
+        assertTrue(camelRouteManager.hasConflationBuffer(subscription.getSubscriptionId()));
+
+        serverSubscriptionManager.terminateSubscription(subscription.getSubscriptionId(), false);
+        assertFalse(camelRouteManager.hasConflationBuffer(subscription.getSubscriptionId()));
+
+        release.countDown();
+        awaitDeliveries(subscription, 0);
+    }
+
+    @Test
+    public void testQueueIsRemovedWhenSubscriptionIsTerminated() throws InterruptedException {
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(), null);
+        CountDownLatch release = blockQueue(subscription);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "1234")), "TST", List.of(subscription));
+        assertTrue(dispatcher.hasQueue(subscription.getSubscriptionId()));
+        assertNotNull(findQueueDepthGauge(subscription));
+
+        serverSubscriptionManager.terminateSubscription(subscription.getSubscriptionId(), false);
+        assertFalse(dispatcher.hasQueue(subscription.getSubscriptionId()));
+        assertNull(findQueueDepthGauge(subscription));
+
+        release.countDown();
+        awaitDeliveries(subscription, 0);
+        assertFalse(dispatcher.hasQueue(subscription.getSubscriptionId()));
+    }
+
+    @Test
+    public void testBufferIsRemovedWhenQueuedDeliveryIsSkipped() throws InterruptedException {
+        OutboundSubscriptionSetup subscription = createSubscription(Map.of(), null);
+        CountDownLatch release = blockQueue(subscription);
+
+        camelRouteManager.pushConflatedUpdates(SiriDataType.ESTIMATED_TIMETABLE, List.of(createJourney("TST:Line:1", "1", "1234")), "TST", List.of(subscription));
+
+        // Terminated on another instance - only the shared subscription is removed
+        serverSubscriptionManager.subscriptions.delete(subscription.getSubscriptionId());
+        assertTrue(camelRouteManager.hasConflationBuffer(subscription.getSubscriptionId()));
+
+        release.countDown();
+        awaitDeliveries(subscription, 0);
+
+        assertFalse(camelRouteManager.hasConflationBuffer(subscription.getSubscriptionId()));
+        assertFalse(dispatcher.hasQueue(subscription.getSubscriptionId()));
+    }
+
+    /**
+     * Occupies the queue for the subscription until the returned latch is released
+     */
+    private CountDownLatch blockQueue(OutboundSubscriptionSetup subscription) throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(subscription.getSubscriptionId(), () -> {
+            blocked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private Gauge findQueueDepthGauge(OutboundSubscriptionSetup subscription) {
+        return metrics.find("app.anshar.outbound.queue.depth").tag("subscriptionId", subscription.getSubscriptionId()).gauge();
+    }
+
+    private List<String> awaitDeliveries(OutboundSubscriptionSetup subscription, int expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (getDeliveries(subscription).size() < expected && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        while (dispatcher.getQueueDepth(subscription.getSubscriptionId()) > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        // Allows unexpected deliveries to show up
+        Thread.sleep(100);
+
+        List<String> deliveries = getDeliveries(subscription);
+        assertEquals(expected, deliveries.size());
+        return deliveries;
+    }
+
+    private List<String> getDeliveries(OutboundSubscriptionSetup subscription) {
+        List<String> deliveries = new ArrayList<>();
+        for (byte[] delivery : getDeliveredBytes(subscription)) {
+            deliveries.add(new String(delivery));
+        }
+        return deliveries;
+    }
+
+    private List<byte[]> getDeliveredBytes(OutboundSubscriptionSetup subscription) {
+        List<byte[]> deliveries = new ArrayList<>();
+        for (Map.Entry<String, byte[]> delivery : posted) {
+            if (delivery.getKey().equals(subscription.getSubscriptionId())) {
+                deliveries.add(delivery.getValue());
+            }
+        }
+        return deliveries;
+    }
+
+    private void verifyEncoded(int times) {
+        Mockito.verify(camelRouteManager.siriEncoder, Mockito.times(times))
+                .requestBodyAndHeaders(Mockito.any(Endpoint.class), Mockito.any(), Mockito.anyMap(), Mockito.eq(byte[].class));
+    }
+
+    private OutboundSubscriptionSetup createSubscription(Map<Class, Set<String>> filterMap, List<ValueAdapter> adapters) {
+        OutboundSubscriptionSetup subscription = createSubscription(filterMap, adapters, null, SiriValidator.Version.VERSION_2_0);
+        subscription.setConflateUpdates(true);
+        return subscription;
+    }
+
+    private OutboundSubscriptionSetup createSubscription(Map<Class, Set<String>> filterMap, List<ValueAdapter> adapters,
+                                                         String datasetId, SiriValidator.Version version) {
+        String subscriptionId = "conflation-" + subscriptionIds.size() + "-" + System.nanoTime();
+        OutboundSubscriptionSetup subscription = new OutboundSubscriptionSetup(ZonedDateTime.now(), SiriDataType.ESTIMATED_TIMETABLE,
+                "http://localhost/" + subscriptionId, 60000, 0, filterMap, adapters, subscriptionId, "TST",
+                ZonedDateTime.now().plusHours(1), datasetId, null, version
+        );
+
+        // Heartbeats are posted and queued as any other delivery
+        heartbeatTimestampMap.put(subscriptionId, Instant.now());
+        serverSubscriptionManager.subscriptions.put(subscriptionId, subscription);
+        subscriptionIds.add(subscriptionId);
+        return subscription;
+    }
+
+    private Siri createServiceDelivery() {
+        return siriObjectFactory.createETServiceDelivery(List.of(
+                createJourney("TST:Line:1", "1", "1234"),
+                createJourney("TST:Line:2", "2", "1234")
+        ));
+    }
+
+    private EstimatedVehicleJourney createJourney(String lineRefValue, String serviceJourney, String vehicleRefValue) {
+        EstimatedVehicleJourney journey = new EstimatedVehicleJourney();
+
+        LineRef lineRef = new LineRef();
+        lineRef.setValue(lineRefValue);
+        journey.setLineRef(lineRef);
+
+        FramedVehicleJourneyRefStructure framedVehicleJourneyRef = new FramedVehicleJourneyRefStructure();
+        DataFrameRefStructure dataFrameRef = new DataFrameRefStructure();
+        dataFrameRef.setValue("2023-01-01");
+        framedVehicleJourneyRef.setDataFrameRef(dataFrameRef);
+        framedVehicleJourneyRef.setDatedVehicleJourneyRef("TST:ServiceJourney:" + serviceJourney);
+        journey.setFramedVehicleJourneyRef(framedVehicleJourneyRef);
+
+        VehicleRef vehicleRef = new VehicleRef();
+        vehicleRef.setValue(vehicleRefValue);
+        journey.setVehicleRef(vehicleRef);
+
+        return journey;
+    }
+
+    private static int count(String body, String element) {
+        int count = 0;
+        int index = body.indexOf(element);
+        while (index >= 0) {
+            count++;
+            index = body.indexOf(element, index + element.length());
+        }
+        return count;
+    }
+}
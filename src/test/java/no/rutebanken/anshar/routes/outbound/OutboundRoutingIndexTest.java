@@ -0,0 +1,109 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.outbound;
+
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.entur.siri.validator.SiriValidator;
+import org.junit.jupiter.api.Test;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.LineRef;
+import uk.org.siri.siri21.VehicleRef;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundRoutingIndexTest {
+
+    @Test
+    public void testUpdatesAreRoutedToMatchingSubscriptions() {
+        OutboundRoutingIndex index = new OutboundRoutingIndex();
+
+        OutboundSubscriptionSetup all = createSubscription("all", null, Map.of());
+        OutboundSubscriptionSetup line1 = createSubscription("line-1", null, Map.of(LineRef.class, Set.of("TST:Line:1")));
+        OutboundSubscriptionSetup line1Copy = createSubscription("line-1-copy", "TST", Map.of(LineRef.class, Set.of("TST:Line:1")));
+        OutboundSubscriptionSetup line2 = createSubscription("line-2", null, Map.of(LineRef.class, Set.of("TST:Line:2")));
+        OutboundSubscriptionSetup otherDataset = createSubscription("other", "ABC", Map.of(LineRef.class, Set.of("TST:Line:1")));
+        OutboundSubscriptionSetup line1Vehicle = createSubscription("line-1-vehicle", null, Map.of(
+                LineRef.class, Set.of("TST:Line:1"),
+                VehicleRef.class, Set.of("1234")
+        ));
+
+        for (OutboundSubscriptionSetup subscription : List.of(all, line1, line1Copy, line2, otherDataset, line1Vehicle)) {
+            index.add(subscription);
+        }
+
+        EstimatedVehicleJourney first = createJourney("TST:Line:1", "1234");
+        EstimatedVehicleJourney second = createJourney("TST:Line:1", "5678");
+        EstimatedVehicleJourney third = createJourney("TST:Line:3", "1234");
+
+        OutboundRoutingIndex.Routing routing = index.route(SiriDataType.ESTIMATED_TIMETABLE, "TST", List.of(first, second, third));
+
+        assertEquals(List.of(all), routing.getUnfiltered());
+        assertEquals(2, routing.getFiltered().size());
+
+        for (OutboundRoutingIndex.FilteredRecipients filtered : routing.getFiltered()) {
+            if (filtered.getRecipients().contains(line1)) {
+                assertEquals(List.of(line1, line1Copy), filtered.getRecipients());
+                assertEquals(List.of(first, second), filtered.getUpdates());
+            } else {
+                assertEquals(List.of(line1Vehicle), filtered.getRecipients());
+                assertEquals(List.of(first), filtered.getUpdates());
+            }
+        }
+        assertEquals(4, routing.getRecipientCount());
+    }
+
+    @Test
+    public void testRemovedSubscriptionIsNotRouted() {
+        OutboundRoutingIndex index = new OutboundRoutingIndex();
+
+        OutboundSubscriptionSetup line1 = createSubscription("line-1", null, Map.of(LineRef.class, Set.of("TST:Line:1")));
+        index.add(line1);
+        assertEquals(List.of(line1), index.getSubscriptions(SiriDataType.ESTIMATED_TIMETABLE, "TST"));
+
+        index.remove(line1.getSubscriptionId());
+
+        assertTrue(index.getSubscriptions(SiriDataType.ESTIMATED_TIMETABLE, "TST").isEmpty());
+        assertTrue(index.route(SiriDataType.ESTIMATED_TIMETABLE, "TST",
+                List.of(createJourney("TST:Line:1", null))).getFiltered().isEmpty());
+    }
+
+    private static OutboundSubscriptionSetup createSubscription(String subscriptionId, String datasetId, Map<Class<?>, Set<String>> filter) {
+        return new OutboundSubscriptionSetup(ZonedDateTime.now(), SiriDataType.ESTIMATED_TIMETABLE, "http://localhost",
+                60000, 0, new HashMap<>(filter), new ArrayList<>(), subscriptionId, "test",
+                ZonedDateTime.now().plusHours(1), datasetId, null, SiriValidator.Version.VERSION_2_1);
+    }
+
+    private static EstimatedVehicleJourney createJourney(String lineRefValue, String vehicleRefValue) {
+        EstimatedVehicleJourney journey = new EstimatedVehicleJourney();
+        LineRef lineRef = new LineRef();
+        lineRef.setValue(lineRefValue);
+        journey.setLineRef(lineRef);
+        if (vehicleRefValue != null) {
+            VehicleRef vehicleRef = new VehicleRef();
+            vehicleRef.setValue(vehicleRefValue);
+            journey.setVehicleRef(vehicleRef);
+        }
+        return journey;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.outbound;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.entur.siri.validator.SiriValidator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServerSubscriptionManagerTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ServerSubscriptionManager serverSubscriptionManager;
+
+    @Test
+    public void testConflationIsEnabledForConfiguredRequestor() {
+        // Conflation is disabled by default, and enabled for requestor TST-CONFLATION
+        assertTrue(serverSubscriptionManager.isConflationEnabled(createSubscription(SiriDataType.ESTIMATED_TIMETABLE, "TST-CONFLATION")));
+        assertTrue(serverSubscriptionManager.isConflationEnabled(createSubscription(SiriDataType.VEHICLE_MONITORING, "TST-CONFLATION")));
+
+        assertFalse(serverSubscriptionManager.isConflationEnabled(createSubscription(SiriDataType.ESTIMATED_TIMETABLE, "TST")));
+        assertFalse(serverSubscriptionManager.isConflationEnabled(createSubscription(SiriDataType.VEHICLE_MONITORING, "TST")));
+    }
+
+    @Test
+    public void testConflationIsNotEnabledForSituationExchange() {
+        assertFalse(serverSubscriptionManager.isConflationEnabled(createSubscription(SiriDataType.SITUATION_EXCHANGE, "TST-CONFLATION")));
+    }
+
+    private OutboundSubscriptionSetup createSubscription(SiriDataType dataType, String requestorRef) {
+        return new OutboundSubscriptionSetup(ZonedDateTime.now(), dataType, "http://localhost/", 60000, 0, Map.of(), List.of(),
+                "conflation-" + System.nanoTime(), requestorRef, ZonedDateTime.now().plusHours(1), null, null,
+                SiriValidator.Version.VERSION_2_0
+        );
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri;
+
+import no.rutebanken.anshar.metrics.PollingStatus;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PollingChangeDetectorTest {
+
+    private final DefaultCamelContext context = new DefaultCamelContext();
+
+    @Test
+    public void testDuplicatePayload() {
+        PollingChangeDetector detector = new PollingChangeDetector(60_000);
+
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response("<Siri>1</Siri>", null)));
+        detector.commit();
+        assertEquals(PollingStatus.DUPLICATE, detector.checkResponse(response("<Siri>1</Siri>", null)));
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response("<Siri>2</Siri>", null)));
+    }
+
+    @Test
+    public void testPayloadIsProcessedAgainIfNotCommitted() {
+        PollingChangeDetector detector = new PollingChangeDetector(60_000);
+
+        Message response = response("<Siri>1</Siri>", 200);
+        response.setHeader(PollingChangeDetector.ETAG, "\"v1\"");
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response));
+
+        // Processing failed - same response is processed again
+        Message request = request();
+        detector.addConditionalHeaders(request);
+        assertNull(request.getHeader(PollingChangeDetector.IF_NONE_MATCH));
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response("<Siri>1</Siri>", 200)));
+
+        detector.commit();
+        assertEquals(PollingStatus.DUPLICATE, detector.checkResponse(response("<Siri>1</Siri>", 200)));
+    }
+
+    @Test
+    public void testBodyIsReadable() {
+        PollingChangeDetector detector = new PollingChangeDetector(60_000);
+
+        Message response = response("<Siri>1</Siri>", null);
+        detector.checkResponse(response);
+
+        // Stream is consumed when hashing - body must still be available for processing
+        assertArrayEquals("<Siri>1</Siri>".getBytes(StandardCharsets.UTF_8), response.getBody(byte[].class));
+    }
+
+    @Test
+    public void testConditionalRequest() {
+        PollingChangeDetector detector = new PollingChangeDetector(60_000);
+
+        Message request = request();
+        detector.addConditionalHeaders(request);
+        assertNull(request.getHeader(PollingChangeDetector.IF_NONE_MATCH));
+
+        Message response = response("<Siri>1</Siri>", 200);
+        response.setHeader(PollingChangeDetector.ETAG, "\"v1\"");
+        response.setHeader(PollingChangeDetector.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response));
+        detector.commit();
+
+        request = request();
+        detector.addConditionalHeaders(request);
+        assertEquals("\"v1\"", request.getHeader(PollingChangeDetector.IF_NONE_MATCH));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", request.getHeader(PollingChangeDetector.IF_MODIFIED_SINCE));
+
+        assertEquals(PollingStatus.NOT_MODIFIED, detector.checkResponse(response("", 304)));
+    }
+
+    @Test
+    public void testUnchangedDataIsRefreshed() {
+        PollingChangeDetector detector = new PollingChangeDetector(0);
+
+        Message response = response("<Siri>1</Siri>", 200);
+        response.setHeader(PollingChangeDetector.ETAG, "\"v1\"");
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response));
+        detector.commit();
+
+        Message request = request();
+        detector.addConditionalHeaders(request);
+        assertNull(request.getHeader(PollingChangeDetector.IF_NONE_MATCH), "Conditional headers should not be added when refresh is due");
+
+        assertEquals(PollingStatus.PROCESSED, detector.checkResponse(response("<Siri>1</Siri>", 200)));
+    }
+
+    private Message request() {
+        return new DefaultExchange(context).getMessage();
+    }
+
+    private Message response(String body, Integer responseCode) {
+        Message message = new DefaultExchange(context).getMessage();
+        message.setBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        if (responseCode != null) {
+            message.setHeader(Exchange.HTTP_RESPONSE_CODE, responseCode);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SiriResponseCacheTest extends SpringBootBaseTest {
+
+    @Autowired
+    private SiriResponseCache responseCache;
+
+    @Test
+    public void testResponseIsReusedUntilDataVersionChanges() throws Exception {
+        SiriResponseCache.Key key = createKey("TST");
+        AtomicInteger loadCounter = new AtomicInteger();
+
+        SiriResponseCache.CachedResponse first = responseCache.get(key, 1, () -> createResponse(loadCounter));
+        SiriResponseCache.CachedResponse second = responseCache.get(key, 1, () -> createResponse(loadCounter));
+
+        assertSame(first, second);
+        assertEquals(1, loadCounter.get());
+
+        SiriResponseCache.CachedResponse third = responseCache.get(key, 2, () -> createResponse(loadCounter));
+        assertEquals(2, loadCounter.get(), "Changed data-version should create new response");
+        assertEquals(2, third.getElementCount());
+    }
+
+    @Test
+    public void testFailedResponseIsNotCached() throws Exception {
+        SiriResponseCache.Key key = createKey("FAIL");
+        AtomicInteger loadCounter = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> responseCache.get(key, 1, () -> {
+            throw new IllegalStateException("Failed");
+        }));
+
+        responseCache.get(key, 1, () -> createResponse(loadCounter));
+        assertEquals(1, loadCounter.get());
+    }
+
+    private SiriResponseCache.Key createKey(String datasetId) {
+        return new SiriResponseCache.Key("test", SiriDataType.ESTIMATED_TIMETABLE, datasetId, null, null,
+                List.of(), false, "application/xml");
+    }
+
+    private SiriResponseCache.CachedResponse createResponse(AtomicInteger loadCounter) {
+        int count = loadCounter.incrementAndGet();
+        return new SiriResponseCache.CachedResponse(new byte[]{1, 2, 3}, "application/xml", count);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetexProcessorTest {
+
+    @Test
+    public void testLoadRailJourneys() throws Exception {
+        NetexProcessor processor = new NetexProcessor();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            processor.loadFiles(new File("src/test/resources/rb_flt-aggregated-netex.zip"), executor).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(Set.of("FLT:ServiceJourney:1-184-3887"), processor.getTrainNumberTrips().get("3887"));
+
+        List<StopTime> stopTimes = processor.getTripStops().get("FLT:ServiceJourney:1-184-3887");
+        assertEquals(List.of(
+                new StopTime("NSR:Quay:569", 0, 23400, 23400),
+                new StopTime("NSR:Quay:447", 1, 24540, 24540)
+        ), stopTimes);
+
+        List<ServiceDate> serviceDates = processor.getTripDates().get("FLT:ServiceJourney:1-184-3887");
+        assertTrue(serviceDates.contains(new ServiceDate(2018, 9, 28)));
+    }
+
+    @Test
+    public void testDatedServiceJourneys() throws Exception {
+        File file = File.createTempFile("netex", ".zip");
+        file.deleteOnExit();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            zip.putNextEntry(new ZipEntry("line.xml"));
+            zip.write((
+                "<PublicationDelivery xmlns=\"http://www.netex.org.uk/netex\"><dataObjects><CompositeFrame><frames>" +
+                "  <ServiceCalendarFrame><operatingDays>" +
+                "    <OperatingDay id=\"TST:OperatingDay:1\"><CalendarDate>2023-01-02T00:00:00</CalendarDate></OperatingDay>" +
+                "    <OperatingDay id=\"TST:OperatingDay:2\"><CalendarDate>2023-01-03</CalendarDate></OperatingDay>" +
+                "  </operatingDays></ServiceCalendarFrame>" +
+                "  <TimetableFrame><vehicleJourneys>" +
+                "    <ServiceJourney id=\"TST:ServiceJourney:1\"><PrivateCode>123</PrivateCode><TransportMode>rail</TransportMode></ServiceJourney>" +
+                "    <ServiceJourney id=\"TST:ServiceJourney:2\"><PrivateCode>456</PrivateCode><TransportMode>bus</TransportMode></ServiceJourney>" +
+                "    <DatedServiceJourney id=\"TST:DatedServiceJourney:1\"><ServiceAlteration>cancellation</ServiceAlteration>" +
+                "      <ServiceJourneyRef ref=\"TST:ServiceJourney:1\"/><OperatingDayRef ref=\"TST:OperatingDay:1\"/></DatedServiceJourney>" +
+                "    <DatedServiceJourney id=\"TST:DatedServiceJourney:2\">" +
+                "      <ServiceJourneyRef ref=\"TST:ServiceJourney:1\"/><OperatingDayRef ref=\"TST:OperatingDay:2\"/></DatedServiceJourney>" +
+                "  </vehicleJourneys></TimetableFrame>" +
+                "</frames></CompositeFrame></dataObjects></PublicationDelivery>"
+            ).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        NetexProcessor processor = new NetexProcessor();
+        processor.loadFiles(file);
+
+        assertNotNull(processor.getTrainNumberTrips().get("123"));
+        assertFalse(processor.getTrainNumberTrips().containsKey("456"), "Only rail-journeys should be included");
+        assertEquals(List.of(new ServiceDate(2023, 1, 2), new ServiceDate(2023, 1, 3)),
+                processor.getTripDates().get("TST:ServiceJourney:1"));
+
+        NetexUpdaterService.update(file.getAbsolutePath());
+        assertTrue(NetexUpdaterService.isDsjCancelled("TST:ServiceJourney:1", new ServiceDate(2023, 1, 2)));
+        assertFalse(NetexUpdaterService.isDsjCancelled("TST:ServiceJourney:1", new ServiceDate(2023, 1, 3)));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *  https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.siri.processor.routedata;
+
+import org.junit.jupiter.api.Test;
+import org.rutebanken.netex.model.LocationStructure;
+import org.rutebanken.netex.model.VehicleModeEnumeration;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RouteDataSnapshotTest {
+
+    @Test
+    public void testSnapshotContainsSameRouteData() throws Exception {
+        NetexUpdaterService.update("src/test/resources/rb_flt-aggregated-netex.zip", "src/test/resources/RailStations.zip");
+
+        Set<String> trainNumbers = Set.of("3887", "3893");
+        Map<String, Set<String>> expectedTrips = new HashMap<>();
+        Map<String, List<StopTime>> expectedStopTimes = new HashMap<>();
+        Map<String, List<ServiceDate>> expectedServiceDates = new HashMap<>();
+        for (String trainNumber : trainNumbers) {
+            Set<String> trips = NetexUpdaterService.getServiceJourney(trainNumber);
+            expectedTrips.put(trainNumber, trips);
+            for (String trip : trips) {
+                expectedStopTimes.put(trip, List.copyOf(NetexUpdaterService.getStopTimes(trip)));
+                expectedServiceDates.put(trip, List.copyOf(NetexUpdaterService.getServiceDates(trip)));
+            }
+        }
+        Map<String, String> expectedParentStops = new HashMap<>(NetexUpdaterService.getParentStops());
+        Map<String, LocationStructure> expectedLocations = new HashMap<>(NetexUpdaterService.locations);
+        Map<String, VehicleModeEnumeration> expectedModes = new HashMap<>(NetexUpdaterService.modes);
+        String expectedPublicCode = NetexUpdaterService.getPublicCode("NSR:Quay:569");
+
+        File snapshot = File.createTempFile("routedata", ".bin");
+        snapshot.deleteOnExit();
+        NetexUpdaterService.writeSnapshot(snapshot);
+
+        // Data is replaced with what was read from the snapshot
+        NetexUpdaterService.update();
+        assertFalse(NetexUpdaterService.isKnownTrainNr("3887"));
+        assertTrue(NetexUpdaterService.loadSnapshot(snapshot));
+
+        for (String trainNumber : trainNumbers) {
+            assertEquals(expectedTrips.get(trainNumber), NetexUpdaterService.getServiceJourney(trainNumber));
+        }
+        for (String trip : expectedStopTimes.keySet()) {
+            assertEquals(expectedStopTimes.get(trip), NetexUpdaterService.getStopTimes(trip));
+            assertEquals(expectedServiceDates.get(trip), NetexUpdaterService.getServiceDates(trip));
+        }
+        assertEquals(expectedParentStops, NetexUpdaterService.getParentStops());
+        assertEquals(expectedModes, NetexUpdaterService.modes);
+        assertEquals(expectedPublicCode, NetexUpdaterService.getPublicCode("NSR:Quay:569"));
+
+        assertEquals(expectedLocations.keySet(), NetexUpdaterService.locations.keySet());
+        for (Map.Entry<String, LocationStructure> entry : expectedLocations.entrySet()) {
+            LocationStructure location = NetexUpdaterService.locations.get(entry.getKey());
+            assertEquals(entry.getValue().getLongitude().doubleValue(), location.getLongitude().doubleValue());
+            assertEquals(entry.getValue().getLatitude().doubleValue(), location.getLatitude().doubleValue());
+        }
+    }
+
+    @Test
+    public void testInvalidSnapshotIsIgnored() throws Exception {
+        File snapshot = File.createTempFile("routedata", ".bin");
+        snapshot.deleteOnExit();
+
+        assertFalse(NetexUpdaterService.loadSnapshot(snapshot));
+    }
+}
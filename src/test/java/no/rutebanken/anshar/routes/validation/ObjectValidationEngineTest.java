@@ -0,0 +1,128 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
+import no.rutebanken.anshar.routes.validation.validators.Validator;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import uk.org.siri.siri21.Siri;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObjectValidationEngineTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void testEtObjectModelMatchesXmlValidation() throws Exception {
+        byte[] xml = new FileInputStream("src/test/resources/siri-et-from-bnr.xml").readAllBytes();
+
+        SiriValidationEventHandler objectModel = assertSameResult(SiriDataType.ESTIMATED_TIMETABLE, xml);
+        assertFalse(objectModel.categorizedEvents.isEmpty());
+    }
+
+    @Test
+    public void testVmObjectModelMatchesXmlValidation() throws Exception {
+        String xml = "<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\">\n" +
+                "  <ServiceDelivery>\n" +
+                "    <ResponseTimestamp>2023-01-01T10:00:00+01:00</ResponseTimestamp>\n" +
+                "    <ProducerRef>TST</ProducerRef>\n" +
+                "    <VehicleMonitoringDelivery version=\"2.0\">\n" +
+                "      <ResponseTimestamp>2023-01-01T10:00:00+01:00</ResponseTimestamp>\n" +
+                "      <VehicleActivity>\n" +
+                "        <RecordedAtTime>2023-01-01T10:00:00+01:00</RecordedAtTime>\n" +
+                "        <ValidUntilTime>2023-01-03T10:00:00+01:00</ValidUntilTime>\n" +
+                "        <MonitoredVehicleJourney>\n" +
+                "          <LineRef>TST:Line:1</LineRef>\n" +
+                "          <DirectionRef>1</DirectionRef>\n" +
+                "          <FramedVehicleJourneyRef>\n" +
+                "            <DataFrameRef>2023-01-01</DataFrameRef>\n" +
+                "            <DatedVehicleJourneyRef>TST:ServiceJourney:1</DatedVehicleJourneyRef>\n" +
+                "          </FramedVehicleJourneyRef>\n" +
+                "          <VehicleMode>bus</VehicleMode>\n" +
+                "          <VehicleMode>ferry</VehicleMode>\n" +
+                "          <OperatorRef>TST:Operator:1</OperatorRef>\n" +
+                "          <VehicleLocation>\n" +
+                "            <Longitude>10.7</Longitude>\n" +
+                "            <Latitude>95.1</Latitude>\n" +
+                "          </VehicleLocation>\n" +
+                "          <Delay>PT2M</Delay>\n" +
+                "          <Occupancy>full</Occupancy>\n" +
+                "          <MonitoredCall>\n" +
+                "            <StopPointRef>NSR:Quay:1</StopPointRef>\n" +
+                "            <LatestExpectedArrivalTime>2023-01-01T10:05:00+01:00</LatestExpectedArrivalTime>\n" +
+                "          </MonitoredCall>\n" +
+                "        </MonitoredVehicleJourney>\n" +
+                "      </VehicleActivity>\n" +
+                "    </VehicleMonitoringDelivery>\n" +
+                "  </ServiceDelivery>\n" +
+                "</Siri>";
+
+        SiriValidationEventHandler objectModel = assertSameResult(SiriDataType.VEHICLE_MONITORING, xml.getBytes(StandardCharsets.UTF_8));
+        assertTrue(objectModel.categorizedEvents.containsKey("VehicleLocation"));
+        assertTrue(objectModel.categorizedEvents.containsKey("ValidUntilTime"));
+        assertTrue(objectModel.categorizedEvents.containsKey("MonitoredVehicleJourney"));
+    }
+
+    /**
+     * Compares the events reported by the object-model rules with the same rules applied to the XML
+     */
+    private SiriValidationEventHandler assertSameResult(SiriDataType type, byte[] xml) throws Exception {
+        List<CustomValidator> rules = getElementRules(type);
+        assertFalse(rules.isEmpty());
+
+        SiriValidationEventHandler streamed = new SiriValidationEventHandler();
+        new ProfileValidationEngine(rules).validate(new ByteArrayInputStream(xml), streamed);
+
+        Siri siri = (Siri) JAXBContext.newInstance(Siri.class).createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+        SiriValidationEventHandler objectModel = new SiriValidationEventHandler();
+        new ObjectValidationEngine(rules).validate(siri, objectModel);
+
+        assertEquals(streamed.categorizedEvents.keySet(), objectModel.categorizedEvents.keySet());
+        // Messages may differ, as values are validated after parsing (e.g. seconds added to timestamps)
+        for (String category : streamed.categorizedEvents.keySet()) {
+            assertEquals(streamed.categorizedEvents.get(category).size(), objectModel.categorizedEvents.get(category).size(), category);
+        }
+        return objectModel;
+    }
+
+    private List<CustomValidator> getElementRules(SiriDataType type) {
+        List<CustomValidator> rules = new ArrayList<>();
+        for (Object bean : context.getBeansWithAnnotation(Validator.class).values()) {
+            Validator validator = bean.getClass().getAnnotation(Validator.class);
+            if (bean instanceof SiriElementValidator &&
+                    validator.profileName().equals("norway") && validator.targetType() == type) {
+                rules.add((CustomValidator) bean);
+            }
+        }
+        return rules;
+    }
+}
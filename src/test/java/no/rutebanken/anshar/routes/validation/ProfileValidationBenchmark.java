@@ -0,0 +1,161 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriElementValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriObjectValidator;
+import no.rutebanken.anshar.routes.validation.validators.Validator;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import uk.org.siri.siri21.Siri;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares profile-validation of the sample ET-delivery using the streaming engine, per-rule XPath over a
+ * complete DOM, and the object-model - either copied and marshalled into the streaming engine, or traversed directly.
+ *
+ * Run with allocation-profiling:
+ *   java -cp target/test-classes:target/classes:&lt;test-classpath&gt; org.openjdk.jmh.Main ProfileValidationBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileValidationBenchmark {
+
+    @Param({"src/test/resources/siri-et-from-bnr.xml", "src/test/resources/siri-et-gir-npe.xml"})
+    private String file;
+
+    private byte[] xml;
+
+    private List<CustomValidator> rules;
+
+    private ProfileValidationEngine engine;
+
+    private ObjectValidationEngine objectEngine;
+
+    private JAXBContext jaxbContext;
+
+    private Siri siri;
+
+    @Setup
+    public void setup() throws Exception {
+        xml = new FileInputStream(file).readAllBytes();
+
+        rules = new ArrayList<>();
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Validator.class));
+        for (BeanDefinition definition : scanner.findCandidateComponents("no.rutebanken.anshar.routes.validation.validators")) {
+            Class<?> clazz = Class.forName(definition.getBeanClassName());
+            Validator validator = clazz.getAnnotation(Validator.class);
+            if (validator.profileName().equals("norway") &&
+                    validator.targetType() == SiriDataType.ESTIMATED_TIMETABLE &&
+                    !SiriObjectValidator.class.isAssignableFrom(clazz)) {
+                CustomValidator rule = (CustomValidator) clazz.getDeclaredConstructor().newInstance();
+                // Avoids lookup of stop-place service from application context
+                rule.prepareTestData("NSR:Quay:1");
+                rules.add(rule);
+            }
+        }
+        engine = new ProfileValidationEngine(rules);
+
+        List<CustomValidator> elementRules = new ArrayList<>();
+        for (CustomValidator rule : rules) {
+            if (rule instanceof SiriElementValidator) {
+                elementRules.add(rule);
+            }
+        }
+        objectEngine = new ObjectValidationEngine(elementRules);
+
+        jaxbContext = JAXBContext.newInstance(Siri.class);
+        siri = (Siri) jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public SiriValidationEventHandler streaming() throws Exception {
+        SiriValidationEventHandler handler = new SiriValidationEventHandler();
+        engine.validate(new ByteArrayInputStream(xml), handler);
+        return handler;
+    }
+
+    @Benchmark
+    public SiriValidationEventHandler xpathOverDom() throws Exception {
+        SiriValidationEventHandler handler = new SiriValidationEventHandler();
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        for (CustomValidator rule : rules) {
+            NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(), document, XPathConstants.NODESET);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                ProfileValidationEngine.report(rule, rule.isValid(nodes.item(i)), handler);
+            }
+        }
+        return handler;
+    }
+
+    @Benchmark
+    public SiriValidationEventHandler objectModelCopyAndMarshal() throws Exception {
+        SiriValidationEventHandler handler = new SiriValidationEventHandler();
+        engine.validate(SiriObjectFactory.deepCopy(siri), jaxbContext.createMarshaller(), handler);
+        return handler;
+    }
+
+    @Benchmark
+    public SiriValidationEventHandler objectModelTraversal() {
+        SiriValidationEventHandler handler = new SiriValidationEventHandler();
+        objectEngine.validate(siri, handler);
+        return handler;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProfileValidationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
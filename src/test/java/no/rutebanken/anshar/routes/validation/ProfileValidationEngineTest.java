@@ -0,0 +1,154 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriObjectValidator;
+import no.rutebanken.anshar.routes.validation.validators.Validator;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import uk.org.siri.siri21.Siri;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ProfileValidationEngineTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void testEtDeliveryMatchesXPathValidation() throws Exception {
+        byte[] xml = new FileInputStream("src/test/resources/siri-et-from-bnr.xml").readAllBytes();
+
+        assertSameResult(SiriDataType.ESTIMATED_TIMETABLE, xml);
+    }
+
+    @Test
+    public void testSxDeliveryMatchesXPathValidation() throws Exception {
+        String xml = "<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\">\n" +
+                "  <ServiceDelivery>\n" +
+                "    <ResponseTimestamp>2023-01-01T10:00:00+01:00</ResponseTimestamp>\n" +
+                "    <ProducerRef>TST</ProducerRef>\n" +
+                "    <SituationExchangeDelivery>\n" +
+                "      <Situations>\n" +
+                "        <PtSituationElement>\n" +
+                "          <CreationTime>2023-01-01T10:00:00+01:00</CreationTime>\n" +
+                "          <ParticipantRef>TST</ParticipantRef>\n" +
+                "          <SituationNumber>TST:SituationNumber:1</SituationNumber>\n" +
+                "          <Source><SourceType>directReport</SourceType></Source>\n" +
+                "          <Progress>closed</Progress>\n" +
+                "          <ValidityPeriod><StartTime>2023-01-01T10:00:00+01:00</StartTime></ValidityPeriod>\n" +
+                "          <ReportType>general</ReportType>\n" +
+                "          <Summary>Summary</Summary>\n" +
+                "          <Affects><Networks><AffectedNetwork><AffectedLine><LineRef>TST:Line:1</LineRef></AffectedLine></AffectedNetwork></Networks></Affects>\n" +
+                "        </PtSituationElement>\n" +
+                "      </Situations>\n" +
+                "    </SituationExchangeDelivery>\n" +
+                "    <VehicleMonitoringDelivery><VehicleActivity/></VehicleMonitoringDelivery>\n" +
+                "  </ServiceDelivery>\n" +
+                "</Siri>";
+
+        assertSameResult(SiriDataType.SITUATION_EXCHANGE, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testObjectModelMatchesXmlValidation() throws Exception {
+        byte[] xml = new FileInputStream("src/test/resources/siri-et-from-bnr.xml").readAllBytes();
+        ProfileValidationEngine engine = new ProfileValidationEngine(getXPathRules(SiriDataType.ESTIMATED_TIMETABLE));
+
+        SiriValidationEventHandler streamed = new SiriValidationEventHandler();
+        ProfileValidationEngine.Result xmlResult = engine.validate(new ByteArrayInputStream(xml), streamed);
+
+        JAXBContext jaxbContext = JAXBContext.newInstance(Siri.class);
+        Siri siri = (Siri) jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+
+        SiriValidationEventHandler marshalled = new SiriValidationEventHandler();
+        ProfileValidationEngine.Result objectResult = engine.validate(siri, jaxbContext.createMarshaller(), marshalled);
+
+        assertEquals(xmlResult.validatedNodes, objectResult.validatedNodes);
+        assertEquals(xmlResult.errors, objectResult.errors);
+        assertEquals(streamed.categorizedEvents.keySet(), marshalled.categorizedEvents.keySet());
+        // Messages may differ, as marshalled values are normalized (e.g. seconds added to timestamps)
+        for (String category : streamed.categorizedEvents.keySet()) {
+            assertEquals(streamed.categorizedEvents.get(category).size(), marshalled.categorizedEvents.get(category).size(), category);
+        }
+    }
+
+    private void assertSameResult(SiriDataType type, byte[] xml) throws Exception {
+        List<CustomValidator> rules = getXPathRules(type);
+        assertFalse(rules.isEmpty());
+
+        SiriValidationEventHandler streamed = new SiriValidationEventHandler();
+        ProfileValidationEngine.Result result = new ProfileValidationEngine(rules).validate(new ByteArrayInputStream(xml), streamed);
+
+        SiriValidationEventHandler expected = new SiriValidationEventHandler();
+        int expectedValidatedNodes = validateWithXPath(rules, xml, expected);
+
+        assertEquals(expectedValidatedNodes, result.validatedNodes);
+        assertEquals(expected.categorizedEvents.keySet(), streamed.categorizedEvents.keySet());
+        for (String category : expected.categorizedEvents.keySet()) {
+            assertEquals(expected.categorizedEvents.get(category).keySet(), streamed.categorizedEvents.get(category).keySet());
+        }
+        assertEquals(expected.equalsEventCounter, streamed.equalsEventCounter);
+    }
+
+    /**
+     * Previous implementation - every rule is evaluated as XPath over the complete DOM
+     */
+    private int validateWithXPath(List<CustomValidator> rules, byte[] xml, SiriValidationEventHandler handler) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        XPath xpath = XPathFactory.newInstance().newXPath();
+
+        int validatedNodes = 0;
+        for (CustomValidator rule : rules) {
+            NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(), document, XPathConstants.NODESET);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                ProfileValidationEngine.report(rule, rule.isValid(nodes.item(i)), handler);
+                validatedNodes++;
+            }
+        }
+        return validatedNodes;
+    }
+
+    private List<CustomValidator> getXPathRules(SiriDataType type) {
+        List<CustomValidator> rules = new ArrayList<>();
+        for (Object bean : context.getBeansWithAnnotation(Validator.class).values()) {
+            Validator validator = bean.getClass().getAnnotation(Validator.class);
+            if (bean instanceof CustomValidator && !(bean instanceof SiriObjectValidator) &&
+                    validator.profileName().equals("norway") && validator.targetType() == type) {
+                rules.add((CustomValidator) bean);
+            }
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ValidationExecutorTest extends SpringBootBaseTest {
+
+    // Default configuration
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 50;
+    private static final int SAMPLING_RATE = 10;
+
+    @Autowired
+    private ValidationExecutor executor;
+
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void blockWorkers() throws InterruptedException {
+        release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            assertTrue(executor.submit(createSubscription(true), () -> {
+                blocked.countDown();
+                await(release);
+            }));
+        }
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void releaseWorkers() throws InterruptedException {
+        release.countDown();
+        for (int i = 0; i < 50 && executor.getQueueDepth() > 0; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public void testRequestedValidationIsPrioritizedWhenQueueIsFull() throws InterruptedException {
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(QUEUE_SIZE);
+
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            final String id = "full-" + i;
+            assertTrue(executor.submit(createSubscription(false), () -> {
+                executed.add(id);
+                completed.countDown();
+            }));
+        }
+        assertEquals(QUEUE_SIZE, executor.getQueueDepth());
+
+        assertFalse(executor.submit(createSubscription(false), () -> executed.add("dropped")));
+
+        assertTrue(executor.submit(createSubscription(true), () -> {
+            executed.add("requested");
+            completed.countDown();
+        }));
+        assertEquals(QUEUE_SIZE, executor.getQueueDepth());
+
+        release.countDown();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+
+        assertEquals("requested", executed.get(0));
+        assertFalse(executed.contains("dropped"));
+        // Oldest non-prioritized validation is dropped
+        assertFalse(executed.contains("full-0"));
+    }
+
+    @Test
+    public void testValidationIsNotPreparedWhenQueueIsFull() {
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            assertTrue(executor.submit(createSubscription(false), () -> {}));
+        }
+
+        AtomicInteger prepared = new AtomicInteger();
+        assertFalse(executor.submit(createSubscription(false), () -> {
+            prepared.incrementAndGet();
+            return () -> {};
+        }));
+        assertEquals(0, prepared.get());
+    }
+
+    @Test
+    public void testFailingPreparationIsDroppedAndReleasesSlot() {
+        for (int i = 0; i < QUEUE_SIZE - 1; i++) {
+            assertTrue(executor.submit(createSubscription(true), () -> {}));
+        }
+
+        for (int i = 0; i < 2; i++) {
+            assertFalse(executor.submit(createSubscription(true), () -> {
+                throw new IllegalStateException("Unexpected failure");
+            }));
+        }
+
+        // Reserved slot is released
+        assertTrue(executor.submit(createSubscription(true), () -> {}));
+        assertEquals(QUEUE_SIZE, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testDeliveriesAreSampledUnderLoad() {
+        for (int i = 0; i < QUEUE_SIZE / 2; i++) {
+            assertTrue(executor.submit(createSubscription(false), () -> {}));
+        }
+
+        SubscriptionSetup subscription = createSubscription(false);
+        int accepted = 0;
+        for (int i = 0; i < SAMPLING_RATE * 2; i++) {
+            if (executor.submit(subscription, () -> {})) {
+                accepted++;
+            }
+        }
+        assertEquals(2, accepted);
+    }
+
+    private static SubscriptionSetup createSubscription(boolean validation) {
+        SubscriptionSetup subscriptionSetup = new SubscriptionSetup();
+        subscriptionSetup.setSubscriptionId(UUID.randomUUID().toString());
+        subscriptionSetup.setSubscriptionType(SiriDataType.ESTIMATED_TIMETABLE);
+        subscriptionSetup.setDatasetId("TST");
+        subscriptionSetup.setValidation(validation);
+        return subscriptionSetup;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
 import org.junit.jupiter.api.Test;
 import uk.org.siri.siri21.BlockRefStructure;
 import uk.org.siri.siri21.DestinationRef;
+import uk.org.siri.siri21.EstimatedCall;
 import uk.org.siri.siri21.EstimatedTimetableDeliveryStructure;
 import uk.org.siri.siri21.EstimatedVehicleJourney;
 import uk.org.siri.siri21.EstimatedVersionFrameStructure;
@@ -32,6 +33,7 @@ import uk.org.siri.siri21.JourneyPlaceRefStructure;
 import uk.org.siri.siri21.LineRef;
 import uk.org.siri.siri21.ServiceDelivery;
 import uk.org.siri.siri21.Siri;
+import uk.org.siri.siri21.StopPointRefStructure;
 
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
@@ -244,6 +246,40 @@ public class SiriValueTransformerTest extends SpringBootBaseTest {
 
     }
 
+    @Test
+    public void testAdaptersAppliedToNestedLists() throws JAXBException {
+        String lineRefValue = "99";
+        String blockRefValue = "34";
+
+        Siri siri = createSiriObject(lineRefValue, blockRefValue);
+        EstimatedVehicleJourney journey = siri.getServiceDelivery().getEstimatedTimetableDeliveries().get(0).getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().get(0);
+
+        EstimatedVehicleJourney.EstimatedCalls estimatedCalls = new EstimatedVehicleJourney.EstimatedCalls();
+        for (String stopPointRef : List.of("1", "22", "333")) {
+            EstimatedCall call = new EstimatedCall();
+            StopPointRefStructure stopPoint = new StopPointRefStructure();
+            stopPoint.setValue(stopPointRef);
+            call.setStopPointRef(stopPoint);
+            estimatedCalls.getEstimatedCalls().add(call);
+        }
+        journey.setEstimatedCalls(estimatedCalls);
+
+        List<ValueAdapter> mappingAdapters = new ArrayList<>();
+        mappingAdapters.add(new LeftPaddingAdapter(StopPointRefStructure.class, 4, '0'));
+        mappingAdapters.add(new LeftPaddingAdapter(LineRef.class, 4, '0'));
+
+        Siri transformed = SiriValueTransformer.transform(siri, mappingAdapters);
+
+        EstimatedVehicleJourney transformedJourney = transformed.getServiceDelivery().getEstimatedTimetableDeliveries().get(0).getEstimatedJourneyVersionFrames().get(0).getEstimatedVehicleJourneies().get(0);
+        List<EstimatedCall> calls = transformedJourney.getEstimatedCalls().getEstimatedCalls();
+
+        assertEquals("0099", getLineRefFromSiriObj(transformed), "LineRef has not been padded as expected");
+        assertEquals(blockRefValue, getBlockRefFromSiriObj(transformed), "BlockRef should not be padded");
+        assertEquals("1" + SEPARATOR + "0001", calls.get(0).getStopPointRef().getValue());
+        assertEquals("22" + SEPARATOR + "0022", calls.get(1).getStopPointRef().getValue());
+        assertEquals("333" + SEPARATOR + "0333", calls.get(2).getStopPointRef().getValue());
+    }
+
     private Siri createSiriObject(String lineRefValue, String blockRefValue) {
         return createSiriObject(lineRefValue, blockRefValue, null, null);
     }
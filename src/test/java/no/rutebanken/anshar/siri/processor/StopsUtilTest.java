@@ -56,6 +56,29 @@ public class StopsUtilTest {
 
     }
 
+    @Test
+    public void testGeodesicDistance() {
+        // Reference-values for Vincenty's formulae - Flinders Peak to Buninyong
+        String fromRef = "TST:Quay:FlindersPeak";
+        String toRef = "TST:Quay:Buninyong";
+
+        NetexUpdaterService.locations.put(fromRef,
+            new LocationStructure().withLatitude(BigDecimal.valueOf(-37.951033417)).withLongitude(BigDecimal.valueOf(144.424867889))
+        );
+        NetexUpdaterService.locations.put(toRef,
+            new LocationStructure().withLatitude(BigDecimal.valueOf(-37.652821139)).withLongitude(BigDecimal.valueOf(143.926495528))
+        );
+
+        assertEquals(54972.271, StopsUtil.getDistance(fromRef, toRef), 0.01);
+        assertEquals(54972.271, StopsUtil.getDistance(toRef, fromRef), 0.01);
+
+        // Cached value
+        assertEquals(StopsUtil.getDistance(fromRef, toRef), StopsUtil.getDistance(fromRef, toRef));
+
+        assertEquals(0, StopsUtil.getDistance(fromRef, fromRef));
+        assertEquals(-1, StopsUtil.getDistance(fromRef, "TST:Quay:Unknown"));
+    }
+
     @Test
     public void testSimpleSpeedCalculation() {
 
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.siri.transformer;
+
+import no.rutebanken.anshar.routes.siri.transformer.Siri21To20Mapper;
+import org.entur.siri21.util.SiriXml;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import uk.org.siri.siri21.EstimatedVehicleJourney;
+import uk.org.siri.siri21.OccupancyEnumeration;
+import uk.org.siri.siri21.Siri;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Siri21To20MapperTest {
+
+    private static final List<String> resources = List.of(
+            "siri-et-from-bnr.xml",
+            "siri-et-gir-npe.xml",
+            "siri-2.1/examples/siri_exm_ET/ext_estimatedTimetable_response.xml",
+            "siri-2.1/examples/siri_exm_VM/exv_vehicleMonitoring_response.xml",
+            "siri-2.1/examples/siri_exm_VM/exv_vehicleMonitoring_response_simple.xml",
+            "siri-2.1/examples/siri_exm_SX/exx_situationExchangeResponse.xml",
+            "siri-2.1/examples/siri_exm_SX/exx_situationExchange_response.xml",
+            "siri-2.1/examples/siri_exm_SX/VDV736_exm/SX_1022_main_message.xml",
+            "siri-2.1/examples/siri_exm_SX/VDV736_exm/SX_1135_main_message_update.xml",
+            "siri-2.1/examples/siri_exa_framework/exa_heartbeat_request.xml",
+            "siri-2.1/examples/siri_exa_framework/exa_checkStatus_response.xml",
+            "siri-2.1/examples/siri_exa_framework/exa_requestSubscription_response.xml",
+            "siri-2.1/examples/siri_exa_framework/exa_subscriptionTerminated_notification.xml",
+            "siri-2.1/examples/siri_exa_framework/exa_terminateSubscription_response.xml",
+            "siri-2.1/examples/siri_exm_ET/ext_estimatedTimetable_subscriptionRequest.xml",
+            "siri-2.1/examples/siri_exm_VM/exv_vehicleMonitoring_subscriptionRequest.xml"
+    );
+
+    /**
+     * Elements and values in the examples that do not exist in SIRI 2.0
+     */
+    private static final List<String> siri21OnlyValues = List.of(
+            "/AlertCause=",
+            // ServiceConditionEnumeration-values added in 2.1
+            "/Consequence/Condition=",
+            "/AffectedLine/Destinations/StopPlaceName=",
+            "/AffectedLine/StopPoints/",
+            "/PublishingActions/"
+    );
+
+    @Test
+    public void testMappingEqualsXmlRoundTrip() throws Exception {
+        for (String resource : resources) {
+            Siri siri = readResource(resource);
+            String original = SiriXml.toXml(siri);
+
+            uk.org.siri.siri20.Siri mapped = Siri21To20Mapper.map(siri);
+
+            assertEquals(original, SiriXml.toXml(siri), "Source modified when mapping " + resource);
+            assertEquals(toXmlRoundTrip(siri), toXml(mapped), "Mismatch for " + resource);
+        }
+    }
+
+    @Test
+    public void testValuesOnlyInSiri21AreIgnored() throws Exception {
+        Siri siri = readResource("siri-et-gir-npe.xml");
+        EstimatedVehicleJourney journey = siri.getServiceDelivery()
+                .getEstimatedTimetableDeliveries().get(0)
+                .getEstimatedJourneyVersionFrames().get(0)
+                .getEstimatedVehicleJourneies().get(0);
+
+        // Enum-value that does not exist in SIRI 2.0
+        journey.getEstimatedCalls().getEstimatedCalls().get(0).setOccupancy(OccupancyEnumeration.MANY_SEATS_AVAILABLE);
+
+        uk.org.siri.siri20.Siri mapped = Siri21To20Mapper.map(siri);
+        assertNotNull(mapped.getServiceDelivery());
+        assertEquals(toXmlRoundTrip(siri), toXml(mapped));
+    }
+
+    @Test
+    public void testOnlyValuesNotInSiri20AreLost() throws Exception {
+        for (String resource : resources) {
+            Siri siri = readResource(resource);
+
+            // Mapped data is read back with the 2.1-model, and compared to the original
+            String mapped = org.rutebanken.siri20.util.SiriXml.toXml(Siri21To20Mapper.map(siri));
+            Map<String, Integer> lost = getValues(SiriXml.toXml(siri));
+            getValues(SiriXml.toXml(SiriXml.parseXml(mapped))).forEach((value, count) -> lost.merge(value, -count, Integer::sum));
+            lost.values().removeIf(count -> count <= 0);
+
+            for (String value : lost.keySet()) {
+                assertTrue(siri21OnlyValues.stream().anyMatch(value::contains), "Value lost when mapping " + resource + ": " + value);
+            }
+        }
+    }
+
+    /**
+     * @return number of occurrences of each element-path with value
+     */
+    private static Map<String, Integer> getValues(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        Map<String, Integer> values = new TreeMap<>();
+        addValues(document.getDocumentElement(), "", values);
+        return values;
+    }
+
+    private static void addValues(Element element, String parentPath, Map<String, Integer> values) {
+        String path = parentPath + "/" + element.getLocalName();
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            if (!"http://www.w3.org/2000/xmlns/".equals(attribute.getNamespaceURI())) {
+                values.merge(path + "@" + attribute.getLocalName() + "=" + attribute.getNodeValue(), 1, Integer::sum);
+            }
+        }
+        boolean hasChildElements = false;
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element) {
+                hasChildElements = true;
+                addValues((Element) children.item(i), path, values);
+            }
+        }
+        if (!hasChildElements) {
+            values.merge(path + "=" + element.getTextContent().trim(), 1, Integer::sum);
+        }
+    }
+
+    private Siri readResource(String resource) throws Exception {
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(stream, "Resource not found: " + resource);
+            return SiriXml.parseXml(stream);
+        }
+    }
+
+    /**
+     * Previous implementation - marshalled 2.1 parsed with the 2.0 model
+     */
+    private static String toXmlRoundTrip(Siri siri) throws Exception {
+        return toXml(org.rutebanken.siri20.util.SiriXml.parseXml(SiriXml.toXml(siri)));
+    }
+
+    /**
+     * GML-namespace declared on extension-elements is only a by-product of parsing, and is ignored
+     */
+    private static String toXml(uk.org.siri.siri20.Siri siri) throws Exception {
+        return org.rutebanken.siri20.util.SiriXml.toXml(siri).replaceAll(" xmlns:ns\\d+=\"http://www.opengis.net/gml/3.2\"", "");
+    }
+}